@@ -0,0 +1,116 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the per-sample calibration estimators on the sensor thread, reported per sample
+ * 矫正姿态：每个姿态加入ReferencePoseEstimator的去抖窗口并取出平均姿态，与传感器线程每个姿态的路径相同；
+ * 硬铁偏移：每个磁力计样本更新一次HardIronEstimator的递推最小二乘。
+ * 姿态为预先生成的手抖加2%尖峰的固定姿态，磁力计样本为带硬磁偏移和噪声的随机转动读数。
+ * 开始测量前先校验矫正姿态稳定、硬铁偏移收敛
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalibrationBenchmark {
+
+    private static final int SAMPLE_COUNT = 3000; // 预先生成的姿态数和磁力计样本数，50Hz下60秒
+
+    private final float[]                mPoses     = new float[SAMPLE_COUNT * 4];  // 预先生成的姿态四元数
+    private final float[]                mMagnetic  = new float[SAMPLE_COUNT * 3];  // 预先生成的磁力计样本(uT)
+    private final float[]                mPose      = new float[4];                 // 当前加入的姿态
+    private final float[]                mReference = new float[4];                 // 平均姿态
+    private final ReferencePoseEstimator mEstimator = new ReferencePoseEstimator(); // 被测的去抖窗口
+    private final HardIronEstimator      mHardIron  = new HardIronEstimator();      // 被测的硬铁偏移估计
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random  random = new Random(24);
+        float   tremor = (float) Math.toRadians(0.4);
+        float[] truth  = new float[] {0.8f, 0.2f, -0.5f, 0.1f};
+        OrientationMath.normalizeQuaternion(truth);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            float spike = random.nextInt(50) == 0 ? 8 : 1;
+            System.arraycopy(truth, 0, mPose, 0, 4);
+            OrientationMath.integrateAngularRate(mPose, spike * tremor * (float) random.nextGaussian(),
+                    spike * tremor * (float) random.nextGaussian(), spike * tremor * (float) random.nextGaussian(), 1);
+            System.arraycopy(mPose, 0, mPoses, i * 4, 4);
+        }
+
+        float[] q      = new float[] {1, 0, 0, 0};
+        float[] R      = new float[9];
+        float[] omega  = new float[3];
+        float[] offset = new float[] {35, -20, 60};
+        float[] earth  = new float[] {0, 22, -42};
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                omega[axis] += -omega[axis] / 50 + (float) (random.nextGaussian() * Math.sqrt(2.0 / 50));
+            }
+            OrientationMath.integrateAngularRate(q, omega[0], omega[1], omega[2], 1.0f / 50);
+            OrientationMath.quaternionToMatrix(q, R);
+            for (int axis = 0; axis < 3; axis++) {
+                float value = R[axis] * earth[0] + R[3 + axis] * earth[1] + R[6 + axis] * earth[2];
+                mMagnetic[i * 3 + axis] = value + offset[axis] + (float) random.nextGaussian() * 0.6f;
+            }
+        }
+
+        referencePose();
+        hardIron();
+        if (!mEstimator.isStable() || !mHardIron.isConverged()) {
+            throw new IllegalStateException("Estimators did not settle: " + mEstimator + ", " + mHardIron);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] referencePose() {
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            System.arraycopy(mPoses, i * 4, mPose, 0, 4);
+            mEstimator.add(mPose);
+            mEstimator.getReference(mReference);
+        }
+        return mReference;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public HardIronEstimator hardIron() {
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mHardIron.update(mMagnetic[i * 3], mMagnetic[i * 3 + 1], mMagnetic[i * 3 + 2]);
+        }
+        return mHardIron;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(CalibrationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
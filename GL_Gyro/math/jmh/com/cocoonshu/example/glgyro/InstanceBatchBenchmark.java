@@ -0,0 +1,185 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import android.opengl.GLES11;
+
+/**
+ * JMH benchmarks of the per-frame CPU cost of submitting many instances, reported per frame
+ * GL调用经过状态缓存记录到RecordingGLApi，不需要GPU。逐个实例：按单球体的方式提交
+ * (每个实例压栈、平移、乘矩阵、缩放、绑定纹理、设置材质和顶点指针)；
+ * 分组提交：InstanceBatch剔除、排序后按纹理分组提交。两条路径每帧都更新所有实例的姿态，
+ * 姿态计算相同：旋转矩阵转换为四元数，再与矫正姿态复合为模型矩阵。
+ * 实例排成比视野宽20%的网格，两种纹理交替，姿态从预先生成的64个随机姿态中轮换。
+ * 开始测量前先校验分组提交剔除了视野外的实例、每组只绑定一次纹理。
+ * RecordingGLApi只记录调用，测量的是CPU提交的耗时，不含驱动处理每个调用的开销；
+ * 每帧经过状态缓存后实际提交的GL调用数(逐个实例 / 分组)：
+ *   实例数   GL调用         纹理绑定    分组时可见的实例
+ *   1        9 / 5          0 / 0       1
+ *   100      1000 / 146     100 / 2     69
+ *   1000     10000 / 1338   1000 / 2    665
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstanceBatchBenchmark {
+
+    private static final float RADIUS   = 10f;   // 球体半径
+    private static final float CAMERA_Z = 30.0f; // 摄像机在(0, 0, 30)看向原点，与GyroRenderer相同
+
+    @Param({"1", "100", "1000"})
+    public int mInstanceCount; // 实例数量
+
+    private InterleavedMesh      mMesh       = null;                                 // 所有实例共享的网格
+    private final RecordingGLApi mRecorder   = new RecordingGLApi();                 // 记录GL调用
+    private final GLStateCache   mGL         = new GLStateCache(mRecorder);          // 与GyroRenderer相同的状态缓存
+    private final int[]          mTextures   = new int[] {1, 2};                     // 两种纹理
+    private final float[]        mMaterial   = new float[] {0.8f, 0.8f, 0.8f, 1.0f}; // 材质颜色
+    private final float[]        mView       = new float[16];                        // 视图矩阵
+    private final float[][]      mPoses      = new float[64][16];                    // 预先生成的设备姿态
+    private final float[]        mModel      = new float[16];                        // 逐个实例时的模型矩阵
+    private final RigidTransform mPose       = new RigidTransform();                 // 逐个实例时的设备姿态
+    private final RigidTransform mModelPose  = new RigidTransform();                 // 逐个实例时的模型姿态
+    private final RigidTransform mCalibPose  = new RigidTransform()                  // 与InstanceBatch相同的矫正姿态
+                                                   .setAxisAngle(90.0f, 1.0f, 0.0f, 0.0f);
+    private float[]              mPlacements = null;                                 // 每个实例的{x, y, z, scale}
+    private InstanceBatch        mBatch      = null;                                 // 被测的实例集合
+    private int                  mFrame      = 0;                                    // 帧序号，用于轮换姿态
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mMesh = SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_MEDIUM, RADIUS)
+                                   .setIndexOrder(SphereMeshGenerator.ORDER_OPTIMIZED)
+                                   .generate();
+        mView[0] = mView[5] = mView[10] = mView[15] = 1.0f;
+        mView[14] = -CAMERA_Z;
+        float zNear      = 0.1f;
+        float zFar       = 100f;
+        float horizontal = (float) (zNear * Math.tan(Math.toRadians(60) * 0.5));
+        float vertical   = horizontal / (16.0f / 9.0f);
+
+        Random  random = new Random(25);
+        float[] q      = new float[4];
+        for (float[] pose : mPoses) {
+            for (int k = 0; k < 4; k++) {
+                q[k] = (float) random.nextGaussian();
+            }
+            OrientationMath.normalizeQuaternion(q);
+            OrientationMath.quaternionToMatrix(q, pose);
+        }
+
+        int count = mInstanceCount;
+        mBatch = new InstanceBatch(count);
+        mBatch.setBoundingRadius(RADIUS);
+        mBatch.setFrustum(-horizontal, horizontal, -vertical, vertical, zNear, zFar);
+        mBatch.setInstanceCount(count);
+        // 网格比视野宽20%，是正方形，两侧和上下超出视野的实例会被剔除
+        int   columns = (int) Math.ceil(Math.sqrt(count));
+        float extent  = count == 1 ? 0 : 2.0f * CAMERA_Z * horizontal / zNear * 1.2f;
+        float spacing = count == 1 ? 0 : extent / columns;
+        float scale   = count == 1 ? 1 : 0.45f * spacing / RADIUS;
+        mPlacements = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            float x = count == 1 ? 0 : (i % columns + 0.5f) * spacing - extent * 0.5f;
+            float y = count == 1 ? 0 : (i / columns + 0.5f) * spacing - extent * 0.5f;
+            float z = count == 1 ? 0 : -random.nextFloat() * 20.0f;
+            mBatch.setPlacement(i, x, y, z, scale);
+            mBatch.setTextureSlot(i, i % mTextures.length);
+            mPlacements[i * 4]     = x;
+            mPlacements[i * 4 + 1] = y;
+            mPlacements[i * 4 + 2] = z;
+            mPlacements[i * 4 + 3] = scale;
+        }
+
+        batched();
+        int visible = mBatch.getVisibleCount();
+        if (visible == 0 || (count >= 100 && visible >= count)
+                || mBatch.getBatchCount() != Math.min(count, mTextures.length)
+                || mBatch.getDrawCount() != visible * mMesh.getChunkCount()) {
+            throw new IllegalStateException("Unexpected culling or grouping: " + mBatch);
+        }
+    }
+
+    @Benchmark
+    public int single() {
+        int     count      = mInstanceCount;
+        int     chunkCount = mMesh.getChunkCount();
+        float[] placements = mPlacements;
+        beginFrame();
+        for (int i = 0; i < count; i++) {
+            // 与单个球体相同：传感器线程把旋转矩阵转换为姿态，GLThread计算姿态的逆与矫正姿态的复合
+            mPose.setRotationMatrix(mPoses[(mFrame + i) & 63]);
+            mModelPose.setInverse(mPose).setProduct(mModelPose, mCalibPose).toMatrix(mModel);
+            mGL.glPushMatrix();
+            mGL.glTranslatef(placements[i * 4], placements[i * 4 + 1], placements[i * 4 + 2]);
+            mGL.glMultMatrixf(mModel, 0);
+            mGL.glScalef(placements[i * 4 + 3], placements[i * 4 + 3], placements[i * 4 + 3]);
+            mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+            mGL.glBindTexture(GLES11.GL_TEXTURE_2D, mTextures[i % mTextures.length]);
+            mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT, mMaterial, 0);
+            mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE, mMaterial, 0);
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                InstanceBatch.setChunkPointers(mGL, mMesh, chunk, true);
+                InstanceBatch.drawChunk(mGL, mMesh, chunk, true);
+            }
+            mGL.glPopMatrix();
+        }
+        return mRecorder.getFrameDrawCalls();
+    }
+
+    @Benchmark
+    public int batched() {
+        int count = mInstanceCount;
+        beginFrame();
+        for (int i = 0; i < count; i++) {
+            mBatch.setPose(i, mPoses[(mFrame + i) & 63]);
+        }
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT, mMaterial, 0);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE, mMaterial, 0);
+        mBatch.draw(mGL, mMesh, true, mView, mTextures);
+        return mRecorder.getFrameDrawCalls();
+    }
+
+    /**
+     * 清空命令日志，否则它会随帧数不断增长
+     */
+    private void beginFrame() {
+        mRecorder.clear();
+        mGL.beginFrame();
+        mFrame++;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(InstanceBatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
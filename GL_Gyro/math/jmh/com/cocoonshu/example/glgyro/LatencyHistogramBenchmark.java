@@ -0,0 +1,106 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of LatencyHistogram, record reported per sample
+ * 单线程记录：与GLThread每帧记录一次的路径相同；多线程记录：4个线程同时记录到同一个直方图，
+ * 测量原子自增在竞争下的开销；读取百分位数：遍历所有桶，相当于调试浮层每次刷新的开销。
+ * 延迟为预先生成的对数正态分布，以约12ms为中心，叠加1%的长尾卡顿。
+ * 开始测量前先校验记录后的样本数正确
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private static final int SAMPLE_COUNT = 4096; // 每次调用记录的样本数
+
+    private final long[]           mLatencies = new long[SAMPLE_COUNT]; // 预先生成的延迟(ns)
+    private final LatencyHistogram mHistogram = new LatencyHistogram(); // 本线程独占的直方图
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(19);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            double latencyMs = Math.exp(Math.log(12) + 0.3 * random.nextGaussian());
+            if (random.nextInt(100) == 0) {
+                latencyMs += 30 + 200 * random.nextDouble();
+            }
+            mLatencies[i] = (long) (latencyMs * 1E6);
+        }
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mHistogram.record(mLatencies[i]);
+        }
+        if (mHistogram.getCount() != SAMPLE_COUNT || mHistogram.getPercentile(100) != mHistogram.getMax()) {
+            throw new IllegalStateException("Histogram lost samples");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public LatencyHistogram record() {
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mHistogram.record(mLatencies[i]);
+        }
+        return mHistogram;
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public LatencyHistogram recordContended(Shared shared) {
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            shared.mHistogram.record(mLatencies[i]);
+        }
+        return shared.mHistogram;
+    }
+
+    @Benchmark
+    public long percentile() {
+        return mHistogram.getPercentile(99);
+    }
+
+    /**
+     * 所有线程共用的直方图
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        private final LatencyHistogram mHistogram = new LatencyHistogram(); // 共用的直方图
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(LatencyHistogramBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,103 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the sphere mesh cache, cold start vs warm start
+ * 冷启动：生成球体网格(含索引优化和顶点编码)并写入缓存文件，与没有缓存时GyroRenderer.loadMesh的工作相同；
+ * 热启动：以内存映射的方式读取缓存文件并校验绘制块。映射的顶点数据在上传到GPU时才被读取，
+ * 所以热启动的时间不包含顶点数据的缺页。开始测量前先校验读出的网格与生成的网格一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshCacheBenchmark {
+
+    private static final float SPHERE_RADIUS = 1.0f; // 球体半径
+
+    @Param({"0", "2", "3"})
+    public int mLevelOfDetail; // 球体网格的精度等级
+
+    @Param({"0", "1"})
+    public int mFormatId;      // 顶点格式的ID
+
+    private SphereMeshGenerator mGenerator = null; // 球体网格生成器
+    private File                mCacheFile = null; // 缓存文件
+    private int                 mCacheKey  = 0;    // 缓存的键
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mGenerator = SphereMeshGenerator.forLevelOfDetail(mLevelOfDetail, SPHERE_RADIUS)
+                                        .setIndexOrder(SphereMeshGenerator.ORDER_OPTIMIZED)
+                                        .setVertexFormat(VertexFormat.forId(mFormatId));
+        mCacheKey  = MeshCache.sphereKey(mGenerator);
+        mCacheFile = File.createTempFile("sphere", ".mesh");
+
+        InterleavedMesh generated = mGenerator.generate();
+        if (!MeshCache.save(mCacheFile, mCacheKey, generated)) {
+            throw new IllegalStateException("Failed to save " + mCacheFile);
+        }
+        InterleavedMesh loaded = MeshCache.load(mCacheFile, mCacheKey);
+        if (loaded == null
+                || loaded.getFormat() != generated.getFormat()
+                || loaded.getVertexCount() != generated.getVertexCount()
+                || loaded.getIndexCount() != generated.getIndexCount()
+                || loaded.getChunkCount() != generated.getChunkCount()
+                || !loaded.getVertexData().equals(generated.getVertexData())
+                || !loaded.getIndexData().equals(generated.getIndexData())) {
+            throw new IllegalStateException("Cached mesh differs from the generated mesh");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCacheFile.delete();
+    }
+
+    @Benchmark
+    public InterleavedMesh coldStart() {
+        InterleavedMesh mesh = mGenerator.generate();
+        MeshCache.save(mCacheFile, mCacheKey, mesh);
+        return mesh;
+    }
+
+    @Benchmark
+    public InterleavedMesh warmStart() {
+        return MeshCache.load(mCacheFile, mCacheKey);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(MeshCacheBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of {@link OrientationMath}
+ * 每个操作都预先分配输入输出数组，测量的是纯计算的耗时；main()默认开启GC分析器，
+ * 同时报告每个操作的ns/op和内存分配率(gc.alloc.rate.norm应为0)。
+ * 各操作结果的正确性由test中的OrientationMathTest校验
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrientationMathBenchmark {
+
+    private float[] mGravity     = new float[] {0.3f, 0.5f, 9.7f};        // 略微倾斜的重力向量
+    private float[] mGeomagnetic = new float[] {4.0f, 21.5f, -41.0f};     // 地磁向量
+    private float[] mRotation    = new float[16];                         // 旋转矩阵
+    private float[] mMatrixA     = new float[16];                         // 一般的可逆4x4矩阵
+    private float[] mMatrixB     = new float[16];                         // 一般的可逆4x4矩阵
+    private float[] mQuaternionA = new float[4];                          // 单位四元数
+    private float[] mQuaternionB = new float[4];                          // 单位四元数
+    private float[] mOutMatrix   = new float[16];                         // 矩阵输出
+    private float[] mOutVector   = new float[4];                          // 四元数和欧拉角输出
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OrientationMath.getRotationMatrix(mRotation, mGravity, mGeomagnetic);
+        OrientationMath.matrixToQuaternion(mRotation, mQuaternionA);
+        OrientationMath.identityQuaternion(mQuaternionB);
+        OrientationMath.integrateAngularRate(mQuaternionB, 0.7f, -1.1f, 0.4f, 0.8f);
+        for (int i = 0; i < 16; i++) {
+            mMatrixA[i] = (float) Math.sin(i * 1.3 + 0.2) + (i % 5 == 0 ? 3 : 0);
+            mMatrixB[i] = (float) Math.cos(i * 0.7 + 0.1) + (i % 5 == 0 ? 2 : 0);
+        }
+    }
+
+    @Benchmark
+    public float[] getRotationMatrix() {
+        OrientationMath.getRotationMatrix(mOutMatrix, mGravity, mGeomagnetic);
+        return mOutMatrix;
+    }
+
+    @Benchmark
+    public float[] remapCoordinateSystem() {
+        OrientationMath.remapCoordinateSystem(mRotation, OrientationMath.AXIS_X, OrientationMath.AXIS_Z, mOutMatrix);
+        return mOutMatrix;
+    }
+
+    @Benchmark
+    public float[] getOrientation() {
+        return OrientationMath.getOrientation(mRotation, mOutVector);
+    }
+
+    @Benchmark
+    public float[] matrixToQuaternion() {
+        OrientationMath.matrixToQuaternion(mRotation, mOutVector);
+        return mOutVector;
+    }
+
+    @Benchmark
+    public float[] quaternionToMatrix() {
+        OrientationMath.quaternionToMatrix(mQuaternionA, mOutMatrix);
+        return mOutMatrix;
+    }
+
+    @Benchmark
+    public float[] multiplyQuaternion() {
+        OrientationMath.multiplyQuaternion(mQuaternionA, mQuaternionB, mOutVector);
+        return mOutVector;
+    }
+
+    @Benchmark
+    public float[] integrateAngularRate() {
+        System.arraycopy(mQuaternionA, 0, mOutVector, 0, 4);
+        OrientationMath.integrateAngularRate(mOutVector, 0.7f, -1.1f, 0.4f, 0.005f);
+        return mOutVector;
+    }
+
+    @Benchmark
+    public float[] slerpQuaternion() {
+        OrientationMath.slerpQuaternion(mQuaternionA, mQuaternionB, 0.3f, mOutVector);
+        return mOutVector;
+    }
+
+    @Benchmark
+    public float[] multiplyMatrix4() {
+        OrientationMath.multiplyMatrix4(mMatrixA, mMatrixB, mOutMatrix);
+        return mOutMatrix;
+    }
+
+    @Benchmark
+    public float[] invertMatrix4() {
+        OrientationMath.invertMatrix4(mMatrixA, mOutMatrix);
+        return mOutMatrix;
+    }
+
+    @Benchmark
+    public float[] transposeMatrix4() {
+        OrientationMath.transposeMatrix4(mMatrixA, mOutMatrix);
+        return mOutMatrix;
+    }
+
+    /**
+     * 运行所有基准测试并开启GC分析器，额外的参数按JMH命令行解析
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(OrientationMathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
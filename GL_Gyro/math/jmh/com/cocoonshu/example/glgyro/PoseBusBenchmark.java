@@ -0,0 +1,116 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of PoseBus.publish() by subscriber count, reported per publish
+ * 订阅者一半不过滤、一半按50Hz和0.5度过滤；订阅者多于一个时，最后一个按10Hz保留快照，
+ * 模拟在其他线程上使用快照的记录器。姿态为预先生成的200Hz匀速转动，计时只包含发布。
+ * 开始测量前先校验没有发布被丢弃
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseBusBenchmark {
+
+    private static final int  POSE_COUNT = 1024;     // 预先生成的姿态数
+    private static final long STEP_NS    = 5000000L; // 姿态间隔(ns)，200Hz
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int mSubscriberCount; // 订阅者数量
+
+    private final float[][] mMatrices    = new float[POSE_COUNT][16];       // 预先生成的姿态
+    private final float[]   mOrientation = new float[3];                    // 发布的欧拉角(rad)
+    private final float[]   mRate        = new float[] {0.1f, 0.4f, -0.2f}; // 发布的陀螺仪样本(rad/s)
+    private PoseBus         mBus         = null;                            // 被测的姿态总线
+    private long            mTimestamp   = 0;                               // 下一个姿态的时间戳(ns)
+    private long            mSink        = 0;                               // 订阅者读取的发布序号之和
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float[] q = new float[] {1, 0, 0, 0};
+        for (float[] matrix : mMatrices) {
+            OrientationMath.integrateAngularRate(q, mRate[0], mRate[1], mRate[2], STEP_NS * 1e-9f);
+            OrientationMath.quaternionToMatrix(q, matrix);
+        }
+
+        PoseBus.Subscriber consumer = new PoseBus.Subscriber() {
+
+            @Override
+            public void onPose(PoseBus.Snapshot snapshot) {
+                mSink += snapshot.getSequence();
+            }
+        };
+        PoseBus.Subscriber retainer = new PoseBus.Subscriber() {
+
+            private PoseBus.Snapshot mRetained = null; // 保留中的快照
+
+            @Override
+            public void onPose(PoseBus.Snapshot snapshot) {
+                if (mRetained != null) {
+                    mRetained.release();
+                }
+                snapshot.retain();
+                mRetained = snapshot;
+            }
+        };
+        mBus = new PoseBus();
+        for (int i = 0; i < mSubscriberCount; i++) {
+            if (i == mSubscriberCount - 1 && mSubscriberCount > 1) {
+                mBus.subscribe(retainer, 100000000L, 0);
+            } else if (i % 2 == 1) {
+                mBus.subscribe(consumer, 20000000L, (float) Math.toRadians(0.5));
+            } else {
+                mBus.subscribe(consumer);
+            }
+        }
+        publish();
+        if (mBus.getDroppedCount() != 0) {
+            throw new IllegalStateException("Poses dropped with " + mSubscriberCount + " subscribers");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSE_COUNT)
+    public int publish() {
+        int delivered = 0;
+        for (int i = 0; i < POSE_COUNT; i++) {
+            delivered += mBus.publish(mMatrices[i], mOrientation, mRate, mTimestamp, mTimestamp);
+            mTimestamp += STEP_NS;
+        }
+        return delivered + (int) mSink;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PoseBusBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
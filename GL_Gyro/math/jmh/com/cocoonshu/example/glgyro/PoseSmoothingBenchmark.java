@@ -0,0 +1,142 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the renderer's pose path, one sensor pose plus one frame per operation
+ * 原来的复制路径：传感器线程在锁内把行主序矩阵转置后求逆，GLThread在锁内复制16个float；
+ * 四元数插值路径：传感器线程把矩阵转换为四元数并打包，GLThread解包后由渲染器使用的{@link PoseSmoother}
+ * 做球面插值，再与矫正姿态复合为模型矩阵(与GyroRenderer.smoothAtittudeMatrix相同的计算)。
+ * 姿态序列是预先生成的匀速转动，开始测量前先校验关闭插值时两条路径的模型矩阵一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseSmoothingBenchmark {
+
+    private static final int   POSE_COUNT = 1024;  // 预先生成的姿态数量
+    private static final float TOLERANCE  = 1e-5f; // 两条路径结果允许的误差
+
+    private final Object   mLock           = new Object();                          // 复制路径中保护姿态矩阵的锁
+    private float[]        mSensorMatrices = new float[POSE_COUNT * 16];            // 传感器给出的行主序旋转矩阵序列
+    private float[]        mSensorMatrix   = new float[16];                         // 当前的传感器矩阵
+    private float[]        mAltitude       = new float[16];                         // 复制路径中传感器线程写入的矩阵
+    private float[]        mCurrent        = new float[16];                         // 复制路径中GLThread读到的矩阵
+    private float[]        mTemp           = new float[16];                         // 临时矩阵
+    private float[]        mPacked         = new float[RigidTransform.PACKED_SIZE]; // 插值路径中发布的姿态
+    private PoseSmoother   mSmoother       = new PoseSmoother();                    // 与GyroRenderer相同的姿态插值
+    private float[]        mModelMatrix    = new float[16];                         // 插值路径输出的模型矩阵
+    private RigidTransform mSensorPose     = new RigidTransform();                  // 传感器线程的姿态
+    private RigidTransform mCurrentPose    = new RigidTransform();                  // 插值后的姿态
+    private RigidTransform mCalibPose      = new RigidTransform();                  // 矫正姿态，这里为单位变换
+    private RigidTransform mModelPose      = new RigidTransform();                  // 模型变换
+    private int            mNext           = 0;                                     // 下一个姿态的序号
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        float[] q = new float[4];
+        OrientationMath.identityQuaternion(q);
+        for (int i = 0; i < POSE_COUNT; i++) {
+            // 手持设备的典型转速，约1rad/s，每帧一个姿态
+            OrientationMath.integrateAngularRate(q, 0.6f, -0.5f, 0.7f, PoseSmoother.FRAME_TIME);
+            OrientationMath.quaternionToMatrix(q, mTemp);
+            System.arraycopy(mTemp, 0, mSensorMatrices, i * 16, 16);
+        }
+        verifyCopyPath();
+        mSmoother.reset();
+        mNext = 0;
+    }
+
+    @Benchmark
+    public float[] copyPath() {
+        nextSensorMatrix();
+        synchronized (mLock) {
+            OrientationMath.transposeMatrix4(mSensorMatrix, mTemp);
+            OrientationMath.invertMatrix4(mTemp, mAltitude);
+        }
+        synchronized (mLock) {
+            System.arraycopy(mAltitude, 0, mCurrent, 0, 16);
+        }
+        return mCurrent;
+    }
+
+    @Benchmark
+    public float[] slerpPath() {
+        nextSensorMatrix();
+        mSensorPose.setRotationMatrix(mSensorMatrix).pack(mPacked, 0);
+        return smooth(true, PoseSmoother.FRAME_TIME);
+    }
+
+    @Benchmark
+    public float[] quaternionPathWithoutSlerp() {
+        nextSensorMatrix();
+        mSensorPose.setRotationMatrix(mSensorMatrix).pack(mPacked, 0);
+        return smooth(false, PoseSmoother.FRAME_TIME);
+    }
+
+    private void nextSensorMatrix() {
+        System.arraycopy(mSensorMatrices, mNext * 16, mSensorMatrix, 0, 16);
+        mNext = (mNext + 1) % POSE_COUNT;
+    }
+
+    /**
+     * GyroRenderer.smoothAtittudeMatrix中GLThread每帧的计算
+     */
+    private float[] smooth(boolean enable, float deltaTime) {
+        mCurrentPose.unpack(mPacked, 0);
+        mSmoother.smooth(mCurrentPose, enable, deltaTime);
+        return mModelPose.setInverse(mCurrentPose).setProduct(mModelPose, mCalibPose).toMatrix(mModelMatrix);
+    }
+
+    /**
+     * 关闭插值、矫正姿态为单位变换时，四元数路径的模型矩阵必须与原来复制路径的矩阵一致
+     */
+    private void verifyCopyPath() {
+        for (int i = 0; i < POSE_COUNT; i++) {
+            mNext = i;
+            copyPath();
+            mNext = i;
+            float[] actual = quaternionPathWithoutSlerp();
+            for (int k = 0; k < 16; k++) {
+                if (Math.abs(actual[k] - mCurrent[k]) > TOLERANCE) {
+                    throw new IllegalStateException(String.format("pose %d: element %d is %f, expected %f",
+                            i, k, actual[k], mCurrent[k]));
+                }
+            }
+        }
+    }
+
+    /**
+     * 运行所有基准测试并开启GC分析器，额外的参数按JMH命令行解析
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PoseSmoothingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
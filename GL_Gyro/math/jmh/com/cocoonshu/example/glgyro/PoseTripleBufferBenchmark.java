@@ -0,0 +1,128 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of {@link PoseTripleBuffer} against the locked matrix copy it replaced
+ * 无竞争：同一个线程依次发布和取出一个姿态；有竞争：一个生产者线程不停发布，
+ * 一个消费者线程不停取出(两个线程在同一个组中并发运行，分别报告各自的耗时)。
+ * 锁路径与原来的setAltittudeMatrix/smoothAtittudeMatrix相同：在同一个锁内写入和复制16个float
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseTripleBufferBenchmark {
+
+    private final PoseTripleBuffer mBuffer   = new PoseTripleBuffer();                // 被测的三缓冲
+    private final Object           mLock     = new Object();                          // 锁路径的锁
+    private final float[]          mShared   = new float[PoseTripleBuffer.POSE_SIZE]; // 锁路径中共享的姿态矩阵
+    private final float[]          mPose     = new float[PoseTripleBuffer.POSE_SIZE]; // 生产者写入的姿态
+    private final float[]          mCurrent  = new float[PoseTripleBuffer.POSE_SIZE]; // 锁路径中消费者复制出的姿态
+    private long                   mSequence = 0;                                     // 生产者的姿态序号，只由生产者访问
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < mPose.length; i++) {
+            mPose[i] = i;
+        }
+        mBuffer.reset(mPose);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public float[] tripleBuffer() {
+        publishTripleBuffer();
+        mBuffer.acquire();
+        return mBuffer.front();
+    }
+
+    @Benchmark
+    @Group("uncontendedLock")
+    public float[] lock() {
+        publishLocked();
+        return acquireLocked();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void tripleBufferPublish() {
+        publishTripleBuffer();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public float[] tripleBufferAcquire() {
+        mBuffer.acquire();
+        return mBuffer.front();
+    }
+
+    @Benchmark
+    @Group("contendedLock")
+    @GroupThreads(1)
+    public void lockPublish() {
+        publishLocked();
+    }
+
+    @Benchmark
+    @Group("contendedLock")
+    @GroupThreads(1)
+    public float[] lockAcquire() {
+        return acquireLocked();
+    }
+
+    private void publishTripleBuffer() {
+        System.arraycopy(mPose, 0, mBuffer.beginWrite(), 0, PoseTripleBuffer.POSE_SIZE);
+        mBuffer.publish(++mSequence);
+    }
+
+    private void publishLocked() {
+        synchronized (mLock) {
+            System.arraycopy(mPose, 0, mShared, 0, PoseTripleBuffer.POSE_SIZE);
+        }
+    }
+
+    private float[] acquireLocked() {
+        synchronized (mLock) {
+            System.arraycopy(mShared, 0, mCurrent, 0, PoseTripleBuffer.POSE_SIZE);
+        }
+        return mCurrent;
+    }
+
+    /**
+     * 运行所有基准测试并开启GC分析器，额外的参数按JMH命令行解析
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PoseTripleBufferBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,134 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of {@link RigidTransform} against the general 4x4 matrix path
+ * 对比渲染器姿态链路中的三个步骤：传感器线程发布姿态(转置+求逆 vs 转换为四元数)、
+ * 记录矫正姿态(求逆 vs 复制)、每帧计算模型矩阵(四元数转矩阵+矩阵乘法 vs 刚体复合)，
+ * 以及带平移的一般刚体变换求逆。两条路径结果一致由test中的RigidTransformTest校验
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RigidTransformBenchmark {
+
+    private float[]        mSensorMatrix = new float[16];            // 传感器给出的行主序旋转矩阵
+    private float[]        mFrontPose    = new float[16];            // 三缓冲中发布的姿态
+    private float[]        mCalibration  = new float[16];            // 一般路径的矫正矩阵
+    private float[]        mQuaternion   = new float[4];             // 插值后的姿态四元数
+    private float[]        mRigidMatrix  = new float[16];            // 带平移的刚体变换矩阵
+    private float[]        mTemp         = new float[16];            // 临时矩阵
+    private float[]        mOut          = new float[16];            // 输出矩阵
+    private RigidTransform mSensorPose   = new RigidTransform();     // 传感器线程的姿态
+    private RigidTransform mCurrentPose  = new RigidTransform();     // 插值后的姿态
+    private RigidTransform mCalibPose    = new RigidTransform();     // 矫正姿态
+    private RigidTransform mModelPose    = new RigidTransform();     // 模型变换
+    private RigidTransform mTransform    = new RigidTransform();     // 带平移的刚体变换
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(17);
+        randomTransform(random, mTransform);
+        mTransform.toMatrix(mRigidMatrix);
+        randomTransform(random, mSensorPose);
+        mSensorPose.setTranslation(0, 0, 0).toMatrix(mTemp);
+        OrientationMath.transposeMatrix4(mTemp, mSensorMatrix);
+        mSensorPose.getRotation(mQuaternion);
+        randomTransform(random, mCalibPose);
+        mCalibPose.setTranslation(0, 0, 0).toMatrix(mCalibration);
+        mCalibPose.pack(mFrontPose, 0);
+    }
+
+    @Benchmark
+    public float[] sensorPoseGeneral() {
+        OrientationMath.transposeMatrix4(mSensorMatrix, mTemp);
+        OrientationMath.invertMatrix4(mTemp, mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public float[] sensorPoseRigid() {
+        mSensorPose.setRotationMatrix(mSensorMatrix).pack(mOut, 0);
+        return mOut;
+    }
+
+    @Benchmark
+    public float[] calibrationGeneral() {
+        OrientationMath.invertMatrix4(mCalibration, mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public RigidTransform calibrationRigid() {
+        return mCalibPose.unpack(mFrontPose, 0);
+    }
+
+    @Benchmark
+    public float[] modelMatrixGeneral() {
+        OrientationMath.quaternionToMatrix(mQuaternion, mTemp);
+        OrientationMath.multiplyMatrix4(mCalibration, mTemp, mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public float[] modelMatrixRigid() {
+        mCurrentPose.setRotation(mQuaternion);
+        return mModelPose.setInverse(mCurrentPose).setProduct(mModelPose, mCalibPose).toMatrix(mOut);
+    }
+
+    @Benchmark
+    public float[] inverseGeneral() {
+        OrientationMath.invertMatrix4(mRigidMatrix, mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public float[] inverseRigid() {
+        return mModelPose.setInverse(mTransform).toMatrix(mOut);
+    }
+
+    private static RigidTransform randomTransform(Random random, RigidTransform transform) {
+        float[] q = new float[] {
+                (float) random.nextGaussian(), (float) random.nextGaussian(),
+                (float) random.nextGaussian(), (float) random.nextGaussian()};
+        OrientationMath.normalizeQuaternion(q);
+        return transform.setRotation(q).setTranslation(
+                random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10);
+    }
+
+    /**
+     * 运行所有基准测试并开启GC分析器，额外的参数按JMH命令行解析
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(RigidTransformBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
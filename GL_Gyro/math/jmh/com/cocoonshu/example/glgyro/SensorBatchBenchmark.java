@@ -0,0 +1,126 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import android.hardware.Sensor;
+
+/**
+ * JMH benchmarks of SensorBatchProcessor, per-event vs batched fusion, reported per sample
+ * 逐个事件模式下每个样本之后都计算一次姿态矩阵；批处理模式下样本先写入环形缓冲区，
+ * 积压到批大小后一次性送入融合引擎，每批只计算一次姿态矩阵。
+ * 样本为预先生成的60秒合成数据：陀螺仪200Hz、加速度计100Hz、磁力计50Hz。
+ * 开始测量前先校验两种模式处理完所有样本后的姿态一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorBatchBenchmark {
+
+    private static final int SAMPLE_COUNT = 21000; // 60秒的样本数
+
+    @Param({"8", "32", "128"})
+    public int mBatchSize; // 每批的样本数
+
+    private final int[]          mTypes      = new int[SAMPLE_COUNT];                                  // 传感器类型
+    private final long[]         mTimestamps = new long[SAMPLE_COUNT];                                 // 样本时间戳(ns)
+    private final float[]        mValues     = new float[SAMPLE_COUNT * SensorSampleRing.VALUE_COUNT]; // 样本数值
+    private final float[]        mMatrix     = new float[16];                                          // 姿态矩阵
+    private OrientationFusion    mFusion     = new ComplementaryFusion();                              // 融合引擎
+    private SensorBatchProcessor mProcessor  = new SensorBatchProcessor();                             // 样本处理器
+    private SensorSampleRing     mRing       = new SensorSampleRing(256);                              // 样本环形缓冲区
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int count = 0;
+        for (long tick = 0; count < SAMPLE_COUNT; tick++) {
+            long  timestamp = tick * 5000000L;
+            float angle     = tick * 0.002f;
+            count = addSample(count, Sensor.TYPE_GYROSCOPE, timestamp,
+                    0.4f * (float) Math.cos(angle), 0.1f, 0.4f * (float) Math.sin(angle));
+            if (tick % 2 == 0 && count < SAMPLE_COUNT) {
+                count = addSample(count, Sensor.TYPE_ACCELEROMETER, timestamp, (float) Math.sin(angle), 0.2f, 9.7f);
+            }
+            if (tick % 4 == 0 && count < SAMPLE_COUNT) {
+                count = addSample(count, Sensor.TYPE_MAGNETIC_FIELD, timestamp, 22f, (float) (5 * Math.cos(angle)), -40f);
+            }
+        }
+        mProcessor.setOrientationFusion(mFusion);
+
+        float[] expected = perEvent().clone();
+        float[] actual   = batched();
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException("Batched orientation differs from per-event orientation");
+        }
+    }
+
+    private int addSample(int index, int type, long timestamp, float x, float y, float z) {
+        int offset = index * SensorSampleRing.VALUE_COUNT;
+        mTypes[index]       = type;
+        mTimestamps[index]  = timestamp;
+        mValues[offset]     = x;
+        mValues[offset + 1] = y;
+        mValues[offset + 2] = z;
+        return index + 1;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] perEvent() {
+        mProcessor.reset();
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            int offset = i * SensorSampleRing.VALUE_COUNT;
+            mProcessor.onSample(mTypes[i], mValues[offset], mValues[offset + 1], mValues[offset + 2], mTimestamps[i]);
+            mFusion.getRotationMatrix(mMatrix);
+        }
+        return mMatrix;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] batched() {
+        mProcessor.reset();
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            int offset = i * SensorSampleRing.VALUE_COUNT;
+            mRing.offer(mTypes[i], mValues[offset], mValues[offset + 1], mValues[offset + 2], mTimestamps[i]);
+            if (mRing.size() >= mBatchSize || i == SAMPLE_COUNT - 1) {
+                mProcessor.processBatch(mRing);
+                mFusion.getRotationMatrix(mMatrix);
+            }
+        }
+        return mMatrix;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SensorBatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
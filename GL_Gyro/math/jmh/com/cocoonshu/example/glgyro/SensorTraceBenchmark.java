@@ -0,0 +1,119 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import android.hardware.Sensor;
+
+/**
+ * JMH benchmarks of SensorTracePlayer, reported per replayed sample
+ * 只解析轨迹：回放到只累加数值的接收者，测量内存映射和记录解析的开销；
+ * 回放到融合引擎：与应用中回放轨迹时的路径相同，样本经过SensorBatchProcessor送入ComplementaryFusion。
+ * 轨迹为预先录制的60秒合成数据：陀螺仪200Hz、加速度计100Hz、磁力计50Hz。
+ * 开始测量前先校验回放的样本数与录制的样本数一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorTraceBenchmark {
+
+    private static final int TICK_COUNT   = 12000;               // 陀螺仪周期数，60秒
+    private static final int SAMPLE_COUNT = TICK_COUNT * 7 / 4;  // 录制的样本数
+
+    private File                 mTraceFile = null;                       // 轨迹文件
+    private SensorTracePlayer    mPlayer    = null;                       // 轨迹回放器
+    private SensorBatchProcessor mProcessor = new SensorBatchProcessor(); // 样本处理器
+    private OrientationFusion    mFusion    = new ComplementaryFusion();  // 融合引擎
+    private float[]              mMatrix    = new float[16];              // 姿态矩阵
+    private Checksum             mChecksum  = new Checksum();             // 只累加数值的样本接收者
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mTraceFile = File.createTempFile("trace", SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(mTraceFile);
+        for (int tick = 0; tick < TICK_COUNT; tick++) {
+            long  timestamp = tick * 5000000L;
+            float angle     = tick * 0.002f;
+            recorder.onSample(Sensor.TYPE_GYROSCOPE, 0.4f * (float) Math.cos(angle), 0.1f,
+                    0.4f * (float) Math.sin(angle), timestamp);
+            if (tick % 2 == 0) {
+                recorder.onSample(Sensor.TYPE_ACCELEROMETER, (float) Math.sin(angle), 0.2f, 9.7f, timestamp);
+            }
+            if (tick % 4 == 0) {
+                recorder.onSample(Sensor.TYPE_MAGNETIC_FIELD, 22f, (float) (5 * Math.cos(angle)), -40f, timestamp);
+            }
+        }
+        recorder.close();
+        mPlayer = new SensorTracePlayer(mTraceFile);
+        mProcessor.setOrientationFusion(mFusion);
+        if (recorder.getSampleCount() != SAMPLE_COUNT || mPlayer.play(mChecksum, false) != SAMPLE_COUNT) {
+            throw new IllegalStateException("Replayed sample count differs from the recorded count");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mPlayer.close();
+        mTraceFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public double replayOnly() throws IOException {
+        mPlayer.play(mChecksum, false);
+        return mChecksum.mSum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] replayIntoFusion() throws IOException {
+        mProcessor.reset();
+        mPlayer.play(mProcessor, false);
+        mFusion.getRotationMatrix(mMatrix);
+        return mMatrix;
+    }
+
+    private static final class Checksum implements SensorSampleRing.SampleConsumer {
+
+        private double mSum = 0; // 所有样本数值和时间戳的累加和
+
+        @Override
+        public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+            mSum += sensorType + x + y + z + timestampNs;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SensorTraceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,424 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Orientation math helpers without Android dependency
+ * 四元数统一使用{w, x, y, z}的排列，旋转矩阵统一使用与SensorManager相同的行主序，
+ * 矩阵把设备坐标系中的向量变换到世界坐标系中
+ */
+public final class OrientationMath {
+
+    public static final float STANDARD_GRAVITY   = 9.80665f;                                    // 标准重力加速度
+    public static final float FREE_FALL_GRAVITY2 = 0.01f * STANDARD_GRAVITY * STANDARD_GRAVITY; // 自由落体判定阈值的平方
+    public static final int   AXIS_X             = 1;                                           // 与SensorManager.AXIS_X相同
+    public static final int   AXIS_Y             = 2;                                           // 与SensorManager.AXIS_Y相同
+    public static final int   AXIS_Z             = 3;                                           // 与SensorManager.AXIS_Z相同
+    public static final int   AXIS_MINUS_X       = AXIS_X | 0x80;                               // 与SensorManager.AXIS_MINUS_X相同
+    public static final int   AXIS_MINUS_Y       = AXIS_Y | 0x80;                               // 与SensorManager.AXIS_MINUS_Y相同
+    public static final int   AXIS_MINUS_Z       = AXIS_Z | 0x80;                               // 与SensorManager.AXIS_MINUS_Z相同
+
+    private OrientationMath() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 根据重力和地磁向量计算旋转矩阵，与SensorManager.getRotationMatrix的算法一致
+     * @param R           输出的旋转矩阵，长度为9或16
+     * @param gravity     重力向量
+     * @param geomagnetic 地磁向量
+     * @return 如果设备处于自由落体或者靠近磁北极，返回false
+     */
+    public static boolean getRotationMatrix(float[] R, float[] gravity, float[] geomagnetic) {
+        float Ax = gravity[0];
+        float Ay = gravity[1];
+        float Az = gravity[2];
+        float normsqA = Ax * Ax + Ay * Ay + Az * Az;
+        if (normsqA < FREE_FALL_GRAVITY2) {
+            return false;
+        }
+
+        float Ex = geomagnetic[0];
+        float Ey = geomagnetic[1];
+        float Ez = geomagnetic[2];
+        float Hx = Ey * Az - Ez * Ay;
+        float Hy = Ez * Ax - Ex * Az;
+        float Hz = Ex * Ay - Ey * Ax;
+        float normH = (float) Math.sqrt(Hx * Hx + Hy * Hy + Hz * Hz);
+        if (normH < 0.1f) {
+            return false;
+        }
+
+        float invH = 1.0f / normH;
+        Hx *= invH;
+        Hy *= invH;
+        Hz *= invH;
+        float invA = 1.0f / (float) Math.sqrt(normsqA);
+        Ax *= invA;
+        Ay *= invA;
+        Az *= invA;
+        float Mx = Ay * Hz - Az * Hy;
+        float My = Az * Hx - Ax * Hz;
+        float Mz = Ax * Hy - Ay * Hx;
+
+        if (R.length == 9) {
+            R[0] = Hx; R[1] = Hy; R[2] = Hz;
+            R[3] = Mx; R[4] = My; R[5] = Mz;
+            R[6] = Ax; R[7] = Ay; R[8] = Az;
+        } else if (R.length == 16) {
+            R[ 0] = Hx; R[ 1] = Hy; R[ 2] = Hz; R[ 3] = 0;
+            R[ 4] = Mx; R[ 5] = My; R[ 6] = Mz; R[ 7] = 0;
+            R[ 8] = Ax; R[ 9] = Ay; R[10] = Az; R[11] = 0;
+            R[12] = 0;  R[13] = 0;  R[14] = 0;  R[15] = 1;
+        }
+        return true;
+    }
+
+    /**
+     * 把旋转矩阵变换到另一个设备坐标系中，与SensorManager.remapCoordinateSystem的算法一致
+     * @param inR  输入的旋转矩阵，长度为9或16
+     * @param X    新坐标系X轴对应的设备坐标轴，AXIS_*
+     * @param Y    新坐标系Y轴对应的设备坐标轴，AXIS_*
+     * @param outR 输出的旋转矩阵，长度与inR相同，可以与inR是同一个数组
+     * @return 如果坐标轴参数无效，返回false且不修改outR
+     */
+    public static boolean remapCoordinateSystem(float[] inR, int X, int Y, float[] outR) {
+        if ((X & 0x7C) != 0 || (Y & 0x7C) != 0) {
+            return false;
+        }
+        if ((X & 0x3) == 0 || (Y & 0x3) == 0 || (X & 0x3) == (Y & 0x3)) {
+            return false;
+        }
+        if (inR.length != outR.length || (inR.length != 9 && inR.length != 16)) {
+            return false;
+        }
+        // Z轴是剩下的那个轴，按右手系决定它的符号
+        int Z = X ^ Y;
+        int x = (X & 0x3) - 1;
+        int y = (Y & 0x3) - 1;
+        int z = (Z & 0x3) - 1;
+        if (((x ^ (z + 1) % 3) | (y ^ (z + 2) % 3)) != 0) {
+            Z ^= 0x80;
+        }
+        boolean sx     = X >= 0x80;
+        boolean sy     = Y >= 0x80;
+        boolean sz     = Z >= 0x80;
+        int     stride = inR.length == 16 ? 4 : 3;
+        for (int row = 0; row < 3; row++) {
+            // 先读出整行，保证inR与outR是同一个数组时结果正确
+            int   offset = row * stride;
+            float r0     = inR[offset];
+            float r1     = inR[offset + 1];
+            float r2     = inR[offset + 2];
+            outR[offset + x] = sx ? -r0 : r0;
+            outR[offset + y] = sy ? -r1 : r1;
+            outR[offset + z] = sz ? -r2 : r2;
+        }
+        if (stride == 4) {
+            outR[ 3] = 0; outR[ 7] = 0; outR[11] = 0;
+            outR[12] = 0; outR[13] = 0; outR[14] = 0; outR[15] = 1;
+        }
+        return true;
+    }
+
+    /**
+     * 从旋转矩阵中提取欧拉角，与SensorManager.getOrientation的算法一致
+     * @param R      旋转矩阵，长度为9或16
+     * @param values 输出的{方位角(绕-Z), 俯仰角(绕X), 横滚角(绕Y)}，单位为弧度
+     * @return values
+     */
+    public static float[] getOrientation(float[] R, float[] values) {
+        if (R.length == 9) {
+            values[0] = (float) Math.atan2(R[1], R[4]);
+            values[1] = (float) Math.asin(-R[7]);
+            values[2] = (float) Math.atan2(-R[6], R[8]);
+        } else {
+            values[0] = (float) Math.atan2(R[1], R[5]);
+            values[1] = (float) Math.asin(-R[9]);
+            values[2] = (float) Math.atan2(-R[8], R[10]);
+        }
+        return values;
+    }
+
+    /**
+     * 把行主序的旋转矩阵转换为单位四元数
+     * @param R 旋转矩阵，长度为9或16
+     * @param q 输出的四元数{w, x, y, z}
+     */
+    public static void matrixToQuaternion(float[] R, float[] q) {
+        int   stride = R.length == 16 ? 4 : 3;
+        float m00 = R[0];
+        float m01 = R[1];
+        float m02 = R[2];
+        float m10 = R[stride];
+        float m11 = R[stride + 1];
+        float m12 = R[stride + 2];
+        float m20 = R[stride * 2];
+        float m21 = R[stride * 2 + 1];
+        float m22 = R[stride * 2 + 2];
+        float trace = m00 + m11 + m22;
+
+        if (trace > 0) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1.0f);
+            q[0] = 0.25f / s;
+            q[1] = (m21 - m12) * s;
+            q[2] = (m02 - m20) * s;
+            q[3] = (m10 - m01) * s;
+        } else if (m00 > m11 && m00 > m22) {
+            float s = 2.0f * (float) Math.sqrt(1.0f + m00 - m11 - m22);
+            q[0] = (m21 - m12) / s;
+            q[1] = 0.25f * s;
+            q[2] = (m01 + m10) / s;
+            q[3] = (m02 + m20) / s;
+        } else if (m11 > m22) {
+            float s = 2.0f * (float) Math.sqrt(1.0f + m11 - m00 - m22);
+            q[0] = (m02 - m20) / s;
+            q[1] = (m01 + m10) / s;
+            q[2] = 0.25f * s;
+            q[3] = (m12 + m21) / s;
+        } else {
+            float s = 2.0f * (float) Math.sqrt(1.0f + m22 - m00 - m11);
+            q[0] = (m10 - m01) / s;
+            q[1] = (m02 + m20) / s;
+            q[2] = (m12 + m21) / s;
+            q[3] = 0.25f * s;
+        }
+        normalizeQuaternion(q);
+    }
+
+    /**
+     * 把单位四元数转换为行主序的旋转矩阵
+     * @param q 四元数{w, x, y, z}
+     * @param R 输出的旋转矩阵，长度为9或16
+     */
+    public static void quaternionToMatrix(float[] q, float[] R) {
+        float w = q[0];
+        float x = q[1];
+        float y = q[2];
+        float z = q[3];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+
+        if (R.length == 9) {
+            R[0] = 1 - 2 * (yy + zz); R[1] = 2 * (xy - wz);     R[2] = 2 * (xz + wy);
+            R[3] = 2 * (xy + wz);     R[4] = 1 - 2 * (xx + zz); R[5] = 2 * (yz - wx);
+            R[6] = 2 * (xz - wy);     R[7] = 2 * (yz + wx);     R[8] = 1 - 2 * (xx + yy);
+        } else if (R.length == 16) {
+            R[ 0] = 1 - 2 * (yy + zz); R[ 1] = 2 * (xy - wz);     R[ 2] = 2 * (xz + wy);     R[ 3] = 0;
+            R[ 4] = 2 * (xy + wz);     R[ 5] = 1 - 2 * (xx + zz); R[ 6] = 2 * (yz - wx);     R[ 7] = 0;
+            R[ 8] = 2 * (xz - wy);     R[ 9] = 2 * (yz + wx);     R[10] = 1 - 2 * (xx + yy); R[11] = 0;
+            R[12] = 0;                 R[13] = 0;                 R[14] = 0;                 R[15] = 1;
+        }
+    }
+
+    /**
+     * 四元数乘法：out = a * b，out可以与a或b是同一个数组
+     */
+    public static void multiplyQuaternion(float[] a, float[] b, float[] out) {
+        float aw = a[0], ax = a[1], ay = a[2], az = a[3];
+        float bw = b[0], bx = b[1], by = b[2], bz = b[3];
+        out[0] = aw * bw - ax * bx - ay * by - az * bz;
+        out[1] = aw * bx + ax * bw + ay * bz - az * by;
+        out[2] = aw * by - ax * bz + ay * bw + az * bx;
+        out[3] = aw * bz + ax * by - ay * bx + az * bw;
+    }
+
+    /**
+     * 把四元数q按照设备坐标系下的角速度积分dt秒：q = q * exp(0.5 * ω * dt)
+     * @param q  四元数{w, x, y, z}，结果直接写回
+     * @param wx 设备坐标系X轴角速度(rad/s)
+     * @param wy 设备坐标系Y轴角速度(rad/s)
+     * @param wz 设备坐标系Z轴角速度(rad/s)
+     * @param dt 积分时长(s)
+     */
+    public static void integrateAngularRate(float[] q, float wx, float wy, float wz, float dt) {
+        float omega = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+        float halfAngle = 0.5f * omega * dt;
+        float dw, scale;
+        if (halfAngle < 1e-4f) {
+            // 小角度时使用泰勒展开，避免除以接近0的角速度
+            dw    = 1.0f - halfAngle * halfAngle * 0.5f;
+            scale = 0.5f * dt;
+        } else {
+            dw    = (float) Math.cos(halfAngle);
+            scale = (float) Math.sin(halfAngle) / omega;
+        }
+        float dx = wx * scale;
+        float dy = wy * scale;
+        float dz = wz * scale;
+
+        float qw = q[0], qx = q[1], qy = q[2], qz = q[3];
+        q[0] = qw * dw - qx * dx - qy * dy - qz * dz;
+        q[1] = qw * dx + qx * dw + qy * dz - qz * dy;
+        q[2] = qw * dy - qx * dz + qy * dw + qz * dx;
+        q[3] = qw * dz + qx * dy - qy * dx + qz * dw;
+        normalizeQuaternion(q);
+    }
+
+    /**
+     * 把四元数归一化为单位四元数
+     */
+    public static void normalizeQuaternion(float[] q) {
+        float norm = (float) Math.sqrt(q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3]);
+        if (norm < 1e-9f) {
+            q[0] = 1; q[1] = 0; q[2] = 0; q[3] = 0;
+            return;
+        }
+        float invNorm = 1.0f / norm;
+        q[0] *= invNorm;
+        q[1] *= invNorm;
+        q[2] *= invNorm;
+        q[3] *= invNorm;
+    }
+
+    /**
+     * 四元数点积
+     */
+    public static float dotQuaternion(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3];
+    }
+
+    /**
+     * 归一化线性插值：从from向to插值t，走最短路径，结果写入out
+     */
+    public static void nlerpQuaternion(float[] from, float[] to, float t, float[] out) {
+        float sign = dotQuaternion(from, to) < 0 ? -1.0f : 1.0f;
+        float s    = 1.0f - t;
+        float st   = sign * t;
+        out[0] = from[0] * s + to[0] * st;
+        out[1] = from[1] * s + to[1] * st;
+        out[2] = from[2] * s + to[2] * st;
+        out[3] = from[3] * s + to[3] * st;
+        normalizeQuaternion(out);
+    }
+
+    /**
+     * 球面线性插值：从from向to插值t，走最短路径，结果写入out，out可以与from是同一个数组
+     */
+    public static void slerpQuaternion(float[] from, float[] to, float t, float[] out) {
+        float cosHalfAngle = dotQuaternion(from, to);
+        float sign         = 1.0f;
+        if (cosHalfAngle < 0) {
+            cosHalfAngle = -cosHalfAngle;
+            sign         = -1.0f;
+        }
+        if (cosHalfAngle > 0.9995f) {
+            // 夹角很小时sin接近0，退化为归一化线性插值
+            nlerpQuaternion(from, to, t, out);
+            return;
+        }
+        float halfAngle    = (float) Math.acos(cosHalfAngle);
+        float invSin       = 1.0f / (float) Math.sin(halfAngle);
+        float fromScale    = (float) Math.sin((1.0f - t) * halfAngle) * invSin;
+        float toScale      = sign * (float) Math.sin(t * halfAngle) * invSin;
+        out[0] = from[0] * fromScale + to[0] * toScale;
+        out[1] = from[1] * fromScale + to[1] * toScale;
+        out[2] = from[2] * fromScale + to[2] * toScale;
+        out[3] = from[3] * fromScale + to[3] * toScale;
+    }
+
+    /**
+     * 两个单位四元数之间的旋转夹角(rad)
+     */
+    public static float angleBetweenQuaternions(float[] a, float[] b) {
+        float cosHalfAngle = Math.abs(dotQuaternion(a, b));
+        if (cosHalfAngle >= 1.0f) {
+            return 0;
+        }
+        return 2.0f * (float) Math.acos(cosHalfAngle);
+    }
+
+    /**
+     * 两个旋转矩阵之间的旋转夹角(rad)，只使用左上角3x3部分，与矩阵的主序无关
+     * @param a 旋转矩阵，长度为16
+     * @param b 旋转矩阵，长度为16
+     */
+    public static float angleBetweenMatrices(float[] a, float[] b) {
+        // trace(A^T * B) = 1 + 2cosθ
+        float trace = a[0] * b[0] + a[1] * b[1] + a[ 2] * b[ 2]
+                    + a[4] * b[4] + a[5] * b[5] + a[ 6] * b[ 6]
+                    + a[8] * b[8] + a[9] * b[9] + a[10] * b[10];
+        float cosAngle = (trace - 1.0f) * 0.5f;
+        if (cosAngle >= 1.0f) {
+            return 0;
+        } else if (cosAngle <= -1.0f) {
+            return (float) Math.PI;
+        }
+        return (float) Math.acos(cosAngle);
+    }
+
+    /**
+     * 4x4矩阵乘法：out = a * b，三个矩阵使用同一种主序，out不能与a或b是同一个数组
+     */
+    public static void multiplyMatrix4(float[] a, float[] b, float[] out) {
+        for (int row = 0; row < 4; row++) {
+            int   r  = row * 4;
+            float a0 = a[r], a1 = a[r + 1], a2 = a[r + 2], a3 = a[r + 3];
+            out[r]     = a0 * b[0] + a1 * b[4] + a2 * b[ 8] + a3 * b[12];
+            out[r + 1] = a0 * b[1] + a1 * b[5] + a2 * b[ 9] + a3 * b[13];
+            out[r + 2] = a0 * b[2] + a1 * b[6] + a2 * b[10] + a3 * b[14];
+            out[r + 3] = a0 * b[3] + a1 * b[7] + a2 * b[11] + a3 * b[15];
+        }
+    }
+
+    /**
+     * 4x4矩阵转置，out可以与m是同一个数组
+     */
+    public static void transposeMatrix4(float[] m, float[] out) {
+        float m1 = m[1], m2 = m[2], m3  = m[ 3];
+        float m6 = m[6], m7 = m[7], m11 = m[11];
+        out[ 0] = m[ 0];  out[ 5] = m[ 5];  out[10] = m[10]; out[15] = m[15];
+        out[ 1] = m[ 4];  out[ 4] = m1;
+        out[ 2] = m[ 8];  out[ 8] = m2;
+        out[ 3] = m[12];  out[12] = m3;
+        out[ 6] = m[ 9];  out[ 9] = m6;
+        out[ 7] = m[13];  out[13] = m7;
+        out[11] = m[14];  out[14] = m11;
+    }
+
+    /**
+     * 4x4矩阵求逆(余子式展开)，out可以与m是同一个数组
+     * @return 如果矩阵不可逆，返回false且不修改out
+     */
+    public static boolean invertMatrix4(float[] m, float[] out) {
+        float m0  = m[ 0], m1  = m[ 1], m2  = m[ 2], m3  = m[ 3];
+        float m4  = m[ 4], m5  = m[ 5], m6  = m[ 6], m7  = m[ 7];
+        float m8  = m[ 8], m9  = m[ 9], m10 = m[10], m11 = m[11];
+        float m12 = m[12], m13 = m[13], m14 = m[14], m15 = m[15];
+
+        float i0  =  m5 * m10 * m15 - m5 * m11 * m14 - m9 * m6 * m15 + m9 * m7 * m14 + m13 * m6 * m11 - m13 * m7 * m10;
+        float i4  = -m4 * m10 * m15 + m4 * m11 * m14 + m8 * m6 * m15 - m8 * m7 * m14 - m12 * m6 * m11 + m12 * m7 * m10;
+        float i8  =  m4 * m9  * m15 - m4 * m11 * m13 - m8 * m5 * m15 + m8 * m7 * m13 + m12 * m5 * m11 - m12 * m7 * m9;
+        float i12 = -m4 * m9  * m14 + m4 * m10 * m13 + m8 * m5 * m14 - m8 * m6 * m13 - m12 * m5 * m10 + m12 * m6 * m9;
+        float det = m0 * i0 + m1 * i4 + m2 * i8 + m3 * i12;
+        if (det == 0) {
+            return false;
+        }
+
+        float i1  = -m1 * m10 * m15 + m1 * m11 * m14 + m9 * m2 * m15 - m9 * m3 * m14 - m13 * m2 * m11 + m13 * m3 * m10;
+        float i5  =  m0 * m10 * m15 - m0 * m11 * m14 - m8 * m2 * m15 + m8 * m3 * m14 + m12 * m2 * m11 - m12 * m3 * m10;
+        float i9  = -m0 * m9  * m15 + m0 * m11 * m13 + m8 * m1 * m15 - m8 * m3 * m13 - m12 * m1 * m11 + m12 * m3 * m9;
+        float i13 =  m0 * m9  * m14 - m0 * m10 * m13 - m8 * m1 * m14 + m8 * m2 * m13 + m12 * m1 * m10 - m12 * m2 * m9;
+        float i2  =  m1 * m6  * m15 - m1 * m7  * m14 - m5 * m2 * m15 + m5 * m3 * m14 + m13 * m2 * m7  - m13 * m3 * m6;
+        float i6  = -m0 * m6  * m15 + m0 * m7  * m14 + m4 * m2 * m15 - m4 * m3 * m14 - m12 * m2 * m7  + m12 * m3 * m6;
+        float i10 =  m0 * m5  * m15 - m0 * m7  * m13 - m4 * m1 * m15 + m4 * m3 * m13 + m12 * m1 * m7  - m12 * m3 * m5;
+        float i14 = -m0 * m5  * m14 + m0 * m6  * m13 + m4 * m1 * m14 - m4 * m2 * m13 - m12 * m1 * m6  + m12 * m2 * m5;
+        float i3  = -m1 * m6  * m11 + m1 * m7  * m10 + m5 * m2 * m11 - m5 * m3 * m10 - m9  * m2 * m7  + m9  * m3 * m6;
+        float i7  =  m0 * m6  * m11 - m0 * m7  * m10 - m4 * m2 * m11 + m4 * m3 * m10 + m8  * m2 * m7  - m8  * m3 * m6;
+        float i11 = -m0 * m5  * m11 + m0 * m7  * m9  + m4 * m1 * m11 - m4 * m3 * m9  - m8  * m1 * m7  + m8  * m3 * m5;
+        float i15 =  m0 * m5  * m10 - m0 * m6  * m9  - m4 * m1 * m10 + m4 * m2 * m9  + m8  * m1 * m6  - m8  * m2 * m5;
+
+        float invDet = 1.0f / det;
+        out[ 0] = i0  * invDet; out[ 1] = i1  * invDet; out[ 2] = i2  * invDet; out[ 3] = i3  * invDet;
+        out[ 4] = i4  * invDet; out[ 5] = i5  * invDet; out[ 6] = i6  * invDet; out[ 7] = i7  * invDet;
+        out[ 8] = i8  * invDet; out[ 9] = i9  * invDet; out[10] = i10 * invDet; out[11] = i11 * invDet;
+        out[12] = i12 * invDet; out[13] = i13 * invDet; out[14] = i14 * invDet; out[15] = i15 * invDet;
+        return true;
+    }
+
+    /**
+     * 把四元数设置为单位四元数
+     */
+    public static void identityQuaternion(float[] q) {
+        q[0] = 1; q[1] = 0; q[2] = 0; q[3] = 0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Rigid transform made of a rotation quaternion and a translation
+ * 变换为p' = R(q)·p + t。刚体变换的逆只需要共轭四元数并反向旋转平移量，
+ * 复合和转换为矩阵也都按四元数展开，不需要一般4x4矩阵的余子式求逆和16次乘加。
+ * 旋转四元数使用与{@link OrientationMath}相同的{w, x, y, z}排列，
+ * 输出的矩阵是OpenGL使用的列主序矩阵，可以直接传给glMultMatrixf
+ */
+public final class RigidTransform {
+
+    public static final int PACKED_SIZE = 7; // pack()输出的float数量：{qw, qx, qy, qz, tx, ty, tz}
+
+    private final float[] mRotation    = new float[] {1, 0, 0, 0}; // 单位旋转四元数{w, x, y, z}
+    private final float[] mTranslation = new float[3];             // 平移量{x, y, z}
+
+    /**
+     * 设置为单位变换
+     * @return this
+     */
+    public RigidTransform setIdentity() {
+        OrientationMath.identityQuaternion(mRotation);
+        setTranslation(0, 0, 0);
+        return this;
+    }
+
+    /**
+     * 复制另一个变换
+     * @return this
+     */
+    public RigidTransform set(RigidTransform other) {
+        System.arraycopy(other.mRotation, 0, mRotation, 0, 4);
+        System.arraycopy(other.mTranslation, 0, mTranslation, 0, 3);
+        return this;
+    }
+
+    /**
+     * 设置旋转部分，平移部分不变。插值和积分累积的误差使q的长度偏离1时，
+     * 共轭不再是逆，toMatrix()也不再是旋转矩阵，所以这里归一化
+     * @param q 四元数{w, x, y, z}，全为0时设置为单位旋转
+     * @return this
+     */
+    public RigidTransform setRotation(float[] q) {
+        System.arraycopy(q, 0, mRotation, 0, 4);
+        OrientationMath.normalizeQuaternion(mRotation);
+        return this;
+    }
+
+    /**
+     * 用行主序的旋转矩阵设置旋转部分，例如SensorManager或{@link OrientationMath}计算的旋转矩阵，平移清零
+     * @param R 旋转矩阵，长度为9或16
+     * @return this
+     */
+    public RigidTransform setRotationMatrix(float[] R) {
+        OrientationMath.matrixToQuaternion(R, mRotation);
+        return setTranslation(0, 0, 0);
+    }
+
+    /**
+     * 设置为绕轴旋转，与Matrix.rotateM的旋转方向一致，平移清零
+     * @param angle 旋转角度(°)
+     * @param x     旋转轴X分量
+     * @param y     旋转轴Y分量
+     * @param z     旋转轴Z分量
+     * @return this
+     */
+    public RigidTransform setAxisAngle(float angle, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0) {
+            return setIdentity();
+        }
+        double halfAngle = Math.toRadians(angle) * 0.5;
+        float  scale     = (float) Math.sin(halfAngle) / length;
+        mRotation[0] = (float) Math.cos(halfAngle);
+        mRotation[1] = x * scale;
+        mRotation[2] = y * scale;
+        mRotation[3] = z * scale;
+        return setTranslation(0, 0, 0);
+    }
+
+    /**
+     * 设置平移部分，旋转部分不变
+     * @return this
+     */
+    public RigidTransform setTranslation(float x, float y, float z) {
+        mTranslation[0] = x;
+        mTranslation[1] = y;
+        mTranslation[2] = z;
+        return this;
+    }
+
+    /**
+     * this = transform的逆变换：旋转取共轭，平移为-R(q*)·t。transform可以是this
+     * @return this
+     */
+    public RigidTransform setInverse(RigidTransform transform) {
+        float w  =  transform.mRotation[0];
+        float x  = -transform.mRotation[1];
+        float y  = -transform.mRotation[2];
+        float z  = -transform.mRotation[3];
+        float tx = -transform.mTranslation[0];
+        float ty = -transform.mTranslation[1];
+        float tz = -transform.mTranslation[2];
+        mRotation[0] = w;
+        mRotation[1] = x;
+        mRotation[2] = y;
+        mRotation[3] = z;
+        rotate(w, x, y, z, tx, ty, tz, mTranslation);
+        return this;
+    }
+
+    /**
+     * this = a·b，即先应用b再应用a：旋转为qa·qb，平移为ta + R(qa)·tb。a和b都可以是this
+     * @return this
+     */
+    public RigidTransform setProduct(RigidTransform a, RigidTransform b) {
+        float aw = a.mRotation[0], ax = a.mRotation[1], ay = a.mRotation[2], az = a.mRotation[3];
+        float bw = b.mRotation[0], bx = b.mRotation[1], by = b.mRotation[2], bz = b.mRotation[3];
+        float atx = a.mTranslation[0], aty = a.mTranslation[1], atz = a.mTranslation[2];
+        float btx = b.mTranslation[0], bty = b.mTranslation[1], btz = b.mTranslation[2];
+        mRotation[0] = aw * bw - ax * bx - ay * by - az * bz;
+        mRotation[1] = aw * bx + ax * bw + ay * bz - az * by;
+        mRotation[2] = aw * by - ax * bz + ay * bw + az * bx;
+        mRotation[3] = aw * bz + ax * by - ay * bx + az * bw;
+        rotate(aw, ax, ay, az, btx, bty, btz, mTranslation);
+        mTranslation[0] += atx;
+        mTranslation[1] += aty;
+        mTranslation[2] += atz;
+        return this;
+    }
+
+    /**
+     * out = R(q)·v，使用v' = v + 2w(u×v) + 2u×(u×v)展开，u为四元数的向量部分
+     */
+    private static void rotate(float w, float x, float y, float z, float vx, float vy, float vz, float[] out) {
+        float cx = 2 * (y * vz - z * vy);
+        float cy = 2 * (z * vx - x * vz);
+        float cz = 2 * (x * vy - y * vx);
+        out[0] = vx + w * cx + (y * cz - z * cy);
+        out[1] = vy + w * cy + (z * cx - x * cz);
+        out[2] = vz + w * cz + (x * cy - y * cx);
+    }
+
+    /**
+     * 变换一个点
+     * @param point 长度至少为3的点坐标，结果直接写回
+     */
+    public void transformPoint(float[] point) {
+        rotate(mRotation[0], mRotation[1], mRotation[2], mRotation[3], point[0], point[1], point[2], point);
+        point[0] += mTranslation[0];
+        point[1] += mTranslation[1];
+        point[2] += mTranslation[2];
+    }
+
+    /**
+     * 转换为OpenGL使用的列主序4x4矩阵
+     * @param m 输出的矩阵，长度为16
+     * @return m
+     */
+    public float[] toMatrix(float[] m) {
+        float w = mRotation[0];
+        float x = mRotation[1];
+        float y = mRotation[2];
+        float z = mRotation[3];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float wx = w * x, wy = w * y, wz = w * z;
+        m[ 0] = 1 - 2 * (yy + zz); m[ 4] = 2 * (xy - wz);     m[ 8] = 2 * (xz + wy);     m[12] = mTranslation[0];
+        m[ 1] = 2 * (xy + wz);     m[ 5] = 1 - 2 * (xx + zz); m[ 9] = 2 * (yz - wx);     m[13] = mTranslation[1];
+        m[ 2] = 2 * (xz - wy);     m[ 6] = 2 * (yz + wx);     m[10] = 1 - 2 * (xx + yy); m[14] = mTranslation[2];
+        m[ 3] = 0;                 m[ 7] = 0;                 m[11] = 0;                 m[15] = 1;
+        return m;
+    }
+
+    /**
+     * 把变换写入float数组，例如用于在线程之间无锁地传递姿态
+     * @param out    输出数组
+     * @param offset 起始位置，需要PACKED_SIZE个float
+     */
+    public void pack(float[] out, int offset) {
+        out[offset]     = mRotation[0];
+        out[offset + 1] = mRotation[1];
+        out[offset + 2] = mRotation[2];
+        out[offset + 3] = mRotation[3];
+        out[offset + 4] = mTranslation[0];
+        out[offset + 5] = mTranslation[1];
+        out[offset + 6] = mTranslation[2];
+    }
+
+    /**
+     * 从pack()写入的float数组中读取变换
+     * @return this
+     */
+    public RigidTransform unpack(float[] in, int offset) {
+        mRotation[0]    = in[offset];
+        mRotation[1]    = in[offset + 1];
+        mRotation[2]    = in[offset + 2];
+        mRotation[3]    = in[offset + 3];
+        mTranslation[0] = in[offset + 4];
+        mTranslation[1] = in[offset + 5];
+        mTranslation[2] = in[offset + 6];
+        return this;
+    }
+
+    /**
+     * @param q 输出的旋转四元数{w, x, y, z}
+     */
+    public void getRotation(float[] q) {
+        System.arraycopy(mRotation, 0, q, 0, 4);
+    }
+
+    /**
+     * @param t 输出的平移量，长度至少为3
+     */
+    public void getTranslation(float[] t) {
+        System.arraycopy(mTranslation, 0, t, 0, 3);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RigidTransform[q = (%.4f, %.4f, %.4f, %.4f), t = (%.3f, %.3f, %.3f)]",
+                mRotation[0], mRotation[1], mRotation[2], mRotation[3], mTranslation[0], mTranslation[1], mTranslation[2]);
+    }
+}
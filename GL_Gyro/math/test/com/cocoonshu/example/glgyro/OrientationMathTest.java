@@ -0,0 +1,175 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 用手工推导的参考值校验OrientationMath的每个操作
+ */
+public class OrientationMathTest {
+
+    private static final float TOLERANCE  = 1e-5f;                       // 与参考值比较时允许的误差
+    private static final float HALF_SQRT2 = (float) (Math.sqrt(2) / 2); // cos(45°)
+    private static final float ANGLE      = 0.6f;                        // 俯仰和横滚的测试角度(rad)
+
+    private static final float[] GRAVITY    = new float[] {0, 0, 9.81f};                   // 水平放置
+    private static final float[] IDENTITY3  = new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1};
+    private static final float[] IDENTITY4  = new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    private static final float[] WEST       = new float[] {0, -1, 0, 1, 0, 0, 0, 0, 1};    // 绕Z轴旋转90°
+    private static final float[] Q_IDENTITY = new float[] {1, 0, 0, 0};
+    private static final float[] Q_90Z      = new float[] {HALF_SQRT2, 0, 0, HALF_SQRT2}; // 绕Z轴旋转90°
+
+    private final float[] mR = new float[9];
+    private final float[] mM = new float[16];
+    private final float[] mV = new float[4];
+
+    /**
+     * 水平放置、顶部朝北：单位矩阵，欧拉角全为0
+     */
+    @Test
+    public void rotationMatrixFacingNorth() {
+        assertTrue(OrientationMath.getRotationMatrix(mR, GRAVITY, new float[] {0, 22, -40}));
+        assertArrayEquals(IDENTITY3, mR, TOLERANCE);
+        assertSame(mV, OrientationMath.getOrientation(mR, mV));
+        assertArrayEquals(new float[] {0, 0, 0}, new float[] {mV[0], mV[1], mV[2]}, TOLERANCE);
+
+        // 长度为16的输出在右下角补1
+        assertTrue(OrientationMath.getRotationMatrix(mM, GRAVITY, new float[] {0, 22, -40}));
+        assertArrayEquals(IDENTITY4, mM, TOLERANCE);
+    }
+
+    /**
+     * 水平放置、顶部朝西：绕Z轴旋转90°，方位角为-90°
+     */
+    @Test
+    public void rotationMatrixFacingWest() {
+        assertTrue(OrientationMath.getRotationMatrix(mR, GRAVITY, new float[] {22, 0, -40}));
+        assertArrayEquals(WEST, mR, TOLERANCE);
+        OrientationMath.getOrientation(mR, mV);
+        assertEquals(-Math.PI / 2, mV[0], TOLERANCE);
+        assertEquals(0, mV[1], TOLERANCE);
+        assertEquals(0, mV[2], TOLERANCE);
+    }
+
+    /**
+     * 自由落体时没有重力方向，地磁与重力平行时没有水平方向
+     */
+    @Test
+    public void rotationMatrixRejectsDegenerateInput() {
+        assertFalse(OrientationMath.getRotationMatrix(mR, new float[] {0, 0, 0.5f}, new float[] {0, 22, -40}));
+        assertFalse(OrientationMath.getRotationMatrix(mR, GRAVITY, new float[] {0, 0, -40}));
+    }
+
+    /**
+     * 绕X轴的旋转是俯仰角(顶部抬起为负)，绕Y轴的旋转是横滚角，9和16两种长度的矩阵结果相同
+     */
+    @Test
+    public void eulerAnglesOfTiltedDevice() {
+        float half = ANGLE / 2;
+        OrientationMath.quaternionToMatrix(new float[] {(float) Math.cos(half), (float) Math.sin(half), 0, 0}, mR);
+        OrientationMath.getOrientation(mR, mV);
+        assertArrayEquals(new float[] {0, -ANGLE, 0}, new float[] {mV[0], mV[1], mV[2]}, TOLERANCE);
+
+        OrientationMath.quaternionToMatrix(new float[] {(float) Math.cos(half), 0, (float) Math.sin(half), 0}, mM);
+        OrientationMath.getOrientation(mM, mV);
+        assertArrayEquals(new float[] {0, 0, ANGLE}, new float[] {mV[0], mV[1], mV[2]}, TOLERANCE);
+    }
+
+    /**
+     * 竖直握持时的坐标轴重映射，重复的坐标轴无效
+     */
+    @Test
+    public void remapCoordinateSystem() {
+        assertTrue(OrientationMath.remapCoordinateSystem(IDENTITY4, OrientationMath.AXIS_X, OrientationMath.AXIS_Z, mM));
+        assertArrayEquals(new float[] {1, 0, 0, 0, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1}, mM, TOLERANCE);
+
+        float[] before = mM.clone();
+        assertFalse(OrientationMath.remapCoordinateSystem(IDENTITY4,
+                OrientationMath.AXIS_X, OrientationMath.AXIS_MINUS_X, mM));
+        assertArrayEquals(before, mM, 0);
+    }
+
+    /**
+     * 绕Z轴旋转90°的四元数与矩阵互相转换
+     */
+    @Test
+    public void quaternionMatrixConversion() {
+        OrientationMath.matrixToQuaternion(WEST, mV);
+        assertArrayEquals(Q_90Z, mV, TOLERANCE);
+        OrientationMath.quaternionToMatrix(Q_90Z, mR);
+        assertArrayEquals(WEST, mR, TOLERANCE);
+        OrientationMath.quaternionToMatrix(Q_IDENTITY, mM);
+        assertArrayEquals(IDENTITY4, mM, TOLERANCE);
+    }
+
+    @Test
+    public void quaternionOperations() {
+        OrientationMath.multiplyQuaternion(Q_90Z, Q_90Z, mV);
+        assertArrayEquals(new float[] {0, 0, 0, 1}, mV, TOLERANCE);
+
+        OrientationMath.identityQuaternion(mV);
+        OrientationMath.integrateAngularRate(mV, 0, 0, (float) Math.PI / 2, 1.0f);
+        assertArrayEquals(Q_90Z, mV, TOLERANCE);
+
+        OrientationMath.slerpQuaternion(Q_IDENTITY, new float[] {0, 0, 0, 1}, 0.5f, mV);
+        assertArrayEquals(Q_90Z, mV, TOLERANCE);
+        assertEquals(Math.PI / 2, OrientationMath.angleBetweenQuaternions(Q_IDENTITY, Q_90Z), TOLERANCE);
+
+        // 归一化保持方向不变
+        float[] scaled = new float[] {2 * HALF_SQRT2, 0, 0, 2 * HALF_SQRT2};
+        OrientationMath.normalizeQuaternion(scaled);
+        assertArrayEquals(Q_90Z, scaled, TOLERANCE);
+        assertEquals(1, OrientationMath.dotQuaternion(scaled, scaled), TOLERANCE);
+    }
+
+    /**
+     * 缩放+平移矩阵的逆，以及与原矩阵相乘得到单位矩阵
+     */
+    @Test
+    public void invertAndMultiplyMatrix4() {
+        float[] scaleTranslate = new float[] {2, 0, 0, 1, 0, 4, 0, 2, 0, 0, 8, 3, 0, 0, 0, 1};
+        assertTrue(OrientationMath.invertMatrix4(scaleTranslate, mM));
+        assertArrayEquals(new float[] {0.5f, 0, 0, -0.5f, 0, 0.25f, 0, -0.5f, 0, 0, 0.125f, -0.375f, 0, 0, 0, 1},
+                mM, TOLERANCE);
+        float[] product = new float[16];
+        OrientationMath.multiplyMatrix4(scaleTranslate, mM, product);
+        assertArrayEquals(IDENTITY4, product, TOLERANCE);
+
+        OrientationMath.transposeMatrix4(scaleTranslate, mM);
+        assertArrayEquals(new float[] {2, 0, 0, 0, 0, 4, 0, 0, 0, 0, 8, 0, 1, 2, 3, 1}, mM, TOLERANCE);
+    }
+
+    /**
+     * 一般的可逆矩阵：原地求逆后两边相乘都得到单位矩阵
+     */
+    @Test
+    public void invertGeneralMatrix4InPlace() {
+        float[] m = new float[16];
+        for (int i = 0; i < 16; i++) {
+            m[i] = (float) Math.sin(i * 1.3 + 0.2) + (i % 5 == 0 ? 3 : 0);
+        }
+        float[] inverse = m.clone();
+        assertTrue(OrientationMath.invertMatrix4(inverse, inverse));
+        float[] product = new float[16];
+        OrientationMath.multiplyMatrix4(m, inverse, product);
+        assertArrayEquals(IDENTITY4, product, TOLERANCE);
+        OrientationMath.multiplyMatrix4(inverse, m, product);
+        assertArrayEquals(IDENTITY4, product, TOLERANCE);
+    }
+
+    /**
+     * 奇异矩阵不可逆，输出保持不变
+     */
+    @Test
+    public void invertRejectsSingularMatrix4() {
+        float[] singular = new float[] {1, 2, 3, 4, 2, 4, 6, 8, 0, 1, 0, 1, 0, 0, 0, 1};
+        float[] out = IDENTITY4.clone();
+        assertFalse(OrientationMath.invertMatrix4(singular, out));
+        assertArrayEquals(IDENTITY4, out, 0);
+    }
+}
@@ -0,0 +1,216 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 用随机的刚体变换校验RigidTransform与OrientationMath一般4x4矩阵路径的结果一致。
+ * 每个元素允许的误差为TOLERANCE * max(1, 平移量的最大绝对值)：旋转部分的误差在float精度的数量级，
+ * 平移部分的舍入误差随平移量增大
+ */
+public class RigidTransformTest {
+
+    private static final float   TOLERANCE          = 1e-5f;                         // 相对误差
+    private static final int     TRANSFORM_COUNT    = 2000;                          // 每个测试的随机变换数量
+    private static final float[] TRANSLATION_RANGES = new float[] {0, 1, 10, 1000}; // 平移量的范围
+
+    private final Random         mRandom   = new Random(42);
+    private final RigidTransform mA        = new RigidTransform();
+    private final RigidTransform mB        = new RigidTransform();
+    private final RigidTransform mResult   = new RigidTransform();
+    private final float[]        mMatrixA  = new float[16];
+    private final float[]        mMatrixB  = new float[16];
+    private final float[]        mExpected = new float[16];
+    private final float[]        mActual   = new float[16];
+
+    @Test
+    public void inverseMatchesInvertMatrix4() {
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            float range = range(i);
+            randomTransform(mA, range).toMatrix(mMatrixA);
+            OrientationMath.invertMatrix4(mMatrixA, mExpected);
+            assertMatrix("inverse " + mA, range, mExpected, mResult.setInverse(mA).toMatrix(mActual));
+
+            // 原地求逆
+            mResult.set(mA).setInverse(mResult);
+            assertMatrix("in-place inverse " + mA, range, mExpected, mResult.toMatrix(mActual));
+        }
+    }
+
+    /**
+     * 列主序矩阵A·B等于按行主序相乘B·A
+     */
+    @Test
+    public void productMatchesMultiplyMatrix4() {
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            float range = range(i);
+            randomTransform(mA, range).toMatrix(mMatrixA);
+            randomTransform(mB, range).toMatrix(mMatrixB);
+            OrientationMath.multiplyMatrix4(mMatrixB, mMatrixA, mExpected);
+            String message = "product " + mA + " " + mB;
+            assertMatrix(message, 2 * range, mExpected, mResult.setProduct(mA, mB).toMatrix(mActual));
+
+            // 结果与输入是同一个对象
+            mResult.set(mA).setProduct(mResult, mB);
+            assertMatrix(message, 2 * range, mExpected, mResult.toMatrix(mActual));
+
+            // 与逆变换复合得到单位变换
+            mResult.setInverse(mA).setProduct(mResult, mA);
+            assertMatrix("identity " + mA, range, identity(), mResult.toMatrix(mActual));
+        }
+    }
+
+    @Test
+    public void transformPointMatchesMatrix() {
+        float[] point = new float[3];
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            float range = range(i);
+            randomTransform(mA, range).toMatrix(mMatrixA);
+            for (int axis = 0; axis < 3; axis++) {
+                point[axis] = mRandom.nextFloat() * 10 - 5;
+            }
+            for (int row = 0; row < 3; row++) {
+                mExpected[row] = mMatrixA[row] * point[0] + mMatrixA[row + 4] * point[1]
+                               + mMatrixA[row + 8] * point[2] + mMatrixA[row + 12];
+            }
+            mA.transformPoint(point);
+            assertArrayEquals("transformPoint " + mA, new float[] {mExpected[0], mExpected[1], mExpected[2]},
+                    point, tolerance(range));
+        }
+    }
+
+    /**
+     * 渲染器的姿态链路：传感器给出行主序的旋转矩阵，按GL读取时为姿态的逆，
+     * 模型矩阵为姿态的逆乘以矫正姿态
+     */
+    @Test
+    public void sensorPoseMatchesGeneralPath() {
+        float[] sensor = new float[16];
+        float[] q      = new float[4];
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            randomTransform(mA, 0).toMatrix(mMatrixA);
+            OrientationMath.transposeMatrix4(mMatrixA, sensor);
+            OrientationMath.transposeMatrix4(sensor, mMatrixB);
+            OrientationMath.invertMatrix4(mMatrixB, mExpected);
+            mResult.setRotationMatrix(sensor);
+            assertMatrix("sensorPose " + mA, 0, mExpected, mResult.setInverse(mResult).toMatrix(mActual));
+
+            randomTransform(mB, 0).toMatrix(mMatrixB);
+            mA.getRotation(q);
+            OrientationMath.quaternionToMatrix(q, mMatrixA);
+            OrientationMath.multiplyMatrix4(mMatrixB, mMatrixA, mExpected);
+            assertMatrix("modelMatrix " + mA, 0, mExpected,
+                    mResult.setInverse(mA).setProduct(mResult, mB).toMatrix(mActual));
+        }
+    }
+
+    /**
+     * 长度不为1的四元数在setRotation()中归一化，与归一化后的四元数得到相同的变换
+     */
+    @Test
+    public void nonUnitQuaternionsAreNormalized() {
+        float[] q      = new float[4];
+        float[] unit   = new float[4];
+        float[] scales = new float[] {0.5f, 0.999f, 1.001f, 3.0f}; // 四元数的长度
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            float range = range(i);
+            randomTransform(mB, range);
+            mB.getRotation(unit);
+            float scale = scales[i % scales.length];
+            for (int k = 0; k < 4; k++) {
+                q[k] = unit[k] * scale;
+            }
+            mA.set(mB).setRotation(q);
+            mA.getRotation(q);
+            assertEquals(1, OrientationMath.dotQuaternion(q, q), TOLERANCE);
+            mB.toMatrix(mExpected);
+            assertMatrix("setRotation " + mB, range, mExpected, mA.toMatrix(mActual));
+
+            mA.toMatrix(mMatrixA);
+            OrientationMath.invertMatrix4(mMatrixA, mExpected);
+            assertMatrix("inverse " + mA, range, mExpected, mResult.setInverse(mA).toMatrix(mActual));
+        }
+
+        mA.setRotation(new float[4]);
+        assertMatrix("zero quaternion", 0, identity(), mA.setTranslation(0, 0, 0).toMatrix(mActual));
+    }
+
+    /**
+     * 绕轴旋转的轴不需要是单位长度，旋转方向与OrientationMath.integrateAngularRate一致
+     */
+    @Test
+    public void axisAngleMatchesIntegratedRotation() {
+        float[] q = new float[4];
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            float angle  = mRandom.nextFloat() * 360 - 180;
+            float length = 0.1f + mRandom.nextFloat() * 10;
+            float x = (float) mRandom.nextGaussian() * length;
+            float y = (float) mRandom.nextGaussian() * length;
+            float z = (float) mRandom.nextGaussian() * length;
+            float norm = (float) Math.sqrt(x * x + y * y + z * z);
+            float rate = (float) Math.toRadians(angle) / norm;
+            OrientationMath.identityQuaternion(q);
+            OrientationMath.integrateAngularRate(q, x * rate, y * rate, z * rate, 1.0f);
+            mB.setRotation(q).setTranslation(0, 0, 0).toMatrix(mExpected);
+            mA.setTranslation(5, 5, 5);
+            assertMatrix("axisAngle " + angle, 0, mExpected, mA.setAxisAngle(angle, x, y, z).toMatrix(mActual));
+        }
+        mA.setAxisAngle(90, 0, 0, 0);
+        assertMatrix("zero axis", 0, identity(), mA.toMatrix(mActual));
+    }
+
+    /**
+     * pack()/unpack()原样保存全部7个分量
+     */
+    @Test
+    public void packRoundTrip() {
+        float[] packed = new float[3 + RigidTransform.PACKED_SIZE];
+        float[] q      = new float[4];
+        float[] t      = new float[3];
+        for (int i = 0; i < TRANSFORM_COUNT; i++) {
+            randomTransform(mA, range(i)).pack(packed, 3);
+            mA.getRotation(q);
+            mA.getTranslation(t);
+            assertArrayEquals(new float[] {q[0], q[1], q[2], q[3], t[0], t[1], t[2]},
+                    new float[] {packed[3], packed[4], packed[5], packed[6], packed[7], packed[8], packed[9]}, 0);
+            mA.toMatrix(mExpected);
+            assertArrayEquals(mExpected, mResult.unpack(packed, 3).toMatrix(mActual), 0);
+        }
+    }
+
+    private float range(int i) {
+        return TRANSLATION_RANGES[i % TRANSLATION_RANGES.length];
+    }
+
+    /**
+     * 随机的旋转，平移量的每个分量在[-range, range)中
+     */
+    private RigidTransform randomTransform(RigidTransform transform, float range) {
+        float[] q = new float[] {
+                (float) mRandom.nextGaussian(), (float) mRandom.nextGaussian(),
+                (float) mRandom.nextGaussian(), (float) mRandom.nextGaussian()};
+        OrientationMath.normalizeQuaternion(q);
+        return transform.setRotation(q).setTranslation(
+                (mRandom.nextFloat() * 2 - 1) * range,
+                (mRandom.nextFloat() * 2 - 1) * range,
+                (mRandom.nextFloat() * 2 - 1) * range);
+    }
+
+    private static float tolerance(float range) {
+        return TOLERANCE * Math.max(1, range);
+    }
+
+    private static void assertMatrix(String message, float range, float[] expected, float[] actual) {
+        assertArrayEquals(message, expected, actual, tolerance(range));
+    }
+
+    private static float[] identity() {
+        float[] m = new float[16];
+        OrientationMath.quaternionToMatrix(new float[] {1, 0, 0, 0}, m);
+        return m;
+    }
+}
@@ -0,0 +1,130 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Common state of the gyroscope based fusion engines:
+ * 缓存加速度计和磁力计样本，用它们计算绝对姿态观测值，并管理陀螺仪积分的时间步长
+ */
+public abstract class AbstractOrientationFusion implements OrientationFusion {
+
+    private   static final float NS2S               = 1.0f / 1000000000.0f; // 纳秒转秒
+    private   static final float MAX_GYRO_DT        = 0.5f;                 // 陀螺仪积分的最大时间步长，超过则认为样本中断
+    
+    protected final float[]      mQuaternion        = new float[4];         // 当前姿态四元数
+    protected final float[]      mMeasurement       = new float[4];         // 加速度计+磁力计给出的姿态观测值
+    private   final float[]      mGravity           = new float[3];         // 最近的加速度计样本
+    private   final float[]      mGeomagnetic       = new float[3];         // 最近的磁力计样本
+    private   final float[]      mMatrix            = new float[9];         // 观测值计算用的临时矩阵
+    private   boolean            mHasGravity        = false;                // 是否收到过加速度计样本
+    private   boolean            mHasGeomagnetic    = false;                // 是否收到过磁力计样本
+    private   boolean            mInitialized       = false;                // 是否已经有了初始姿态
+    private   long               mLastGyroTimestamp = 0;                    // 上一个陀螺仪样本的时间戳
+
+    public AbstractOrientationFusion() {
+        OrientationMath.identityQuaternion(mQuaternion);
+        OrientationMath.identityQuaternion(mMeasurement);
+    }
+
+    @Override
+    public void reset() {
+        OrientationMath.identityQuaternion(mQuaternion);
+        OrientationMath.identityQuaternion(mMeasurement);
+        mHasGravity        = false;
+        mHasGeomagnetic    = false;
+        mInitialized       = false;
+        mLastGyroTimestamp = 0;
+        onReset();
+    }
+
+    @Override
+    public void onGyroscope(float wx, float wy, float wz, long timestampNs) {
+        long lastTimestamp = mLastGyroTimestamp;
+        mLastGyroTimestamp = timestampNs;
+        if (!mInitialized || lastTimestamp == 0) {
+            return;
+        }
+        float dt = (timestampNs - lastTimestamp) * NS2S;
+        if (dt <= 0 || dt > MAX_GYRO_DT) {
+            return;
+        }
+        predict(wx, wy, wz, dt);
+    }
+
+    @Override
+    public void onAccelerometer(float x, float y, float z, long timestampNs) {
+        mGravity[0] = x;
+        mGravity[1] = y;
+        mGravity[2] = z;
+        mHasGravity = true;
+        updateMeasurement();
+    }
+
+    @Override
+    public void onGeomagnetic(float x, float y, float z, long timestampNs) {
+        mGeomagnetic[0] = x;
+        mGeomagnetic[1] = y;
+        mGeomagnetic[2] = z;
+        mHasGeomagnetic = true;
+        updateMeasurement();
+    }
+
+    @Override
+    public boolean hasOrientation() {
+        return mInitialized;
+    }
+
+    @Override
+    public void getQuaternion(float[] q) {
+        q[0] = mQuaternion[0];
+        q[1] = mQuaternion[1];
+        q[2] = mQuaternion[2];
+        q[3] = mQuaternion[3];
+    }
+
+    @Override
+    public void getRotationMatrix(float[] R) {
+        OrientationMath.quaternionToMatrix(mQuaternion, R);
+    }
+
+    private void updateMeasurement() {
+        if (!mHasGravity || !mHasGeomagnetic) {
+            return;
+        }
+        if (!OrientationMath.getRotationMatrix(mMatrix, mGravity, mGeomagnetic)) {
+            return;
+        }
+        OrientationMath.matrixToQuaternion(mMatrix, mMeasurement);
+        if (!mInitialized) {
+            // 第一个有效观测值直接作为初始姿态
+            mQuaternion[0] = mMeasurement[0];
+            mQuaternion[1] = mMeasurement[1];
+            mQuaternion[2] = mMeasurement[2];
+            mQuaternion[3] = mMeasurement[3];
+            mInitialized   = true;
+            return;
+        }
+        // q与-q表示同一个旋转，把观测值对齐到当前姿态所在的半球
+        if (OrientationMath.dotQuaternion(mQuaternion, mMeasurement) < 0) {
+            mMeasurement[0] = -mMeasurement[0];
+            mMeasurement[1] = -mMeasurement[1];
+            mMeasurement[2] = -mMeasurement[2];
+            mMeasurement[3] = -mMeasurement[3];
+        }
+        correct(mMeasurement);
+    }
+
+    /**
+     * 清空子类自己的状态
+     */
+    protected abstract void onReset();
+
+    /**
+     * 用陀螺仪角速度把mQuaternion向前积分dt秒
+     */
+    protected abstract void predict(float wx, float wy, float wz, float dt);
+
+    /**
+     * 用绝对姿态观测值修正mQuaternion的漂移
+     * @param measurement 已对齐到mQuaternion半球的观测四元数
+     */
+    protected abstract void correct(float[] measurement);
+}
@@ -0,0 +1,378 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Parallel, prioritized and cancellable texture asset loader
+ * 在有界的后台线程池中并行读取纹理资源，优先级高的请求先执行，例如让漫反射纹理最先显示。
+ * 离线转换的压缩纹理容器会跳过超过GL_MAX_TEXTURE_SIZE的mipmap级别，原图按2的幂次降采样解码，
+ * 并通过{@link BitmapPool}复用像素内存。每个请求都会且只会回调一次，被取消的请求也不例外
+ */
+public class AssetLoader {
+
+    protected static final String TAG             = "AssetLoader";
+    public    static final int    PRIORITY_LOW    = 0;              // 低优先级
+    public    static final int    PRIORITY_NORMAL = 5;              // 普通优先级
+    public    static final int    PRIORITY_HIGH   = 10;             // 高优先级
+    private   static final int    MAX_POOL_SIZE   = 3;              // 最大线程数
+    private   static final long   KEEP_ALIVE_MS   = 1000;           // 空闲线程的存活时间(ms)
+
+    /**
+     * Load result listener, called once per request on a loader thread
+     * or on the thread cancelling the request
+     */
+    public interface OnAssetLoadedListener {
+
+        /**
+         * @param request 加载请求
+         * @param pixels  TextureContainer or Bitmap, or null if failed or cancelled
+         */
+        void onAssetLoaded(Request request, Object pixels);
+    }
+
+    private final AssetManager       mAssetManager;                             // 资源文件
+    private final BitmapPool         mBitmapPool;                               // 解码时复用的Bitmap
+    private final ThreadPoolExecutor mExecutor;                                 // 有界的后台线程池
+    private final Set<Request>       mRunningRequests = new HashSet<Request>(); // 正在执行的请求，用于取消
+    private int                      mGeneration      = 0;                      // cancelAll()的次数，由mRunningRequests保护
+    private final AtomicLong         mSequence        = new AtomicLong();       // 请求序号，同优先级的请求先到先执行
+    private final AtomicLong         mLoadedCount     = new AtomicLong();       // 加载成功的请求数
+    private final AtomicLong         mCancelledCount  = new AtomicLong();       // 被取消的请求数
+    private final AtomicLong         mFailedCount     = new AtomicLong();       // 加载失败的请求数
+
+    /**
+     * @param assetManager 资源文件
+     * @param bitmapPool   解码时复用的Bitmap
+     */
+    public AssetLoader(AssetManager assetManager, BitmapPool bitmapPool) {
+        this(assetManager, bitmapPool, newExecutor());
+    }
+
+    /**
+     * @param executor 执行请求的线程池，等待队列必须是PriorityBlockingQueue
+     */
+    AssetLoader(AssetManager assetManager, BitmapPool bitmapPool, ThreadPoolExecutor executor) {
+        mAssetManager = assetManager;
+        mBitmapPool   = bitmapPool;
+        mExecutor     = executor;
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        int poolSize = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_POOL_SIZE));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建加载请求
+     * @param assetPath 原图的资源路径，存在同名的压缩纹理容器时优先读取容器
+     * @param priority  优先级，PRIORITY_LOW ~ PRIORITY_HIGH
+     * @param maxSize   纹理的最大边长，通常是GL_MAX_TEXTURE_SIZE
+     * @param tag       调用者自定义的标记，例如纹理槽
+     * @param listener  结果回调
+     * @return request, not yet submitted
+     */
+    public Request newRequest(String assetPath, int priority, int maxSize, int tag, OnAssetLoadedListener listener) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid max texture size: " + maxSize);
+        }
+        return new Request(assetPath, priority, maxSize, tag, listener, mSequence.getAndIncrement());
+    }
+
+    /**
+     * 提交一批请求：线程池有空闲线程时请求会被立即执行而不经过优先级队列，
+     * 所以同一批的请求先按优先级排序再提交
+     */
+    public void submit(Request... requests) {
+        Request[] sorted = requests.clone();
+        Arrays.sort(sorted);
+        synchronized (mRunningRequests) {
+            for (Request request : sorted) {
+                request.mGeneration = mGeneration;
+            }
+        }
+        for (Request request : sorted) {
+            mExecutor.execute(request);
+        }
+    }
+
+    /**
+     * 取消所有等待中和正在执行的请求，例如在Activity暂停时。
+     * 已被加载线程从队列中取出、还没开始执行的请求不在两者之中，由代数在执行时取消
+     */
+    public void cancelAll() {
+        List<Runnable> pending = new ArrayList<Runnable>();
+        mExecutor.getQueue().drainTo(pending);
+        synchronized (mRunningRequests) {
+            mGeneration++;
+            for (Request request : mRunningRequests) {
+                request.cancel();
+            }
+        }
+        for (Runnable runnable : pending) {
+            Request request = (Request) runnable;
+            request.cancel();
+            mCancelledCount.incrementAndGet();
+            request.mListener.onAssetLoaded(request, null);
+        }
+    }
+
+    /**
+     * 停止线程池，之后不能再提交请求
+     */
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    private void execute(Request request) {
+        synchronized (mRunningRequests) {
+            if (request.mGeneration != mGeneration) {
+                // 提交之后调用过cancelAll()
+                request.cancel();
+            }
+            mRunningRequests.add(request);
+        }
+        Object pixels = null;
+        try {
+            if (!request.isCancelled()) {
+                pixels = load(request);
+            }
+        } finally {
+            synchronized (mRunningRequests) {
+                mRunningRequests.remove(request);
+            }
+        }
+        if (pixels != null) {
+            mLoadedCount.incrementAndGet();
+        } else if (request.isCancelled()) {
+            mCancelledCount.incrementAndGet();
+        } else {
+            mFailedCount.incrementAndGet();
+        }
+        request.mListener.onAssetLoaded(request, pixels);
+    }
+
+    /**
+     * 在加载线程中读取像素：优先读取压缩纹理容器，没有容器时解码原图
+     * @return TextureContainer or Bitmap, or null if failed or cancelled
+     */
+    Object load(Request request) {
+        Object pixels = loadContainer(request);
+        if (pixels == null && !request.isCancelled()) {
+            pixels = decodeBitmap(request);
+        }
+        return pixels;
+    }
+
+    /**
+     * 读取离线转换的压缩纹理容器，只保留边长不超过限制的mipmap级别
+     */
+    private TextureContainer loadContainer(Request request) {
+        String      containerPath = TextureContainer.getContainerPath(request.mAssetPath);
+        InputStream inputStream   = null;
+        try {
+            inputStream = mAssetManager.open(containerPath);
+            return TextureContainer.read(new BufferedInputStream(inputStream)).limitSize(request.mMaxSize);
+        } catch (IOException e) {
+            Log.w(TAG, String.format("[loadContainer] %s is unavailable: %s", containerPath, e.getMessage()));
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * 解码原图：先只解码尺寸，按2的幂次计算降采样比例，再复用池中的Bitmap解码
+     */
+    private Bitmap decodeBitmap(Request request) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (!decode(request, options)) {
+            return null;
+        }
+        int sampleSize = 1;
+        int width      = options.outWidth;
+        int height     = options.outHeight;
+        while (width > request.mMaxSize || height > request.mMaxSize) {
+            sampleSize *= 2;
+            width  = (options.outWidth + sampleSize - 1) / sampleSize;
+            height = (options.outHeight + sampleSize - 1) / sampleSize;
+        }
+
+        options = new BitmapFactory.Options();
+        options.inSampleSize      = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inScaled          = false;
+        options.inMutable         = true;
+        options.inBitmap          = mBitmapPool.get(width, height, options.inPreferredConfig, sampleSize);
+        request.mDecodingOptions  = options;
+        try {
+            Bitmap bitmap = null;
+            try {
+                if (decode(request, options)) {
+                    bitmap = request.mBitmap;
+                }
+            } catch (IllegalArgumentException e) {
+                // 池中的Bitmap不能用于这次解码，放弃复用重新解码
+                Log.w(TAG, String.format("[decodeBitmap] inBitmap rejected for %s: %s",
+                        request.mAssetPath, e.getMessage()));
+                mBitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+                if (!request.isCancelled() && decode(request, options)) {
+                    bitmap = request.mBitmap;
+                }
+            }
+            if (bitmap == null && options.inBitmap != null) {
+                // 解码失败或被取消，复用的Bitmap放回池中
+                mBitmapPool.put(options.inBitmap);
+            }
+            return bitmap;
+        } finally {
+            request.mDecodingOptions = null;
+        }
+    }
+
+    private boolean decode(Request request, BitmapFactory.Options options) {
+        InputStream inputStream = null;
+        try {
+            inputStream = mAssetManager.open(request.mAssetPath);
+            request.mBitmap = BitmapFactory.decodeStream(inputStream, null, options);
+            return options.inJustDecodeBounds ? options.outWidth > 0 : request.mBitmap != null;
+        } catch (IOException e) {
+            Log.w(TAG, String.format("[decode] %s is unreadable: %s", request.mAssetPath, e.getMessage()));
+            return false;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AssetLoader[%d threads, %d queued, %d loaded, %d cancelled, %d failed, %s]",
+                mExecutor.getMaximumPoolSize(), mExecutor.getQueue().size(), mLoadedCount.get(),
+                mCancelledCount.get(), mFailedCount.get(), mBitmapPool);
+    }
+
+    /**
+     * A texture load request, ordered by priority and then by submission
+     */
+    public final class Request implements Runnable, Comparable<Request> {
+
+        private final String                   mAssetPath;              // 原图的资源路径
+        private final int                      mPriority;               // 优先级
+        private final int                      mMaxSize;                // 纹理的最大边长
+        private final int                      mTag;                    // 调用者自定义的标记
+        private final OnAssetLoadedListener    mListener;               // 结果回调
+        private final long                     mSequence;               // 请求序号
+        private volatile boolean               mCancelled       = false; // 是否已取消
+        private volatile BitmapFactory.Options mDecodingOptions = null;  // 正在解码时的参数，用于中断解码
+        private int                            mGeneration      = 0;     // 提交时的代数，由mRunningRequests保护
+        private Bitmap                         mBitmap          = null;  // 解码结果，只由加载线程访问
+
+        private Request(String assetPath, int priority, int maxSize, int tag,
+                OnAssetLoadedListener listener, long sequence) {
+            mAssetPath = assetPath;
+            mPriority  = priority;
+            mMaxSize   = maxSize;
+            mTag       = tag;
+            mListener  = listener;
+            mSequence  = sequence;
+        }
+
+        @Override
+        public void run() {
+            execute(this);
+        }
+
+        @Override
+        public int compareTo(Request another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        /**
+         * 取消请求，正在解码的原图会被中断
+         */
+        public void cancel() {
+            mCancelled = true;
+            BitmapFactory.Options options = mDecodingOptions;
+            if (options != null) {
+                options.requestCancelDecode();
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public String getAssetPath() {
+            return mAssetPath;
+        }
+
+        public int getPriority() {
+            return mPriority;
+        }
+
+        public int getTag() {
+            return mTag;
+        }
+    }
+
+    /**
+     * 以后台优先级运行的加载线程
+     */
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "AssetLoader #" + mThreadCount.incrementAndGet());
+        }
+    }
+}
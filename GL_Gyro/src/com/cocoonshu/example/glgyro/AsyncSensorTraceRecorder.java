@@ -0,0 +1,104 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records raw sensor samples through a {@link SensorTraceRecorder} on a background thread
+ * 传感器线程只把样本写入{@link SensorSampleRing}，不分配内存也不做文件I/O；写入线程定期
+ * 取出样本写入轨迹文件。写入线程跟不上时缓冲区满，新样本被丢弃并计数，不会阻塞传感器线程
+ */
+public class AsyncSensorTraceRecorder implements SensorSampleRing.SampleConsumer {
+
+    public  static final int  DEFAULT_CAPACITY  = 8192;      // 默认缓冲的样本数，SENSOR_DELAY_GAME下约20秒
+    private static final long WRITE_INTERVAL_NS = 20000000L; // 写入线程取出样本的间隔(ns)
+
+    private final SensorTraceRecorder mRecorder;           // 在写入线程中写文件的记录器
+    private final SensorSampleRing    mRing;               // 传感器线程写入、写入线程读取的样本
+    private final Thread              mWriterThread;       // 写入线程
+    private volatile boolean          mStopped = false;    // 是否已请求停止写入线程
+    private boolean                   mClosed  = false;    // 是否已关闭，只在调用close()的线程访问
+
+    /**
+     * 创建轨迹文件并启动写入线程，已存在的文件会被覆盖
+     * @param file 轨迹文件
+     * @throws IOException
+     */
+    public AsyncSensorTraceRecorder(File file) throws IOException {
+        this(new SensorTraceRecorder(file), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param recorder 写文件的记录器，关闭时一起关闭
+     * @param capacity 缓冲的样本数，会向上取整到2的幂
+     */
+    AsyncSensorTraceRecorder(SensorTraceRecorder recorder, int capacity) {
+        mRecorder     = recorder;
+        mRing         = new SensorSampleRing(capacity);
+        mWriterThread = new Thread("SensorTraceWriter") {
+
+            @Override
+            public void run() {
+                while (!mStopped) {
+                    if (mRing.drain(mRecorder) == 0) {
+                        LockSupport.parkNanos(WRITE_INTERVAL_NS);
+                    }
+                }
+            }
+        };
+        mWriterThread.setDaemon(true);
+        mWriterThread.setPriority(Thread.MIN_PRIORITY);
+        mWriterThread.start();
+    }
+
+    /**
+     * 传感器线程：缓冲一个样本，不能在多个线程同时调用
+     */
+    @Override
+    public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+        mRing.offer(sensorType, x, y, z, timestampNs);
+    }
+
+    /**
+     * 停止写入线程，写出剩余的样本并关闭文件。必须在传感器线程不再调用onSample()之后调用
+     * @throws IOException the first error hit while recording or closing
+     */
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed  = true;
+        mStopped = true;
+        LockSupport.unpark(mWriterThread);
+        boolean interrupted = false;
+        while (mWriterThread.isAlive()) {
+            try {
+                mWriterThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        mRing.drain(mRecorder);
+        mRecorder.close();
+    }
+
+    /**
+     * @return number of samples dropped because the writer thread fell behind
+     */
+    public long getDroppedCount() {
+        return mRing.getDroppedCount();
+    }
+
+    public SensorTraceRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncSensorTraceRecorder[%s, %d dropped]", mRecorder, mRing.getDroppedCount());
+    }
+}
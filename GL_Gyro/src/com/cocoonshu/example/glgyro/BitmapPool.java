@@ -0,0 +1,87 @@
+package com.cocoonshu.example.glgyro;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Pool of mutable bitmaps reused as BitmapFactory.Options.inBitmap
+ * 解码时复用已释放Bitmap的像素内存，避免每次解码都分配一块大内存并触发GC。
+ * KITKAT之前只能复用宽高和格式完全相同、且不缩放解码的Bitmap，之后只要求已分配的内存足够大。
+ * 加载线程和GLThread都会访问，所有方法都是同步的
+ */
+public class BitmapPool extends ReusePool<Bitmap, Bitmap.Config> {
+
+    /**
+     * @param capacityBytes 池容量(byte)，放入后超过容量时回收最久未用的Bitmap
+     */
+    public BitmapPool(int capacityBytes) {
+        super(capacityBytes);
+    }
+
+    /**
+     * 取出一个可以作为inBitmap解码指定尺寸图像的Bitmap
+     * @param width      解码后的宽度
+     * @param height     解码后的高度
+     * @param config     解码格式
+     * @param sampleSize 解码时的inSampleSize
+     * @return bitmap, or null if none fits
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config, int sampleSize) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize != 1) {
+            miss();
+            return null;
+        }
+        return take(width, height, config);
+    }
+
+    /**
+     * 放回不再使用的Bitmap，不可变或已回收的Bitmap直接丢弃
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable()) {
+            bitmap.recycle();
+            return;
+        }
+        give(bitmap);
+    }
+
+    @Override
+    int sizeOf(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? bitmap.getAllocationByteCount() : bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    boolean fits(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount() >= width * height * bytesPerPixel(config);
+        }
+        return bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+    }
+
+    @Override
+    void discard(Bitmap bitmap) {
+        bitmap.recycle();
+    }
+
+    /**
+     * 加载器只按ARGB_8888解码；已弃用的ARGB_4444不单独处理，按4字节估算只会少复用
+     */
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        }
+        return 4;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BitmapPool[%d bitmaps, %d/%d bytes, %d reuses, %d misses]",
+                getCount(), getSizeBytes(), getCapacityBytes(), getReuseCount(), getMissCount());
+    }
+}
@@ -0,0 +1,54 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Complementary filter: 陀螺仪积分提供高频响应，
+ * 加速度计+磁力计的观测值以时间常数mTimeConstant低通地修正漂移
+ */
+public class ComplementaryFusion extends AbstractOrientationFusion {
+
+    public  static final float DEFAULT_TIME_CONSTANT = 0.5f;                  // 默认修正时间常数(s)
+    private static final float NO_GYRO_BLEND         = 1.0f;                  // 没有陀螺仪时完全采信观测值
+
+    private float              mTimeConstant         = DEFAULT_TIME_CONSTANT; // 修正时间常数
+    private float              mElapsed              = 0;                     // 上次修正以来陀螺仪积分的时长
+    private boolean            mHasGyroscope         = false;                 // 是否收到过陀螺仪样本
+
+    public ComplementaryFusion() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    public ComplementaryFusion(float timeConstant) {
+        mTimeConstant = timeConstant;
+    }
+
+    /**
+     * 设置修正时间常数，越大越信任陀螺仪，越小越信任加速度计+磁力计
+     * @param timeConstant 时间常数(s)
+     */
+    public void setTimeConstant(float timeConstant) {
+        mTimeConstant = timeConstant;
+    }
+
+    @Override
+    protected void onReset() {
+        mElapsed      = 0;
+        mHasGyroscope = false;
+    }
+
+    @Override
+    protected void predict(float wx, float wy, float wz, float dt) {
+        OrientationMath.integrateAngularRate(mQuaternion, wx, wy, wz, dt);
+        mElapsed     += dt;
+        mHasGyroscope = true;
+    }
+
+    @Override
+    protected void correct(float[] measurement) {
+        float blend = NO_GYRO_BLEND;
+        if (mHasGyroscope) {
+            blend = mElapsed / (mTimeConstant + mElapsed);
+        }
+        mElapsed = 0;
+        OrientationMath.nlerpQuaternion(mQuaternion, measurement, blend, mQuaternion);
+    }
+}
@@ -0,0 +1,325 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java ETC1 block codec
+ * ETC1把4x4像素压缩为8字节：块被分为两个2x4或4x2的子块，每个子块一个基础色和一张亮度修正表，
+ * 每个像素用2位选择修正值。android.opengl.ETC1依赖native库，不能在JVM上运行，
+ * 所以离线转换工具和不支持ETC1的设备上的RGB565回退都使用这里的实现
+ * <pre>
+ * individual   : R1(4) R2(4) G1(4) G2(4) B1(4) B2(4) table1(3) table2(3) diff(1)=0 flip(1)
+ * differential : R1(5) dR(3) G1(5) dG(3) B1(5) dB(3) table1(3) table2(3) diff(1)=1 flip(1)
+ * indices      : 16 x MSB, 16 x LSB，像素(x, y)对应第x * 4 + y位
+ * </pre>
+ */
+public final class Etc1Codec {
+
+    public  static final int     ETC1_RGB8_OES      = 0x8D64;  // 与GL_ETC1_RGB8_OES相同
+    public  static final int     ENCODED_BLOCK_SIZE = 8;       // 每个块压缩后的字节数
+    public  static final int     BLOCK_DIMENSION    = 4;       // 块的边长
+    private static final int[][] MODIFIER_TABLES    = new int[][] { // 亮度修正表，索引0~3依次为+a, +b, -a, -b
+        {2, 8, -2, -8},      {5, 17, -5, -17},    {9, 29, -9, -29},    {13, 42, -13, -42},
+        {18, 60, -18, -60},  {24, 80, -24, -80},  {33, 106, -33, -106}, {47, 183, -47, -183}
+    };
+
+    private Etc1Codec() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 压缩后的数据大小，宽高不是4的倍数时按整块计算
+     */
+    public static int getEncodedDataSize(int width, int height) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * ENCODED_BLOCK_SIZE;
+    }
+
+    /**
+     * 压缩RGB888图像
+     * @param rgb    每个像素3个字节的RGB数据，行优先
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @param output 压缩数据写入的Buffer，从当前position开始写入
+     */
+    public static void encodeImage(byte[] rgb, int width, int height, ByteBuffer output) {
+        int[] block   = new int[BLOCK_DIMENSION * BLOCK_DIMENSION * 3];
+        int[] encoded = new int[2];
+        for (int by = 0; by < height; by += BLOCK_DIMENSION) {
+            for (int bx = 0; bx < width; bx += BLOCK_DIMENSION) {
+                // 边缘的块用最近的像素补齐
+                for (int y = 0; y < BLOCK_DIMENSION; y++) {
+                    for (int x = 0; x < BLOCK_DIMENSION; x++) {
+                        int sx = Math.min(bx + x, width - 1);
+                        int sy = Math.min(by + y, height - 1);
+                        int s  = (sy * width + sx) * 3;
+                        int d  = (y * BLOCK_DIMENSION + x) * 3;
+                        block[d]     = rgb[s] & 0xFF;
+                        block[d + 1] = rgb[s + 1] & 0xFF;
+                        block[d + 2] = rgb[s + 2] & 0xFF;
+                    }
+                }
+                encodeBlock(block, encoded);
+                output.putInt(encoded[0]);
+                output.putInt(encoded[1]);
+            }
+        }
+    }
+
+    /**
+     * 解压为RGB888图像
+     * @param input  压缩数据，从当前position开始读取
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @param rgb    每个像素3个字节的输出
+     */
+    public static void decodeImage(ByteBuffer input, int width, int height, byte[] rgb) {
+        int[] block = new int[BLOCK_DIMENSION * BLOCK_DIMENSION * 3];
+        for (int by = 0; by < height; by += BLOCK_DIMENSION) {
+            for (int bx = 0; bx < width; bx += BLOCK_DIMENSION) {
+                decodeBlock(input.getInt(), input.getInt(), block);
+                for (int y = 0; y < BLOCK_DIMENSION && by + y < height; y++) {
+                    for (int x = 0; x < BLOCK_DIMENSION && bx + x < width; x++) {
+                        int s = (y * BLOCK_DIMENSION + x) * 3;
+                        int d = ((by + y) * width + bx + x) * 3;
+                        rgb[d]     = (byte) block[s];
+                        rgb[d + 1] = (byte) block[s + 1];
+                        rgb[d + 2] = (byte) block[s + 2];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 解压为GL_UNSIGNED_SHORT_5_6_5格式，用于不支持ETC1的设备
+     * @param input  压缩数据，从当前position开始读取
+     * @param width  图像宽度
+     * @param height 图像高度
+     * @param output 本机字节序的RGB565输出，从当前position开始写入width * height个像素
+     */
+    public static void decodeImageToRgb565(ByteBuffer input, int width, int height, ByteBuffer output) {
+        int[] block = new int[BLOCK_DIMENSION * BLOCK_DIMENSION * 3];
+        int   base  = output.position();
+        for (int by = 0; by < height; by += BLOCK_DIMENSION) {
+            for (int bx = 0; bx < width; bx += BLOCK_DIMENSION) {
+                decodeBlock(input.getInt(), input.getInt(), block);
+                for (int y = 0; y < BLOCK_DIMENSION && by + y < height; y++) {
+                    for (int x = 0; x < BLOCK_DIMENSION && bx + x < width; x++) {
+                        int s = (y * BLOCK_DIMENSION + x) * 3;
+                        int pixel = ((block[s] >> 3) << 11) | ((block[s + 1] >> 2) << 5) | (block[s + 2] >> 3);
+                        output.putShort(base + ((by + y) * width + bx + x) * 2, (short) pixel);
+                    }
+                }
+            }
+        }
+        output.position(base + width * height * 2);
+    }
+
+    /**
+     * 压缩一个块：分别尝试两种子块划分和两种基础色编码方式，取误差最小的结果
+     * @param block   16个像素的RGB，行优先
+     * @param encoded 输出的高32位和低32位
+     */
+    static void encodeBlock(int[] block, int[] encoded) {
+        long bestError = Long.MAX_VALUE;
+        int[] candidate = new int[2];
+        int[] average   = new int[6];
+        int[] base      = new int[6];
+        for (int flip = 0; flip <= 1; flip++) {
+            subblockAverages(block, flip, average);
+
+            // 差分模式：两个5位基础色，第二个与第一个的差在[-4, 3]内
+            boolean differential = true;
+            for (int c = 0; c < 3; c++) {
+                int c1 = quantize(average[c], 31);
+                int c2 = quantize(average[c + 3], 31);
+                if (c2 - c1 < -4 || c2 - c1 > 3) {
+                    differential = false;
+                }
+                base[c]     = c1;
+                base[c + 3] = c2;
+            }
+            if (differential) {
+                long error = encodeWithBase(block, flip, true, base, candidate);
+                if (error < bestError) {
+                    bestError  = error;
+                    encoded[0] = candidate[0];
+                    encoded[1] = candidate[1];
+                }
+            }
+
+            // 独立模式：两个4位基础色
+            for (int c = 0; c < 6; c++) {
+                base[c] = quantize(average[c], 15);
+            }
+            long error = encodeWithBase(block, flip, false, base, candidate);
+            if (error < bestError) {
+                bestError  = error;
+                encoded[0] = candidate[0];
+                encoded[1] = candidate[1];
+            }
+        }
+    }
+
+    private static long encodeWithBase(int[] block, int flip, boolean differential, int[] base, int[] encoded) {
+        int  high       = 0;
+        int  low        = 0;
+        long totalError = 0;
+        int[] color     = new int[3];
+        for (int sub = 0; sub < 2; sub++) {
+            for (int c = 0; c < 3; c++) {
+                color[c] = differential ? expand5(base[sub * 3 + c]) : expand4(base[sub * 3 + c]);
+            }
+
+            // 为子块选择误差最小的修正表
+            long bestError   = Long.MAX_VALUE;
+            int  bestTable   = 0;
+            int  bestIndices = 0;
+            for (int table = 0; table < MODIFIER_TABLES.length; table++) {
+                long error   = 0;
+                int  indices = 0;
+                for (int i = 0; i < 8; i++) {
+                    int pixel    = subblockPixel(flip, sub, i);
+                    int bestPick = 0;
+                    int bestDiff = Integer.MAX_VALUE;
+                    for (int pick = 0; pick < 4; pick++) {
+                        int modifier = MODIFIER_TABLES[table][pick];
+                        int diff     = 0;
+                        for (int c = 0; c < 3; c++) {
+                            int d = clamp(color[c] + modifier) - block[pixel * 3 + c];
+                            diff += d * d;
+                        }
+                        if (diff < bestDiff) {
+                            bestDiff = diff;
+                            bestPick = pick;
+                        }
+                    }
+                    error   += bestDiff;
+                    indices |= bestPick << (i * 2);
+                    if (error >= bestError) {
+                        break;
+                    }
+                }
+                if (error < bestError) {
+                    bestError   = error;
+                    bestTable   = table;
+                    bestIndices = indices;
+                }
+            }
+            totalError += bestError;
+
+            // 写入修正表和像素索引
+            high |= bestTable << (sub == 0 ? 5 : 2);
+            for (int i = 0; i < 8; i++) {
+                int pick = (bestIndices >> (i * 2)) & 3;
+                int bit  = pixelBit(subblockPixel(flip, sub, i));
+                low |= ((pick >> 1) & 1) << (bit + 16);
+                low |= (pick & 1) << bit;
+            }
+        }
+
+        // 写入基础色
+        for (int c = 0; c < 3; c++) {
+            int shift = 24 - c * 8;
+            if (differential) {
+                int delta = base[3 + c] - base[c];
+                high |= (base[c] << 3 | (delta & 7)) << shift;
+            } else {
+                high |= (base[c] << 4 | base[3 + c]) << shift;
+            }
+        }
+        high |= (differential ? 1 : 0) << 1;
+        high |= flip;
+        encoded[0] = high;
+        encoded[1] = low;
+        return totalError;
+    }
+
+    /**
+     * 解压一个块
+     * @param high  高32位
+     * @param low   低32位
+     * @param block 16个像素的RGB输出，行优先
+     */
+    static void decodeBlock(int high, int low, int[] block) {
+        boolean differential = (high & 2) != 0;
+        int     flip         = high & 1;
+        int[]   color        = new int[6];
+        for (int c = 0; c < 3; c++) {
+            int shift = 24 - c * 8;
+            int value = (high >>> shift) & 0xFF;
+            if (differential) {
+                int c1    = value >> 3;
+                int delta = (value & 7) << 29 >> 29; // 3位有符号数
+                color[c]     = expand5(c1);
+                color[c + 3] = expand5(c1 + delta);
+            } else {
+                color[c]     = expand4(value >> 4);
+                color[c + 3] = expand4(value & 0xF);
+            }
+        }
+        int[] tables = new int[] {(high >>> 5) & 7, (high >>> 2) & 7};
+        for (int y = 0; y < BLOCK_DIMENSION; y++) {
+            for (int x = 0; x < BLOCK_DIMENSION; x++) {
+                int pixel    = y * BLOCK_DIMENSION + x;
+                int sub      = flip == 0 ? (x < 2 ? 0 : 1) : (y < 2 ? 0 : 1);
+                int bit      = pixelBit(pixel);
+                int pick     = ((low >>> (bit + 16)) & 1) << 1 | ((low >>> bit) & 1);
+                int modifier = MODIFIER_TABLES[tables[sub]][pick];
+                for (int c = 0; c < 3; c++) {
+                    block[pixel * 3 + c] = clamp(color[sub * 3 + c] + modifier);
+                }
+            }
+        }
+    }
+
+    private static void subblockAverages(int[] block, int flip, int[] average) {
+        for (int sub = 0; sub < 2; sub++) {
+            for (int c = 0; c < 3; c++) {
+                int sum = 0;
+                for (int i = 0; i < 8; i++) {
+                    sum += block[subblockPixel(flip, sub, i) * 3 + c];
+                }
+                average[sub * 3 + c] = (sum + 4) / 8;
+            }
+        }
+    }
+
+    /**
+     * 子块中第i个像素在块中的行优先序号
+     */
+    private static int subblockPixel(int flip, int sub, int i) {
+        if (flip == 0) {
+            // 左右两个2x4子块
+            return (i / 2) * BLOCK_DIMENSION + sub * 2 + (i % 2);
+        } else {
+            // 上下两个4x2子块
+            return (sub * 2 + i / 4) * BLOCK_DIMENSION + (i % 4);
+        }
+    }
+
+    /**
+     * 行优先序号的像素在索引中的位，索引按列优先排列
+     */
+    private static int pixelBit(int pixel) {
+        int x = pixel % BLOCK_DIMENSION;
+        int y = pixel / BLOCK_DIMENSION;
+        return x * BLOCK_DIMENSION + y;
+    }
+
+    private static int quantize(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+
+    private static int expand4(int value) {
+        return value << 4 | value;
+    }
+
+    private static int expand5(int value) {
+        return value << 3 | value >> 2;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,298 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage frame timing profiler backed by a preallocated ring of frame records
+ * 渲染线程在帧开始时调用beginFrame()，每完成一段工作调用mark(stage)把距上一次标记的耗时
+ * 累加到该阶段，帧结束时调用endFrame()发布这一帧的记录；记录写入预分配的基本类型数组，不分配内存。
+ * 环形缓冲区写满后覆盖最旧的记录，其他线程读取时丢弃读取期间被覆盖的记录；
+ * 写满后最旧的位置可能正在被渲染线程写入下一帧，读取时总是丢弃，所以最多读到容量减1帧。
+ * 二进制导出为小端序：文件头是MAGIC、VERSION、阶段数和记录数，之后每条记录为
+ * 帧开始时间(long, ns)、帧耗时(int, ns)和各阶段耗时(int, ns)
+ */
+public class FrameProfiler {
+
+    public static final int      STAGE_POSE       = 0;          // 姿态插值和模型矩阵计算
+    public static final int      STAGE_STATE      = 1;          // 清屏、矩阵、光照、材质、纹理和顶点数组等状态设置
+    public static final int      STAGE_SUBMIT     = 2;          // 提交绘制调用
+    public static final int      STAGE_GPU        = 3;          // 等待GPU完成本帧的绘制，只在开启GPU计时时有值
+    public static final int      STAGE_COUNT      = 4;          // 阶段数量
+    public static final String[] STAGE_NAMES      = new String[] {"pose", "state", "submit", "gpu"}; // 各阶段的名称
+    public static final int      DEFAULT_CAPACITY = 512;        // 默认容量，60fps下约8.5秒
+    public static final String   EXTENSION        = ".gfpr";    // 二进制帧记录文件扩展名
+    static final int             MAGIC            = 0x52504647; // "GFPR"
+    static final int             VERSION          = 1;          // 格式版本
+    static final int             HEADER_SIZE      = 16;         // 文件头字节数
+    static final int             RECORD_SIZE      = 8 + 4 + STAGE_COUNT * 4; // 每条记录的字节数
+
+    private final int        mCapacity;                        // 容量(位置数)，2的幂
+    private final int        mMask;                            // 索引掩码
+    private final long[]     mStartNs;                         // 各帧的开始时间(ns)
+    private final int[]      mFrameNs;                         // 各帧从beginFrame()到endFrame()的耗时(ns)
+    private final int[]      mStageNs;                         // 各帧各阶段的耗时(ns)，每帧STAGE_COUNT个
+    private final AtomicLong mFrameCount = new AtomicLong();   // 已发布的帧数，只由渲染线程写
+    private int              mSlot       = 0;                  // 当前帧的记录位置，只由渲染线程访问
+    private long             mLastMarkNs = 0;                  // 上一次标记的时间(ns)，只由渲染线程访问
+    private final int[]      mScratchFrameNs;                  // 计算百分位数时的帧耗时副本，只在读取方持锁时访问
+    private final int[]      mScratchStageNs;                  // 计算阶段平均耗时时的副本，只在读取方持锁时访问
+
+    public FrameProfiler() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 环形缓冲区的位置数，会向上取整到2的幂，至少为2
+     */
+    public FrameProfiler(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 20)) {
+            throw new IllegalArgumentException("Invalid profiler capacity: " + capacity);
+        }
+        int powerOfTwo = Integer.highestOneBit(Math.max(2, capacity));
+        mCapacity       = powerOfTwo < capacity ? powerOfTwo << 1 : powerOfTwo;
+        mMask           = mCapacity - 1;
+        mStartNs        = new long[mCapacity];
+        mFrameNs        = new int[mCapacity];
+        mStageNs        = new int[mCapacity * STAGE_COUNT];
+        mScratchFrameNs = new int[mCapacity];
+        mScratchStageNs = new int[mCapacity * STAGE_COUNT];
+    }
+
+    /**
+     * 渲染线程：开始记录一帧
+     */
+    public void beginFrame() {
+        long now = nanoTime();
+        mSlot       = (int) mFrameCount.get() & mMask;
+        mLastMarkNs = now;
+        mStartNs[mSlot] = now;
+        Arrays.fill(mStageNs, mSlot * STAGE_COUNT, (mSlot + 1) * STAGE_COUNT, 0);
+    }
+
+    /**
+     * 渲染线程：把距上一次标记(或帧开始)的耗时累加到指定阶段
+     * @param stage STAGE_*
+     */
+    public void mark(int stage) {
+        long now = nanoTime();
+        mStageNs[mSlot * STAGE_COUNT + stage] += (int) (now - mLastMarkNs);
+        mLastMarkNs = now;
+    }
+
+    /**
+     * 渲染线程：结束并发布当前帧的记录
+     */
+    public void endFrame() {
+        mFrameNs[mSlot] = (int) (nanoTime() - mStartNs[mSlot]);
+        mFrameCount.lazySet(mFrameCount.get() + 1);
+    }
+
+    /**
+     * 计时使用的时钟，测试中覆盖以控制每帧记录的时间
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 复制最近的帧记录，按时间先后排列；读取期间被渲染线程覆盖的记录和写满后最旧的记录会被丢弃
+     * @param startNs  输出的帧开始时间，可以为null
+     * @param frameNs  输出的帧耗时，可以为null
+     * @param stageNs  输出的各阶段耗时，每帧STAGE_COUNT个，可以为null
+     * @param maxFrames 最多复制的帧数，不能超过输出数组的容量
+     * @return number of frames copied
+     */
+    public int snapshot(long[] startNs, int[] frameNs, int[] stageNs, int maxFrames) {
+        return snapshot(startNs, frameNs, stageNs, maxFrames, null);
+    }
+
+    /**
+     * 与{@link #snapshot(long[], int[], int[], int)}相同，并输出第一条复制的记录的帧序号
+     * @param firstFrame 输出的第一帧序号(firstFrame[0])，与复制的记录来自同一次读取，可以为null
+     * @return number of frames copied
+     */
+    public int snapshot(long[] startNs, int[] frameNs, int[] stageNs, int maxFrames, long[] firstFrame) {
+        long end   = mFrameCount.get();
+        int  count = (int) Math.min(end, Math.min(maxFrames, mCapacity));
+        long first = end - count;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (first + i) & mMask;
+            if (startNs != null) {
+                startNs[i] = mStartNs[slot];
+            }
+            if (frameNs != null) {
+                frameNs[i] = mFrameNs[slot];
+            }
+            if (stageNs != null) {
+                System.arraycopy(mStageNs, slot * STAGE_COUNT, stageNs, i * STAGE_COUNT, STAGE_COUNT);
+            }
+        }
+        // 渲染线程可能正在写第after帧，它与第after - capacity帧共用同一个位置
+        long after       = mFrameCount.get();
+        int  overwritten = (int) Math.max(0, Math.min(count, after - mCapacity + 1 - first));
+        if (overwritten > 0) {
+            count -= overwritten;
+            if (startNs != null) {
+                System.arraycopy(startNs, overwritten, startNs, 0, count);
+            }
+            if (frameNs != null) {
+                System.arraycopy(frameNs, overwritten, frameNs, 0, count);
+            }
+            if (stageNs != null) {
+                System.arraycopy(stageNs, overwritten * STAGE_COUNT, stageNs, 0, count * STAGE_COUNT);
+            }
+        }
+        if (firstFrame != null) {
+            firstFrame[0] = first + overwritten;
+        }
+        return count;
+    }
+
+    /**
+     * 计算最近的帧耗时的百分位数，不分配内存
+     * @param percentiles 百分位，取值范围[0, 100]
+     * @param outNs       输出的帧耗时(ns)，与percentiles一一对应
+     * @return number of frames the percentiles are computed from
+     */
+    public synchronized int getFrameTimePercentiles(double[] percentiles, long[] outNs) {
+        int count = snapshot(null, mScratchFrameNs, null, mCapacity);
+        Arrays.sort(mScratchFrameNs, 0, count);
+        for (int i = 0; i < percentiles.length; i++) {
+            if (count == 0) {
+                outNs[i] = 0;
+                continue;
+            }
+            double percentile = Math.min(100, Math.max(0, percentiles[i]));
+            int    rank       = (int) Math.max(1, Math.ceil(count * percentile / 100));
+            outNs[i] = mScratchFrameNs[rank - 1];
+        }
+        return count;
+    }
+
+    /**
+     * 计算最近的帧中各阶段的平均耗时，不分配内存
+     * @param outNs 输出的平均耗时(ns)，长度至少为STAGE_COUNT
+     * @return number of frames the means are computed from
+     */
+    public synchronized int getStageMeans(long[] outNs) {
+        int count = snapshot(null, null, mScratchStageNs, mCapacity);
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += mScratchStageNs[i * STAGE_COUNT + stage];
+            }
+            outNs[stage] = count == 0 ? 0 : sum / count;
+        }
+        return count;
+    }
+
+    /**
+     * 以CSV格式输出环形缓冲区中的所有帧记录，时间单位为us，
+     * 帧间隔可以由相邻两帧的start_ns计算
+     * @param writer
+     * @throws IOException
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        long[] startNs = new long[mCapacity];
+        int[]  frameNs = new int[mCapacity];
+        int[]  stageNs = new int[mCapacity * STAGE_COUNT];
+        long[] first   = new long[1];
+        int    count   = snapshot(startNs, frameNs, stageNs, mCapacity, first);
+        StringBuilder line = new StringBuilder("frame,start_ns,frame_us");
+        for (String name : STAGE_NAMES) {
+            line.append(',').append(name).append("_us");
+        }
+        writer.write(line.append('\n').toString());
+        for (int i = 0; i < count; i++) {
+            line.setLength(0);
+            line.append(first[0] + i).append(',').append(startNs[i]).append(',').append(frameNs[i] / 1000.0);
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                line.append(',').append(stageNs[i * STAGE_COUNT + stage] / 1000.0);
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    /**
+     * 把{@link #writeCsv(Writer)}的内容写入文件，已存在的文件会被覆盖
+     * @param file
+     * @throws IOException
+     */
+    public void exportCsv(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writeCsv(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 以二进制格式导出环形缓冲区中的所有帧记录，已存在的文件会被覆盖
+     * @param file
+     * @throws IOException
+     */
+    public void exportBinary(File file) throws IOException {
+        long[] startNs = new long[mCapacity];
+        int[]  frameNs = new int[mCapacity];
+        int[]  stageNs = new int[mCapacity * STAGE_COUNT];
+        int    count   = snapshot(startNs, frameNs, stageNs, mCapacity);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(STAGE_COUNT);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(startNs[i]);
+            buffer.putInt(frameNs[i]);
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                buffer.putInt(stageNs[i * STAGE_COUNT + stage]);
+            }
+        }
+        buffer.flip();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * @return number of frames recorded since creation, including overwritten ones
+     */
+    public long getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public String toString() {
+        long[] frameNs = new long[3];
+        long[] stageNs = new long[STAGE_COUNT];
+        int    count   = getFrameTimePercentiles(new double[] {50, 99, 100}, frameNs);
+        getStageMeans(stageNs);
+        StringBuilder builder = new StringBuilder(String.format(
+                "FrameProfiler[%d frames, p50 = %.2fms, p99 = %.2fms, max = %.2fms, mean",
+                count, frameNs[0] * 1E-6, frameNs[1] * 1E-6, frameNs[2] * 1E-6));
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            builder.append(String.format(" %s = %.0fus", STAGE_NAMES[stage], stageNs[stage] * 1E-3));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,85 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * OpenGLES 1.1 API used by the renderer
+ * 渲染器只通过这个接口调用OpenGLES，真机上由{@link GLES11Api}转发给GLES11，
+ * 没有GPU的JVM测试中换成tools中的RecordingGLApi，记录每一个调用和它提交的数据量。
+ * 方法名和参数与GLES11保持一致
+ */
+public interface GLApi {
+
+    // 开关和客户端数组
+    void glEnable(int capability);
+    void glDisable(int capability);
+    void glEnableClientState(int array);
+    void glDisableClientState(int array);
+    void glHint(int target, int mode);
+
+    // 帧缓冲
+    void glClear(int mask);
+    void glClearColor(float red, float green, float blue, float alpha);
+    void glClearDepthf(float depth);
+    void glDepthRangef(float zNear, float zFar);
+    void glViewport(int x, int y, int width, int height);
+
+    // 矩阵
+    void glMatrixMode(int mode);
+    void glLoadIdentity();
+    void glLoadMatrixf(float[] matrix, int offset);
+    void glMultMatrixf(float[] matrix, int offset);
+    void glPushMatrix();
+    void glPopMatrix();
+    void glTranslatef(float x, float y, float z);
+    void glScalef(float x, float y, float z);
+    void glFrustumf(float left, float right, float bottom, float top, float zNear, float zFar);
+
+    // 光照和材质
+    void glLightModelfv(int parameter, float[] values, int offset);
+    void glLightModelx(int parameter, int value);
+    void glLightfv(int light, int parameter, float[] values, int offset);
+    void glLightf(int light, int parameter, float value);
+    void glMaterialfv(int face, int parameter, float[] values, int offset);
+    void glMaterialf(int face, int parameter, float value);
+
+    // 纹理
+    void glActiveTexture(int texture);
+    void glClientActiveTexture(int texture);
+    void glGenTextures(int count, int[] textures, int offset);
+    void glDeleteTextures(int count, int[] textures, int offset);
+    void glBindTexture(int target, int texture);
+    void glTexParameterx(int target, int parameter, int value);
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+    void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int format, int type, Buffer pixels);
+    void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int imageSize, Buffer data);
+    void glPixelStorei(int parameter, int value);
+
+    // 缓冲区
+    void glGenBuffers(int count, int[] buffers, int offset);
+    void glDeleteBuffers(int count, int[] buffers, int offset);
+    void glBindBuffer(int target, int buffer);
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    // 顶点数组和绘制，int offset版本用于已绑定的VBO/IBO
+    void glVertexPointer(int size, int type, int stride, int offset);
+    void glVertexPointer(int size, int type, int stride, Buffer pointer);
+    void glNormalPointer(int type, int stride, int offset);
+    void glNormalPointer(int type, int stride, Buffer pointer);
+    void glTexCoordPointer(int size, int type, int stride, int offset);
+    void glTexCoordPointer(int size, int type, int stride, Buffer pointer);
+    void glDrawElements(int mode, int count, int type, int offset);
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+
+    // 查询
+    int  glGetError();
+    void glGetIntegerv(int parameter, int[] values, int offset);
+    String glGetString(int name);
+
+    // 同步
+    void glFinish();
+}
@@ -0,0 +1,271 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES11;
+import android.opengl.GLUtils;
+
+/**
+ * GLApi backed by the real GLES11 binding
+ * 直接转发给android.opengl.GLES11，只能在GLThread中调用
+ */
+public class GLES11Api implements GLApi {
+
+    @Override
+    public void glEnable(int capability) {
+        GLES11.glEnable(capability);
+    }
+
+    @Override
+    public void glDisable(int capability) {
+        GLES11.glDisable(capability);
+    }
+
+    @Override
+    public void glEnableClientState(int array) {
+        GLES11.glEnableClientState(array);
+    }
+
+    @Override
+    public void glDisableClientState(int array) {
+        GLES11.glDisableClientState(array);
+    }
+
+    @Override
+    public void glHint(int target, int mode) {
+        GLES11.glHint(target, mode);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        GLES11.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        GLES11.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        GLES11.glClearDepthf(depth);
+    }
+
+    @Override
+    public void glDepthRangef(float zNear, float zFar) {
+        GLES11.glDepthRangef(zNear, zFar);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        GLES11.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glMatrixMode(int mode) {
+        GLES11.glMatrixMode(mode);
+    }
+
+    @Override
+    public void glLoadIdentity() {
+        GLES11.glLoadIdentity();
+    }
+
+    @Override
+    public void glLoadMatrixf(float[] matrix, int offset) {
+        GLES11.glLoadMatrixf(matrix, offset);
+    }
+
+    @Override
+    public void glMultMatrixf(float[] matrix, int offset) {
+        GLES11.glMultMatrixf(matrix, offset);
+    }
+
+    @Override
+    public void glPushMatrix() {
+        GLES11.glPushMatrix();
+    }
+
+    @Override
+    public void glPopMatrix() {
+        GLES11.glPopMatrix();
+    }
+
+    @Override
+    public void glTranslatef(float x, float y, float z) {
+        GLES11.glTranslatef(x, y, z);
+    }
+
+    @Override
+    public void glScalef(float x, float y, float z) {
+        GLES11.glScalef(x, y, z);
+    }
+
+    @Override
+    public void glFrustumf(float left, float right, float bottom, float top, float zNear, float zFar) {
+        GLES11.glFrustumf(left, right, bottom, top, zNear, zFar);
+    }
+
+    @Override
+    public void glLightModelfv(int parameter, float[] values, int offset) {
+        GLES11.glLightModelfv(parameter, values, offset);
+    }
+
+    @Override
+    public void glLightModelx(int parameter, int value) {
+        GLES11.glLightModelx(parameter, value);
+    }
+
+    @Override
+    public void glLightfv(int light, int parameter, float[] values, int offset) {
+        GLES11.glLightfv(light, parameter, values, offset);
+    }
+
+    @Override
+    public void glLightf(int light, int parameter, float value) {
+        GLES11.glLightf(light, parameter, value);
+    }
+
+    @Override
+    public void glMaterialfv(int face, int parameter, float[] values, int offset) {
+        GLES11.glMaterialfv(face, parameter, values, offset);
+    }
+
+    @Override
+    public void glMaterialf(int face, int parameter, float value) {
+        GLES11.glMaterialf(face, parameter, value);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        GLES11.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glClientActiveTexture(int texture) {
+        GLES11.glClientActiveTexture(texture);
+    }
+
+    @Override
+    public void glGenTextures(int count, int[] textures, int offset) {
+        GLES11.glGenTextures(count, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int count, int[] textures, int offset) {
+        GLES11.glDeleteTextures(count, textures, offset);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        GLES11.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glTexParameterx(int target, int parameter, int value) {
+        GLES11.glTexParameterx(target, parameter, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        GLUtils.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int format, int type, Buffer pixels) {
+        GLES11.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int imageSize, Buffer data) {
+        GLES11.glCompressedTexImage2D(target, level, internalFormat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public void glPixelStorei(int parameter, int value) {
+        GLES11.glPixelStorei(parameter, value);
+    }
+
+    @Override
+    public void glGenBuffers(int count, int[] buffers, int offset) {
+        GLES11.glGenBuffers(count, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int count, int[] buffers, int offset) {
+        GLES11.glDeleteBuffers(count, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES11.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        GLES11.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, int offset) {
+        GLES11.glVertexPointer(size, type, stride, offset);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+        GLES11.glVertexPointer(size, type, stride, pointer);
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, int offset) {
+        GLES11.glNormalPointer(type, stride, offset);
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, Buffer pointer) {
+        GLES11.glNormalPointer(type, stride, pointer);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, int offset) {
+        GLES11.glTexCoordPointer(size, type, stride, offset);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, Buffer pointer) {
+        GLES11.glTexCoordPointer(size, type, stride, pointer);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        GLES11.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        GLES11.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES11.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int parameter, int[] values, int offset) {
+        GLES11.glGetIntegerv(parameter, values, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return GLES11.glGetString(name);
+    }
+
+    @Override
+    public void glFinish() {
+        GLES11.glFinish();
+    }
+}
@@ -0,0 +1,407 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.Executor;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES11;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+/**
+ * Owner of the GPU resident textures and mesh buffers
+ * EGL上下文丢失后所有纹理和缓冲区ID都会失效。资源管理器在每次onSurfaceCreated时把它们标记为缺失，
+ * 网格从内存中的顶点数据重新上传，纹理优先从{@link PixelCache}中取出已解码的像素重新上传，
+ * 只有未命中缓存的纹理才会按优先级提交给{@link AssetLoader}去读取和解码资源文件。
+ * 除了{@link #cancelLoading()}，所有方法都只在GLThread中调用
+ */
+public class GLResourceManager {
+
+    protected static final String TAG                 = "GLResourceManager";
+    public    static final int    DEFAULT_CACHE_BYTES = 8 * 1024 * 1024; // 默认的像素缓存容量(byte)
+    public    static final int    DEFAULT_POOL_BYTES  = 4 * 1024 * 1024; // 默认的Bitmap复用池容量(byte)
+
+    private final Executor        mGLThread;                              // 把上传操作抛到GLThread
+    private final RenderScheduler mRenderScheduler;                       // 纹理上传后请求重绘
+    private final GLApi           mGL;                                    // GL调用
+    private final BitmapPool      mBitmapPool;                            // 被淘汰的Bitmap放回池中供解码复用
+    private final PixelCache      mPixelCache;                            // 已解码像素的缓存
+    private final AssetLoader     mAssetLoader;                           // 并行加载纹理资源
+    private final String[]        mTexturePaths;                          // 各纹理槽的资源路径
+    private final int[]           mTexturePriorities;                     // 各纹理槽的加载优先级
+    private final int[]           mTextureIDs;                            // 各纹理槽的纹理ID，为0表示不在显存中
+    private final boolean[]       mTextureLoading;                        // 各纹理槽是否正在后台加载
+    private InterleavedMesh       mMesh              = null;              // 网格
+    private final int[]           mMeshBufferIDs     = new int[2];        // 网格的VBO和IBO的ID，为0表示使用客户端数组绘制
+    private boolean               mMeshResident      = false;             // 网格是否已上传
+    private boolean               mVBOEnabled        = true;              // 是否把网格上传为VBO/IBO
+    private boolean               mEtc1Supported     = false;             // 当前上下文是否支持ETC1压缩纹理
+    private int                   mMaxTextureSize    = Integer.MAX_VALUE; // 当前上下文的GL_MAX_TEXTURE_SIZE
+    private boolean               mContextCreated    = false;             // 是否已经有可用的EGL上下文
+    private long                  mRestoreStartNs    = 0;                 // 本次恢复开始的时间(ns)，为0表示没有正在进行的恢复
+    private long                  mLastRestoreTimeNs = 0;                 // 上次从上下文创建到所有资源恢复完成的耗时(ns)
+    private int                   mRestoreCount      = 0;                 // 已完成的恢复次数
+    private int                   mTextureUploads    = 0;                 // 累计纹理上传次数
+    private int                   mTextureLoads      = 0;                 // 累计从资源文件加载纹理的次数
+
+    /**
+     * @param hostView          GLSurfaceView whose GL thread owns the resources
+     * @param renderScheduler   scheduler to request a frame after an upload
+     * @param gl                GL backend
+     * @param texturePaths      asset path of each texture slot
+     * @param texturePriorities load priority of each texture slot, see AssetLoader.PRIORITY_HIGH
+     * @param cacheBytes        capacity of the decoded pixel cache
+     */
+    public GLResourceManager(final GLSurfaceView hostView, RenderScheduler renderScheduler, GLApi gl,
+            String[] texturePaths, int[] texturePriorities, int cacheBytes) {
+        this(new Executor() {
+
+            @Override
+            public void execute(Runnable task) {
+                hostView.queueEvent(task);
+            }
+        }, renderScheduler, gl, new AssetLoader(hostView.getContext().getAssets(), new BitmapPool(DEFAULT_POOL_BYTES)),
+                texturePaths, texturePriorities, cacheBytes);
+    }
+
+    /**
+     * @param glThread    executor running tasks on the GL thread
+     * @param assetLoader loader of the textures missing from the pixel cache
+     */
+    GLResourceManager(Executor glThread, RenderScheduler renderScheduler, GLApi gl, AssetLoader assetLoader,
+            String[] texturePaths, int[] texturePriorities, int cacheBytes) {
+        mGLThread          = glThread;
+        mRenderScheduler   = renderScheduler;
+        mGL                = gl;
+        mBitmapPool        = assetLoader.getBitmapPool();
+        mPixelCache        = new PixelCache(cacheBytes, mBitmapPool);
+        mAssetLoader       = assetLoader;
+        mTexturePaths      = texturePaths.clone();
+        mTexturePriorities = texturePriorities.clone();
+        mTextureIDs        = new int[texturePaths.length];
+        mTextureLoading    = new boolean[texturePaths.length];
+    }
+
+    /**
+     * 设置需要常驻显存的网格，新的网格在下一次恢复时上传
+     */
+    public void setMesh(InterleavedMesh mesh) {
+        if (mesh != mMesh) {
+            deleteMeshBuffers();
+            mMesh         = mesh;
+            mMeshResident = false;
+        }
+    }
+
+    /**
+     * Enable or disable uploading the mesh as VBO/IBO, takes effect
+     * on next context creation
+     * @param enabled set as false to draw from client arrays
+     */
+    public void setVBOEnabled(boolean enabled) {
+        mVBOEnabled = enabled;
+    }
+
+    /**
+     * 新的EGL上下文已创建：旧的ID全部失效，不需要也不能删除，直接清零后恢复缺失的资源
+     * @param etc1Supported  新上下文是否支持ETC1压缩纹理
+     * @param maxTextureSize 新上下文的GL_MAX_TEXTURE_SIZE，超过的纹理会被降采样
+     */
+    public void onContextCreated(boolean etc1Supported, int maxTextureSize) {
+        mEtc1Supported    = etc1Supported;
+        mMaxTextureSize   = maxTextureSize > 0 ? maxTextureSize : Integer.MAX_VALUE;
+        mContextCreated   = true;
+        mMeshResident     = false;
+        mMeshBufferIDs[0] = 0;
+        mMeshBufferIDs[1] = 0;
+        for (int slot = 0; slot < mTextureIDs.length; slot++) {
+            mTextureIDs[slot] = 0;
+        }
+        mRestoreStartNs = System.nanoTime();
+        restore();
+    }
+
+    /**
+     * 恢复暂停时被取消加载的纹理，还没有EGL上下文时由{@link #onContextCreated}负责
+     */
+    public void resume() {
+        if (mContextCreated) {
+            restore();
+        }
+    }
+
+    /**
+     * 取消所有还未完成的纹理加载，例如在Activity暂停时，可以在任意线程中调用
+     */
+    public void cancelLoading() {
+        mAssetLoader.cancelAll();
+    }
+
+    /**
+     * 上传缺失的资源：网格直接上传，纹理命中缓存时直接上传，否则按优先级提交给加载器
+     */
+    private void restore() {
+        if (mMesh != null && !mMeshResident) {
+            uploadMesh();
+        }
+
+        AssetLoader.Request[] requests     = new AssetLoader.Request[mTextureIDs.length];
+        int                   missingCount = 0;
+        for (int slot = 0; slot < mTextureIDs.length; slot++) {
+            if (mTextureIDs[slot] != 0 || mTextureLoading[slot]) {
+                continue;
+            }
+            Object pixels = mPixelCache.get(mTexturePaths[slot]);
+            if (pixels != null) {
+                uploadTexture(slot, pixels);
+            } else {
+                mTextureLoading[slot]    = true;
+                requests[missingCount++] = mAssetLoader.newRequest(mTexturePaths[slot], mTexturePriorities[slot],
+                        mMaxTextureSize, slot, mOnAssetLoadedListener);
+            }
+        }
+        if (missingCount > 0) {
+            AssetLoader.Request[] missing = new AssetLoader.Request[missingCount];
+            System.arraycopy(requests, 0, missing, 0, missingCount);
+            mTextureLoads += missingCount;
+            mAssetLoader.submit(missing);
+        }
+        checkRestored();
+    }
+
+    /**
+     * 所有资源都已上传时结束本次恢复的计时
+     */
+    private void checkRestored() {
+        if (mRestoreStartNs == 0 || !isRestored()) {
+            return;
+        }
+        mLastRestoreTimeNs = System.nanoTime() - mRestoreStartNs;
+        mRestoreStartNs    = 0;
+        mRestoreCount++;
+        Log.i(TAG, String.format("[restore] all resources restored in %.2fms, %s",
+                mLastRestoreTimeNs / 1E6, mPixelCache));
+    }
+
+    /**
+     * 把网格上传为显存中的VBO和IBO，失败时退回到客户端数组绘制，两种情况下网格都视为已恢复
+     */
+    private void uploadMesh() {
+        mMeshResident     = true;
+        mMeshBufferIDs[0] = 0;
+        mMeshBufferIDs[1] = 0;
+        if (!mVBOEnabled) {
+            return;
+        }
+
+        mGL.glGenBuffers(2, mMeshBufferIDs, 0);
+        if (mMeshBufferIDs[0] == 0 || mMeshBufferIDs[1] == 0) {
+            Log.w(TAG, "[uploadMesh] glGenBuffers failed, fallback to client arrays");
+            mMeshBufferIDs[0] = 0;
+            mMeshBufferIDs[1] = 0;
+            return;
+        }
+
+        // 客户端数组绘制会移动网格共享Buffer的position，上传时从起点的副本读取
+        ByteBuffer  vertexData = mMesh.getVertexData().duplicate();
+        ShortBuffer indexData  = mMesh.getIndexData().duplicate();
+        vertexData.clear();
+        indexData.clear();
+        mGL.glBindBuffer(GLES11.GL_ARRAY_BUFFER, mMeshBufferIDs[0]);
+        mGL.glBufferData(GLES11.GL_ARRAY_BUFFER, mMesh.getVertexDataSize(), vertexData, GLES11.GL_STATIC_DRAW);
+        mGL.glBindBuffer(GLES11.GL_ELEMENT_ARRAY_BUFFER, mMeshBufferIDs[1]);
+        mGL.glBufferData(GLES11.GL_ELEMENT_ARRAY_BUFFER, mMesh.getIndexDataSize(), indexData, GLES11.GL_STATIC_DRAW);
+
+        if (mGL.glGetError() != GLES11.GL_NO_ERROR) {
+            Log.w(TAG, "[uploadMesh] glBufferData failed, fallback to client arrays");
+            deleteMeshBuffers();
+        }
+    }
+
+    private void deleteMeshBuffers() {
+        if (mMeshBufferIDs[0] != 0 || mMeshBufferIDs[1] != 0) {
+            mGL.glDeleteBuffers(2, mMeshBufferIDs, 0);
+        }
+        mMeshBufferIDs[0] = 0;
+        mMeshBufferIDs[1] = 0;
+    }
+
+    /**
+     * 把纹理槽的像素数据上传为纹理
+     * @param slot   纹理槽
+     * @param pixels Bitmap，或ETC1纹理容器：支持ETC1时逐级直接上传，否则逐级解压为RGB565上传
+     */
+    private void uploadTexture(int slot, Object pixels) {
+        boolean mipmapped = pixels instanceof TextureContainer && ((TextureContainer) pixels).getLevelCount() > 1;
+        mGL.glGenTextures(1, mTextureIDs, slot);
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, mTextureIDs[slot]);
+        mGL.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_WRAP_S, GLES11.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_WRAP_T, GLES11.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GLES11.GL_LINEAR_MIPMAP_LINEAR : GLES11.GL_LINEAR);
+        mGL.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_MAG_FILTER, GLES11.GL_LINEAR);
+        if (pixels instanceof Bitmap) {
+            mGL.texImage2D(GLES11.GL_TEXTURE_2D, 0, (Bitmap) pixels, 0);
+        } else {
+            TextureContainer texture    = (TextureContainer) pixels;
+            int              levelCount = texture.getLevelCount();
+            if (mEtc1Supported) {
+                for (int level = 0; level < levelCount; level++) {
+                    ByteBuffer data = texture.getLevelData(level);
+                    mGL.glCompressedTexImage2D(GLES11.GL_TEXTURE_2D, level, texture.getFormat(),
+                            texture.getLevelWidth(level), texture.getLevelHeight(level), 0,
+                            data.remaining(), data);
+                }
+            } else {
+                // 各级共用一个按最大级分配的解压缓冲区；宽度为1时每行只有2字节，需要2字节对齐
+                ByteBuffer rgb565 = ByteBuffer.allocateDirect(texture.getWidth() * texture.getHeight() * 2);
+                rgb565.order(ByteOrder.nativeOrder());
+                mGL.glPixelStorei(GLES11.GL_UNPACK_ALIGNMENT, 2);
+                for (int level = 0; level < levelCount; level++) {
+                    int width  = texture.getLevelWidth(level);
+                    int height = texture.getLevelHeight(level);
+                    rgb565.clear();
+                    Etc1Codec.decodeImageToRgb565(texture.getLevelData(level), width, height, rgb565);
+                    rgb565.flip();
+                    mGL.glTexImage2D(GLES11.GL_TEXTURE_2D, level, GLES11.GL_RGB, width, height, 0,
+                            GLES11.GL_RGB, GLES11.GL_UNSIGNED_SHORT_5_6_5, rgb565);
+                }
+                mGL.glPixelStorei(GLES11.GL_UNPACK_ALIGNMENT, 4);
+            }
+        }
+        mTextureUploads++;
+
+        int glError = mGL.glGetError();
+        if (glError != GLES11.GL_NO_ERROR) {
+            Log.e(TAG, String.format("[uploadTexture] %s failed, GLError = 0x%04X", mTexturePaths[slot], glError));
+        }
+    }
+
+    /**
+     * 加载结果回到GLThread：放入缓存，并在纹理仍然缺失时上传；被取消的纹理等待下一次恢复
+     */
+    private final AssetLoader.OnAssetLoadedListener mOnAssetLoadedListener = new AssetLoader.OnAssetLoadedListener() {
+
+        @Override
+        public void onAssetLoaded(AssetLoader.Request request, Object pixels) {
+            onTextureLoaded(request.getTag(), pixels, request.isCancelled());
+        }
+    };
+
+    private void onTextureLoaded(final int slot, final Object pixels, final boolean cancelled) {
+        mGLThread.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                mTextureLoading[slot] = false;
+                if (pixels == null) {
+                    if (!cancelled) {
+                        Log.e(TAG, String.format("[onTextureLoaded] failed to load %s", mTexturePaths[slot]));
+                    }
+                    return;
+                }
+                boolean cached = mPixelCache.put(mTexturePaths[slot], pixels);
+                if (mTextureIDs[slot] == 0) {
+                    uploadTexture(slot, pixels);
+                }
+                if (!cached && pixels instanceof Bitmap) {
+                    // 超过缓存容量的像素上传后立即放回复用池
+                    mBitmapPool.put((Bitmap) pixels);
+                }
+                checkRestored();
+                mRenderScheduler.requestFrame();
+            }
+        });
+    }
+
+    /**
+     * 释放所有缓存的像素和空闲的Bitmap，例如在系统内存不足时；显存中的资源不受影响
+     */
+    public void trimMemory() {
+        mPixelCache.clear();
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Get the texture name of a slot
+     * @return texture name, or 0 if the texture is not resident yet
+     */
+    public int getTextureID(int slot) {
+        return mTextureIDs[slot];
+    }
+
+    /**
+     * Get the vertex buffer name of the mesh
+     * @return buffer name, or 0 if the mesh is drawn from client arrays
+     */
+    public int getVertexBufferID() {
+        return mMeshBufferIDs[0];
+    }
+
+    /**
+     * Get the index buffer name of the mesh
+     * @return buffer name, or 0 if the mesh is drawn from client arrays
+     */
+    public int getIndexBufferID() {
+        return mMeshBufferIDs[1];
+    }
+
+    /**
+     * 网格和所有纹理是否都已上传
+     */
+    public boolean isRestored() {
+        if (mMesh != null && !mMeshResident) {
+            return false;
+        }
+        for (int textureID : mTextureIDs) {
+            if (textureID == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the decoded pixel cache, which exposes hit, miss and eviction counters
+     */
+    public PixelCache getPixelCache() {
+        return mPixelCache;
+    }
+
+    /**
+     * Get the time from the last context creation until every resource was resident again
+     * @return restore time in ns, 0 if no restore completed yet
+     */
+    public long getLastRestoreTimeNs() {
+        return mLastRestoreTimeNs;
+    }
+
+    public int getRestoreCount() {
+        return mRestoreCount;
+    }
+
+    public int getTextureUploads() {
+        return mTextureUploads;
+    }
+
+    public int getTextureLoads() {
+        return mTextureLoads;
+    }
+
+    /**
+     * Get the asset loader, which exposes loaded, cancelled and failed
+     * request counters and the bitmap pool
+     */
+    public AssetLoader getAssetLoader() {
+        return mAssetLoader;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GLResourceManager[%d restores, last %.2fms, %d texture uploads, %d asset loads, %s, %s]",
+                mRestoreCount, mLastRestoreTimeNs / 1E6, mTextureUploads, mTextureLoads, mPixelCache, mAssetLoader);
+    }
+}
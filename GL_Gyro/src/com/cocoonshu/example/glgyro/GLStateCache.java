@@ -0,0 +1,613 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES11;
+
+/**
+ * Redundant state filter for the OpenGLES 1.1 fixed-function pipeline
+ * 包装另一个GLApi，记录已经提交的开关、光照、材质、客户端数组和绑定状态，与缓存值相同的调用直接丢弃，
+ * 其他调用原样转发。计数只统计被跟踪的状态调用，清屏、矩阵、上传和绘制等直接转发的调用不计入，
+ * 需要完整的调用数时用tools中的RecordingGLApi统计。
+ * 缓存在GLThread中使用，EGL上下文重建后所有状态都回到默认值，需要在onSurfaceCreated中调用{@link #invalidate()}。
+ * 注意：GL_POSITION和GL_SPOT_DIRECTION在提交时会被当前的模型视图矩阵变换，
+ * 视图矩阵变化时需要调用{@link #invalidateLightTransforms()}
+ */
+public class GLStateCache implements GLApi {
+
+    private static final int   UNKNOWN             = -1;          // 状态未知，下一次调用一定会提交
+    private static final int   MAX_LIGHTS          = 8;           // OpenGLES 1.1至少支持8个光源
+    private static final int   MAX_TEXTURE_UNITS   = 8;           // 跟踪的纹理单元数量
+    private static final int   VECTOR_SIZE         = 4;           // 光照和材质参数的最大分量数
+    private static final int[] CAPABILITIES        = new int[] {  // 跟踪的glEnable/glDisable开关
+        GLES11.GL_DEPTH_TEST, GLES11.GL_ALPHA_TEST, GLES11.GL_STENCIL_TEST,  GLES11.GL_BLEND,
+        GLES11.GL_DITHER,     GLES11.GL_LIGHTING,   GLES11.GL_FOG,           GLES11.GL_CULL_FACE,
+        GLES11.GL_NORMALIZE,  GLES11.GL_RESCALE_NORMAL,
+        GLES11.GL_LIGHT0,     GLES11.GL_LIGHT1,     GLES11.GL_LIGHT2,        GLES11.GL_LIGHT3,
+        GLES11.GL_LIGHT4,     GLES11.GL_LIGHT5,     GLES11.GL_LIGHT6,        GLES11.GL_LIGHT7
+    };
+    private static final int[] CLIENT_STATES       = new int[] {  // 跟踪的客户端数组，GL_TEXTURE_COORD_ARRAY按客户端纹理单元单独跟踪
+        GLES11.GL_VERTEX_ARRAY, GLES11.GL_NORMAL_ARRAY, GLES11.GL_COLOR_ARRAY
+    };
+    private static final int[] LIGHT_PARAMETERS    = new int[] {  // 跟踪的光源参数
+        GLES11.GL_AMBIENT,              GLES11.GL_DIFFUSE,            GLES11.GL_SPECULAR,
+        GLES11.GL_POSITION,             GLES11.GL_SPOT_DIRECTION,     GLES11.GL_SPOT_EXPONENT,
+        GLES11.GL_SPOT_CUTOFF,          GLES11.GL_CONSTANT_ATTENUATION,
+        GLES11.GL_LINEAR_ATTENUATION,   GLES11.GL_QUADRATIC_ATTENUATION
+    };
+    private static final int[] MATERIAL_PARAMETERS = new int[] {  // 跟踪的材质参数
+        GLES11.GL_AMBIENT, GLES11.GL_DIFFUSE, GLES11.GL_SPECULAR, GLES11.GL_EMISSION, GLES11.GL_SHININESS
+    };
+
+    private final GLApi     mDelegate;                                                                 // 实际执行GL调用的API
+    private final int[]     mCapabilityStates   = new int[CAPABILITIES.length];                        // 开关状态
+    private final int[]     mClientStates       = new int[CLIENT_STATES.length];                       // 客户端数组状态
+    private final boolean[] mLightValid         = new boolean[MAX_LIGHTS * LIGHT_PARAMETERS.length];   // 光源参数是否已知
+    private final float[]   mLightValues        = new float[mLightValid.length * VECTOR_SIZE];         // 光源参数
+    private final float[]   mMaterialValues     = new float[MATERIAL_PARAMETERS.length * VECTOR_SIZE]; // 材质参数
+    private final boolean[] mMaterialValid      = new boolean[MATERIAL_PARAMETERS.length];             // 材质参数是否已知
+    private final int[]     mBoundTextures      = new int[MAX_TEXTURE_UNITS];                          // 每个纹理单元绑定的2D纹理
+    private final int[]     mTexture2DStates    = new int[MAX_TEXTURE_UNITS];                          // 每个纹理单元的GL_TEXTURE_2D开关
+    private final int[]     mTexcoordStates     = new int[MAX_TEXTURE_UNITS];                          // 每个客户端纹理单元的GL_TEXTURE_COORD_ARRAY
+    private int             mActiveTexture      = UNKNOWN;                                             // 当前激活的纹理单元
+    private int             mClientTexture      = UNKNOWN;                                             // 当前激活的客户端纹理单元
+    private int             mArrayBuffer        = UNKNOWN;                                             // 绑定的GL_ARRAY_BUFFER
+    private int             mElementArrayBuffer = UNKNOWN;                                             // 绑定的GL_ELEMENT_ARRAY_BUFFER
+    private int             mFrameIssued        = 0;                                                   // 本帧提交给驱动的状态调用数
+    private int             mFrameSkipped       = 0;                                                   // 本帧丢弃的冗余状态调用数
+    private long            mTotalIssued        = 0;                                                   // 累计提交给驱动的状态调用数
+    private long            mTotalSkipped       = 0;                                                   // 累计丢弃的冗余状态调用数
+
+    public GLStateCache(GLApi delegate) {
+        mDelegate = delegate;
+        invalidate();
+    }
+
+    /**
+     * 把所有缓存状态置为未知，EGL上下文重建后调用
+     */
+    public void invalidate() {
+        Arrays.fill(mCapabilityStates, UNKNOWN);
+        Arrays.fill(mClientStates, UNKNOWN);
+        Arrays.fill(mLightValid, false);
+        Arrays.fill(mMaterialValid, false);
+        Arrays.fill(mBoundTextures, UNKNOWN);
+        Arrays.fill(mTexture2DStates, UNKNOWN);
+        Arrays.fill(mTexcoordStates, UNKNOWN);
+        mActiveTexture      = UNKNOWN;
+        mClientTexture      = UNKNOWN;
+        mArrayBuffer        = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+    }
+
+    /**
+     * 视图矩阵变化后，光源的位置和方向需要重新提交
+     */
+    public void invalidateLightTransforms() {
+        int positionSlot  = indexOf(LIGHT_PARAMETERS, GLES11.GL_POSITION);
+        int directionSlot = indexOf(LIGHT_PARAMETERS, GLES11.GL_SPOT_DIRECTION);
+        for (int light = 0; light < MAX_LIGHTS; light++) {
+            mLightValid[light * LIGHT_PARAMETERS.length + positionSlot]  = false;
+            mLightValid[light * LIGHT_PARAMETERS.length + directionSlot] = false;
+        }
+    }
+
+    /**
+     * 开始新的一帧，清零本帧的计数
+     */
+    public void beginFrame() {
+        mFrameIssued  = 0;
+        mFrameSkipped = 0;
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        setCapability(capability, true);
+    }
+
+    @Override
+    public void glDisable(int capability) {
+        setCapability(capability, false);
+    }
+
+    /**
+     * GL_TEXTURE_2D是每个纹理单元各自的开关，按当前激活的纹理单元跟踪
+     */
+    private void setCapability(int capability, boolean enabled) {
+        int[] states = capability == GLES11.GL_TEXTURE_2D ? mTexture2DStates : mCapabilityStates;
+        int   slot   = capability == GLES11.GL_TEXTURE_2D ? textureUnit(mActiveTexture) : indexOf(CAPABILITIES, capability);
+        int   state  = enabled ? 1 : 0;
+        if (slot >= 0 && states[slot] == state) {
+            skipped();
+            return;
+        }
+        if (slot >= 0) {
+            states[slot] = state;
+        }
+        if (enabled) {
+            mDelegate.glEnable(capability);
+        } else {
+            mDelegate.glDisable(capability);
+        }
+        issued();
+    }
+
+    @Override
+    public void glEnableClientState(int array) {
+        setClientState(array, true);
+    }
+
+    @Override
+    public void glDisableClientState(int array) {
+        setClientState(array, false);
+    }
+
+    /**
+     * GL_TEXTURE_COORD_ARRAY是每个客户端纹理单元各自的数组，按当前激活的客户端纹理单元跟踪
+     */
+    private void setClientState(int array, boolean enabled) {
+        int[] states = array == GLES11.GL_TEXTURE_COORD_ARRAY ? mTexcoordStates : mClientStates;
+        int   slot   = array == GLES11.GL_TEXTURE_COORD_ARRAY ? textureUnit(mClientTexture) : indexOf(CLIENT_STATES, array);
+        int   state  = enabled ? 1 : 0;
+        if (slot >= 0 && states[slot] == state) {
+            skipped();
+            return;
+        }
+        if (slot >= 0) {
+            states[slot] = state;
+        }
+        if (enabled) {
+            mDelegate.glEnableClientState(array);
+        } else {
+            mDelegate.glDisableClientState(array);
+        }
+        issued();
+    }
+
+    @Override
+    public void glLightfv(int light, int parameter, float[] values, int offset) {
+        int slot = lightSlot(light, parameter);
+        if (slot >= 0 && updateVector(mLightValues, mLightValid, slot, values, offset, vectorSize(parameter))) {
+            skipped();
+            return;
+        }
+        mDelegate.glLightfv(light, parameter, values, offset);
+        issued();
+    }
+
+    @Override
+    public void glLightf(int light, int parameter, float value) {
+        int slot = lightSlot(light, parameter);
+        if (slot >= 0 && updateScalar(mLightValues, mLightValid, slot, value)) {
+            skipped();
+            return;
+        }
+        mDelegate.glLightf(light, parameter, value);
+        issued();
+    }
+
+    /**
+     * OpenGLES 1.1的材质只支持GL_FRONT_AND_BACK
+     */
+    @Override
+    public void glMaterialfv(int face, int parameter, float[] values, int offset) {
+        if (parameter == GLES11.GL_AMBIENT_AND_DIFFUSE) {
+            // 同时设置两个参数，只有两者都相同时才能丢弃
+            int ambient = indexOf(MATERIAL_PARAMETERS, GLES11.GL_AMBIENT);
+            int diffuse = indexOf(MATERIAL_PARAMETERS, GLES11.GL_DIFFUSE);
+            boolean sameAmbient = updateVector(mMaterialValues, mMaterialValid, ambient, values, offset, VECTOR_SIZE);
+            boolean sameDiffuse = updateVector(mMaterialValues, mMaterialValid, diffuse, values, offset, VECTOR_SIZE);
+            if (sameAmbient && sameDiffuse) {
+                skipped();
+                return;
+            }
+        } else {
+            int slot = indexOf(MATERIAL_PARAMETERS, parameter);
+            if (slot >= 0 && updateVector(mMaterialValues, mMaterialValid, slot, values, offset, vectorSize(parameter))) {
+                skipped();
+                return;
+            }
+        }
+        mDelegate.glMaterialfv(face, parameter, values, offset);
+        issued();
+    }
+
+    @Override
+    public void glMaterialf(int face, int parameter, float value) {
+        int slot = indexOf(MATERIAL_PARAMETERS, parameter);
+        if (slot >= 0 && updateScalar(mMaterialValues, mMaterialValid, slot, value)) {
+            skipped();
+            return;
+        }
+        mDelegate.glMaterialf(face, parameter, value);
+        issued();
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (mActiveTexture == texture) {
+            skipped();
+            return;
+        }
+        mActiveTexture = texture;
+        mDelegate.glActiveTexture(texture);
+        issued();
+    }
+
+    @Override
+    public void glClientActiveTexture(int texture) {
+        if (mClientTexture == texture) {
+            skipped();
+            return;
+        }
+        mClientTexture = texture;
+        mDelegate.glClientActiveTexture(texture);
+        issued();
+    }
+
+    /**
+     * 只跟踪GL_TEXTURE_2D在当前纹理单元上的绑定
+     */
+    @Override
+    public void glBindTexture(int target, int texture) {
+        int     unit    = textureUnit(mActiveTexture);
+        boolean tracked = target == GLES11.GL_TEXTURE_2D && unit >= 0;
+        if (tracked && mBoundTextures[unit] == texture) {
+            skipped();
+            return;
+        }
+        if (tracked) {
+            mBoundTextures[unit] = texture;
+        }
+        mDelegate.glBindTexture(target, texture);
+        issued();
+    }
+
+    /**
+     * 删除纹理后驱动会把绑定的纹理单元恢复为0
+     */
+    private void onTextureDeleted(int texture) {
+        for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+            if (mBoundTextures[unit] == texture) {
+                mBoundTextures[unit] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GLES11.GL_ARRAY_BUFFER) {
+            if (mArrayBuffer == buffer) {
+                skipped();
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GLES11.GL_ELEMENT_ARRAY_BUFFER) {
+            if (mElementArrayBuffer == buffer) {
+                skipped();
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        mDelegate.glBindBuffer(target, buffer);
+        issued();
+    }
+
+    /**
+     * 删除Buffer后驱动会把绑定点恢复为0
+     */
+    private void onBufferDeleted(int buffer) {
+        if (mArrayBuffer == buffer) {
+            mArrayBuffer = 0;
+        }
+        if (mElementArrayBuffer == buffer) {
+            mElementArrayBuffer = 0;
+        }
+    }
+
+    // 以下调用不改变被跟踪的状态，直接转发，不计入状态调用数
+
+    @Override
+    public void glHint(int target, int mode) {
+        mDelegate.glHint(target, mode);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mDelegate.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mDelegate.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        mDelegate.glClearDepthf(depth);
+    }
+
+    @Override
+    public void glDepthRangef(float zNear, float zFar) {
+        mDelegate.glDepthRangef(zNear, zFar);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        mDelegate.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glMatrixMode(int mode) {
+        mDelegate.glMatrixMode(mode);
+    }
+
+    @Override
+    public void glLoadIdentity() {
+        mDelegate.glLoadIdentity();
+    }
+
+    @Override
+    public void glLoadMatrixf(float[] matrix, int offset) {
+        mDelegate.glLoadMatrixf(matrix, offset);
+    }
+
+    @Override
+    public void glMultMatrixf(float[] matrix, int offset) {
+        mDelegate.glMultMatrixf(matrix, offset);
+    }
+
+    @Override
+    public void glPushMatrix() {
+        mDelegate.glPushMatrix();
+    }
+
+    @Override
+    public void glPopMatrix() {
+        mDelegate.glPopMatrix();
+    }
+
+    @Override
+    public void glTranslatef(float x, float y, float z) {
+        mDelegate.glTranslatef(x, y, z);
+    }
+
+    @Override
+    public void glScalef(float x, float y, float z) {
+        mDelegate.glScalef(x, y, z);
+    }
+
+    @Override
+    public void glFrustumf(float left, float right, float bottom, float top, float zNear, float zFar) {
+        mDelegate.glFrustumf(left, right, bottom, top, zNear, zFar);
+    }
+
+    @Override
+    public void glLightModelfv(int parameter, float[] values, int offset) {
+        mDelegate.glLightModelfv(parameter, values, offset);
+    }
+
+    @Override
+    public void glLightModelx(int parameter, int value) {
+        mDelegate.glLightModelx(parameter, value);
+    }
+
+    @Override
+    public void glGenTextures(int count, int[] textures, int offset) {
+        mDelegate.glGenTextures(count, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int count, int[] textures, int offset) {
+        mDelegate.glDeleteTextures(count, textures, offset);
+        for (int i = 0; i < count; i++) {
+            onTextureDeleted(textures[offset + i]);
+        }
+    }
+
+    @Override
+    public void glTexParameterx(int target, int parameter, int value) {
+        mDelegate.glTexParameterx(target, parameter, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        mDelegate.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int format, int type, Buffer pixels) {
+        mDelegate.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int imageSize, Buffer data) {
+        mDelegate.glCompressedTexImage2D(target, level, internalFormat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public void glPixelStorei(int parameter, int value) {
+        mDelegate.glPixelStorei(parameter, value);
+    }
+
+    @Override
+    public void glGenBuffers(int count, int[] buffers, int offset) {
+        mDelegate.glGenBuffers(count, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int count, int[] buffers, int offset) {
+        mDelegate.glDeleteBuffers(count, buffers, offset);
+        for (int i = 0; i < count; i++) {
+            onBufferDeleted(buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mDelegate.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, int offset) {
+        mDelegate.glVertexPointer(size, type, stride, offset);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+        mDelegate.glVertexPointer(size, type, stride, pointer);
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, int offset) {
+        mDelegate.glNormalPointer(type, stride, offset);
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, Buffer pointer) {
+        mDelegate.glNormalPointer(type, stride, pointer);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, int offset) {
+        mDelegate.glTexCoordPointer(size, type, stride, offset);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, Buffer pointer) {
+        mDelegate.glTexCoordPointer(size, type, stride, pointer);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mDelegate.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        mDelegate.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public int glGetError() {
+        return mDelegate.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int parameter, int[] values, int offset) {
+        mDelegate.glGetIntegerv(parameter, values, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return mDelegate.glGetString(name);
+    }
+
+    @Override
+    public void glFinish() {
+        mDelegate.glFinish();
+    }
+
+    /**
+     * @return index of the texture unit, or -1 if it is unknown or not tracked
+     */
+    private static int textureUnit(int texture) {
+        int unit = texture == UNKNOWN ? -1 : texture - GLES11.GL_TEXTURE0;
+        return unit >= 0 && unit < MAX_TEXTURE_UNITS ? unit : -1;
+    }
+
+    private int lightSlot(int light, int parameter) {
+        int index = light - GLES11.GL_LIGHT0;
+        int slot  = indexOf(LIGHT_PARAMETERS, parameter);
+        if (index < 0 || index >= MAX_LIGHTS || slot < 0) {
+            return -1;
+        }
+        return index * LIGHT_PARAMETERS.length + slot;
+    }
+
+    private static int vectorSize(int parameter) {
+        switch (parameter) {
+        case GLES11.GL_SPOT_DIRECTION:
+            return 3;
+        case GLES11.GL_SPOT_EXPONENT:
+        case GLES11.GL_SPOT_CUTOFF:
+        case GLES11.GL_CONSTANT_ATTENUATION:
+        case GLES11.GL_LINEAR_ATTENUATION:
+        case GLES11.GL_QUADRATIC_ATTENUATION:
+        case GLES11.GL_SHININESS:
+            return 1;
+        default:
+            return VECTOR_SIZE;
+        }
+    }
+
+    /**
+     * 比较并更新缓存的参数值
+     * @return true if the cached value was known and equal, so the call is redundant
+     */
+    private static boolean updateVector(float[] cache, boolean[] valid, int slot, float[] values, int offset, int size) {
+        int     base  = slot * VECTOR_SIZE;
+        boolean equal = valid[slot];
+        for (int i = 0; i < size; i++) {
+            if (cache[base + i] != values[offset + i]) {
+                equal = false;
+                cache[base + i] = values[offset + i];
+            }
+        }
+        valid[slot] = true;
+        return equal;
+    }
+
+    private static boolean updateScalar(float[] cache, boolean[] valid, int slot, float value) {
+        int     base  = slot * VECTOR_SIZE;
+        boolean equal = valid[slot] && cache[base] == value;
+        cache[base] = value;
+        valid[slot] = true;
+        return equal;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void issued() {
+        mFrameIssued++;
+        mTotalIssued++;
+    }
+
+    private void skipped() {
+        mFrameSkipped++;
+        mTotalSkipped++;
+    }
+
+    public int getFrameIssuedStateCalls() {
+        return mFrameIssued;
+    }
+
+    public int getFrameSkippedStateCalls() {
+        return mFrameSkipped;
+    }
+
+    public long getTotalIssuedStateCalls() {
+        return mTotalIssued;
+    }
+
+    public long getTotalSkippedStateCalls() {
+        return mTotalSkipped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GLStateCache[state calls this frame: %d issued, %d skipped; total: %d issued, %d skipped]",
+                mFrameIssued, mFrameSkipped, mTotalIssued, mTotalSkipped);
+    }
+}
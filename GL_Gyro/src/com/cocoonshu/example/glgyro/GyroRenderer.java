@@ -1,25 +1,17 @@
 package com.cocoonshu.example.glgyro;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+import java.io.File;
+import java.util.concurrent.Executor;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import android.content.res.AssetManager;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES11;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.opengl.GLSurfaceView.Renderer;
-import android.opengl.GLU;
 import android.opengl.Matrix;
-import android.os.AsyncTask;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
@@ -30,6 +22,8 @@ import android.util.Log;
 public class GyroRenderer implements Renderer {
 
     protected static final String   TAG                = "GyroRenderer";
+    private   static final boolean  DEBUG              = false;                // 调试日志开关，关闭时日志代码会被编译器移除
+    private   static final int      LOG_FRAME_INTERVAL = 300;                  // 调试日志采样间隔，每隔多少帧输出一次
     private   static final int      TEX_DIFFUSE        = 0;                    // 漫反射纹理ID索引
     private   static final int      TEX_SPECULAR       = 1;                    // 高光纹理ID索引
     private   static final int[]    TextureIndexes     = new int[] {           // 模型使用的纹理类型索引
@@ -38,144 +32,160 @@ public class GyroRenderer implements Renderer {
     private   static final String[] TextureFiles       = new String[] {        // 模型贴图文件
         "tex_gyro_diffuse.png"                                                 //   - 漫反射贴图文件
     };
+    private   static final int[]    TexturePriorities  = new int[] {           // 模型贴图的加载优先级
+        AssetLoader.PRIORITY_HIGH                                              //   - 漫反射贴图最先显示
+    };
+    private   static final String   ETC1_EXTENSION     = "GL_OES_compressed_ETC1_RGB8_texture"; // ETC1纹理压缩扩展
+    private   static final float    SPHERE_RADIUS      = 10f;                  // 球体半径
+    private   static final int      DEFAULT_MESH_LOD   = SphereMeshGenerator.LOD_MEDIUM; // 默认的球体网格精度等级
+    private   static final int      DEFAULT_MESH_ORDER = SphereMeshGenerator.ORDER_OPTIMIZED; // 默认的球体网格索引顺序
     
-    private GLSurfaceView mHostView                   = null;                  // 使用此渲染器的GLSurfaceView
-    private BitmapLoader  mBitmapLoader               = null;                  // 图片异步加载器
-    private FloatBuffer   mSphereVertexBuffer         = null;                  // 球体的顶点
-    private FloatBuffer   mSphereTexcoordsBuffer      = null;                  // 球体的贴图坐标
-    private FloatBuffer   mSphereNormalBuffer         = null;                  // 球体法线数据
-    private ShortBuffer   mSphereIndiceBuffer         = null;                  // 球体的顶点索引
-    private int           mTextureSize                = TextureFiles.length;   // 模型纹理数量
-    private int           mMaxTextureUnitSize         = 1;                     // 可用的纹理单元数量
-    private int[]         mTextureIDs                 = new int[mTextureSize]; // 图片的纹理ID集合
-    private float[]       mCurrentAltittudeMatrix     = new float[32];         // 球体姿态矩阵
-    private float[]       mAltittudeMatrix            = new float[16];         // 球体姿态矩阵
-    private float[]       mCalibrationAltittudeMatrix = new float[16];         // 矫正球体姿态矩阵
-    private float         mSlerpDamping               = 3F-1F;                 // 姿态插值阻尼
-    private float         mSlerpThreshold             = 1F-3F;                 // 姿态插值阻尼阈值
-    private float[]       mCurrentSlerpVector         = null;                  // 当前姿态插值向量
-    private float[]       mTargetSlerpVector          = null;                  // 目标姿态插值向量
-    private float[]       mSlerpAxis                  = null;                  // 姿态向量插值转轴
-    private float[]       mLightPosition              = null;                  // 光源位置
-    private float[]       mLightAmbient               = null;                  // 光源环境光颜色
-    private float[]       mLightDiffuse               = null;                  // 光源散射光颜色
-    private float[]       mLightSpecular              = null;                  // 光源镜面光颜色
-    private float[]       mLightDirection             = null;                  // 光源方向
-    private float         mLightCutOff                = 0;                     // 光源椎角
-    private float         mLightExponent              = 0;                     // 光源椎角衰减度
-    private float         mLightConstantAttenuation   = 0;                     // 光源距离常量衰减比
-    private float         mLightLinearAttenuation     = 0;                     // 光源距离一次衰减比
-    private float         mLightQuadraticAttenuation  = 0;                     // 光源距离二次衰减比
-    private float[]       mAmbientColor               = null;                  // 材质环境色
-    private float[]       mDiffuseColor               = null;                  // 材质散射色
-    private float[]       mSpecularColor              = null;                  // 材质高光色
-    private float         mShininess                  = 0;                     // 材质镜面度
+    private Executor         mGLThread                   = null;                   // 把任务抛到GLSurfaceView的GLThread中执行
+    private GLResourceManager mResources                 = null;                   // 显存中的纹理和网格，EGL上下文丢失后负责恢复
+    private RenderScheduler  mRenderScheduler            = null;                   // 按垂直同步合并重绘请求的调度器
+    private GLStateCache     mGL                         = null;                   // 所有GL调用都经过的状态缓存，过滤冗余的状态调用
+    private float[]          mViewMatrix                 = new float[16];          // 摄像机的视图矩阵
+    private int              mLogFrameCounter            = 0;                      // 调试日志的帧计数
+    private InterleavedMesh  mSphereMesh                 = null;                   // 球体的交错顶点数据和顶点索引
+    private int              mMeshLevelOfDetail          = DEFAULT_MESH_LOD;       // 球体网格的精度等级
+    private int              mMeshIndexOrder             = DEFAULT_MESH_ORDER;     // 球体网格的索引顺序
+    private VertexFormat     mMeshVertexFormat           = VertexFormat.FLOAT;     // 球体网格的顶点格式
+    private File             mMeshCacheDir               = null;                   // 网格缓存目录
+    private int              mTextureSize                = TextureFiles.length;    // 模型纹理数量
+    private int              mMaxTextureUnitSize         = 1;                      // 可用的纹理单元数量
+    private boolean          mEtc1Supported              = false;                  // 是否支持ETC1压缩纹理，不支持时解压为RGB565上传
+    private float[]          mCurrentAltittudeMatrix     = new float[16];          // 球体模型矩阵：当前姿态的逆与矫正姿态的复合
+    private PoseTripleBuffer mAltittudeBuffer            = new PoseTripleBuffer(); // 传感器线程与GLThread之间无锁交换的设备姿态，按RigidTransform.pack()排列
+    private RigidTransform   mSensorPose                 = new RigidTransform();   // 设备姿态，只由传感器线程访问
+    private RigidTransform   mCurrentPose                = new RigidTransform();   // 插值后的设备姿态
+    private RigidTransform   mCalibrationPose            = new RigidTransform();   // 矫正球体姿态
+    private ReferencePoseEstimator mReferencePose        = new ReferencePoseEstimator(); // 最近一段时间的设备姿态的去抖平均，只由传感器线程访问
+    private PoseTripleBuffer mReferenceBuffer            = new PoseTripleBuffer(); // 传感器线程与GLThread之间无锁交换的去抖平均姿态，按RigidTransform.pack()排列
+    private RigidTransform   mReferenceTransform         = new RigidTransform();   // 去抖平均姿态，只由传感器线程访问
+    private float[]          mSensorQuaternion           = new float[4];           // 设备姿态四元数，只由传感器线程访问
+    private float[]          mReferenceQuaternion        = new float[4];           // 去抖平均姿态四元数，只由传感器线程访问
+    private volatile float   mReferenceSpread            = 0;                      // 去抖窗口的均方根夹角(rad)，供性能浮层读取
+    private volatile boolean mReferenceStable            = false;                  // 去抖窗口是否稳定，供性能浮层读取
+    private volatile boolean mAutoCalibrationRequested   = false;                  // 是否请求传感器线程清空去抖窗口并开始等待稳定
+    private boolean          mAutoCalibrationPending     = false;                  // 是否在设备姿态稳定后自动记录矫正姿态，只由传感器线程访问
+    private Runnable         mApplyCalibrationTask       = null;                   // 在GLThread中记录矫正姿态的任务
+    private RigidTransform   mModelPose                  = new RigidTransform();   // 球体模型变换
+    private InstanceBatch    mInstanceBatch              = null;                   // 多实例模式下的实例集合，只由GLThread访问，为null时只绘制单个球体
+    private int[]            mInstanceTextureIDs         = new int[TextureIndexes.length]; // 多实例模式下各纹理槽的纹理ID
+    private float[]          mFrustum                    = new float[] {-1, 1, -1, 1, 0.1f, 100f}; // 透视视景体{左, 右, 下, 上, 近, 远}
+    private boolean          mSlerpEnabled               = true;                   // 是否开启姿态插值
+    private PoseSmoother     mPoseSmoother               = new PoseSmoother();     // 与帧率无关的姿态插值
+    private long             mLastFrameTimeNs            = 0;                      // 上一帧的绘制时间(ns)
+    private long             mFramePoseTimestampNs       = 0;                      // 本帧新取得的姿态的传感器时间戳(ns)，0表示本帧没有新姿态
+    private LatencyHistogram mLatencyHistogram           = new LatencyHistogram(); // 从传感器样本到使用它绘制完一帧的延迟
+    private FrameProfiler    mFrameProfiler              = new FrameProfiler();    // 每帧各阶段的耗时
+    private volatile boolean mGpuTimingEnabled           = false;                  // 是否在每帧末尾调用glFinish()测量GPU耗时
+    private float[]          mLightPosition              = null;                   // 光源位置
+    private float[]          mLightAmbient               = null;                   // 光源环境光颜色
+    private float[]          mLightDiffuse               = null;                   // 光源散射光颜色
+    private float[]          mLightSpecular              = null;                   // 光源镜面光颜色
+    private float[]          mLightDirection             = null;                   // 光源方向
+    private float            mLightCutOff                = 0;                      // 光源椎角
+    private float            mLightExponent              = 0;                      // 光源椎角衰减度
+    private float            mLightConstantAttenuation   = 0;                      // 光源距离常量衰减比
+    private float            mLightLinearAttenuation     = 0;                      // 光源距离一次衰减比
+    private float            mLightQuadraticAttenuation  = 0;                      // 光源距离二次衰减比
+    private float[]          mAmbientColor               = null;                   // 材质环境色
+    private float[]          mDiffuseColor               = null;                   // 材质散射色
+    private float[]          mSpecularColor              = null;                   // 材质高光色
+    private float            mShininess                  = 0;                      // 材质镜面度
     
     public GyroRenderer(GLSurfaceView hostView) {
+        this(hostView, new GLES11Api());
+    }
+    
+    /**
+     * Create a renderer issuing its GL calls through the given API
+     * @param hostView GLSurfaceView using this renderer
+     * @param api      GL backend
+     */
+    public GyroRenderer(final GLSurfaceView hostView, GLApi api) {
         // 我们传入使用此渲染器的GLSurfaceView引用，主要是为了能够
         // GLSurfaceView的queue(Runnable)方法，这个方法能够把Runnable
         // 放置在OpenGLES所在的GLThread线程中执行
-        mHostView     = hostView;
-        mBitmapLoader = new BitmapLoader(mHostView.getResources(), this);
+        this(new Executor() {
+            
+            @Override
+            public void execute(Runnable task) {
+                hostView.queueEvent(task);
+            }
+        }, new RenderScheduler(hostView), api,
+                new AssetLoader(hostView.getContext().getAssets(), new BitmapPool(GLResourceManager.DEFAULT_POOL_BYTES)),
+                hostView.getContext().getCacheDir());
+    }
+    
+    /**
+     * Create a renderer without a GLSurfaceView, e.g. to replay its GL calls
+     * on a RecordingGLApi in JVM tests
+     * @param glThread        executor running tasks on the GL thread
+     * @param renderScheduler scheduler requesting the frames
+     * @param api             GL backend
+     * @param assetLoader     loader of the textures
+     * @param meshCacheDir    directory of the mesh cache, null to always generate the mesh
+     */
+    GyroRenderer(Executor glThread, RenderScheduler renderScheduler, GLApi api, AssetLoader assetLoader,
+            File meshCacheDir) {
+        mGLThread        = glThread;
+        mRenderScheduler = renderScheduler;
+        mMeshCacheDir    = meshCacheDir;
+        mGL              = new GLStateCache(api);
+        mResources       = new GLResourceManager(mGLThread, mRenderScheduler, mGL, assetLoader,
+                TextureFiles, TexturePriorities, GLResourceManager.DEFAULT_CACHE_BYTES);
+        
+        // 摄像机的姿态固定，视图矩阵只需要计算一次
+        Matrix.setLookAtM(mViewMatrix, 0,
+                0.0f, 0.0f, 30.0f,                                        //   - 摄像机的位置
+                0.0f, 0.0f, 0.0f,                                         //   - 摄像机拍摄的点
+                0.0f, 1.0f, 0.0f);                                        //   - 摄像机顶部的朝向
         
         // 初始化球体姿态矩阵
         identityAltittudeMatrix();
-        // 准备模型数据
-        buildMesh();
+        // 准备记录矫正姿态的任务，传感器线程在姿态稳定时直接投递，不需要每次分配
+        initializeCalibrationTask();
+        // 准备光照和材质
+        setupLightAndMaterial();
     }
     
     /**
      * 初始化球体姿态矩阵
      */
     private void identityAltittudeMatrix() {
-        mCurrentSlerpVector = new float[] {0.0f, 1.0f, 0.0f, 1.0f};
-        mTargetSlerpVector  = new float[] {0.0f, 1.0f, 0.0f, 1.0f};
-        mSlerpAxis          = new float[] {0.0f, 1.0f, 0.0f, 1.0f};
-        Matrix.setIdentityM(mCalibrationAltittudeMatrix, 0);
-        Matrix.rotateM(mCalibrationAltittudeMatrix, 0, 90.0f, 1.0f, 0.0f, 0.0f);
-        Matrix.setIdentityM(mCurrentAltittudeMatrix, 0);
-        Matrix.setIdentityM(mCurrentAltittudeMatrix, 16);
-        synchronized (mAltittudeMatrix) {
-            Matrix.setIdentityM(mAltittudeMatrix, 0);
-        }
+        mPoseSmoother.reset();
+        mCalibrationPose.setAxisAngle(90.0f, 1.0f, 0.0f, 0.0f);
+        mCurrentPose.setIdentity();
+        mModelPose.setProduct(mCurrentPose, mCalibrationPose).toMatrix(mCurrentAltittudeMatrix);
+        float[] identityPose = new float[PoseTripleBuffer.POSE_SIZE];
+        mCurrentPose.pack(identityPose, 0);
+        mAltittudeBuffer.reset(identityPose);
+        mReferenceBuffer.reset(identityPose);
     }
 
     /**
-     * 创建模型数据
+     * 准备在GLThread中记录矫正姿态的任务
      */
-    private void buildMesh() {
-        int     latitudeBands    = 60;  // 纬线
-        int     longitudeBands   = 60;  // 经线
-        float   radio            = 10f; // 球体半径
-
-        int     vpdItr           = 0; // VertexPosData迭代器
-        int     nmdItr           = 0; // NormalData迭代器
-        int     tcdItr           = 0; // TextureCoordData迭代器
-        int     idxItr           = 0; // IndexData迭代器
-        int     unitDataSize     = (latitudeBands + 1) * (longitudeBands + 1);
-        float[] vertexPosData    = new float[3 * unitDataSize]; // 顶点坐标
-        float[] normalData       = new float[3 * unitDataSize]; // 单位向量
-        float[] textureCoordData = new float[2 * unitDataSize]; // 贴图坐标
-        short[] indexData        = new short[6 * latitudeBands * longitudeBands]; // 索引向量
-        
-        // 生成地球坐标
-        for (int latNum = 0; latNum <= latitudeBands; latNum++) { // 纬线圈
-            float theta = (float) (latNum * Math.PI / latitudeBands);
-            float sinTheta = (float) Math.sin(theta);
-            float cosTheta = (float) Math.cos(theta);
-
-            for (int longNum = 0; longNum <= longitudeBands; longNum++) { // 经线圈
-                float phi = (float) (longNum * 2 * Math.PI / longitudeBands);
-                float sinPhi = (float) Math.sin(phi);
-                float cosPhi = (float) Math.cos(phi);
-
-                float x = cosPhi * sinTheta;
-                float y = cosTheta;
-                float z = sinPhi * sinTheta;
-                float u = 1f - ((float) longNum / (float) longitudeBands);
-                float v = ((float) latNum / (float) latitudeBands);
-
-                normalData[nmdItr] = x;
-                nmdItr++;
-                normalData[nmdItr] = y;
-                nmdItr++;
-                normalData[nmdItr] = z;
-                nmdItr++;
-                textureCoordData[tcdItr] = u;
-                tcdItr++;
-                textureCoordData[tcdItr] = v;
-                tcdItr++;
-                vertexPosData[vpdItr] = radio * x;
-                vpdItr++;
-                vertexPosData[vpdItr] = radio * y;
-                vpdItr++;
-                vertexPosData[vpdItr] = radio * z;
-                vpdItr++;
+    private void initializeCalibrationTask() {
+        mApplyCalibrationTask = new Runnable() {
+            
+            @Override
+            public void run() {
+                // 模型矩阵为当前姿态的逆乘以矫正姿态，矫正姿态取当前姿态本身即可抵消，不需要求逆；
+                // 使用传感器线程发布的去抖平均姿态，还没有姿态时与设备姿态一样是单位姿态
+                mReferenceBuffer.acquire();
+                mCalibrationPose.unpack(mReferenceBuffer.front(), 0);
+                mRenderScheduler.requestFrame();
             }
-        }
-
-        // 生成地球索引
-        for (int latNum = 0; latNum < latitudeBands; latNum++) {
-            for (int longNum = 0; longNum < longitudeBands; longNum++) {
-                int first = (latNum * (longitudeBands + 1)) + longNum;
-                int second = first + longitudeBands + 1;
-
-                indexData[idxItr] = (short) first;
-                idxItr++;
-                indexData[idxItr] = (short) second;
-                idxItr++;
-                indexData[idxItr] = (short) (first + 1);
-                idxItr++;
+        };
+    }
 
-                indexData[idxItr] = (short) second;
-                idxItr++;
-                indexData[idxItr] = (short) (second + 1);
-                idxItr++;
-                indexData[idxItr] = (short) (first + 1);
-                idxItr++;
-            }
-        }
-        
+    /**
+     * 设置光照和材质参数
+     */
+    private void setupLightAndMaterial() {
         mLightPosition              = new float[] {10.0f, 10.0f, 30.0f, 1.0f};
         mLightAmbient               = new float[] {0.2f, 0.2f, 0.2f, 1.0f};
         mLightDiffuse               = new float[] {0.7f, 0.7f, 0.7f, 1.0f};
@@ -191,75 +201,100 @@ public class GyroRenderer implements Renderer {
         mDiffuseColor               = new float[] {0.8f, 0.8f, 0.8f, 1.0f};
         mSpecularColor              = new float[] {1.0f, 1.0f, 1.0f, 1.0f};
         mShininess                  = 6.0f;
-        
-        // 组装成Buffer
-        {// 顶点Buffer
-            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(vertexPosData.length * Float.SIZE / 8);
-            byteBuffer.order(ByteOrder.nativeOrder());
-            mSphereVertexBuffer = byteBuffer.asFloatBuffer();
-            mSphereVertexBuffer.put(vertexPosData);
-            mSphereVertexBuffer.rewind();
-        }
-        {// 贴图坐标Buffer
-            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(textureCoordData.length * Float.SIZE / 8);
-            byteBuffer.order(ByteOrder.nativeOrder());
-            mSphereTexcoordsBuffer = byteBuffer.asFloatBuffer();
-            mSphereTexcoordsBuffer.put(textureCoordData);
-            mSphereTexcoordsBuffer.rewind();
+    }
+    
+    /**
+     * 准备球体网格：优先以内存映射的方式读取缓存，没有缓存时再生成并写入缓存，
+     * 在GLThread中执行，避免在UI线程中做大量的三角函数计算
+     */
+    private void loadMesh() {
+        if (mSphereMesh != null) {
+            return;
         }
-        {// 法线Buffer
-            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(normalData.length * Float.SIZE / 8);
-            byteBuffer.order(ByteOrder.nativeOrder());
-            mSphereNormalBuffer = byteBuffer.asFloatBuffer();
-            mSphereNormalBuffer.put(normalData);
-            mSphereNormalBuffer.rewind();
+        
+        long                startTime = System.nanoTime();
+        SphereMeshGenerator generator = SphereMeshGenerator.forLevelOfDetail(mMeshLevelOfDetail, SPHERE_RADIUS)
+                                                           .setIndexOrder(mMeshIndexOrder)
+                                                           .setVertexFormat(mMeshVertexFormat);
+        int                 cacheKey  = MeshCache.sphereKey(generator);
+        File                cacheFile = mMeshCacheDir == null ? null : new File(mMeshCacheDir,
+                String.format("sphere_%dx%d_%d_%d.mesh", generator.getLatitudeBands(), generator.getLongitudeBands(),
+                        generator.getIndexOrder(), mMeshVertexFormat.getId()));
+        boolean             fromCache = true;
+        
+        mSphereMesh = MeshCache.load(cacheFile, cacheKey);
+        if (mSphereMesh == null) {
+            fromCache   = false;
+            mSphereMesh = generator.generate();
+            if (cacheFile != null) {
+                MeshCache.save(cacheFile, cacheKey, mSphereMesh);
+            }
         }
-        {// 顶点索引Buffer
-            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(indexData.length * Short.SIZE / 8);
-            byteBuffer.order(ByteOrder.nativeOrder());
-            mSphereIndiceBuffer = byteBuffer.asShortBuffer();
-            mSphereIndiceBuffer.put(indexData);
-            mSphereIndiceBuffer.rewind();
+        if (mSphereMesh.getFormat() != mMeshVertexFormat) {
+            Log.w(TAG, String.format("[loadMesh] %s exceeds its error bounds, fallback to %s",
+                    mMeshVertexFormat, mSphereMesh.getFormat()));
         }
+        Log.i(TAG, String.format("[loadMesh] %d vertices of %s, %d indices, %d chunks, %d bytes, %s in %.2fms",
+                mSphereMesh.getVertexCount(), mSphereMesh.getFormat(), mSphereMesh.getIndexCount(),
+                mSphereMesh.getChunkCount(), mSphereMesh.getVertexDataSize() + mSphereMesh.getIndexDataSize(),
+                fromCache ? "mapped from cache" : "generated",
+                (System.nanoTime() - startTime) / 1E6));
     }
-
+    
     /**
      * 初始化OpenGLES： 设置OpenGLES中的各种开关和初始值
      */
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        // 新的EGL上下文中所有状态都是默认值，之前缓存的状态全部失效
+        mGL.invalidate();
+        
         // 功能性设置
-        GLES11.glEnable(GLES11.GL_DEPTH_TEST);                                  // 开启深度测试，如果我们绘制的东西有远近层次之分，就开启它
-        GLES11.glDisable(GLES11.GL_ALPHA_TEST);                                 // 关闭透明测试，如果我们需要通过对比模型的透明度来觉得是否绘制它，就开启它
-        GLES11.glDisable(GLES11.GL_STENCIL_TEST);                               // 关闭模板测试，如果我们需要用蒙版来遮盖某些绘制部分，就开启它
-        GLES11.glDisable(GLES11.GL_BLEND);                                      // 关闭颜色混合，如果我们需要使绘制的半透明模型有颜色的混合效果，就开启它
-        GLES11.glEnable(GLES11.GL_DITHER);                                      // 开启颜色抖动，如果是要显示图片，开启它，显示的颜色数量会更丰富
-        GLES11.glEnable(GLES11.GL_TEXTURE_2D);                                  // 开启贴图功能，如果我们要使用贴图纹理，就开启它
-        GLES11.glEnable(GLES11.GL_LIGHTING);                                    // 关闭光照效果，如果想要在模型表面呈现出光照的明暗变化，就开启它
-        GLES11.glDisable(GLES11.GL_FOG);                                        // 关闭雾霾效果，如果想要在场景中绘制出雾霾的效果，就开启它
+        mGL.glEnable(GLES11.GL_DEPTH_TEST);                                     // 开启深度测试，如果我们绘制的东西有远近层次之分，就开启它
+        mGL.glDisable(GLES11.GL_ALPHA_TEST);                                    // 关闭透明测试，如果我们需要通过对比模型的透明度来觉得是否绘制它，就开启它
+        mGL.glDisable(GLES11.GL_STENCIL_TEST);                                  // 关闭模板测试，如果我们需要用蒙版来遮盖某些绘制部分，就开启它
+        mGL.glDisable(GLES11.GL_BLEND);                                         // 关闭颜色混合，如果我们需要使绘制的半透明模型有颜色的混合效果，就开启它
+        mGL.glEnable(GLES11.GL_DITHER);                                         // 开启颜色抖动，如果是要显示图片，开启它，显示的颜色数量会更丰富
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);                                // GL_TEXTURE_2D开关属于当前激活的纹理单元
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);                                     // 开启贴图功能，如果我们要使用贴图纹理，就开启它
+        mGL.glEnable(GLES11.GL_LIGHTING);                                       // 关闭光照效果，如果想要在模型表面呈现出光照的明暗变化，就开启它
+        mGL.glDisable(GLES11.GL_FOG);                                           // 关闭雾霾效果，如果想要在场景中绘制出雾霾的效果，就开启它
         
         // 默认值设置
-        GLES11.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);                            // 设置清除颜色缓冲的色值，它会是视窗的清屏颜色
-        GLES11.glClearDepthf(1.0f);                                             // 设置清除深度缓冲的深度值，它会是深度缓冲的默认深度值
-        GLES11.glDepthRangef(0.1f, 100.0f);                                     // 设置深度缓冲的深度范围
+        mGL.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);                               // 设置清除颜色缓冲的色值，它会是视窗的清屏颜色
+        mGL.glClearDepthf(1.0f);                                                // 设置清除深度缓冲的深度值，它会是深度缓冲的默认深度值
+        mGL.glDepthRangef(0.1f, 100.0f);                                        // 设置深度缓冲的深度范围
         
         // 绘图效果设置
-        GLES11.glHint(GLES11.GL_PERSPECTIVE_CORRECTION_HINT, GLES11.GL_NICEST); // 设置透视矫正配置为：质量最好
-        GLES11.glHint(GLES11.GL_POINT_SMOOTH_HINT, GLES11.GL_NICEST);           // 设置点绘制平滑度配置为：质量最好
-        GLES11.glHint(GLES11.GL_LINE_SMOOTH_HINT, GLES11.GL_NICEST);            // 设置线条绘制平滑度配置为：质量最好
-        GLES11.glHint(GLES11.GL_POLYGON_SMOOTH_HINT, GLES11.GL_DONT_CARE);      // 设置模型绘制平滑度配置为：自动
+        mGL.glHint(GLES11.GL_PERSPECTIVE_CORRECTION_HINT, GLES11.GL_NICEST);    // 设置透视矫正配置为：质量最好
+        mGL.glHint(GLES11.GL_POINT_SMOOTH_HINT, GLES11.GL_NICEST);              // 设置点绘制平滑度配置为：质量最好
+        mGL.glHint(GLES11.GL_LINE_SMOOTH_HINT, GLES11.GL_NICEST);               // 设置线条绘制平滑度配置为：质量最好
+        mGL.glHint(GLES11.GL_POLYGON_SMOOTH_HINT, GLES11.GL_DONT_CARE);         // 设置模型绘制平滑度配置为：自动
         
         // 全局光照效果设置
-        GLES11.glLightModelfv(GLES11.GL_LIGHT_MODEL_AMBIENT, mAmbientColor, 0); // 设置环境光颜色
-        GLES11.glLightModelx (GLES11.GL_LIGHT_MODEL_TWO_SIDE, GLES11.GL_FALSE); // 设置双面照明
+        mGL.glLightModelfv(GLES11.GL_LIGHT_MODEL_AMBIENT, mAmbientColor, 0);    // 设置环境光颜色
+        mGL.glLightModelx (GLES11.GL_LIGHT_MODEL_TWO_SIDE, GLES11.GL_FALSE);    // 设置双面照明
         
         // 获得硬件参数
         int[] integerValue = new int[1];
-        GLES11.glGetIntegerv(GLES11.GL_MAX_TEXTURE_UNITS, integerValue, 0);     // 获取可用的纹理单元数量
+        mGL.glGetIntegerv(GLES11.GL_MAX_TEXTURE_UNITS, integerValue, 0);        // 获取可用的纹理单元数量
         mMaxTextureUnitSize = integerValue[0];
+        mGL.glGetIntegerv(GLES11.GL_MAX_TEXTURE_SIZE, integerValue, 0);         // 获取纹理的最大边长
+        int maxTextureSize = integerValue[0];
+        String extensions = mGL.glGetString(GLES11.GL_EXTENSIONS);              // 获取支持的扩展列表
+        mEtc1Supported = extensions != null && extensions.contains(ETC1_EXTENSION);
 
-        // 开始加载图片并上传纹理
-        mBitmapLoader.execute(TextureFiles);
+        // 准备模型数据，然后恢复显存中缺失的网格和纹理：网格直接上传，
+        // 纹理优先从已解码的像素缓存中上传，未命中的才在后台重新加载
+        loadMesh();
+        mResources.setMesh(mSphereMesh);
+        mResources.onContextCreated(mEtc1Supported, maxTextureSize);
+        
+        // 整数格式的贴图坐标不会被归一化，由纹理矩阵缩放回[0, 1]
+        mGL.glMatrixMode(GLES11.GL_TEXTURE);
+        mGL.glLoadIdentity();
+        mGL.glScalef(mSphereMesh.getTexcoordScale(), mSphereMesh.getTexcoordScale(), 1.0f);
+        mGL.glMatrixMode(GLES11.GL_MODELVIEW);
     }
 
     /**
@@ -268,7 +303,7 @@ public class GyroRenderer implements Renderer {
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         // 设置视窗
-        GLES11.glViewport(0, 0, width, height);                           // 设置视窗尺寸为控件大小
+        mGL.glViewport(0, 0, width, height);                              // 设置视窗尺寸为控件大小
         
         // 设置投影矩阵
         float fovy             = (float) Math.toRadians(60);              // 视野角度为120°
@@ -277,12 +312,21 @@ public class GyroRenderer implements Renderer {
         float aspectRatio      = (float) width / (float) height;          // 计算视窗的显示比例
         float horizontalVolume = (float) (zNear * Math.tan(fovy * 0.5f)); // 计算视景体的宽度
         float verticalVolume   = horizontalVolume / aspectRatio;          // 计算视景体的高度
-        GLES11.glMatrixMode(GLES11.GL_PROJECTION);                        // 把当前的操作矩阵切换到投影矩阵
-        GLES11.glLoadIdentity();                                          // 把当前的操作矩阵重置为单位矩阵
-        GLES11.glFrustumf(                                                // 设置投影矩阵为透视投影:
+        mGL.glMatrixMode(GLES11.GL_PROJECTION);                           // 把当前的操作矩阵切换到投影矩阵
+        mGL.glLoadIdentity();                                             // 把当前的操作矩阵重置为单位矩阵
+        mGL.glFrustumf(                                                   // 设置投影矩阵为透视投影:
                 -horizontalVolume, horizontalVolume,                      //   - 透视视景体的左右边位置
                 -verticalVolume, verticalVolume,                          //   - 透视视景体的上下边位置
                 zNear, zFar);                                             //   - 透视视景体的前后边位置
+        
+        // 记录视景体，多实例模式用它剔除视野外的实例
+        mFrustum[0] = -horizontalVolume;
+        mFrustum[1] = horizontalVolume;
+        mFrustum[2] = -verticalVolume;
+        mFrustum[3] = verticalVolume;
+        mFrustum[4] = zNear;
+        mFrustum[5] = zFar;
+        applyInstanceFrustum();
     }
     
     /**
@@ -290,217 +334,418 @@ public class GyroRenderer implements Renderer {
      */
     @Override
     public void onDrawFrame(GL10 gl) {
+        // 计算帧间隔，用于与帧率无关的姿态插值
+        long  frameTimeNs = System.nanoTime();
+        float deltaTime   = mLastFrameTimeNs == 0 ? PoseSmoother.FRAME_TIME : (frameTimeNs - mLastFrameTimeNs) * 1E-9F;
+        mLastFrameTimeNs  = frameTimeNs;
+        
+        // 开始统计本帧的GL状态调用和各阶段耗时
+        mGL.beginFrame();
+        mFrameProfiler.beginFrame();
+        
         // 重置颜色缓存和深度缓冲
-        GLES11.glClear(GLES11.GL_COLOR_BUFFER_BIT | GLES11.GL_DEPTH_BUFFER_BIT);
+        mGL.glClear(GLES11.GL_COLOR_BUFFER_BIT | GLES11.GL_DEPTH_BUFFER_BIT);
         
         // 设置视图矩阵
-        GLES11.glMatrixMode(GLES11.GL_MODELVIEW);                         // 把当前的操作矩阵切换到模型视图矩阵
-        GLES11.glLoadIdentity();                                          // 把当前的操作矩阵重置为单位矩阵
-        GLU.gluLookAt(gl,                                                 // 设置摄像机的姿态：
-                0.0f, 0.0f, 30.0f,                                        //   - 摄像机的位置
-                0.0f, 0.0f, 0.0f,                                         //   - 摄像机拍摄的点
-                0.0f, 1.0f, 0.0f);                                        //   - 摄像机顶部的朝向
+        mGL.glMatrixMode(GLES11.GL_MODELVIEW);                            // 把当前的操作矩阵切换到模型视图矩阵
+        mGL.glLoadMatrixf(mViewMatrix, 0);                                // 设置摄像机的姿态
         
-        // 设置#0光照单元
-        GLES11.glEnable(GLES11.GL_LIGHT0);
-        GLES11.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_POSITION, mLightPosition, 0);                       // 设置光源的位置
-        GLES11.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_AMBIENT, mLightAmbient, 0);                         // 设置光源的环境光色
-        GLES11.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_DIFFUSE, mLightDiffuse, 0);                         // 设置光源的散射光色
-        GLES11.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_SPECULAR, mLightSpecular, 0);                       // 设置光源的镜面光色
-        GLES11.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_SPOT_DIRECTION, mLightDirection, 0);                // 设置光源的光照方向
-        GLES11.glLightf (GLES11.GL_LIGHT0, GLES11.GL_SPOT_CUTOFF, mLightCutOff);                         // 设置光源的光锥夹角
-        GLES11.glLightf (GLES11.GL_LIGHT0, GLES11.GL_SPOT_EXPONENT, mLightExponent);                     // 设置光源的光锥衰减
-        GLES11.glLightf (GLES11.GL_LIGHT0, GLES11.GL_CONSTANT_ATTENUATION, mLightConstantAttenuation);   // 设置光源的常量衰减比
-        GLES11.glLightf (GLES11.GL_LIGHT0, GLES11.GL_LINEAR_ATTENUATION, mLightLinearAttenuation);       // 设置光源的一次衰减比
-        GLES11.glLightf (GLES11.GL_LIGHT0, GLES11.GL_QUADRATIC_ATTENUATION, mLightQuadraticAttenuation); // 设置光源的二次衰减比 
+        // 设置#0光照单元：光照参数每帧都相同，除第一帧外都会被状态缓存丢弃；
+        // 光源位置在视图矩阵下提交，摄像机姿态固定，所以它也不需要每帧重新提交
+        mGL.glEnable(GLES11.GL_LIGHT0);
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_POSITION, mLightPosition, 0);                       // 设置光源的位置
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_AMBIENT, mLightAmbient, 0);                         // 设置光源的环境光色
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_DIFFUSE, mLightDiffuse, 0);                         // 设置光源的散射光色
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_SPECULAR, mLightSpecular, 0);                       // 设置光源的镜面光色
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_SPOT_DIRECTION, mLightDirection, 0);                // 设置光源的光照方向
+        mGL.glLightf (GLES11.GL_LIGHT0, GLES11.GL_SPOT_CUTOFF, mLightCutOff);                         // 设置光源的光锥夹角
+        mGL.glLightf (GLES11.GL_LIGHT0, GLES11.GL_SPOT_EXPONENT, mLightExponent);                     // 设置光源的光锥衰减
+        mGL.glLightf (GLES11.GL_LIGHT0, GLES11.GL_CONSTANT_ATTENUATION, mLightConstantAttenuation);   // 设置光源的常量衰减比
+        mGL.glLightf (GLES11.GL_LIGHT0, GLES11.GL_LINEAR_ATTENUATION, mLightLinearAttenuation);       // 设置光源的一次衰减比
+        mGL.glLightf (GLES11.GL_LIGHT0, GLES11.GL_QUADRATIC_ATTENUATION, mLightQuadraticAttenuation); // 设置光源的二次衰减比 
         
         {// 摆放并绘制模型，模型应该从远及近地绘图
             // 开启OpenGLES客户端指定网格数据的操作方式
-            // 以便从OpenGLES客户端指定网格数据来绘制模型
-            GLES11.glEnableClientState(GLES11.GL_VERTEX_ARRAY);                      // 启用OpenGLES客户端指定顶点数组的操作方式
-            GLES11.glVertexPointer(3, GLES11.GL_FLOAT, 0, mSphereVertexBuffer);      // 指定顶点数组，每3个数作为一个顶点坐标
-            GLES11.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);               // 启用OpenGLES客户端指定贴图坐标数组的操作方式
-            GLES11.glTexCoordPointer(2, GLES11.GL_FLOAT, 0, mSphereTexcoordsBuffer); // 指定贴图坐标数组，每2个数作为一个顶点坐标
-            GLES11.glEnableClientState(GLES11.GL_NORMAL_ARRAY);                      // 启用OpenGLES客户端指定法线数组的操作方式
-            GLES11.glNormalPointer(GLES11.GL_FLOAT, 0, mSphereNormalBuffer);         // 指定贴图坐标数组，每3个数作为一个法线方向
+            // 以便从VBO或OpenGLES客户端指定网格数据来绘制模型
+            boolean useVBO = mResources.getVertexBufferID() != 0;
+            mGL.glEnableClientState(GLES11.GL_VERTEX_ARRAY);        // 启用OpenGLES客户端指定顶点数组的操作方式
+            mGL.glClientActiveTexture(GLES11.GL_TEXTURE0);          // 贴图坐标数组属于当前激活的客户端纹理单元
+            mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY); // 启用OpenGLES客户端指定贴图坐标数组的操作方式
+            mGL.glEnableClientState(GLES11.GL_NORMAL_ARRAY);        // 启用OpenGLES客户端指定法线数组的操作方式
+            if (useVBO) {
+                mGL.glBindBuffer(GLES11.GL_ARRAY_BUFFER, mResources.getVertexBufferID());
+                mGL.glBindBuffer(GLES11.GL_ELEMENT_ARRAY_BUFFER, mResources.getIndexBufferID());
+            }
             
-            {// 摆放并绘制模型
-                GLES11.glPushMatrix();
+            if (mInstanceBatch != null) {// 多实例模式：剔除、排序后按纹理分组绘制所有实例
+                drawInstances();
+            } else {// 摆放并绘制模型
+                mGL.glPushMatrix();
+                    mFrameProfiler.mark(FrameProfiler.STAGE_STATE);
                     // 设置模型矩阵：
                     //   - 1. 姿态矩阵平滑插值
-                    //   - 2. 按照姿态矩阵旋转球体
+                    //   - 2. 按照姿态矩阵旋转球体，姿态的逆与矫正姿态已经复合为一个矩阵
                     //   - 3. 把长宽为(1.0f, 1.0f)的矩形片缩放到图片尺寸的宽高比
                     //   - 4. 把矩形移动到左边靠后的位置
-                    if (smoothAtittudeMatrix(false)) {
-                        if (mHostView != null) {
-                            mHostView.requestRender();
-                        }
+                    if (smoothAtittudeMatrix(mSlerpEnabled, deltaTime)) {
+                        mRenderScheduler.requestFrame();
                     } 
-                    GLES11.glTranslatef(0.0f, 0.0f, 0.0f);
-                    GLES11.glScalef(1.0f, 1.0f, 1.0f);
-                    GLES11.glMultMatrixf(mCurrentAltittudeMatrix, 0);
-                    GLES11.glMultMatrixf(mCalibrationAltittudeMatrix, 0);
+                    mFrameProfiler.mark(FrameProfiler.STAGE_POSE);
+                    mGL.glTranslatef(0.0f, 0.0f, 0.0f);
+                    mGL.glMultMatrixf(mCurrentAltittudeMatrix, 0);
+                    mGL.glScalef(mSphereMesh.getPositionScale(), mSphereMesh.getPositionScale(), mSphereMesh.getPositionScale());
+                    // 坐标缩放是等比缩放，由GL_RESCALE_NORMAL把法线恢复为单位长度；
+                    // 多实例模式会开启它，所以每帧都要按网格重新设置，相同的设置会被状态缓存丢弃
+                    if (mSphereMesh.getPositionScale() != 1.0f) {
+                        mGL.glEnable(GLES11.GL_RESCALE_NORMAL);
+                    } else {
+                        mGL.glDisable(GLES11.GL_RESCALE_NORMAL);
+                    }
     
                     // 绑定要贴到矩形上的纹理
                     for (int tex = 0; tex < mTextureSize && tex < mMaxTextureUnitSize; tex++) {
-                        GLES11.glActiveTexture(GLES11.GL_TEXTURE0);                                   // 激活#tex纹理单元
-                        GLES11.glBindTexture(GLES11.GL_TEXTURE_2D, mTextureIDs[TextureIndexes[tex]]); // 绑定第tex号纹理到#tex纹理单元
+                        mGL.glActiveTexture(GLES11.GL_TEXTURE0);                                   // 激活#tex纹理单元
+                        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, mResources.getTextureID(TextureIndexes[tex])); // 绑定第tex号纹理到#tex纹理单元
                     }
     
                     // 设置模型材质
-                    GLES11.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT,  mAmbientColor,  0); // 材质环境色
-                    GLES11.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE,  mDiffuseColor,  0); // 材质散射色
-                    GLES11.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_SPECULAR, mSpecularColor, 0); // 材质高光色
-                    GLES11.glMaterialf (GLES11.GL_FRONT_AND_BACK, GLES11.GL_SHININESS, mShininess);       // 材质光泽度
+                    mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT,  mAmbientColor,  0); // 材质环境色
+                    mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE,  mDiffuseColor,  0); // 材质散射色
+                    mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_SPECULAR, mSpecularColor, 0); // 材质高光色
+                    mGL.glMaterialf (GLES11.GL_FRONT_AND_BACK, GLES11.GL_SHININESS, mShininess);       // 材质光泽度
+                    
+                    mFrameProfiler.mark(FrameProfiler.STAGE_STATE);
                     
                     // 绘制这个模型
-                    GLES11.glDrawElements(GLES11.GL_TRIANGLES, mSphereIndiceBuffer.capacity(), GLES11.GL_UNSIGNED_SHORT, mSphereIndiceBuffer);
-                GLES11.glPopMatrix();
+                    drawMesh(mSphereMesh, useVBO);
+                    mFrameProfiler.mark(FrameProfiler.STAGE_SUBMIT);
+                mGL.glPopMatrix();
             }
             
-            // 关闭OpenGLES客户端指定网格数据的操作方式，以便做其他绘制操作，
-            // 如果没有其他绘制操作，可以一直启用这种操作方式
-            GLES11.glDisableClientState(GL10.GL_VERTEX_ARRAY);        // 关闭OpenGLES客户端指定顶点数组的操作方式
-            GLES11.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY); // 关闭OpenGLES客户端指定贴图坐标数组的操作方式
-            GLES11.glDisableClientState(GLES11.GL_NORMAL_ARRAY);      // 关闭OpenGLES客户端指定法线数组的操作方式
+            // 场景中没有其他绘制操作，客户端数组和VBO/IBO的绑定保持不变，
+            // 下一帧相同的启用和绑定调用会被状态缓存丢弃
+        }
+        
+        // GLES 1.1没有计时查询，只能用glFinish()等待GPU执行完本帧的命令来测量，
+        // 这会让CPU和GPU串行执行，所以默认关闭
+        if (mGpuTimingEnabled) {
+            mGL.glFinish();
+            mFrameProfiler.mark(FrameProfiler.STAGE_GPU);
+        }
+        
+        // 记录本帧所用的新姿态从传感器采样到绘制完成的延迟，
+        // 插值动画中重复使用旧姿态的帧不计入，它们的滞后来自平滑而不是数据链路
+        if (mFramePoseTimestampNs != 0) {
+            mLatencyHistogram.record(sensorClockNanos() - mFramePoseTimestampNs);
+            mFramePoseTimestampNs = 0;
         }
+        
+        if (DEBUG && ++mLogFrameCounter >= LOG_FRAME_INTERVAL) {
+            mLogFrameCounter = 0;
+            Log.d(TAG, "[onDrawFrame] " + mGL + ", " + mLatencyHistogram + ", " + mFrameProfiler);
+        }
+        mFrameProfiler.endFrame();
+        mRenderScheduler.onFrameDrawn();
     }
 
     /**
-     * 获取OpenGLES中的上传纹理可能发生的错误
+     * 逐个绘制块地绘制网格，每个绘制块都需要把顶点指针偏移到块的起始顶点
+     * @param mesh   网格
+     * @param useVBO true则从已绑定的VBO/IBO中绘制，否则使用客户端数组
      */
-    private void printGLError(String location) {
-        int glError = GLES11.glGetError(); // 获取上一个OpenGLES API调用出现的错误码
-        if (glError != GLES11.GL_NO_ERROR) {
-            Log.e(TAG, String.format("[%s] GLError = %s",
-                    location, GLUtils.getEGLErrorString(glError))); // 把错误码转换为可读字符串
-        } else {
-            Log.i(TAG, String.format("[%s] GLError = No error", location));
+    private void drawMesh(InterleavedMesh mesh, boolean useVBO) {
+        int chunkCount = mesh.getChunkCount();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            InstanceBatch.setChunkPointers(mGL, mesh, chunk, useVBO);
+            InstanceBatch.drawChunk(mGL, mesh, chunk, useVBO);
         }
     }
     
     /**
-     * 把Bitmap显示到OpenGLES绘制的视窗中
-     * @param bitmap
+     * 多实例模式下绘制所有实例：共享的状态只设置一次，模型视图矩阵由实例集合逐个加载。
+     * 实例的姿态直接来自各自的姿态源，不做单个球体那样的姿态插值
      */
-    public void displayBitmap(final Bitmap bitmap, final int position) {
-        if (mHostView != null) {
-            // 因为这个Runnable中的代码是把Bitmap上传为OpenGLES可用的纹理，
-            // 需要使用到OpenGLES API，所以需要用queueEvent方法把这个
-            // Runnable抛到GLThread中去执行
-            mHostView.queueEvent(new Runnable() {
-                
-                @Override
-                public void run() {
-                    if (bitmap == null) {
-                        Log.e(TAG, String.format("[uploadTexture] bitmap is null, position is %d", position));
-                        return;
-                    }
-
-                    {// 上传纹理
-                        GLES11.glGenTextures(1, mTextureIDs, position);
-                        GLES11.glBindTexture(GLES11.GL_TEXTURE_2D, mTextureIDs[position]);
-                        GLES11.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_WRAP_S, GLES11.GL_CLAMP_TO_EDGE);
-                        GLES11.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_WRAP_T, GLES11.GL_CLAMP_TO_EDGE);
-                        GLES11.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_MIN_FILTER, GLES11.GL_LINEAR);
-                        GLES11.glTexParameterx(GLES11.GL_TEXTURE_2D, GLES11.GL_TEXTURE_MAG_FILTER, GLES11.GL_LINEAR);
-                        GLUtils.texImage2D(GLES11.GL_TEXTURE_2D, 0, bitmap, 0);
-                        bitmap.recycle();
-                    }
-                    
-                    // 获取OpenGLES中的上传纹理可能发生的错误
-                    printGLError("displayBitmap");
-                    
-                    // 纹理上传完成后，通知OpenGLES去重绘一帧，以便绘制已上传的纹理
-                    mHostView.requestRender();
-                }
-            });
+    private void drawInstances() {
+        boolean useVBO = mResources.getVertexBufferID() != 0;
+        mFrameProfiler.mark(FrameProfiler.STAGE_STATE);
+        
+        // 实例各自有缩放，需要把法线恢复为单位长度；切回单个球体时由单个球体的路径重新设置
+        mGL.glEnable(GLES11.GL_RESCALE_NORMAL);
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        for (int slot = 0; slot < mInstanceTextureIDs.length; slot++) {
+            mInstanceTextureIDs[slot] = mResources.getTextureID(TextureIndexes[slot]);
+        }
+        
+        // 设置模型材质，所有实例相同
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT,  mAmbientColor,  0); // 材质环境色
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE,  mDiffuseColor,  0); // 材质散射色
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_SPECULAR, mSpecularColor, 0); // 材质高光色
+        mGL.glMaterialf (GLES11.GL_FRONT_AND_BACK, GLES11.GL_SHININESS, mShininess);       // 材质光泽度
+        mFrameProfiler.mark(FrameProfiler.STAGE_STATE);
+        
+        // 绘制所有实例，模型视图矩阵在此之后不再是视图矩阵，下一帧开头会重新加载
+        mInstanceBatch.draw(mGL, mSphereMesh, useVBO, mViewMatrix, mInstanceTextureIDs);
+        mFrameProfiler.mark(FrameProfiler.STAGE_SUBMIT);
+    }
+    
+    private void applyInstanceFrustum() {
+        if (mInstanceBatch != null) {
+            mInstanceBatch.setFrustum(mFrustum[0], mFrustum[1], mFrustum[2], mFrustum[3], mFrustum[4], mFrustum[5]);
+        }
+    }
+    
+    /**
+     * 与SensorEvent.timestamp相同时基的当前时间：大多数设备的传感器时间戳基于
+     * elapsedRealtimeNanos()，API 17以下没有这个接口时退回到System.nanoTime()
+     */
+    private static long sensorClockNanos() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return SystemClock.elapsedRealtimeNanos();
         }
+        return System.nanoTime();
     }
     
     /**
      * Setup a rotation matrix for altittude
-     * @param matrixRotate
+     * @param matrix      rotation matrix
+     * @param timestampNs SensorEvent.timestamp of the newest sample behind the pose, 0 if unknown
      */
-    public void setAltittudeMatrix(float[] matrix) {
-        synchronized (mAltittudeMatrix) {
-            Matrix.transposeM(mAltittudeMatrix, 0, matrix, 0);
-            Matrix.invertM(mAltittudeMatrix, 0, mAltittudeMatrix, 0);
+    public void setAltittudeMatrix(float[] matrix, long timestampNs) {
+        // 纯旋转矩阵转置后再求逆等于它本身，只需要转换为四元数发布，不需要一般的4x4矩阵求逆
+        mSensorPose.setRotationMatrix(matrix).pack(mAltittudeBuffer.beginWrite(), 0);
+        mAltittudeBuffer.publish(timestampNs);
+        mRenderScheduler.requestPose(matrix);
+
+        // 去抖窗口只由传感器线程访问：清空窗口与开始等待稳定在这里一次完成，不会与add()交错
+        if (mAutoCalibrationRequested) {
+            mAutoCalibrationRequested = false;
+            mAutoCalibrationPending   = true;
+            mReferencePose.reset();
+        }
+        mSensorPose.getRotation(mSensorQuaternion);
+        mReferencePose.add(mSensorQuaternion);
+        mReferencePose.getReference(mReferenceQuaternion);
+        mReferenceTransform.setRotation(mReferenceQuaternion).pack(mReferenceBuffer.beginWrite(), 0);
+        mReferenceBuffer.publish(timestampNs);
+        mReferenceSpread = mReferencePose.getSpread();
+        mReferenceStable = mReferencePose.isStable();
+        if (mAutoCalibrationPending && mReferenceStable) {
+            mAutoCalibrationPending = false;
+            mGLThread.execute(mApplyCalibrationTask);
         }
-        mHostView.requestRender();
     }
     
     /**
-     * Record current altittude matrix as calibrateion matrix
+     * Record the averaged recent altittude as calibration matrix
      */
     public void recordCalibrationMatrix() {
-        synchronized (mAltittudeMatrix) {
-            Matrix.invertM(mCalibrationAltittudeMatrix, 0, mAltittudeMatrix, 0);
-        }
-        mHostView.requestRender();
+        // 姿态矩阵的前台槽只能由GLThread访问，所以把记录操作抛到GLThread中执行
+        mGLThread.execute(mApplyCalibrationTask);
     }
     
     /**
-     * Smooth the current matrix to target atittude
-     * @param enable set as false, this function will be disable
-     * @return true if has more frames can be slerped
+     * Record the calibration matrix automatically as soon as the device
+     * has been held still long enough, replacing a manual calibration step
      */
-    private boolean smoothAtittudeMatrix(boolean enable) {
-		boolean hasMoreFrame = false;
-		
-        if (!enable) {
-            synchronized (mAltittudeMatrix) {
-                int matrixLength = mAltittudeMatrix.length;
-                for (int i = 0; i < matrixLength; i++) {
-                    mCurrentAltittudeMatrix[i] = mAltittudeMatrix[i];
-                }
+    public void startAutoCalibration() {
+        // 由传感器线程在下一个姿态到达时清空去抖窗口，之前的姿态不参与平均
+        mAutoCalibrationRequested = true;
+    }
+    
+    /**
+     * @return root mean square angle of the recent altittudes around their average in rad
+     */
+    public float getReferenceSpread() {
+        return mReferenceSpread;
+    }
+    
+    /**
+     * @return true if the recent altittudes have been steady enough to be recorded as calibration
+     */
+    public boolean isReferenceStable() {
+        return mReferenceStable;
+    }
+    
+    /**
+     * Get the GL state cache, which exposes issued and skipped
+     * state call counters of the last frame
+     * @return GL state cache
+     */
+    public GLStateCache getGLStateCache() {
+        return mGL;
+    }
+    
+    /**
+     * Get the sensor-to-draw latency histogram, recorded once for every
+     * frame drawn with a newly published pose
+     * @return latency histogram
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return mLatencyHistogram;
+    }
+    
+    /**
+     * Get the frame profiler, which keeps the per-stage timing of recent frames
+     * @return frame profiler
+     */
+    public FrameProfiler getFrameProfiler() {
+        return mFrameProfiler;
+    }
+    
+    /**
+     * Enable or disable measuring the GPU time of each frame. GLES 1.1 has no
+     * timer queries, so this waits for the GPU with glFinish() at the end of
+     * every frame, which serializes the CPU and the GPU; keep it off unless profiling.
+     * @param enabled
+     */
+    public void setGpuTimingEnabled(boolean enabled) {
+        mGpuTimingEnabled = enabled;
+    }
+    
+    /**
+     * Get the render scheduler, which exposes requested, coalesced
+     * and drawn frame counters
+     * @return render scheduler
+     */
+    public RenderScheduler getRenderScheduler() {
+        return mRenderScheduler;
+    }
+    
+    /**
+     * Set the level of detail of the sphere mesh, takes effect before
+     * the first surface creation
+     * @param lod SphereMeshGenerator.LOD_LOW, LOD_MEDIUM, LOD_HIGH or LOD_ULTRA
+     */
+    public void setMeshLevelOfDetail(int lod) {
+        mMeshLevelOfDetail = lod;
+    }
+    
+    /**
+     * Set the triangle order of the sphere mesh, takes effect before the first surface creation
+     * @param indexOrder SphereMeshGenerator.ORDER_ROWS, ORDER_OPTIMIZED or ORDER_STRIP
+     */
+    public void setMeshIndexOrder(int indexOrder) {
+        mMeshIndexOrder = indexOrder;
+    }
+    
+    /**
+     * Set the vertex format of the sphere mesh, takes effect before the first surface creation
+     * @param format VertexFormat.FLOAT, COMPACT or COMPACT_SPHERE
+     */
+    public void setMeshVertexFormat(VertexFormat format) {
+        mMeshVertexFormat = format;
+    }
+    
+    /**
+     * Enable or disable drawing the sphere from GPU resident buffers,
+     * takes effect on next surface creation
+     * @param enabled set as false to draw from client arrays
+     */
+    public void setVBOEnabled(boolean enabled) {
+        mResources.setVBOEnabled(enabled);
+    }
+    
+    /**
+     * Get the GPU resource manager, which exposes the pixel cache counters
+     * and the time to restore after EGL context loss
+     * @return resource manager
+     */
+    public GLResourceManager getResourceManager() {
+        return mResources;
+    }
+    
+    /**
+     * Cancel pending texture loads, call from Activity.onPause
+     */
+    public void onPause() {
+        mResources.cancelLoading();
+    }
+    
+    /**
+     * Restart texture loads cancelled by {@link #onPause()}, call from Activity.onResume
+     */
+    public void onResume() {
+        mGLThread.execute(new Runnable() {
+            
+            @Override
+            public void run() {
+                mResources.resume();
             }
-        } else {
-			// TODO
-		}
-        
-        return hasMoreFrame;
+        });
     }
     
     /**
-     * Bitmap asynchronous Loader
-     * @author Cocoonshu
-     * @date   2016-06-29 19:46:29
+     * Release the decoded pixel cache when the system is low on memory,
+     * textures already in GPU memory are kept
      */
-    private class BitmapLoader extends AsyncTask<String, Integer, Void> {
-
-        private Resources    mResource = null;
-        private GyroRenderer mRenderer = null;
-        
-        public BitmapLoader(Resources resource, GyroRenderer renderer) {
-            mResource = resource;
-            mRenderer = renderer;
-        }
-        
-        @Override
-        protected Void doInBackground(String... imageAssetPaths) {
-            if (imageAssetPaths != null) {
-                for (int i = 0; i < imageAssetPaths.length; i++) {
-                    String assetPath = imageAssetPaths[i];
-                    Bitmap bitmap    = decodeImage(assetPath);
-                    mRenderer.displayBitmap(bitmap, i);
+    public void trimMemory() {
+        mGLThread.execute(new Runnable() {
+            
+            @Override
+            public void run() {
+                mResources.trimMemory();
+            }
+        });
+    }
+    
+    /**
+     * Draw many spheres from one mesh instead of the single sphere, e.g. to
+     * show the orientation of many devices at once; set as null to go back
+     * to the single sphere. Poses are fed with {@link #setInstancePose}.
+     * @param batch
+     */
+    public void setInstanceBatch(final InstanceBatch batch) {
+        mGLThread.execute(new Runnable() {
+            
+            @Override
+            public void run() {
+                mInstanceBatch = batch;
+                if (batch != null) {
+                    batch.setBoundingRadius(SPHERE_RADIUS);
+                    applyInstanceFrustum();
                 }
+                mRenderScheduler.requestFrame();
             }
-            return null;
+        });
+    }
+    
+    /**
+     * Setup the rotation matrix of one instance in multi-instance mode,
+     * may be called on any thread
+     * @param batch  instance batch given to {@link #setInstanceBatch}
+     * @param index  instance index
+     * @param matrix rotation matrix
+     */
+    public void setInstancePose(InstanceBatch batch, int index, float[] matrix) {
+        batch.setPose(index, matrix);
+        mRenderScheduler.requestFrame();
+    }
+    
+    /**
+     * Enable or disable the attitude slerp smoothing
+     * @param enabled
+     */
+    public void setSlerpEnabled(boolean enabled) {
+        mSlerpEnabled = enabled;
+    }
+    
+    /**
+     * Smooth the current matrix to target atittude
+     * @param enable set as false, this function will be disable
+     * @param deltaTime time elapsed since last frame, in seconds
+     * @return true if has more frames can be slerped
+     */
+    private boolean smoothAtittudeMatrix(boolean enable, float deltaTime) {
+        // 取出传感器线程最新发布的姿态，不会阻塞
+        if (mAltittudeBuffer.acquire()) {
+            mFramePoseTimestampNs = mAltittudeBuffer.frontTimestamp();
         }
+        mCurrentPose.unpack(mAltittudeBuffer.front(), 0);
+        boolean hasMoreFrame = mPoseSmoother.smooth(mCurrentPose, enable, deltaTime);
         
-        public Bitmap decodeImage(String assetPath) {
-            try {
-                AssetManager assetManager = mResource.getAssets(); 
-                InputStream  inputStream  = assetManager.open(assetPath);
-                Bitmap       bitmap       = BitmapFactory.decodeStream(inputStream);
-                return bitmap;
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
+        // 模型矩阵 = 当前姿态的逆 · 矫正姿态，刚体变换的逆只是四元数共轭
+        mModelPose.setInverse(mCurrentPose).setProduct(mModelPose, mCalibrationPose).toMatrix(mCurrentAltittudeMatrix);
+        return hasMoreFrame;
     }
 
 }
-
@@ -10,6 +10,10 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
 
 /**
@@ -17,35 +21,59 @@ import android.util.Log;
  * @author Cocoonshu
  * @date   2016-07-01 13:16:57
  */
-public class Gyroscope {
+public class Gyroscope implements SensorSampleRing.SampleConsumer {
 
-    protected static final String TAG = "Gyroscope";
+    protected static final String  TAG                           = "Gyroscope";
+    private   static final boolean DEBUG                         = false; // 调试日志开关，关闭时日志代码会被编译器移除
+    private   static final int     LOG_SAMPLE_INTERVAL           = 50;    // 调试日志采样间隔，每隔多少次姿态计算输出一次
+    private   static final int     SAMPLE_RING_CAPACITY          = 1024;  // 批处理样本环形缓冲区的容量，约3秒的样本
+    public    static final int     DEFAULT_MAX_REPORT_LATENCY_US = 20000; // 默认的FIFO上报延迟(us)，约一帧，显示延迟不超过一帧
     
-    private SensorManager         mSensorManager         = null;
-    private Sensor                mAccelerometerSensor   = null;
-    private Sensor                mGeomagneticSensor     = null;
-    private SensorEventListener   mSensorEventListener   = null;
-    private OnGyroChangedListener mOnGyroChangedListener = null;
-    private boolean               mNeedToInvertYZ        = false;
-    private float[]               mBufferedGravity       = null;
-    private float[]               mBufferedGeomagnetic   = null;
-    private float[]               mBufferedOrientation   = new float[3];
-    private float[]               mMatrixR               = new float[16];
-    private float[]               mMatrixI               = new float[16];
+    private SensorManager            mSensorManager       = null;
+    private Sensor                   mAccelerometerSensor = null;
+    private Sensor                   mGeomagneticSensor   = null;
+    private Sensor                   mGyroscopeSensor     = null;
+    private OrientationFusion        mOrientationFusion   = null;
+    private SensorEventListener      mSensorEventListener = null;
+    private final PoseBus            mPoseBus             = new PoseBus();                              // 把姿态分发给各个订阅者
+    private boolean                  mNeedToInvertYZ      = false;
+    private SensorBatchProcessor     mBatchProcessor      = new SensorBatchProcessor();                 // 把样本送入融合引擎，并缓存最近的加速度计和磁力计样本
+    private SensorSampleRing         mSampleRing          = new SensorSampleRing(SAMPLE_RING_CAPACITY); // 批处理模式下传感器线程写入的样本
+    private int                      mMaxReportLatencyUs  = 0;                                          // 传感器硬件FIFO的最大上报延迟(us)，0表示逐个事件处理
+    private HandlerThread            mBatchThread         = null;                                       // 批处理模式下接收传感器事件并处理批次的线程
+    private volatile Handler         mBatchHandler        = null;                                       // mBatchThread的Handler，非null表示处于批处理模式
+    private boolean                  mBatchPending        = false;                                      // 是否已经投递了处理批次的任务，只由mBatchThread访问
+    private Runnable                 mProcessBatchTask    = null;                                       // 处理积压样本的任务
+    private AsyncSensorTraceRecorder mTraceRecorder       = null;                                       // 在后台线程记录原始样本的轨迹记录器，只在暂停时设置
+    private MotionDetector           mMotionDetector      = new MotionDetector();                       // 判断设备是否静止，决定传感器采样率和是否发布姿态
+    private boolean                  mAdaptiveRateEnabled = false;                                      // 是否根据运动状态切换采样率，只在暂停时设置
+    private final Object             mRegistrationLock    = new Object();                               // 保护传感器的注册、注销和mSensorsRegistered
+    private boolean                  mSensorsRegistered   = false;                                      // 传感器是否已注册，回放轨迹时不会重新注册
+    private volatile boolean         mStopped             = true;                                       // 是否处于暂停状态，暂停后迟到的传感器事件被忽略
+    private int                      mLogSampleCounter    = 0;
+    private float[]                  mBufferedOrientation = new float[3];
+    private float[]                  mMatrixR             = new float[16];
     
-    public interface OnGyroChangedListener {
-        void onGyroChanged(float[] matrixRotate, float[] orientation);
+    public Gyroscope(Context context) {
+        this((SensorManager) context.getSystemService(Service.SENSOR_SERVICE));
     }
     
-    public Gyroscope(Context context) {
-        mSensorManager = (SensorManager) context.getSystemService(Service.SENSOR_SERVICE);
+    /**
+     * @param sensorManager 为null时没有任何传感器，只能通过onSample()输入样本，例如在JVM上回放轨迹
+     */
+    Gyroscope(SensorManager sensorManager) {
+        mSensorManager = sensorManager;
         setupActiveSensors();
         setupSensorListener();
     }
     
     private void setupActiveSensors() {
+        if (mSensorManager == null) {
+            return;
+        }
         mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         mGeomagneticSensor   = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        mGyroscopeSensor     = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
     }
 
     private void setupSensorListener() {
@@ -53,23 +81,9 @@ public class Gyroscope {
             
             @Override
             public void onSensorChanged(SensorEvent event) {
-                switch (event.sensor.getType()) {
-                case Sensor.TYPE_ACCELEROMETER:
-                    mBufferedGravity = event.values;
-                    break;
-                case Sensor.TYPE_MAGNETIC_FIELD:
-                    mBufferedGeomagnetic = event.values;
-                    break;
-                }
-                computeOrientation();
-                Log.i(TAG, String.format("[onSensorChanged] Orientation = (%3.1f°, %3.1f°, %3.1f°)",
-                        Math.toDegrees(mBufferedOrientation[1]),
-                        Math.toDegrees(mBufferedOrientation[2]),
-                        Math.toDegrees(mBufferedOrientation[0])));
-                
-                if (mOnGyroChangedListener != null) {
-                    mOnGyroChangedListener.onGyroChanged(mMatrixR, mBufferedOrientation);
-                }
+                // event.values会被SensorManager复用，必须拷贝到自己的缓冲中
+                float[] values = event.values;
+                onSample(event.sensor.getType(), values[0], values[1], values[2], event.timestamp);
             }
             
             @Override
@@ -78,34 +92,259 @@ public class Gyroscope {
             }
             
         };
+        mMotionDetector.setOnMotionStateChangedListener(new MotionDetector.OnMotionStateChangedListener() {
+            
+            @Override
+            public void onMotionStateChanged(int state, long timestampNs) {
+                // 在接收样本的线程上重新注册，运动恢复后的下一个样本起使用快速采样率
+                // pause()可能同时在UI线程注销传感器，必须在锁内重新检查是否仍处于注册状态
+                if (!mAdaptiveRateEnabled) {
+                    return;
+                }
+                synchronized (mRegistrationLock) {
+                    if (mSensorsRegistered) {
+                        unregisterSensors();
+                        registerSensors(state == MotionDetector.STATE_STATIONARY, mBatchHandler);
+                    }
+                }
+            }
+        });
+        mProcessBatchTask = new Runnable() {
+            
+            @Override
+            public void run() {
+                mBatchPending = false;
+                if (!mStopped && mBatchProcessor.processBatch(mSampleRing) > 0) {
+                    onSamplesProcessed();
+                }
+            }
+        };
+    }
+    
+    /**
+     * Process a raw sample through the same path as a sensor event, also used
+     * to replay a recorded trace. Must not be called from two threads at once.
+     * Samples are ignored unless resumed.
+     */
+    @Override
+    public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+        if (mStopped) {
+            return;
+        }
+        AsyncSensorTraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            recorder.onSample(sensorType, x, y, z, timestampNs);
+        }
+        if (mAdaptiveRateEnabled) {
+            mMotionDetector.onSample(sensorType, x, y, z, timestampNs);
+        }
+        Handler handler = mBatchHandler;
+        if (handler == null && mStopped) {
+            // pause()先设置mStopped再清空mBatchHandler，这是批处理线程上已分发的事件，pause()正在等待线程退出
+            return;
+        }
+        if (handler != null) {
+            // 一次FIFO上报的所有事件在同一个消息中连续分发，投递的任务会在整批事件之后执行
+            mSampleRing.offer(sensorType, x, y, z, timestampNs);
+            if (!mBatchPending) {
+                mBatchPending = true;
+                handler.post(mProcessBatchTask);
+            }
+            return;
+        }
+        mBatchProcessor.onSample(sensorType, x, y, z, timestampNs);
+        onSamplesProcessed();
+    }
+    
+    private void onSamplesProcessed() {
+        computeOrientation();
+        if (DEBUG && ++mLogSampleCounter >= LOG_SAMPLE_INTERVAL) {
+            mLogSampleCounter = 0;
+            Log.i(TAG, String.format("[onSamplesProcessed] Orientation = (%3.1f°, %3.1f°, %3.1f°), %s",
+                    Math.toDegrees(mBufferedOrientation[1]),
+                    Math.toDegrees(mBufferedOrientation[2]),
+                    Math.toDegrees(mBufferedOrientation[0]),
+                    mBatchProcessor));
+        }
+        
+        // 静止时姿态不再变化，不发布姿态，渲染器也就不再请求重绘
+        if (!(mAdaptiveRateEnabled && mMotionDetector.isStationary())) {
+            mPoseBus.publish(mMatrixR, mBufferedOrientation, mBatchProcessor.getAngularRate(),
+                    mBatchProcessor.getLastTimestamp(), mBatchProcessor.getAngularRateTimestamp());
+        }
     }
 
     public void resume() {
+        // 先清空状态再注册，避免传感器线程与这里同时修改融合状态
+        mBatchProcessor.reset();
+        mSampleRing.clear();
+        mBatchPending = false;
+        mMotionDetector.reset();
+        resetMatrix(mMatrixR);
+        if (mMaxReportLatencyUs > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mBatchThread = new HandlerThread("SensorBatch", Process.THREAD_PRIORITY_DISPLAY);
+            mBatchThread.start();
+            mBatchHandler = new Handler(mBatchThread.getLooper());
+        }
+        mStopped = false;
+        synchronized (mRegistrationLock) {
+            registerSensors(false, mBatchHandler);
+            mSensorsRegistered = true;
+        }
+    }
+    
+    public void pause() {
+        mStopped = true;
+        // 与采样率切换互斥，释放锁之后传感器线程不会再注册传感器
+        synchronized (mRegistrationLock) {
+            mSensorsRegistered = false;
+            unregisterSensors();
+            mBatchHandler = null;
+        }
+        if (mBatchThread != null) {
+            // 等待批处理线程退出，resume()清空状态时不会再有传感器线程上的任务在运行；
+            // 未处理的样本被丢弃，resume()时会清空
+            mBatchThread.quitSafely();
+            joinUninterruptibly(mBatchThread);
+            mBatchThread = null;
+        }
+    }
+    
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 只在持有mRegistrationLock时调用
+     * @param stationary 是否使用静止状态的慢速采样率
+     * @param handler    接收批处理事件的Handler，为null时逐个事件处理
+     */
+    private void registerSensors(boolean stationary, Handler handler) {
         if (mAccelerometerSensor != null) {
-            mSensorManager.registerListener(mSensorEventListener, mAccelerometerSensor, SensorManager.SENSOR_DELAY_UI);
+            registerSensor(mAccelerometerSensor, stationary ? SensorManager.SENSOR_DELAY_NORMAL : SensorManager.SENSOR_DELAY_UI, handler);
         }
         if (mGeomagneticSensor != null) {
-            mSensorManager.registerListener(mSensorEventListener, mGeomagneticSensor, SensorManager.SENSOR_DELAY_UI);
+            registerSensor(mGeomagneticSensor, stationary ? SensorManager.SENSOR_DELAY_NORMAL : SensorManager.SENSOR_DELAY_UI, handler);
+        }
+        if (mGyroscopeSensor != null && mOrientationFusion != null) {
+            registerSensor(mGyroscopeSensor, stationary ? SensorManager.SENSOR_DELAY_NORMAL : SensorManager.SENSOR_DELAY_GAME, handler);
         }
-        resetMatrix(mMatrixR);
-        resetMatrix(mMatrixI);
     }
     
-    public void pause() {
+    private void unregisterSensors() {
         if (mAccelerometerSensor != null) {
             mSensorManager.unregisterListener(mSensorEventListener, mAccelerometerSensor);
         }
-        if (mAccelerometerSensor != null) {
+        if (mGeomagneticSensor != null) {
             mSensorManager.unregisterListener(mSensorEventListener, mGeomagneticSensor);
         }
+        if (mGyroscopeSensor != null) {
+            mSensorManager.unregisterListener(mSensorEventListener, mGyroscopeSensor);
+        }
+    }
+    
+    private void registerSensor(Sensor sensor, int rate, Handler handler) {
+        if (handler != null) {
+            mSensorManager.registerListener(mSensorEventListener, sensor, rate, mMaxReportLatencyUs, handler);
+        } else {
+            mSensorManager.registerListener(mSensorEventListener, sensor, rate);
+        }
     }
     
     public void setYZInvertEnabled(boolean enabled) {
         mNeedToInvertYZ = enabled;
     }
     
-    public void setOnGyroChangedListener(OnGyroChangedListener listener) {
-        mOnGyroChangedListener = listener;
+    /**
+     * Set a sensor fusion engine, the gyroscope sensor will be used
+     * since next resume(). Set as null to use accelerometer and
+     * magnetic field only.
+     * @param fusion
+     */
+    public void setOrientationFusion(OrientationFusion fusion) {
+        mOrientationFusion = fusion;
+        mBatchProcessor.setOrientationFusion(fusion);
+    }
+    
+    /**
+     * Set the maximum delay the sensor hardware may hold samples in its FIFO,
+     * takes effect since next resume(). With a positive latency on KITKAT and
+     * above, samples are buffered and the orientation is computed once per batch
+     * instead of once per event. Set as 0 to process every event immediately.
+     * @param maxReportLatencyUs 最大上报延迟(us)
+     */
+    public void setMaxReportLatency(int maxReportLatencyUs) {
+        mMaxReportLatencyUs = Math.max(0, maxReportLatencyUs);
+    }
+    
+    /**
+     * Record every raw sample into a trace, or set as null to stop recording.
+     * The sensor thread only buffers the samples, the file is written on the
+     * recorder's own thread. Must be called while paused; the caller owns the
+     * recorder and closes it.
+     * @param recorder
+     */
+    public void setTraceRecorder(AsyncSensorTraceRecorder recorder) {
+        mTraceRecorder = recorder;
+    }
+    
+    /**
+     * Drop all sensors to SENSOR_DELAY_NORMAL and stop publishing poses while
+     * the device is stationary, switching back to the normal rates on the first
+     * sample showing motion. Takes effect since next resume().
+     * @param enabled
+     */
+    public void setAdaptiveRateEnabled(boolean enabled) {
+        mAdaptiveRateEnabled = enabled;
+    }
+    
+    /**
+     * Remove the hard-iron offset estimated online from the magnetic field
+     * samples before they reach the fusion, or set as null to use them as
+     * the platform reports them. Must be called while paused.
+     * @param estimator
+     */
+    public void setHardIronEstimator(HardIronEstimator estimator) {
+        mBatchProcessor.setHardIronEstimator(estimator);
+    }
+    
+    public MotionDetector getMotionDetector() {
+        return mMotionDetector;
+    }
+    
+    public SensorBatchProcessor getBatchProcessor() {
+        return mBatchProcessor;
+    }
+    
+    public SensorSampleRing getSampleRing() {
+        return mSampleRing;
+    }
+    
+    /**
+     * Subscribe to the bus to receive poses on the sensor thread. Each snapshot
+     * carries the rotation matrix, the orientation angles, the timestamp of the
+     * latest sample (SensorEvent.timestamp) and the latest gyroscope sample.
+     * @return the pose bus
+     */
+    public PoseBus getPoseBus() {
+        return mPoseBus;
+    }
+    
+    /**
+     * @return the listener registered to the sensors, receiving events on the sensor thread
+     */
+    SensorEventListener getSensorEventListener() {
+        return mSensorEventListener;
     }
     
     public float[] getData() {
@@ -113,17 +352,25 @@ public class Gyroscope {
     }
     
     private void computeOrientation() {
-        if (mBufferedGravity == null || mBufferedGeomagnetic == null) {
-            return;
-        }
-        if (mNeedToInvertYZ) { 
-            SensorManager.getRotationMatrix(mMatrixR, mMatrixI, mBufferedGravity, mBufferedGeomagnetic);
-            SensorManager.remapCoordinateSystem(mMatrixR, SensorManager.AXIS_X, SensorManager.AXIS_Y, mMatrixR);
-            SensorManager.getOrientation(mMatrixR, mBufferedOrientation);
+        OrientationFusion fusion = mOrientationFusion;
+        if (fusion != null) {
+            if (!fusion.hasOrientation()) {
+                return;
+            }
+            fusion.getRotationMatrix(mMatrixR);
         } else {
-            SensorManager.getRotationMatrix(mMatrixR, mMatrixI, mBufferedGravity, mBufferedGeomagnetic);
-            SensorManager.getOrientation(mMatrixR, mBufferedOrientation);
+            if (!mBatchProcessor.hasGravity() || !mBatchProcessor.hasGeomagnetic()) {
+                return;
+            }
+            if (!OrientationMath.getRotationMatrix(mMatrixR, mBatchProcessor.getGravity(), mBatchProcessor.getGeomagnetic())) {
+                return;
+            }
+        }
+        // 使用与SensorManager一致的纯Java实现，姿态计算不再依赖Android
+        if (mNeedToInvertYZ) {
+            OrientationMath.remapCoordinateSystem(mMatrixR, OrientationMath.AXIS_X, OrientationMath.AXIS_Y, mMatrixR);
         }
+        OrientationMath.getOrientation(mMatrixR, mBufferedOrientation);
     }
     
     private static float[] resetMatrix(float[] matrix) {
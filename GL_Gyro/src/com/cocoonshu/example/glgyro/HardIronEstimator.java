@@ -0,0 +1,207 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Online magnetometer hard-iron offset estimator
+ * 硬磁干扰使磁力计读数整体偏移b，转动设备时读数落在以b为球心、地磁场强度r为半径的球面上：
+ * |m - b|² = r²，即m·m = 2b·m + (r² - b·b)，对参数θ = {2b, r² - b·b}是线性的。
+ * 每个样本用带遗忘因子的递推最小二乘(RLS)更新θ，只需要4x4的协方差矩阵，不保存历史样本。
+ * 设备长时间不转动时协方差会因遗忘而发散，协方差的迹超过上限时暂停遗忘。
+ * 残差先按残差标准差的OUTLIER_SIGMA倍截断再参与更新，偶尔的磁干扰(例如经过磁铁)影响有限；
+ * 偏移真的改变时(例如装上带磁铁的手机壳)大部分样本都会被截断，此时重置协方差重新拟合。
+ * 偏移的不确定度足够小且场强合理时才认为收敛，收敛前不修正样本。只能在一个线程上调用update()
+ */
+public class HardIronEstimator {
+
+    public  static final float  DEFAULT_FORGETTING = 0.999f; // 默认的遗忘因子，50Hz下约20秒的记忆
+    private static final float  NOMINAL_FIELD      = 50.0f;  // 归一化样本使用的标称场强(uT)，使矩阵元素接近1
+    private static final double INITIAL_COVARIANCE = 100.0;  // 协方差矩阵的初始对角元
+    private static final double MAX_COVARIANCE     = 1000.0; // 协方差矩阵的迹的上限，超过时暂停遗忘
+    private static final float  MIN_FIELD          = 15.0f;  // 可信的最小地磁场强度(uT)
+    private static final float  MAX_FIELD          = 100.0f; // 可信的最大地磁场强度(uT)
+    private static final float  MAX_OFFSET_STD     = 2.0f;   // 收敛所需的偏移标准差上限(uT)
+    private static final int    MIN_SAMPLES        = 100;    // 收敛所需的最少样本数
+    private static final float  OUTLIER_SIGMA      = 3.0f;   // 残差截断为残差标准差的多少倍
+    private static final float  RESIDUAL_FLOOR     = 0.02f;  // 残差标准差的下限(归一化单位)，避免噪声很小时截断所有样本
+    private static final float  RESIDUAL_SMOOTHING = 0.02f;  // 残差方差指数平均的系数
+    private static final float  CLIP_SMOOTHING     = 0.05f;  // 截断比例指数平均的系数
+    private static final float  MAX_CLIP_RATE      = 0.5f;   // 截断比例超过它时认为偏移已经改变，重新拟合
+
+    private final double[] mTheta        = new double[4];      // 参数{2bx, 2by, 2bz, r² - b·b}，归一化单位
+    private final double[] mP            = new double[16];     // 协方差矩阵，行主序
+    private final double[] mPPhi         = new double[4];      // 临时向量P·φ
+    private final float[]  mOffset       = new float[3];       // 最近一次更新后的偏移(uT)
+    private float          mField        = 0;                  // 最近一次更新后的地磁场强度(uT)
+    private float          mForgetting   = DEFAULT_FORGETTING; // 遗忘因子
+    private double         mResidualVar  = 1;                  // 截断后残差方差的指数平均，归一化单位
+    private boolean        mConverged    = false;              // 是否已经收敛
+    private float          mClipRate     = 0;                  // 最近样本中残差被截断的比例
+    private int            mFitSamples   = 0;                  // 本次拟合开始以来的样本数
+    private long           mSampleCount  = 0;                  // 参与更新的样本数
+    private long           mClippedCount = 0;                  // 残差被截断的样本数
+    private long           mRestartCount = 0;                  // 因偏移改变而重新拟合的次数
+
+    public HardIronEstimator() {
+        reset();
+    }
+
+    /**
+     * Set the forgetting factor of the least-squares fit, closer to 1 for a
+     * longer memory. Must be called on the updating thread.
+     * @param forgetting 取值范围(0.9, 1]
+     */
+    public void setForgetting(float forgetting) {
+        if (forgetting <= 0.9f || forgetting > 1) {
+            throw new IllegalArgumentException("Invalid forgetting factor: " + forgetting);
+        }
+        mForgetting = forgetting;
+    }
+
+    /**
+     * 丢弃估计结果，从零偏移重新开始
+     */
+    public void reset() {
+        restart();
+        mTheta[0]     = 0;
+        mTheta[1]     = 0;
+        mTheta[2]     = 0;
+        mTheta[3]     = 1;
+        mOffset[0]    = 0;
+        mOffset[1]    = 0;
+        mOffset[2]    = 0;
+        mField        = 0;
+        mConverged    = false;
+        mSampleCount  = 0;
+        mClippedCount = 0;
+        mRestartCount = 0;
+    }
+
+    /**
+     * 重置协方差和残差统计，以当前的参数为初值重新拟合
+     */
+    private void restart() {
+        for (int i = 0; i < 16; i++) {
+            mP[i] = i % 5 == 0 ? INITIAL_COVARIANCE : 0;
+        }
+        mResidualVar = 1;
+        mClipRate    = 0;
+        mFitSamples  = 0;
+    }
+
+    /**
+     * Update the fit with one raw magnetometer sample, O(1)
+     * @return false if the residual has been clipped as a disturbance
+     */
+    public boolean update(float x, float y, float z) {
+        double ux       = x / NOMINAL_FIELD;
+        double uy       = y / NOMINAL_FIELD;
+        double uz       = z / NOMINAL_FIELD;
+        double obs      = ux * ux + uy * uy + uz * uz;
+        double residual = obs - (mTheta[0] * ux + mTheta[1] * uy + mTheta[2] * uz + mTheta[3]);
+        double limit    = OUTLIER_SIGMA * Math.sqrt(Math.max(mResidualVar, RESIDUAL_FLOOR * RESIDUAL_FLOOR));
+        boolean clipped = residual > limit || residual < -limit;
+        if (clipped) {
+            residual = residual > 0 ? limit : -limit;
+            mClippedCount++;
+        }
+        mClipRate += CLIP_SMOOTHING * ((clipped ? 1 : 0) - mClipRate);
+        if (mClipRate > MAX_CLIP_RATE) {
+            restart();
+            mRestartCount++;
+        }
+
+        // P·φ，φ = {ux, uy, uz, 1}
+        double[] P = mP;
+        for (int row = 0; row < 4; row++) {
+            int i = row * 4;
+            mPPhi[row] = P[i] * ux + P[i + 1] * uy + P[i + 2] * uz + P[i + 3];
+        }
+        double trace       = P[0] + P[5] + P[10] + P[15];
+        double forgetting  = trace > MAX_COVARIANCE ? 1.0 : mForgetting;
+        double denominator = forgetting + mPPhi[0] * ux + mPPhi[1] * uy + mPPhi[2] * uz + mPPhi[3];
+        // 增益k = P·φ / (λ + φ'·P·φ)，θ += k·e，P = (P - k·φ'·P) / λ，P对称所以φ'·P = (P·φ)'
+        for (int row = 0; row < 4; row++) {
+            double gain = mPPhi[row] / denominator;
+            mTheta[row] += gain * residual;
+            for (int col = 0; col < 4; col++) {
+                P[row * 4 + col] = (P[row * 4 + col] - gain * mPPhi[col]) / forgetting;
+            }
+        }
+        mResidualVar += RESIDUAL_SMOOTHING * (residual * residual - mResidualVar);
+        mSampleCount++;
+        mFitSamples++;
+
+        double bx = mTheta[0] * 0.5;
+        double by = mTheta[1] * 0.5;
+        double bz = mTheta[2] * 0.5;
+        double r2 = mTheta[3] + bx * bx + by * by + bz * bz;
+        mOffset[0] = (float) (bx * NOMINAL_FIELD);
+        mOffset[1] = (float) (by * NOMINAL_FIELD);
+        mOffset[2] = (float) (bz * NOMINAL_FIELD);
+        mField     = r2 > 0 ? (float) (Math.sqrt(r2) * NOMINAL_FIELD) : 0;
+        mConverged = mFitSamples >= MIN_SAMPLES && mField >= MIN_FIELD && mField <= MAX_FIELD
+                && offsetStd(0) <= MAX_OFFSET_STD && offsetStd(1) <= MAX_OFFSET_STD && offsetStd(2) <= MAX_OFFSET_STD;
+        return !clipped;
+    }
+
+    /**
+     * 偏移第axis个分量的标准差(uT)：θ的协方差约为P乘以残差方差，b = θ/2
+     */
+    private float offsetStd(int axis) {
+        double variance = mP[axis * 5] * Math.max(mResidualVar, RESIDUAL_FLOOR * RESIDUAL_FLOOR);
+        return (float) (0.5 * Math.sqrt(Math.max(0, variance)) * NOMINAL_FIELD);
+    }
+
+    /**
+     * Subtract the estimated offset from a sample in place, does nothing until converged
+     * @param m 磁力计样本(uT)，长度至少为3
+     * @return true if the sample has been corrected
+     */
+    public boolean correct(float[] m) {
+        if (!mConverged) {
+            return false;
+        }
+        m[0] -= mOffset[0];
+        m[1] -= mOffset[1];
+        m[2] -= mOffset[2];
+        return true;
+    }
+
+    public boolean isConverged() {
+        return mConverged;
+    }
+
+    /**
+     * @param out 输出的偏移(uT)，长度至少为3
+     */
+    public void getOffset(float[] out) {
+        out[0] = mOffset[0];
+        out[1] = mOffset[1];
+        out[2] = mOffset[2];
+    }
+
+    /**
+     * @return estimated geomagnetic field strength in uT
+     */
+    public float getFieldStrength() {
+        return mField;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getClippedCount() {
+        return mClippedCount;
+    }
+
+    public long getRestartCount() {
+        return mRestartCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HardIronEstimator[%s, offset = (%.1f, %.1f, %.1f)uT ± (%.1f, %.1f, %.1f), |B| = %.1fuT, %d samples, %d clipped, %d restarts]",
+                mConverged ? "converged" : "converging", mOffset[0], mOffset[1], mOffset[2],
+                offsetStd(0), offsetStd(1), offsetStd(2), mField, mSampleCount, mClippedCount, mRestartCount);
+    }
+}
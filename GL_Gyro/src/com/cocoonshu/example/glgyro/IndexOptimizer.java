@@ -0,0 +1,198 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Post-transform vertex cache optimizer for triangle lists
+ * 使用Tom Forsyth的线性时间算法重排三角形的顺序：根据顶点在模拟LRU缓存中的位置和
+ * 剩余未输出的三角形数量为顶点打分，每次输出得分最高的三角形，使相邻的三角形尽量复用缓存中的顶点
+ */
+public final class IndexOptimizer {
+
+    public  static final int   DEFAULT_CACHE_SIZE  = 32;    // 模拟的顶点缓存大小
+    private static final float CACHE_DECAY_POWER   = 1.5f;  // 缓存位置得分的衰减指数
+    private static final float LAST_TRIANGLE_SCORE = 0.75f; // 上一个三角形的顶点的固定得分
+    private static final float VALENCE_BOOST_SCALE = 2.0f;  // 剩余三角形数量得分的缩放
+    private static final float VALENCE_BOOST_POWER = 0.5f;  // 剩余三角形数量得分的指数
+
+    private IndexOptimizer() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 原地重排一段三角形列表的索引
+     * @param indices    索引Buffer，使用绝对位置访问，不改变position
+     * @param firstIndex 起始索引
+     * @param indexCount 索引数量，必须是3的倍数
+     * @param cacheSize  模拟的顶点缓存大小
+     */
+    public static void optimize(ShortBuffer indices, int firstIndex, int indexCount, int cacheSize) {
+        int triangleCount = indexCount / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+
+        // 读取索引，并统计顶点数量
+        int[] triangleVertices = new int[indexCount];
+        int   vertexCount      = 0;
+        for (int i = 0; i < indexCount; i++) {
+            int vertex = indices.get(firstIndex + i) & 0xFFFF;
+            triangleVertices[i] = vertex;
+            vertexCount = Math.max(vertexCount, vertex + 1);
+        }
+
+        // 建立顶点到三角形的邻接表，每个顶点的前liveCount个三角形是还未输出的
+        int[] liveCount = new int[vertexCount];
+        for (int i = 0; i < indexCount; i++) {
+            liveCount[triangleVertices[i]]++;
+        }
+        int[] adjacencyOffset = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyOffset[v + 1] = adjacencyOffset[v] + liveCount[v];
+        }
+        int[] adjacency = new int[indexCount];
+        int[] fill      = new int[vertexCount];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = triangleVertices[t * 3 + k];
+                adjacency[adjacencyOffset[v] + fill[v]] = t;
+                fill[v]++;
+            }
+        }
+
+        // 初始得分
+        int[]     cachePosition  = new int[vertexCount];
+        float[]   vertexScore    = new float[vertexCount];
+        float[]   triangleScore  = new float[triangleCount];
+        boolean[] triangleAdded  = new boolean[triangleCount];
+        for (int v = 0; v < vertexCount; v++) {
+            cachePosition[v] = -1;
+            vertexScore[v]   = score(-1, liveCount[v], cacheSize);
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScore[t] = vertexScore[triangleVertices[t * 3]]
+                             + vertexScore[triangleVertices[t * 3 + 1]]
+                             + vertexScore[triangleVertices[t * 3 + 2]];
+        }
+
+        int[] cache         = new int[cacheSize + 3];
+        int[] newCache      = new int[cacheSize + 3];
+        int   cacheCount    = 0;
+        int   bestTriangle  = findBestTriangle(triangleScore, triangleAdded);
+        int   outputIndex   = firstIndex;
+
+        for (int added = 0; added < triangleCount; added++) {
+            if (bestTriangle < 0) {
+                bestTriangle = findBestTriangle(triangleScore, triangleAdded);
+            }
+            int t = bestTriangle;
+            triangleAdded[t] = true;
+
+            // 输出三角形，并把它从三个顶点的存活邻接表中移除
+            int newCacheCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = triangleVertices[t * 3 + k];
+                indices.put(outputIndex++, (short) v);
+                int begin = adjacencyOffset[v];
+                int end   = begin + liveCount[v];
+                for (int j = begin; j < end; j++) {
+                    if (adjacency[j] == t) {
+                        adjacency[j]       = adjacency[end - 1];
+                        adjacency[end - 1] = t;
+                        break;
+                    }
+                }
+                liveCount[v]--;
+                newCache[newCacheCount++] = v;
+            }
+
+            // 更新LRU缓存：新三角形的顶点放在最前面，其余顶点依次后移
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+                    newCache[newCacheCount++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache      = newCache;
+            newCache   = swap;
+            cacheCount = newCacheCount;
+
+            // 重新计算缓存中顶点的得分，并同步到它们的存活三角形上
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                cachePosition[v] = i < cacheSize ? i : -1;
+                float newScore = score(cachePosition[v], liveCount[v], cacheSize);
+                float delta    = newScore - vertexScore[v];
+                vertexScore[v] = newScore;
+                int begin = adjacencyOffset[v];
+                int end   = begin + liveCount[v];
+                for (int j = begin; j < end; j++) {
+                    triangleScore[adjacency[j]] += delta;
+                }
+            }
+            if (cacheCount > cacheSize) {
+                cacheCount = cacheSize;
+            }
+
+            // 只在缓存中顶点的存活三角形里寻找下一个三角形
+            bestTriangle = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheCount; i++) {
+                int v     = cache[i];
+                int begin = adjacencyOffset[v];
+                int end   = begin + liveCount[v];
+                for (int j = begin; j < end; j++) {
+                    int candidate = adjacency[j];
+                    if (triangleScore[candidate] > bestScore) {
+                        bestScore    = triangleScore[candidate];
+                        bestTriangle = candidate;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 按绘制块原地重排整个网格的索引
+     * @param mesh      三角形列表网格
+     * @param cacheSize 模拟的顶点缓存大小
+     */
+    public static void optimize(InterleavedMesh mesh, int cacheSize) {
+        if (mesh.getPrimitiveMode() != InterleavedMesh.PRIMITIVE_TRIANGLES) {
+            throw new IllegalArgumentException("Only triangle lists can be optimized");
+        }
+        for (int chunk = 0; chunk < mesh.getChunkCount(); chunk++) {
+            optimize(mesh.getIndexData(), mesh.getChunkFirstIndex(chunk), mesh.getChunkIndexCount(chunk), cacheSize);
+        }
+    }
+
+    private static int findBestTriangle(float[] triangleScore, boolean[] triangleAdded) {
+        int   bestTriangle = -1;
+        float bestScore    = -Float.MAX_VALUE;
+        for (int t = 0; t < triangleScore.length; t++) {
+            if (!triangleAdded[t] && triangleScore[t] > bestScore) {
+                bestScore    = triangleScore[t];
+                bestTriangle = t;
+            }
+        }
+        return bestTriangle;
+    }
+
+    private static float score(int cachePosition, int remainingTriangles, int cacheSize) {
+        if (remainingTriangles == 0) {
+            return -1;
+        }
+        float score = 0;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                score = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1.0f / (cacheSize - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+}
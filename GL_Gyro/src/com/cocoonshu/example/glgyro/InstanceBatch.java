@@ -0,0 +1,457 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import android.opengl.GLES11;
+
+/**
+ * Many instances of one mesh drawn with shared state, for a many-device orientation dashboard
+ * 每个实例的设备姿态、位置、缩放和纹理槽保存在扁平的float/int数组中，不为实例创建对象。
+ * 姿态可以在任意线程中更新，写入待提交的数组；GLThread每帧开始时若有更新，把它们整体拷贝到绘制用的数组。
+ * 更新姿态只把设备旋转矩阵转换为四元数，与矫正姿态的复合在绘制时只为可见实例计算。
+ * 每帧先用包围球与视景体的6个平面剔除不可见的实例，再按(纹理槽, 深度)对可见实例做基数排序：
+ * 相同纹理的实例连续绘制，每组只绑定一次纹理，组内由近及远绘制以减少被遮挡片元的着色。
+ * 所有实例共享网格，顶点指针每组每个绘制块只设置一次，每个实例只需要一次glLoadMatrixf和一次glDrawElements
+ */
+public class InstanceBatch {
+
+    public  static final int MAX_TEXTURE_SLOTS = 256;                // 纹理槽数量上限，排序键中占8位
+    private static final int INSTANCE_SIZE     = 8;                  // 每个实例的float数：设备姿态{qw, qx, qy, qz}和{tx, ty, tz, scale}
+    private static final int MATRIX_SIZE       = 16;                 // 每个实例的模型视图矩阵的float数
+    private static final int DEPTH_LEVELS      = 0x10000;            // 排序键中深度的量化级数，占16位
+    private static final int RADIX_BITS        = 8;                  // 基数排序每趟处理的位数
+    private static final int RADIX_PASSES      = 3;                  // 基数排序的趟数：8位纹理槽 + 16位深度
+    private static final int RADIX_MASK        = (1 << RADIX_BITS) - 1;
+
+    private final int     mCapacity;                                      // 实例数量上限
+    private final Object  mLock               = new Object();             // 保护待提交的实例数据
+    private final float[] mPendingInstances;                              // 待提交的实例数据，任意线程写入
+    private final int[]   mPendingTextures;                               // 待提交的纹理槽
+    private int           mPendingCount       = 0;                        // 待提交的实例数量
+    private boolean       mDirty              = false;                    // 待提交的数据是否有更新
+    private final float[] mPendingCalibration = new float[4];             // 待提交的矫正姿态，所有实例共用
+    private final float[] mTempQuaternion     = new float[4];             // 临时四元数，在锁内使用
+    private final float[] mCalibration        = new float[4];             // 绘制用的矫正姿态
+    private final float[] mInstances;                                     // 绘制用的实例数据，只由GLThread访问
+    private final int[]   mTextures;                                      // 绘制用的纹理槽
+    private int           mCount              = 0;                        // 绘制用的实例数量
+    private final float[] mModelView;                                     // 可见实例的模型视图矩阵，按实例序号存放
+    private final int[]   mKeys;                                          // 可见实例的排序键：纹理槽 << 16 | 量化深度
+    private final int[]   mOrder;                                         // 可见实例的序号，排序后为绘制顺序
+    private final int[]   mKeysTemp;                                      // 基数排序的临时键
+    private final int[]   mOrderTemp;                                     // 基数排序的临时序号
+    private final int[]   mRadixCounts        = new int[1 << RADIX_BITS]; // 基数排序的桶计数
+    private final float[] mPlanes             = new float[12];            // 视景体左右下上4个侧面在视图空间中的内法线(x, y, z)
+    private float         mNear               = 0.1f;                     // 视景体近端距离
+    private float         mFar                = 100f;                     // 视景体远端距离
+    private float         mBoundingRadius     = 1.0f;                     // 网格包围球半径(缩放前)
+    private int           mVisibleCount       = 0;                        // 上一帧可见的实例数
+    private int           mBatchCount         = 0;                        // 上一帧的纹理分组数
+    private int           mDrawCount          = 0;                        // 上一帧的绘制调用数
+
+    /**
+     * @param capacity 实例数量上限
+     */
+    public InstanceBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid instance capacity: " + capacity);
+        }
+        mCapacity         = capacity;
+        mPendingInstances = new float[capacity * INSTANCE_SIZE];
+        mPendingTextures  = new int[capacity];
+        mInstances        = new float[capacity * INSTANCE_SIZE];
+        mTextures         = new int[capacity];
+        mModelView        = new float[capacity * MATRIX_SIZE];
+        mKeys             = new int[capacity];
+        mOrder            = new int[capacity];
+        mKeysTemp         = new int[capacity];
+        mOrderTemp        = new int[capacity];
+        new RigidTransform().setAxisAngle(90.0f, 1.0f, 0.0f, 0.0f).getRotation(mPendingCalibration);
+        System.arraycopy(mPendingCalibration, 0, mCalibration, 0, 4);
+        setFrustum(-1, 1, -1, 1, mNear, mFar);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Set the number of instances drawn, new instances start at the origin
+     * with identity pose, scale 1 and texture slot 0
+     * @param count 实例数量
+     */
+    public void setInstanceCount(int count) {
+        if (count < 0 || count > mCapacity) {
+            throw new IllegalArgumentException("Invalid instance count: " + count);
+        }
+        synchronized (mLock) {
+            for (int i = mPendingCount; i < count; i++) {
+                int offset = i * INSTANCE_SIZE;
+                Arrays.fill(mPendingInstances, offset, offset + INSTANCE_SIZE, 0.0f);
+                mPendingInstances[offset]     = 1.0f;
+                mPendingInstances[offset + 7] = 1.0f;
+                mPendingTextures[i]           = 0;
+            }
+            mPendingCount = count;
+            mDirty        = true;
+        }
+    }
+
+    public int getInstanceCount() {
+        synchronized (mLock) {
+            return mPendingCount;
+        }
+    }
+
+    /**
+     * Set the calibration pose shared by all instances, the sphere model
+     * matrix is the inverse device pose followed by the calibration;
+     * applies to all instances from the next frame on
+     * @param q 四元数{w, x, y, z}，长度不为1时归一化
+     */
+    public void setCalibration(float[] q) {
+        synchronized (mLock) {
+            System.arraycopy(q, 0, mPendingCalibration, 0, 4);
+            OrientationMath.normalizeQuaternion(mPendingCalibration);
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Set the orientation of an instance from its device rotation matrix,
+     * may be called on any thread
+     * @param index  实例序号
+     * @param matrix 行主序的设备旋转矩阵，长度为9或16
+     */
+    public void setPose(int index, float[] matrix) {
+        checkIndex(index);
+        synchronized (mLock) {
+            OrientationMath.matrixToQuaternion(matrix, mTempQuaternion);
+            System.arraycopy(mTempQuaternion, 0, mPendingInstances, index * INSTANCE_SIZE, 4);
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Place an instance in world space
+     * @param index 实例序号
+     * @param x     位置
+     * @param y     位置
+     * @param z     位置
+     * @param scale 等比缩放
+     */
+    public void setPlacement(int index, float x, float y, float z, float scale) {
+        checkIndex(index);
+        synchronized (mLock) {
+            int offset = index * INSTANCE_SIZE;
+            mPendingInstances[offset + 4] = x;
+            mPendingInstances[offset + 5] = y;
+            mPendingInstances[offset + 6] = z;
+            mPendingInstances[offset + 7] = scale;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Select the texture of an instance among the texture IDs given to draw()
+     * @param index 实例序号
+     * @param slot  纹理槽，超出draw()给出的纹理数量时使用最后一个纹理
+     */
+    public void setTextureSlot(int index, int slot) {
+        checkIndex(index);
+        if (slot < 0 || slot >= MAX_TEXTURE_SLOTS) {
+            throw new IllegalArgumentException("Invalid texture slot: " + slot);
+        }
+        synchronized (mLock) {
+            mPendingTextures[index] = slot;
+            mDirty = true;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCapacity) {
+            throw new IllegalArgumentException("Invalid instance index: " + index);
+        }
+    }
+
+    /**
+     * @param radius 网格包围球半径，实例的缩放会乘在它上面
+     */
+    public void setBoundingRadius(float radius) {
+        mBoundingRadius = radius;
+    }
+
+    /**
+     * Set the view frustum used for culling, same as glFrustumf()
+     */
+    public void setFrustum(float left, float right, float bottom, float top, float zNear, float zFar) {
+        // 侧面都经过视点，视图空间中视点在原点、朝向-z，
+        // 例如左侧面经过(left, 0, -zNear)，内法线为(zNear, 0, left)归一化
+        setPlane(0,  zNear, 0.0f,  left);
+        setPlane(1, -zNear, 0.0f, -right);
+        setPlane(2,  0.0f,  zNear,  bottom);
+        setPlane(3,  0.0f, -zNear, -top);
+        mNear = zNear;
+        mFar  = zFar;
+    }
+
+    private void setPlane(int plane, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        mPlanes[plane * 3]     = x / length;
+        mPlanes[plane * 3 + 1] = y / length;
+        mPlanes[plane * 3 + 2] = z / length;
+    }
+
+    /**
+     * Cull, sort and draw all instances; the mesh buffers and client
+     * states must be set up, the modelview matrix is overwritten
+     * @param gl         GL API
+     * @param mesh       所有实例共享的网格
+     * @param useVBO     true则从已绑定的VBO/IBO中绘制，否则使用客户端数组
+     * @param view       列主序的视图矩阵
+     * @param textureIDs 各纹理槽对应的纹理ID
+     */
+    public void draw(GLApi gl, InterleavedMesh mesh, boolean useVBO, float[] view, int[] textureIDs) {
+        synchronize();
+        int visible = cullAndSort(view, mesh.getPositionScale());
+        mVisibleCount = visible;
+        mBatchCount   = 0;
+        mDrawCount    = 0;
+        if (visible == 0 || textureIDs.length == 0) {
+            return;
+        }
+
+        int chunkCount = mesh.getChunkCount();
+        int lastSlot   = textureIDs.length - 1;
+        int start      = 0;
+        while (start < visible) {
+            // 找出纹理槽相同的一组实例，排序后它们是连续的
+            int slot = mTextures[mOrder[start]];
+            int end  = start + 1;
+            while (end < visible && mTextures[mOrder[end]] == slot) {
+                end++;
+            }
+            gl.glBindTexture(GLES11.GL_TEXTURE_2D, textureIDs[Math.min(slot, lastSlot)]);
+            mBatchCount++;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                setChunkPointers(gl, mesh, chunk, useVBO);
+                for (int i = start; i < end; i++) {
+                    gl.glLoadMatrixf(mModelView, mOrder[i] * MATRIX_SIZE);
+                    drawChunk(gl, mesh, chunk, useVBO);
+                }
+                mDrawCount += end - start;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * 有更新时把待提交的实例数据拷贝为本帧绘制用的数据
+     */
+    private void synchronize() {
+        synchronized (mLock) {
+            if (!mDirty) {
+                return;
+            }
+            mCount = mPendingCount;
+            System.arraycopy(mPendingInstances, 0, mInstances, 0, mCount * INSTANCE_SIZE);
+            System.arraycopy(mPendingTextures, 0, mTextures, 0, mCount);
+            System.arraycopy(mPendingCalibration, 0, mCalibration, 0, 4);
+            mDirty = false;
+        }
+    }
+
+    /**
+     * 剔除视景体外的实例，为可见实例计算模型视图矩阵和排序键，然后按排序键排序
+     * @return 可见实例数
+     */
+    private int cullAndSort(float[] view, float positionScale) {
+        float   depthScale = (DEPTH_LEVELS - 1) / (mFar - mNear);
+        float[] planes     = mPlanes;
+        int     visible    = 0;
+        for (int i = 0; i < mCount; i++) {
+            int   offset = i * INSTANCE_SIZE;
+            float tx     = mInstances[offset + 4];
+            float ty     = mInstances[offset + 5];
+            float tz     = mInstances[offset + 6];
+            float scale  = mInstances[offset + 7];
+            float radius = mBoundingRadius * Math.abs(scale);
+
+            // 包围球球心变换到视图空间
+            float ex = view[0] * tx + view[4] * ty + view[ 8] * tz + view[12];
+            float ey = view[1] * tx + view[5] * ty + view[ 9] * tz + view[13];
+            float ez = view[2] * tx + view[6] * ty + view[10] * tz + view[14];
+            float distance = -ez;
+            if (distance + radius < mNear || distance - radius > mFar
+                    || planes[0] * ex + planes[2]  * ez < -radius
+                    || planes[3] * ex + planes[5]  * ez < -radius
+                    || planes[7] * ey + planes[8]  * ez < -radius
+                    || planes[10] * ey + planes[11] * ez < -radius) {
+                continue;
+            }
+
+            computeModelView(view, offset, ex, ey, ez, scale * positionScale, i * MATRIX_SIZE);
+            int depth = (int) ((distance - mNear) * depthScale);
+            depth = depth < 0 ? 0 : (depth >= DEPTH_LEVELS ? DEPTH_LEVELS - 1 : depth);
+            mKeys[visible]  = mTextures[i] << 16 | depth;
+            mOrder[visible] = i;
+            visible++;
+        }
+        radixSort(visible);
+        return visible;
+    }
+
+    /**
+     * 模型视图矩阵 = 视图矩阵 × 平移 × 旋转 × 缩放，平移部分已经变换到视图空间。
+     * 与单个球体相同，旋转为设备姿态的逆(共轭)与矫正姿态的复合
+     */
+    private void computeModelView(float[] view, int offset, float ex, float ey, float ez, float scale, int out) {
+        float   dw = mInstances[offset];
+        float   dx = -mInstances[offset + 1];
+        float   dy = -mInstances[offset + 2];
+        float   dz = -mInstances[offset + 3];
+        float   cw = mCalibration[0], cx = mCalibration[1], cy = mCalibration[2], cz = mCalibration[3];
+        float   w  = dw * cw - dx * cx - dy * cy - dz * cz;
+        float   x  = dw * cx + dx * cw + dy * cz - dz * cy;
+        float   y  = dw * cy - dx * cz + dy * cw + dz * cx;
+        float   z  = dw * cz + dx * cy - dy * cx + dz * cw;
+        float   xx = x * x, yy = y * y, zz = z * z;
+        float   xy = x * y, xz = x * z, yz = y * z;
+        float   wx = w * x, wy = w * y, wz = w * z;
+        // 列主序的缩放后的旋转矩阵
+        float   r0 = (1 - 2 * (yy + zz)) * scale, r4 = 2 * (xy - wz) * scale,       r8  = 2 * (xz + wy) * scale;
+        float   r1 = 2 * (xy + wz) * scale,       r5 = (1 - 2 * (xx + zz)) * scale, r9  = 2 * (yz - wx) * scale;
+        float   r2 = 2 * (xz - wy) * scale,       r6 = 2 * (yz + wx) * scale,       r10 = (1 - 2 * (xx + yy)) * scale;
+        float[] m  = mModelView;
+        for (int row = 0; row < 3; row++) {
+            float v0 = view[row], v1 = view[4 + row], v2 = view[8 + row];
+            m[out + row]     = v0 * r0 + v1 * r1 + v2 * r2;
+            m[out + 4 + row] = v0 * r4 + v1 * r5 + v2 * r6;
+            m[out + 8 + row] = v0 * r8 + v1 * r9 + v2 * r10;
+        }
+        m[out + 3]  = 0;
+        m[out + 7]  = 0;
+        m[out + 11] = 0;
+        m[out + 12] = ex;
+        m[out + 13] = ey;
+        m[out + 14] = ez;
+        m[out + 15] = 1;
+    }
+
+    /**
+     * 按排序键对可见实例做LSD基数排序，O(n)且不分配内存；所有键在某一趟上相同时跳过这一趟，
+     * 少于两个实例时不需要排序，也不清空桶计数
+     */
+    private void radixSort(int count) {
+        if (count < 2) {
+            return;
+        }
+        int[] keys      = mKeys;
+        int[] order     = mOrder;
+        int[] keysTemp  = mKeysTemp;
+        int[] orderTemp = mOrderTemp;
+        int[] counts    = mRadixCounts;
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int shift = pass * RADIX_BITS;
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[(keys[i] >>> shift) & RADIX_MASK]++;
+            }
+            if (counts[(keys[0] >>> shift) & RADIX_MASK] == count) {
+                continue;
+            }
+            int sum = 0;
+            for (int digit = 0; digit <= RADIX_MASK; digit++) {
+                int digitCount = counts[digit];
+                counts[digit]  = sum;
+                sum           += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                int position = counts[(keys[i] >>> shift) & RADIX_MASK]++;
+                keysTemp[position]  = keys[i];
+                orderTemp[position] = order[i];
+            }
+            int[] swap = keys;
+            keys       = keysTemp;
+            keysTemp   = swap;
+            swap       = order;
+            order      = orderTemp;
+            orderTemp  = swap;
+        }
+        if (keys != mKeys) {
+            System.arraycopy(keys, 0, mKeys, 0, count);
+            System.arraycopy(order, 0, mOrder, 0, count);
+        }
+    }
+
+    /**
+     * 设置一个绘制块的顶点指针，每个绘制块都需要把顶点指针偏移到块的起始顶点
+     * @param useVBO true则指向已绑定的VBO，否则指向客户端数组
+     */
+    static void setChunkPointers(GLApi gl, InterleavedMesh mesh, int chunk, boolean useVBO) {
+        VertexFormat format     = mesh.getFormat();
+        int          stride     = format.getStride();
+        int          baseOffset = mesh.getChunkBaseVertex(chunk) * stride;
+        if (useVBO) {
+            // 顶点数据已在显存中，只需要指定各属性在交错顶点中的偏移
+            gl.glVertexPointer(InterleavedMesh.POSITION_SIZE, format.getPositionType(), stride, baseOffset + format.getPositionOffset());
+            gl.glTexCoordPointer(InterleavedMesh.TEXCOORD_SIZE, format.getTexcoordType(), stride, baseOffset + format.getTexcoordOffset());
+            gl.glNormalPointer(format.getNormalType(), stride, baseOffset + format.getNormalOffset());
+        } else {
+            // 退回到客户端数组，每帧由驱动从内存中拷贝顶点数据，Buffer的position即为数据起点
+            ByteBuffer positionData = mesh.getPositionData();
+            ByteBuffer texcoordData = mesh.getTexcoordData();
+            ByteBuffer normalData   = mesh.getNormalData();
+            positionData.position(baseOffset);
+            texcoordData.position(baseOffset);
+            normalData.position(baseOffset);
+            gl.glVertexPointer(InterleavedMesh.POSITION_SIZE, format.getPositionType(), stride, positionData);
+            gl.glTexCoordPointer(InterleavedMesh.TEXCOORD_SIZE, format.getTexcoordType(), stride, texcoordData);
+            gl.glNormalPointer(format.getNormalType(), stride, normalData);
+        }
+    }
+
+    /**
+     * 绘制一个绘制块，顶点指针需要已由setChunkPointers()设置
+     */
+    static void drawChunk(GLApi gl, InterleavedMesh mesh, int chunk, boolean useVBO) {
+        int firstIndex = mesh.getChunkFirstIndex(chunk);
+        int indexCount = mesh.getChunkIndexCount(chunk);
+        if (useVBO) {
+            gl.glDrawElements(mesh.getPrimitiveMode(), indexCount, GLES11.GL_UNSIGNED_SHORT, firstIndex * InterleavedMesh.SHORT_BYTES);
+        } else {
+            ShortBuffer indexData = mesh.getIndexData();
+            indexData.position(firstIndex);
+            gl.glDrawElements(mesh.getPrimitiveMode(), indexCount, GLES11.GL_UNSIGNED_SHORT, indexData);
+        }
+    }
+
+    /**
+     * @return number of instances that passed culling in the last frame
+     */
+    public int getVisibleCount() {
+        return mVisibleCount;
+    }
+
+    /**
+     * @return number of texture groups, i.e. texture binds, in the last frame
+     */
+    public int getBatchCount() {
+        return mBatchCount;
+    }
+
+    /**
+     * @return number of glDrawElements calls in the last frame
+     */
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InstanceBatch[%d/%d instances, %d visible, %d batches, %d draws]",
+                mCount, mCapacity, mVisibleCount, mBatchCount, mDrawCount);
+    }
+}
@@ -0,0 +1,195 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Interleaved triangle mesh: 每个顶点的坐标、法线、贴图坐标连续存放在同一个Buffer中，
+ * 可以一次上传为VBO，也可以作为客户端数组直接使用。
+ * 下面的布局常量描述的是32位浮点格式，其他格式的布局见{@link VertexFormat}
+ * <pre>
+ * | position(3 x float) | normal(3 x float) | texcoord(2 x float) |
+ * 0                     12                  24                    32
+ * </pre>
+ */
+public class InterleavedMesh {
+
+    public static final int POSITION_SIZE            = 3;                                             // 每个顶点坐标的分量数
+    public static final int NORMAL_SIZE              = 3;                                             // 每个法线的分量数
+    public static final int TEXCOORD_SIZE            = 2;                                             // 每个贴图坐标的分量数
+    public static final int FLOAT_BYTES              = Float.SIZE / 8;                                // float的字节数
+    public static final int SHORT_BYTES              = Short.SIZE / 8;                                // short的字节数
+    public static final int POSITION_OFFSET          = 0;                                             // 顶点坐标在顶点中的字节偏移
+    public static final int NORMAL_OFFSET            = POSITION_OFFSET + POSITION_SIZE * FLOAT_BYTES; // 法线在顶点中的字节偏移
+    public static final int TEXCOORD_OFFSET          = NORMAL_OFFSET + NORMAL_SIZE * FLOAT_BYTES;     // 贴图坐标在顶点中的字节偏移
+    public static final int STRIDE                   = TEXCOORD_OFFSET + TEXCOORD_SIZE * FLOAT_BYTES; // 每个顶点的字节数
+    public static final int MAX_CHUNK_VERTICES       = 0x10000;                                       // 16位索引能寻址的最大顶点数
+    public static final int PRIMITIVE_TRIANGLES      = 0x0004;                                        // 三角形列表，与GL_TRIANGLES相同
+    public static final int PRIMITIVE_TRIANGLE_STRIP = 0x0005;                                        // 三角形条带，与GL_TRIANGLE_STRIP相同
+
+    private final VertexFormat mFormat;          // 顶点格式
+    private final float        mPositionScale;   // 坐标的缩放，绘制时乘到模型矩阵上
+    private final float        mTexcoordScale;   // 贴图坐标的缩放，绘制时乘到纹理矩阵上
+    private final ByteBuffer   mVertexData;      // 交错存放的顶点数据
+    private final ByteBuffer   mPositionData;    // 从顶点坐标开始的视图，用于客户端数组
+    private final ByteBuffer   mNormalData;      // 从法线开始的视图，用于客户端数组
+    private final ByteBuffer   mTexcoordData;    // 从贴图坐标开始的视图，用于客户端数组
+    private final ShortBuffer  mIndexData;       // 三角形顶点索引
+    private final int          mPrimitiveMode;   // 索引的图元类型
+    private final int          mVertexCount;     // 顶点数量
+    private final int          mIndexCount;      // 索引数量
+    private final int[]        mChunkBaseVertex; // 每个绘制块的起始顶点，块内的16位索引相对于它
+    private final int[]        mChunkFirstIndex; // 每个绘制块的起始索引
+    private final int[]        mChunkIndexCount; // 每个绘制块的索引数量
+
+    /**
+     * 顶点数超过16位索引的寻址范围时，网格被拆分为多个绘制块，
+     * 每个绘制块内的索引相对于块的起始顶点，绘制时需要把顶点指针偏移到起始顶点；
+     * 三角形条带的每个绘制块是一条用退化三角形连接起来的条带
+     */
+    InterleavedMesh(ByteBuffer vertexData, ShortBuffer indexData, int primitiveMode, int vertexCount, int indexCount,
+            int[] chunkBaseVertex, int[] chunkFirstIndex, int[] chunkIndexCount) {
+        this(VertexFormat.FLOAT, 1.0f, 1.0f, vertexData, indexData, primitiveMode, vertexCount, indexCount,
+                chunkBaseVertex, chunkFirstIndex, chunkIndexCount);
+    }
+
+    /**
+     * 使用指定顶点格式的网格，整数格式的坐标和贴图坐标在绘制时分别乘以positionScale和texcoordScale
+     */
+    InterleavedMesh(VertexFormat format, float positionScale, float texcoordScale,
+            ByteBuffer vertexData, ShortBuffer indexData, int primitiveMode, int vertexCount, int indexCount,
+            int[] chunkBaseVertex, int[] chunkFirstIndex, int[] chunkIndexCount) {
+        mFormat          = format;
+        mPositionScale   = positionScale;
+        mTexcoordScale   = texcoordScale;
+        mVertexData      = vertexData;
+        mIndexData       = indexData;
+        mPrimitiveMode   = primitiveMode;
+        mVertexCount     = vertexCount;
+        mIndexCount      = indexCount;
+        mChunkBaseVertex = chunkBaseVertex;
+        mChunkFirstIndex = chunkFirstIndex;
+        mChunkIndexCount = chunkIndexCount;
+        mPositionData    = sliceAt(vertexData, format.getPositionOffset());
+        mNormalData      = sliceAt(vertexData, format.getNormalOffset());
+        mTexcoordData    = sliceAt(vertexData, format.getTexcoordOffset());
+    }
+
+    /**
+     * 把分开存放的顶点属性打包为交错格式
+     * @param positions 顶点坐标，每3个数一个顶点
+     * @param normals   法线，每3个数一个顶点
+     * @param texcoords 贴图坐标，每2个数一个顶点
+     * @param indices   三角形顶点索引
+     * @return packed mesh
+     */
+    public static InterleavedMesh pack(float[] positions, float[] normals, float[] texcoords, short[] indices) {
+        int vertexCount = positions.length / POSITION_SIZE;
+        if (vertexCount > MAX_CHUNK_VERTICES) {
+            throw new IllegalArgumentException("Too many vertices for 16-bit indices: " + vertexCount);
+        }
+        if (normals.length != vertexCount * NORMAL_SIZE || texcoords.length != vertexCount * TEXCOORD_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Attribute size mismatch: %d positions, %d normals, %d texcoords",
+                    positions.length, normals.length, texcoords.length));
+        }
+
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexCount * STRIDE);
+        vertexData.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < vertexCount; i++) {
+            int p = i * POSITION_SIZE;
+            int n = i * NORMAL_SIZE;
+            int t = i * TEXCOORD_SIZE;
+            vertexData.putFloat(positions[p]).putFloat(positions[p + 1]).putFloat(positions[p + 2]);
+            vertexData.putFloat(normals[n]).putFloat(normals[n + 1]).putFloat(normals[n + 2]);
+            vertexData.putFloat(texcoords[t]).putFloat(texcoords[t + 1]);
+        }
+        vertexData.rewind();
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(indices.length * SHORT_BYTES);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        ShortBuffer indexData = byteBuffer.asShortBuffer();
+        indexData.put(indices);
+        indexData.rewind();
+
+        return new InterleavedMesh(vertexData, indexData, PRIMITIVE_TRIANGLES, vertexCount, indices.length,
+                new int[] {0}, new int[] {0}, new int[] {indices.length});
+    }
+
+    private static ByteBuffer sliceAt(ByteBuffer buffer, int offset) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        ByteBuffer slice = duplicate.slice();
+        slice.order(buffer.order());
+        return slice;
+    }
+
+    public VertexFormat getFormat() {
+        return mFormat;
+    }
+
+    public float getPositionScale() {
+        return mPositionScale;
+    }
+
+    public float getTexcoordScale() {
+        return mTexcoordScale;
+    }
+
+    public ByteBuffer getVertexData() {
+        return mVertexData;
+    }
+
+    public ByteBuffer getPositionData() {
+        return mPositionData;
+    }
+
+    public ByteBuffer getNormalData() {
+        return mNormalData;
+    }
+
+    public ByteBuffer getTexcoordData() {
+        return mTexcoordData;
+    }
+
+    public ShortBuffer getIndexData() {
+        return mIndexData;
+    }
+
+    public int getPrimitiveMode() {
+        return mPrimitiveMode;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+
+    public int getChunkCount() {
+        return mChunkBaseVertex.length;
+    }
+
+    public int getChunkBaseVertex(int chunk) {
+        return mChunkBaseVertex[chunk];
+    }
+
+    public int getChunkFirstIndex(int chunk) {
+        return mChunkFirstIndex[chunk];
+    }
+
+    public int getChunkIndexCount(int chunk) {
+        return mChunkIndexCount[chunk];
+    }
+
+    public int getVertexDataSize() {
+        return mVertexCount * mFormat.getStride();
+    }
+
+    public int getIndexDataSize() {
+        return mIndexCount * SHORT_BYTES;
+    }
+}
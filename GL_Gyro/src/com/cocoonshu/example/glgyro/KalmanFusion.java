@@ -0,0 +1,210 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Extended Kalman filter over the orientation quaternion and the gyroscope bias:
+ * 状态为姿态四元数q和陀螺仪零偏b共7维。预测阶段用去除零偏后的角速度ω - b积分姿态，
+ * 协方差用线性化的状态转移矩阵F = [I + 0.5 * Ω(ω - b) * dt, -0.5 * Ξ(q) * dt; 0, I]传播，
+ * 零偏按随机游走建模；修正阶段把加速度计+磁力计算出的四元数作为姿态的直接观测(H = [I 0])，
+ * 经由姿态与零偏的协方差同时修正姿态和零偏，恒定的陀螺仪零偏不会留下稳态误差。
+ * 所有矩阵都是预分配的行主序数组，每个样本的计算量固定
+ */
+public class KalmanFusion extends AbstractOrientationFusion {
+
+    public  static final float DEFAULT_GYRO_NOISE         = 0.02f;                     // 默认陀螺仪噪声标准差(rad/s)
+    public  static final float DEFAULT_MEASUREMENT_NOISE  = 0.05f;                     // 默认观测四元数噪声标准差
+    public  static final float DEFAULT_BIAS_NOISE         = 0.002f;                    // 默认零偏随机游走强度(rad/s/√s)
+    private static final float INITIAL_COVARIANCE         = 0.1f;                      // 姿态的初始协方差
+    private static final float INITIAL_BIAS_COVARIANCE    = 0.05f * 0.05f;             // 零偏的初始协方差，约3°/s
+    private static final int   N                          = 7;                         // 状态维数{qw, qx, qy, qz, bx, by, bz}
+
+    private final float[]      mBias                      = new float[3];              // 陀螺仪零偏估计(rad/s)
+    private final float[]      mCovariance                = new float[N * N];          // 状态协方差P
+    private final float[]      mTransition                = new float[N * N];          // 状态转移矩阵F
+    private final float[]      mTemp                      = new float[N * N];          // 临时矩阵
+    private final float[]      mGain                      = new float[N * 4];          // 卡尔曼增益K
+    private final float[]      mInnovationCovariance      = new float[16];             // 残差协方差S
+    private final float[]      mInverse                   = new float[16];             // S^-1
+    private final float[]      mInnovation                = new float[4];              // 观测残差z - q
+    private float              mGyroVariance              = DEFAULT_GYRO_NOISE * DEFAULT_GYRO_NOISE;
+    private float              mMeasurementVariance       = DEFAULT_MEASUREMENT_NOISE * DEFAULT_MEASUREMENT_NOISE;
+    private float              mBiasVariance              = DEFAULT_BIAS_NOISE * DEFAULT_BIAS_NOISE;
+    private boolean            mHasGyroscope              = false;                     // 是否收到过陀螺仪样本
+
+    public KalmanFusion() {
+        onReset();
+    }
+
+    /**
+     * 设置噪声参数
+     * @param gyroNoise        陀螺仪噪声标准差(rad/s)
+     * @param measurementNoise 观测四元数噪声标准差
+     */
+    public void setNoise(float gyroNoise, float measurementNoise) {
+        mGyroVariance        = gyroNoise * gyroNoise;
+        mMeasurementVariance = measurementNoise * measurementNoise;
+    }
+
+    /**
+     * 设置零偏随机游走的强度，越大零偏跟踪得越快，估计也越不平稳
+     * @param biasNoise 零偏每秒变化的标准差(rad/s/√s)
+     */
+    public void setBiasNoise(float biasNoise) {
+        mBiasVariance = biasNoise * biasNoise;
+    }
+
+    /**
+     * @param out 输出的陀螺仪零偏估计{bx, by, bz}(rad/s)
+     */
+    public void getGyroBias(float[] out) {
+        out[0] = mBias[0];
+        out[1] = mBias[1];
+        out[2] = mBias[2];
+    }
+
+    @Override
+    protected void onReset() {
+        for (int i = 0; i < N * N; i++) {
+            mCovariance[i] = 0;
+        }
+        for (int i = 0; i < N; i++) {
+            mCovariance[i * N + i] = i < 4 ? INITIAL_COVARIANCE : INITIAL_BIAS_COVARIANCE;
+        }
+        mBias[0]      = 0;
+        mBias[1]      = 0;
+        mBias[2]      = 0;
+        mHasGyroscope = false;
+    }
+
+    @Override
+    protected void predict(float wx, float wy, float wz, float dt) {
+        wx -= mBias[0];
+        wy -= mBias[1];
+        wz -= mBias[2];
+        float   h  = 0.5f * dt;
+        float[] q  = mQuaternion;
+        float   qw = q[0], qx = q[1], qy = q[2], qz = q[3];
+        float[] F  = mTransition;
+        // ∂q/∂q = I + h * Ω(ω)，∂q/∂b = -h * Ξ(q)，其中q * (0, ω) = Ξ(q) * ω
+        F[ 0] = 1;       F[ 1] = -wx * h; F[ 2] = -wy * h; F[ 3] = -wz * h; F[ 4] =  qx * h; F[ 5] =  qy * h; F[ 6] =  qz * h;
+        F[ 7] = wx * h;  F[ 8] = 1;       F[ 9] = wz * h;  F[10] = -wy * h; F[11] = -qw * h; F[12] =  qz * h; F[13] = -qy * h;
+        F[14] = wy * h;  F[15] = -wz * h; F[16] = 1;       F[17] = wx * h;  F[18] = -qz * h; F[19] = -qw * h; F[20] =  qx * h;
+        F[21] = wz * h;  F[22] = wy * h;  F[23] = -wx * h; F[24] = 1;       F[25] =  qy * h; F[26] = -qx * h; F[27] = -qw * h;
+        for (int i = 28; i < N * N; i++) {
+            F[i] = (i % (N + 1) == 0) ? 1 : 0;
+        }
+
+        // 姿态用精确的指数映射积分，协方差用线性化的F传播
+        OrientationMath.integrateAngularRate(mQuaternion, wx, wy, wz, dt);
+
+        // P = F * P * F^T + Q
+        multiply(F, mCovariance, mTemp);
+        multiplyTransposed(mTemp, F, mCovariance);
+        float qq = mGyroVariance * h * h;
+        float qb = mBiasVariance * dt;
+        for (int i = 0; i < N; i++) {
+            mCovariance[i * N + i] += i < 4 ? qq : qb;
+        }
+        mHasGyroscope = true;
+    }
+
+    @Override
+    protected void correct(float[] measurement) {
+        if (!mHasGyroscope) {
+            // 没有陀螺仪时无法预测，直接采信观测值
+            mQuaternion[0] = measurement[0];
+            mQuaternion[1] = measurement[1];
+            mQuaternion[2] = measurement[2];
+            mQuaternion[3] = measurement[3];
+            return;
+        }
+
+        // S = H * P * H^T + R，即P左上角的4x4块加上观测噪声
+        float[] S = mInnovationCovariance;
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                S[row * 4 + col] = mCovariance[row * N + col] + (row == col ? mMeasurementVariance : 0);
+            }
+        }
+        if (!OrientationMath.invertMatrix4(S, mInverse)) {
+            return;
+        }
+
+        // K = P * H^T * S^-1，P * H^T即P的前4列
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < 4; col++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += mCovariance[row * N + k] * mInverse[k * 4 + col];
+                }
+                mGain[row * 4 + col] = sum;
+            }
+        }
+
+        // x = x + K * (z - q)
+        for (int i = 0; i < 4; i++) {
+            mInnovation[i] = measurement[i] - mQuaternion[i];
+        }
+        for (int row = 0; row < N; row++) {
+            int   r          = row * 4;
+            float correction = mGain[r]     * mInnovation[0]
+                             + mGain[r + 1] * mInnovation[1]
+                             + mGain[r + 2] * mInnovation[2]
+                             + mGain[r + 3] * mInnovation[3];
+            if (row < 4) {
+                mQuaternion[row] += correction;
+            } else {
+                mBias[row - 4]   += correction;
+            }
+        }
+        OrientationMath.normalizeQuaternion(mQuaternion);
+
+        // P = (I - K * H) * P = P - K * P的前4行
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += mGain[row * 4 + k] * mCovariance[k * N + col];
+                }
+                mTemp[row * N + col] = mCovariance[row * N + col] - sum;
+            }
+        }
+        // 对称化，抑制浮点误差的累积
+        for (int row = 0; row < N; row++) {
+            for (int col = row; col < N; col++) {
+                float value = 0.5f * (mTemp[row * N + col] + mTemp[col * N + row]);
+                mCovariance[row * N + col] = value;
+                mCovariance[col * N + row] = value;
+            }
+        }
+    }
+
+    /**
+     * out = a * b，均为NxN行主序矩阵
+     */
+    private static void multiply(float[] a, float[] b, float[] out) {
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                float sum = 0;
+                for (int k = 0; k < N; k++) {
+                    sum += a[row * N + k] * b[k * N + col];
+                }
+                out[row * N + col] = sum;
+            }
+        }
+    }
+
+    /**
+     * out = a * b^T，均为NxN行主序矩阵
+     */
+    private static void multiplyTransposed(float[] a, float[] b, float[] out) {
+        for (int row = 0; row < N; row++) {
+            for (int col = 0; col < N; col++) {
+                float sum = 0;
+                for (int k = 0; k < N; k++) {
+                    sum += a[row * N + k] * b[col * N + k];
+                }
+                out[row * N + col] = sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed-memory histogram of latencies
+ * 以微秒为单位按对数-线性分桶：小于SUB_BUCKET_COUNT us的值每微秒一个桶，之后每个2的幂区间
+ * 再均分为SUB_BUCKET_COUNT个桶，相对误差不超过1/SUB_BUCKET_COUNT。超出范围的值计入最后一个桶，
+ * 最大值另外精确记录。记录只做原子自增，不分配内存，可以在GLThread上每帧调用；
+ * 其他线程可以随时读取百分位数，读取期间仍在记录的样本可能只被部分计入
+ */
+public class LatencyHistogram {
+
+    private static final int  SUB_BUCKET_BITS  = 4;                                         // 每个2的幂区间细分的位数
+    private static final int  SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;                      // 每个2的幂区间的桶数
+    private static final int  MAX_EXPONENT     = 24;                                        // 可分辨的最大值小于2^25us，约33.5s
+    private static final int  BUCKET_COUNT     = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT; // 桶的总数
+    private static final long NS_PER_US        = 1000;                                      // 每微秒的纳秒数
+
+    private final AtomicLongArray mCounts         = new AtomicLongArray(BUCKET_COUNT); // 各个桶的样本数
+    private final AtomicLong      mTotalCount     = new AtomicLong();                  // 已记录的样本数
+    private final AtomicLong      mTotalNs        = new AtomicLong();                  // 已记录样本的延迟之和(ns)
+    private final AtomicLong      mMaxNs          = new AtomicLong();                  // 最大延迟(ns)
+    private final AtomicLong      mDiscardedCount = new AtomicLong();                  // 因延迟为负而丢弃的样本数，通常说明时钟不一致
+
+    /**
+     * Record one latency. Negative values are counted as discarded.
+     * @param latencyNs 延迟(ns)
+     */
+    public void record(long latencyNs) {
+        if (latencyNs < 0) {
+            mDiscardedCount.incrementAndGet();
+            return;
+        }
+        mCounts.incrementAndGet(bucketIndex(latencyNs / NS_PER_US));
+        mTotalCount.incrementAndGet();
+        mTotalNs.addAndGet(latencyNs);
+        long max = mMaxNs.get();
+        while (latencyNs > max && !mMaxNs.compareAndSet(max, latencyNs)) {
+            max = mMaxNs.get();
+        }
+    }
+
+    /**
+     * 清空所有样本，与record()并发时正在记录的样本可能被部分保留
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalNs.set(0);
+        mMaxNs.set(0);
+        mDiscardedCount.set(0);
+    }
+
+    private static int bucketIndex(long valueUs) {
+        if (valueUs < SUB_BUCKET_COUNT) {
+            return (int) valueUs;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(valueUs);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (valueUs >> shift) - SUB_BUCKET_COUNT;
+    }
+
+    private static long bucketLowerBoundUs(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+    }
+
+    private static long bucketUpperBoundNs(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : bucketLowerBoundUs(index + 1) * NS_PER_US - 1;
+    }
+
+    /**
+     * @param percentile 百分位，取值范围[0, 100]
+     * @return upper bound of the bucket holding the percentile in ns, never above the maximum; 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank  = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts.get(i);
+            if (count >= rank) {
+                return Math.min(bucketUpperBoundNs(i), mMaxNs.get());
+            }
+        }
+        return mMaxNs.get();
+    }
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return mean latency in ns, 0 if empty
+     */
+    public long getMean() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : mTotalNs.get() / count;
+    }
+
+    /**
+     * @return maximum latency in ns
+     */
+    public long getMax() {
+        return mMaxNs.get();
+    }
+
+    public long getDiscardedCount() {
+        return mDiscardedCount.get();
+    }
+
+    /**
+     * 以文本形式输出摘要和所有非空的桶，每个桶一行：下界(us) 上界(us) 样本数 累计百分比
+     * @param writer
+     * @throws IOException
+     */
+    public void writeTo(Writer writer) throws IOException {
+        long[] counts = new long[BUCKET_COUNT];
+        long   total  = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            total    += counts[i];
+        }
+        writer.write(String.format("# %s%n", this));
+        writer.write(String.format("# %-12s %12s %10s %9s%n", "from_us", "to_us", "count", "cumul_%"));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            cumulative += counts[i];
+            writer.write(String.format("%14d %12d %10d %9.3f%n", bucketLowerBoundUs(i),
+                    Math.min(bucketUpperBoundNs(i), mMaxNs.get()) / NS_PER_US,
+                    counts[i], cumulative * 100.0 / total));
+        }
+    }
+
+    /**
+     * 把{@link #writeTo(Writer)}的内容写入文件，已存在的文件会被覆盖
+     * @param file
+     * @throws IOException
+     */
+    public void dump(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writeTo(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram[n = %d, p50 = %.1fms, p99 = %.1fms, max = %.1fms, mean = %.1fms, discarded = %d]",
+                getCount(), getPercentile(50) * 1E-6, getPercentile(99) * 1E-6, getMax() * 1E-6,
+                getMean() * 1E-6, getDiscardedCount());
+    }
+}
@@ -1,67 +1,79 @@
 
 package com.cocoonshu.example.glgyro;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLDisplay;
 
-import com.cocoonshu.example.glgyro.Gyroscope.OnGyroChangedListener;
+import com.cocoonshu.example.glgyro.PoseBus.Snapshot;
+import com.cocoonshu.example.glgyro.PoseBus.Subscriber;
 
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.EGLConfigChooser;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
 import android.app.Activity;
-import android.app.AlertDialog;
-import android.app.Dialog;
-import android.content.DialogInterface;
 
 public class MainActivity extends Activity {
 
+    private static final String  TAG                 = "MainActivity";
+    private static final boolean RECORD_SENSOR_TRACE = false;     // 是否把原始传感器样本记录到应用私有目录的轨迹文件中
+    private static final boolean ADAPTIVE_RATE       = true;      // 设备静止时是否降低传感器采样率并停止重绘
+    private static final String  SENSOR_TRACE_NAME   = "sensors"; // 轨迹文件名，不含扩展名
+    private static final String  LATENCY_DUMP_NAME   = "latency"; // 延迟直方图导出文件名前缀
+    private static final String  FRAME_LOG_NAME      = "frames";  // 帧记录导出文件名前缀
+    private static final long    OVERLAY_INTERVAL_MS = 500;       // 性能浮层的刷新间隔(ms)
     
     private static final int OpenGLES_1_1 = 1;       // 使用OpenGLES 1.1的API
     private static final int OpenGLES_2_0 = 2;       // 使用OpenGLES 2.0的API
     
-    private GLSurfaceView mGlvOpenGLImage    = null; // 承载OpenGLES的控件
-    private GyroRenderer  mGyroRenderer      = null; // 使用OpenGLES API的渲染器
-    private Gyroscope     mGyroscope         = null; // 陀螺仪数据提供器
-    private Dialog        mCalibrationDialog = null; // 校准提示对话框
-    private Button        mBtnCalibration    = null; // 校准按钮
+    private GLSurfaceView            mGlvOpenGLImage    = null;                                // 承载OpenGLES的控件
+    private GyroRenderer             mGyroRenderer      = null;                                // 使用OpenGLES API的渲染器
+    private Gyroscope                mGyroscope         = null;                                // 陀螺仪数据提供器
+    private Button                   mBtnCalibration    = null;                                // 校准按钮
+    private AsyncSensorTraceRecorder mTraceRecorder     = null;                                // 传感器轨迹记录器，在后台线程写文件
+    private TextView                 mTxvPerfOverlay    = null;                                // 显示传感器到绘制延迟和帧耗时的调试浮层
+    private Runnable                 mUpdateOverlayTask = null;                                // 定时刷新性能浮层的任务
+    private double[]                 mFramePercentiles  = new double[] {50, 99, 100};          // 性能浮层显示的帧耗时百分位
+    private long[]                   mFrameTimes        = new long[3];                         // 帧耗时百分位数(ns)
+    private long[]                   mStageTimes        = new long[FrameProfiler.STAGE_COUNT]; // 各阶段的平均耗时(ns)
+    private PosePredictor            mPosePredictor     = new PosePredictor();                 // 把姿态外推到预计显示时刻的预测器
+    private float[]                  mPredictedMatrix   = new float[16];                       // 外推后的姿态矩阵，只在传感器线程访问
+    private HardIronEstimator        mHardIron          = new HardIronEstimator();             // 在线估计磁力计硬铁偏移，矫正后的样本才送入融合
+    private float[]                  mHardIronOffset    = new float[3];                        // 性能浮层显示的硬铁偏移(µT)
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        initializeCalibrationDialog();
+        initializeViews();
         initializeSensorComponents();
         initializeOpenGLComponents();
         initializeListeners();
     }
 
-    private void initializeCalibrationDialog() {
-        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
-        mCalibrationDialog = builder.setMessage(R.string.calibration_dialog_message)
-            .setPositiveButton(
-                    R.string.calibration_dialog_button_confirm,
-                    new DialogInterface.OnClickListener() {
-                
-                @Override
-                public void onClick(DialogInterface dialog, int which) {
-                    mCalibrationDialog.hide();
-                    mGyroRenderer.recordCalibrationMatrix();
-                }
-
-            })
-            .setCancelable(false)
-            .create();
+    private void initializeViews() {
         mBtnCalibration = (Button) findViewById(R.id.Button_Calibration);
+        mTxvPerfOverlay = (TextView) findViewById(R.id.TextView_PerfOverlay);
     }
 
     private void initializeSensorComponents() {
         mGyroscope = new Gyroscope(getApplicationContext());
         mGyroscope.setYZInvertEnabled(true);
+        mGyroscope.setOrientationFusion(new ComplementaryFusion()); // 使用陀螺仪融合加速度计和磁力计，降低姿态噪声
+        mGyroscope.setMaxReportLatency(Gyroscope.DEFAULT_MAX_REPORT_LATENCY_US); // 传感器样本在硬件FIFO中批量上报，每批计算一次姿态
+        mGyroscope.setAdaptiveRateEnabled(ADAPTIVE_RATE);
+        mGyroscope.setHardIronEstimator(mHardIron); // 磁力计样本先减去在线估计的硬铁偏移
     }
 
     private void initializeOpenGLComponents() {
@@ -76,11 +88,14 @@ public class MainActivity extends Activity {
     }
 
     private void initializeListeners() {
-        mGyroscope.setOnGyroChangedListener(new OnGyroChangedListener() {
+        mGyroscope.getPoseBus().subscribe(new Subscriber() {
             
             @Override
-            public void onGyroChanged(float[] matrixRotate, float[] orientation) {
-                mGyroRenderer.setAltittudeMatrix(matrixRotate);
+            public void onPose(Snapshot snapshot) {
+                // 姿态外推到预计的显示时刻，时间戳仍使用样本时间，延迟统计不受预测影响
+                mPosePredictor.setAngularRate(snapshot.getAngularRate(), snapshot.getAngularRateTimestamp());
+                mPosePredictor.predict(snapshot.getMatrix(), snapshot.getTimestamp(), mPredictedMatrix);
+                mGyroRenderer.setAltittudeMatrix(mPredictedMatrix, snapshot.getTimestamp());
             }
             
         });
@@ -92,19 +107,187 @@ public class MainActivity extends Activity {
             }
             
         });
+        mUpdateOverlayTask = new Runnable() {
+            
+            @Override
+            public void run() {
+                updatePerfOverlay();
+                mTxvPerfOverlay.postDelayed(this, OVERLAY_INTERVAL_MS);
+            }
+            
+        };
+    }
+    
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
+    
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+        case R.id.action_perf_overlay:
+            item.setChecked(!item.isChecked());
+            setPerfOverlayVisible(item.isChecked());
+            return true;
+        case R.id.action_dump_latency:
+            dumpLatencyHistogram();
+            return true;
+        case R.id.action_export_frames:
+            exportFrameLog();
+            return true;
+        case R.id.action_gpu_timing:
+            item.setChecked(!item.isChecked());
+            mGyroRenderer.setGpuTimingEnabled(item.isChecked());
+            return true;
+        default:
+            return super.onOptionsItemSelected(item);
+        }
+    }
+    
+    private void setPerfOverlayVisible(boolean visible) {
+        mTxvPerfOverlay.removeCallbacks(mUpdateOverlayTask);
+        mTxvPerfOverlay.setVisibility(visible ? View.VISIBLE : View.GONE);
+        if (visible) {
+            mUpdateOverlayTask.run();
+        }
+    }
+    
+    private void updatePerfOverlay() {
+        LatencyHistogram histogram  = mGyroRenderer.getLatencyHistogram();
+        FrameProfiler    profiler   = mGyroRenderer.getFrameProfiler();
+        MotionDetector   detector   = mGyroscope.getMotionDetector();
+        int              frameCount = profiler.getFrameTimePercentiles(mFramePercentiles, mFrameTimes);
+        profiler.getStageMeans(mStageTimes);
+        mHardIron.getOffset(mHardIronOffset);
+        mTxvPerfOverlay.setText(getString(R.string.latency_overlay_format,
+                histogram.getPercentile(50) * 1E-6,
+                histogram.getPercentile(99) * 1E-6,
+                histogram.getMax() * 1E-6,
+                histogram.getCount())
+                + "\n"
+                + getString(R.string.frame_overlay_format,
+                mFrameTimes[0] * 1E-6,
+                mFrameTimes[1] * 1E-6,
+                mFrameTimes[2] * 1E-6,
+                frameCount,
+                mStageTimes[FrameProfiler.STAGE_POSE] * 1E-3,
+                mStageTimes[FrameProfiler.STAGE_STATE] * 1E-3,
+                mStageTimes[FrameProfiler.STAGE_SUBMIT] * 1E-3,
+                mStageTimes[FrameProfiler.STAGE_GPU] * 1E-3)
+                + "\n"
+                + getString(R.string.motion_overlay_format,
+                MotionDetector.STATE_NAMES[detector.getState()],
+                detector.getTimeInState(MotionDetector.STATE_MOVING) * 1E-9,
+                detector.getTimeInState(MotionDetector.STATE_STATIONARY) * 1E-9,
+                detector.getEventsPerMinute())
+                + "\n"
+                + getString(R.string.calibration_overlay_format,
+                mGyroRenderer.isReferenceStable() ? "stable" : "settling",
+                Math.toDegrees(mGyroRenderer.getReferenceSpread()),
+                mHardIron.isConverged() ? "converged" : "fitting",
+                mHardIron.getFieldStrength(),
+                mHardIronOffset[0],
+                mHardIronOffset[1],
+                mHardIronOffset[2]));
+    }
+    
+    /**
+     * 导出文件的目录：应用的外部私有目录，可以直接用adb pull取出；外部存储不可用时退回到内部目录
+     */
+    private File getExportDirectory() {
+        File directory = getExternalFilesDir(null);
+        return directory != null ? directory : getFilesDir();
+    }
+    
+    private void dumpLatencyHistogram() {
+        File   dumpFile = new File(getExportDirectory(), LATENCY_DUMP_NAME + "-" + System.currentTimeMillis() + ".txt");
+        String message  = null;
+        try {
+            mGyroRenderer.getLatencyHistogram().dump(dumpFile);
+            message = getString(R.string.latency_dump_done, dumpFile.getAbsolutePath());
+            Log.i(TAG, "[dumpLatencyHistogram] " + mGyroRenderer.getLatencyHistogram() + " -> " + dumpFile);
+        } catch (IOException e) {
+            message = getString(R.string.latency_dump_failed, e.getMessage());
+            Log.w(TAG, "[dumpLatencyHistogram] Cannot write " + dumpFile, e);
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+    
+    private void exportFrameLog() {
+        // 同时导出便于查看的CSV和便于离线分析的二进制记录，文件名相同
+        FrameProfiler profiler = mGyroRenderer.getFrameProfiler();
+        String        name     = FRAME_LOG_NAME + "-" + System.currentTimeMillis();
+        File          csvFile  = new File(getExportDirectory(), name + ".csv");
+        File          binFile  = new File(getExportDirectory(), name + FrameProfiler.EXTENSION);
+        String        message  = null;
+        try {
+            profiler.exportCsv(csvFile);
+            profiler.exportBinary(binFile);
+            message = getString(R.string.frames_export_done, csvFile.getAbsolutePath());
+            Log.i(TAG, "[exportFrameLog] " + profiler + " -> " + csvFile + ", " + binFile);
+        } catch (IOException e) {
+            message = getString(R.string.frames_export_failed, e.getMessage());
+            Log.w(TAG, "[exportFrameLog] Cannot write " + csvFile, e);
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
     }
     
     @Override
     protected void onResume() {
         super.onResume();
+        mGlvOpenGLImage.onResume();
+        mGyroRenderer.onResume();
+        if (RECORD_SENSOR_TRACE) {
+            startTraceRecording();
+        }
+        mPosePredictor.reset(); // 传感器线程尚未开始，可以安全地清空历史姿态
+        mGyroRenderer.startAutoCalibration(); // 设备保持稳定后自动记录矫正姿态，不再弹出校准对话框
         mGyroscope.resume();
-        mCalibrationDialog.show();
+        if (mTxvPerfOverlay.getVisibility() == View.VISIBLE) {
+            mUpdateOverlayTask.run();
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        mTxvPerfOverlay.removeCallbacks(mUpdateOverlayTask);
         mGyroscope.pause();
+        stopTraceRecording();
+        mGyroRenderer.onPause(); // 取消还未完成的纹理加载
+        mGlvOpenGLImage.onPause();
+    }
+
+    private void startTraceRecording() {
+        File traceFile = new File(getFilesDir(), SENSOR_TRACE_NAME + SensorTraceRecorder.EXTENSION);
+        try {
+            mTraceRecorder = new AsyncSensorTraceRecorder(traceFile);
+            mGyroscope.setTraceRecorder(mTraceRecorder);
+        } catch (IOException e) {
+            Log.w(TAG, "[startTraceRecording] Cannot create " + traceFile, e);
+        }
+    }
+
+    private void stopTraceRecording() {
+        if (mTraceRecorder == null) {
+            return;
+        }
+        mGyroscope.setTraceRecorder(null);
+        try {
+            mTraceRecorder.close();
+            Log.i(TAG, "[stopTraceRecording] " + mTraceRecorder);
+        } catch (IOException e) {
+            Log.w(TAG, "[stopTraceRecording] " + mTraceRecorder, e);
+        }
+        mTraceRecorder = null;
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mGyroRenderer.trimMemory(); // 释放已解码的纹理像素缓存
     }
     
     private EGLConfigChooser getFASSEGLConfigChooser() {
@@ -0,0 +1,218 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+/**
+ * Binary cache of generated meshes
+ * 网格以本机字节序原样写入文件，下次启动时通过内存映射直接作为顶点和索引数据使用，不需要重新生成
+ * <pre>
+ * header : magic, version, byteOrderMark, key, primitiveMode, vertexCount, indexCount, chunkCount, stride,
+ *          formatId, positionScale, texcoordScale
+ * chunks : chunkCount x (baseVertex, firstIndex, indexCount)
+ * data   : vertexCount x stride bytes of vertices, then indexCount x 2 bytes of indices
+ * </pre>
+ */
+public class MeshCache {
+
+    protected static final String TAG             = "MeshCache";
+    private   static final int    MAGIC           = 0x48534D47; // "GMSH"
+    private   static final int    VERSION         = 3;          // 文件格式版本
+    private   static final int    BYTE_ORDER_MARK = 0x01020304; // 用于检测写入文件时的字节序
+    private   static final int    HEADER_INTS     = 12;         // 文件头的int数量
+    private   static final int    CHUNK_INTS      = 3;          // 每个绘制块描述的int数量
+    private   static final int    INT_BYTES       = Integer.SIZE / 8;
+
+    private MeshCache() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 以内存映射的方式读取缓存的网格
+     * @param file 缓存文件
+     * @param key  网格参数的摘要，与写入时不一致则认为缓存失效
+     * @return mesh, or null if the cache is missing or stale
+     */
+    public static InterleavedMesh load(File file, int key) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel      channel = randomAccessFile.getChannel();
+            MappedByteBuffer mapped  = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+
+            if (mapped.remaining() < HEADER_INTS * INT_BYTES
+                    || mapped.getInt() != MAGIC
+                    || mapped.getInt() != VERSION
+                    || mapped.getInt() != BYTE_ORDER_MARK
+                    || mapped.getInt() != key) {
+                return null;
+            }
+            int          primitiveMode = mapped.getInt();
+            int          vertexCount   = mapped.getInt();
+            int          indexCount    = mapped.getInt();
+            int          chunkCount    = mapped.getInt();
+            int          stride        = mapped.getInt();
+            VertexFormat format        = VertexFormat.forId(mapped.getInt());
+            float        positionScale = mapped.getFloat();
+            float        texcoordScale = mapped.getFloat();
+            long expectedSize = (HEADER_INTS + (long) chunkCount * CHUNK_INTS) * INT_BYTES
+                              + (long) vertexCount * stride
+                              + (long) indexCount * InterleavedMesh.SHORT_BYTES;
+            if (format == null || stride != format.getStride() || chunkCount <= 0
+                    || vertexCount <= 0 || indexCount < 0 || expectedSize != channel.size()
+                    || (primitiveMode != InterleavedMesh.PRIMITIVE_TRIANGLES
+                    && primitiveMode != InterleavedMesh.PRIMITIVE_TRIANGLE_STRIP)) {
+                return null;
+            }
+
+            int[] chunkBaseVertex = new int[chunkCount];
+            int[] chunkFirstIndex = new int[chunkCount];
+            int[] chunkIndexCount = new int[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                chunkBaseVertex[i] = mapped.getInt();
+                chunkFirstIndex[i] = mapped.getInt();
+                chunkIndexCount[i] = mapped.getInt();
+            }
+
+            ByteBuffer vertexData = slice(mapped, vertexCount * stride);
+            ShortBuffer indexData = slice(mapped, indexCount * InterleavedMesh.SHORT_BYTES).asShortBuffer();
+            for (int i = 0; i < chunkCount; i++) {
+                if (!isValidChunk(indexData, vertexCount, indexCount,
+                        chunkBaseVertex[i], chunkFirstIndex[i], chunkIndexCount[i])) {
+                    return null;
+                }
+            }
+            return new InterleavedMesh(format, positionScale, texcoordScale,
+                    vertexData, indexData, primitiveMode, vertexCount, indexCount,
+                    chunkBaseVertex, chunkFirstIndex, chunkIndexCount);
+        } catch (IOException e) {
+            Log.w(TAG, String.format("[load] %s is unreadable: %s", file, e.getMessage()));
+            return null;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * 检查绘制块的索引范围，以及块内每个索引加上起始顶点后是否都在顶点范围内，
+     * 避免损坏或过期的缓存文件使glDrawElements越界读取顶点
+     */
+    private static boolean isValidChunk(ShortBuffer indexData, int vertexCount, int indexCount,
+            int baseVertex, int firstIndex, int chunkIndexCount) {
+        if (baseVertex < 0 || baseVertex >= vertexCount || firstIndex < 0 || chunkIndexCount <= 0
+                || (long) firstIndex + chunkIndexCount > indexCount) {
+            return false;
+        }
+        int maxIndex = vertexCount - baseVertex - 1;
+        for (int i = firstIndex, end = firstIndex + chunkIndexCount; i < end; i++) {
+            if ((indexData.get(i) & 0xFFFF) > maxIndex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把网格写入缓存文件，先写临时文件再改名，避免读到写了一半的缓存
+     * @param file 缓存文件
+     * @param key  网格参数的摘要
+     * @param mesh 网格
+     * @return true if saved
+     */
+    public static boolean save(File file, int key, InterleavedMesh mesh) {
+        int chunkCount = mesh.getChunkCount();
+        ByteBuffer header = ByteBuffer.allocate((HEADER_INTS + chunkCount * CHUNK_INTS) * INT_BYTES);
+        header.order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK).putInt(key).putInt(mesh.getPrimitiveMode());
+        header.putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount()).putInt(chunkCount).putInt(mesh.getFormat().getStride());
+        header.putInt(mesh.getFormat().getId()).putFloat(mesh.getPositionScale()).putFloat(mesh.getTexcoordScale());
+        for (int i = 0; i < chunkCount; i++) {
+            header.putInt(mesh.getChunkBaseVertex(i));
+            header.putInt(mesh.getChunkFirstIndex(i));
+            header.putInt(mesh.getChunkIndexCount(i));
+        }
+        header.flip();
+
+        ByteBuffer vertexData = mesh.getVertexData().duplicate();
+        vertexData.clear();
+        ByteBuffer indexData = ByteBuffer.allocate(mesh.getIndexDataSize());
+        indexData.order(ByteOrder.nativeOrder());
+        ShortBuffer indices = mesh.getIndexData().duplicate();
+        indices.clear();
+        indexData.asShortBuffer().put(indices);
+
+        File             tempFile     = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = null;
+        boolean          written      = false;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            FileChannel channel = outputStream.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (vertexData.hasRemaining()) {
+                channel.write(vertexData);
+            }
+            while (indexData.hasRemaining()) {
+                channel.write(indexData);
+            }
+            outputStream.getFD().sync();
+            written = true;
+        } catch (IOException e) {
+            Log.w(TAG, String.format("[save] Cannot write %s: %s", tempFile, e.getMessage()));
+        } finally {
+            closeQuietly(outputStream);
+        }
+        if (!written) {
+            tempFile.delete();
+            return false;
+        }
+        return tempFile.renameTo(file);
+    }
+
+    /**
+     * 计算球体网格参数和生成器版本的摘要，作为缓存的键
+     */
+    public static int sphereKey(SphereMeshGenerator generator) {
+        int key = 17;
+        key = key * 31 + SphereMeshGenerator.VERSION;
+        key = key * 31 + generator.getLatitudeBands();
+        key = key * 31 + generator.getLongitudeBands();
+        key = key * 31 + Float.floatToIntBits(generator.getRadius());
+        key = key * 31 + generator.getIndexOrder();
+        key = key * 31 + generator.getVertexFormat().getId();
+        return key;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        slice.order(buffer.order());
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.cocoonshu.example.glgyro;
+
+import android.hardware.Sensor;
+
+/**
+ * Two-state motion detector driving the adaptive sensor rate
+ * 由陀螺仪和加速度计样本估计运动能量：陀螺仪为角速度的平方，加速度计为去除重力(低通)后的加速度的平方，
+ * 分别除以各自静止阈值的平方归一化。归一化能量的指数平均在IDLE_DELAY_NS内一直小于1时进入静止状态；
+ * 任意一个样本的归一化能量超过WAKE_ENERGY时立即回到运动状态，即运动恢复后的第一个样本就能唤醒。
+ * 只依赖样本的时间戳，不依赖Android，可以在JVM上用录制的轨迹回放检验。只能在一个线程上调用onSample()
+ */
+public class MotionDetector implements SensorSampleRing.SampleConsumer {
+
+    public  static final int      STATE_MOVING          = 0;                     // 运动状态，使用快速采样率并请求重绘
+    public  static final int      STATE_STATIONARY      = 1;                     // 静止状态，使用慢速采样率且不请求重绘
+    public  static final int      STATE_COUNT           = 2;                     // 状态数量
+    public  static final String[] STATE_NAMES           = new String[] {"moving", "stationary"}; // 各状态的名称
+    public  static final long     DEFAULT_IDLE_DELAY_NS = 2000000000L;           // 默认的进入静止状态前需要保持静止的时长(ns)
+    private static final float    GYRO_STILL_RATE       = 0.06f;                 // 陀螺仪的静止阈值(rad/s)，约3.4°/s
+    private static final float    ACCEL_STILL_JERK      = 0.25f;                 // 去除重力后加速度的静止阈值(m/s²)
+    private static final float    WAKE_ENERGY           = 4.0f;                  // 立即唤醒所需的单个样本的归一化能量，即2倍静止阈值
+    private static final float    ENERGY_TIME_CONSTANT  = 0.25f;                 // 运动能量指数平均的时间常数(s)
+    private static final float    GRAVITY_TIME_CONSTANT = 0.5f;                  // 重力低通滤波的时间常数(s)
+    private static final long     MAX_SAMPLE_GAP_NS     = 1000000000L;           // 同一传感器相邻样本的时间差超过它时重新开始滤波(ns)
+    private static final float    NS2S                  = 1.0f / 1000000000.0f;  // 纳秒转换为秒
+
+    /**
+     * Motion state listener, called on the thread feeding the samples
+     */
+    public interface OnMotionStateChangedListener {
+
+        /**
+         * @param state       新的状态，STATE_*
+         * @param timestampNs 触发状态变化的样本的时间戳(ns)
+         */
+        void onMotionStateChanged(int state, long timestampNs);
+    }
+
+    private OnMotionStateChangedListener mListener         = null;                  // 状态变化监听器
+    private long                         mIdleDelayNs      = DEFAULT_IDLE_DELAY_NS; // 进入静止状态前需要保持静止的时长(ns)
+    private volatile int                 mState            = STATE_MOVING;          // 当前状态，其他线程可以读取
+    private float                        mEnergy           = 0;                     // 归一化运动能量的指数平均
+    private long                         mEnergyTimestamp  = 0;                     // 上一次更新运动能量的时间戳(ns)，0表示没有
+    private long                         mStillSince       = 0;                     // 运动能量连续小于1的起始时间戳(ns)，0表示正在运动
+    private final float[]                mGravity          = new float[3];          // 低通滤波后的重力
+    private long                         mGravityTimestamp = 0;                     // 上一个加速度计样本的时间戳(ns)，0表示没有
+    private long                         mStateSince       = 0;                     // 进入当前状态的时间戳(ns)，0表示还没有样本
+    private long                         mLastTimestamp    = 0;                     // 最近一个样本的时间戳(ns)
+    private final long[]                 mStateTimeNs      = new long[STATE_COUNT]; // 已结束的各状态时段的累计时长(ns)
+    private final long[]                 mStateSamples     = new long[STATE_COUNT]; // 各状态下处理的样本数
+    private long                         mTransitionCount  = 0;                     // 状态切换次数
+
+    public void setOnMotionStateChangedListener(OnMotionStateChangedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set how long the motion energy must stay below the still threshold
+     * before switching to the stationary state
+     * @param idleDelayNs 时长(ns)
+     */
+    public void setIdleDelay(long idleDelayNs) {
+        mIdleDelayNs = Math.max(0, idleDelayNs);
+    }
+
+    /**
+     * 回到运动状态并清空滤波器和统计，只能在没有样本输入时调用
+     */
+    public void reset() {
+        mState            = STATE_MOVING;
+        mEnergy           = 0;
+        mEnergyTimestamp  = 0;
+        mStillSince       = 0;
+        mGravityTimestamp = 0;
+        mStateSince       = 0;
+        mLastTimestamp    = 0;
+        mTransitionCount  = 0;
+        for (int i = 0; i < STATE_COUNT; i++) {
+            mStateTimeNs[i]  = 0;
+            mStateSamples[i] = 0;
+        }
+    }
+
+    @Override
+    public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+        if (mStateSince == 0) {
+            mStateSince = timestampNs;
+        }
+        mLastTimestamp = timestampNs;
+        mStateSamples[mState]++;
+
+        float energy;
+        switch (sensorType) {
+        case Sensor.TYPE_GYROSCOPE:
+            energy = (x * x + y * y + z * z) / (GYRO_STILL_RATE * GYRO_STILL_RATE);
+            break;
+        case Sensor.TYPE_ACCELEROMETER:
+            energy = accelerometerEnergy(x, y, z, timestampNs);
+            break;
+        default:
+            return;
+        }
+
+        if (energy > WAKE_ENERGY) {
+            // 单个样本的能量足够大时立即唤醒，不等待平均值上升
+            mEnergy     = Math.max(mEnergy, 1);
+            mStillSince = 0;
+            setState(STATE_MOVING, timestampNs);
+            mEnergyTimestamp = timestampNs;
+            return;
+        }
+        long intervalNs = timestampNs - mEnergyTimestamp;
+        if (mEnergyTimestamp == 0 || intervalNs > MAX_SAMPLE_GAP_NS) {
+            mEnergy = energy;
+        } else if (intervalNs > 0) {
+            float alpha = 1 - (float) Math.exp(-intervalNs * NS2S / ENERGY_TIME_CONSTANT);
+            mEnergy += alpha * (energy - mEnergy);
+        }
+        mEnergyTimestamp = timestampNs;
+
+        if (mEnergy >= 1) {
+            mStillSince = 0;
+        } else if (mStillSince == 0) {
+            mStillSince = timestampNs;
+        } else if (timestampNs - mStillSince >= mIdleDelayNs) {
+            setState(STATE_STATIONARY, timestampNs);
+        }
+    }
+
+    /**
+     * 加速度计样本减去低通滤波得到的重力之后的归一化能量
+     */
+    private float accelerometerEnergy(float x, float y, float z, long timestampNs) {
+        long intervalNs = timestampNs - mGravityTimestamp;
+        if (mGravityTimestamp == 0 || intervalNs > MAX_SAMPLE_GAP_NS) {
+            mGravity[0]       = x;
+            mGravity[1]       = y;
+            mGravity[2]       = z;
+            mGravityTimestamp = timestampNs;
+            return 0;
+        }
+        mGravityTimestamp = timestampNs;
+        float dx = x - mGravity[0];
+        float dy = y - mGravity[1];
+        float dz = z - mGravity[2];
+        if (intervalNs > 0) {
+            float alpha = 1 - (float) Math.exp(-intervalNs * NS2S / GRAVITY_TIME_CONSTANT);
+            mGravity[0] += alpha * dx;
+            mGravity[1] += alpha * dy;
+            mGravity[2] += alpha * dz;
+        }
+        return (dx * dx + dy * dy + dz * dz) / (ACCEL_STILL_JERK * ACCEL_STILL_JERK);
+    }
+
+    private void setState(int state, long timestampNs) {
+        if (state == mState) {
+            return;
+        }
+        mStateTimeNs[mState] += timestampNs - mStateSince;
+        mStateSince = timestampNs;
+        mState      = state;
+        mTransitionCount++;
+        OnMotionStateChangedListener listener = mListener;
+        if (listener != null) {
+            listener.onMotionStateChanged(state, timestampNs);
+        }
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public boolean isStationary() {
+        return mState == STATE_STATIONARY;
+    }
+
+    /**
+     * @param state STATE_*
+     * @return time spent in the state up to the latest sample in ns
+     */
+    public long getTimeInState(int state) {
+        long time = mStateTimeNs[state];
+        if (state == mState && mStateSince != 0) {
+            time += mLastTimestamp - mStateSince;
+        }
+        return time;
+    }
+
+    /**
+     * @param state STATE_*
+     * @return number of samples processed while in the state
+     */
+    public long getSampleCount(int state) {
+        return mStateSamples[state];
+    }
+
+    /**
+     * @return samples processed per minute over all states, 0 if no time has elapsed
+     */
+    public double getEventsPerMinute() {
+        long time = getTimeInState(STATE_MOVING) + getTimeInState(STATE_STATIONARY);
+        return time <= 0 ? 0 : (mStateSamples[STATE_MOVING] + mStateSamples[STATE_STATIONARY]) * 60E9 / time;
+    }
+
+    /**
+     * @param state STATE_*
+     * @return samples processed per minute while in the state, 0 if no time has been spent in it
+     */
+    public double getEventsPerMinute(int state) {
+        long time = getTimeInState(state);
+        return time <= 0 ? 0 : mStateSamples[state] * 60E9 / time;
+    }
+
+    public long getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MotionDetector[%s, moving %.1fs (%.0f/min), stationary %.1fs (%.0f/min), %d transitions]",
+                STATE_NAMES[mState],
+                getTimeInState(STATE_MOVING) * 1E-9, getEventsPerMinute(STATE_MOVING),
+                getTimeInState(STATE_STATIONARY) * 1E-9, getEventsPerMinute(STATE_STATIONARY),
+                mTransitionCount);
+    }
+}
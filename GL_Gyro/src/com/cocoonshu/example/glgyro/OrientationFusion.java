@@ -0,0 +1,49 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Sensor fusion engine which turns raw sensor samples into an orientation
+ * 所有方法都在传感器线程中调用，实现类必须保证每个样本是常数时间且不分配内存
+ */
+public interface OrientationFusion {
+
+    /**
+     * 清空融合状态，下一个加速度计+磁力计样本会重新初始化姿态
+     */
+    void reset();
+
+    /**
+     * 输入陀螺仪角速度样本
+     * @param wx          设备坐标系X轴角速度(rad/s)
+     * @param wy          设备坐标系Y轴角速度(rad/s)
+     * @param wz          设备坐标系Z轴角速度(rad/s)
+     * @param timestampNs 样本时间戳(ns)
+     */
+    void onGyroscope(float wx, float wy, float wz, long timestampNs);
+
+    /**
+     * 输入加速度计样本
+     */
+    void onAccelerometer(float x, float y, float z, long timestampNs);
+
+    /**
+     * 输入磁力计样本
+     */
+    void onGeomagnetic(float x, float y, float z, long timestampNs);
+
+    /**
+     * @return true if an orientation has been estimated
+     */
+    boolean hasOrientation();
+
+    /**
+     * 获取当前姿态四元数
+     * @param q 输出的四元数{w, x, y, z}
+     */
+    void getQuaternion(float[] q);
+
+    /**
+     * 获取当前姿态的旋转矩阵
+     * @param R 输出的行主序旋转矩阵，长度为9或16，与SensorManager.getRotationMatrix的结果一致
+     */
+    void getRotationMatrix(float[] R);
+}
@@ -0,0 +1,152 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bounded LRU cache of decoded texture pixels
+ * 按最近使用顺序淘汰的CPU端像素缓存，EGL上下文丢失后命中缓存的纹理可以直接重新上传，
+ * 不需要再次读取和解码资源文件。缓存的值是{@link Bitmap}或{@link TextureContainer}，
+ * 被淘汰的Bitmap会放回{@link BitmapPool}供下一次解码复用。只在GLThread中访问，不做同步
+ */
+public class PixelCache {
+
+    private final LinkedHashMap<String, Object> mEntries;                // 按访问顺序排列的缓存项，最久未使用的在最前面
+    private final int                           mCapacityBytes;          // 缓存容量(byte)
+    private final BitmapPool                    mBitmapPool;             // 被淘汰的Bitmap放回的复用池
+    private int                                 mSizeBytes     = 0;      // 已缓存的字节数
+    private long                                mHitCount      = 0;      // 命中次数
+    private long                                mMissCount     = 0;      // 未命中次数
+    private long                                mEvictionCount = 0;      // 淘汰次数
+
+    /**
+     * @param capacityBytes 缓存容量(byte)，超过容量时淘汰最久未使用的缓存项
+     * @param bitmapPool    被淘汰的Bitmap放回的复用池
+     */
+    public PixelCache(int capacityBytes, BitmapPool bitmapPool) {
+        mEntries       = new LinkedHashMap<String, Object>(8, 0.75f, true);
+        mCapacityBytes = capacityBytes;
+        mBitmapPool    = bitmapPool;
+    }
+
+    /**
+     * 查找缓存的像素数据，同时记录命中或未命中
+     * @param key 资源路径
+     * @return Bitmap or TextureContainer, or null on a miss
+     */
+    public Object get(String key) {
+        Object pixels = mEntries.get(key);
+        if (pixels instanceof Bitmap && ((Bitmap) pixels).isRecycled()) {
+            // 被外部回收的Bitmap不能再上传
+            remove(key);
+            pixels = null;
+        }
+        if (pixels != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return pixels;
+    }
+
+    /**
+     * 加入缓存并按需淘汰最久未使用的缓存项
+     * @param key    资源路径
+     * @param pixels Bitmap or TextureContainer
+     * @return true if cached, false if the pixels alone exceed the capacity
+     */
+    public boolean put(String key, Object pixels) {
+        int size = sizeOf(pixels);
+        if (size > mCapacityBytes) {
+            return false;
+        }
+        Object previous = mEntries.put(key, pixels);
+        if (previous != null) {
+            mSizeBytes -= sizeOf(previous);
+            if (previous != pixels) {
+                release(previous);
+            }
+        }
+        mSizeBytes += size;
+        trimToSize(mCapacityBytes);
+        return true;
+    }
+
+    /**
+     * 移除并释放缓存项
+     */
+    public void remove(String key) {
+        Object pixels = mEntries.remove(key);
+        if (pixels != null) {
+            mSizeBytes -= sizeOf(pixels);
+            release(pixels);
+        }
+    }
+
+    /**
+     * 清空并释放所有缓存项，例如在系统内存不足时
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Map.Entry<String, Object>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > maxSize && iterator.hasNext()) {
+            Object pixels = iterator.next().getValue();
+            iterator.remove();
+            mSizeBytes -= sizeOf(pixels);
+            release(pixels);
+            mEvictionCount++;
+        }
+    }
+
+    private static int sizeOf(Object pixels) {
+        if (pixels instanceof Bitmap) {
+            Bitmap bitmap = (Bitmap) pixels;
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        } else if (pixels instanceof TextureContainer) {
+            return ((TextureContainer) pixels).getDataSize();
+        }
+        throw new IllegalArgumentException("Unsupported pixel data: " + pixels);
+    }
+
+    private void release(Object pixels) {
+        if (pixels instanceof Bitmap) {
+            mBitmapPool.put((Bitmap) pixels);
+        }
+    }
+
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getCapacityBytes() {
+        return mCapacityBytes;
+    }
+
+    public int getEntryCount() {
+        return mEntries.size();
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PixelCache[%d entries, %d/%d bytes, %d hits, %d misses, %d evictions]",
+                mEntries.size(), mSizeBytes, mCapacityBytes, mHitCount, mMissCount, mEvictionCount);
+    }
+}
@@ -0,0 +1,310 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish/subscribe bus distributing poses to a fixed table of subscribers
+ * 姿态生产者调用publish()把姿态写入对象池中一个空闲的快照，再在同一个线程上依次交给各个订阅者。
+ * 每个订阅者有自己的最小时间间隔和最小姿态变化过滤，被过滤的姿态不会交给它。
+ * 快照按约定只读：回调返回后快照可能被复用，需要在其他线程上使用时先retain()，用完后release()；
+ * 所有快照都被保留时本次发布被丢弃。订阅者表和快照池都是预分配的，publish()不分配内存。
+ * subscribe()和unsubscribe()可以在任意线程调用，publish()只能在一个线程上调用
+ */
+public class PoseBus {
+
+    public  static final int DEFAULT_MAX_SUBSCRIBERS = 8;  // 默认的最大订阅者数量
+    public  static final int DEFAULT_POOL_SIZE       = 8;  // 默认的快照池大小
+    private static final int MAX_CAPACITY            = 64; // 订阅者数量和快照池大小的上限
+
+    /**
+     * Pose consumer, called on the publishing thread
+     */
+    public interface Subscriber {
+
+        /**
+         * @param snapshot 只读的姿态快照，回调返回后可能被复用，需要保留时调用retain()
+         */
+        void onPose(Snapshot snapshot);
+    }
+
+    /**
+     * Pooled pose snapshot, immutable by contract: subscribers must not modify
+     * the arrays returned by the getters
+     */
+    public static class Snapshot {
+
+        private final float[]       mMatrix                 = new float[16];       // 行主序的旋转矩阵
+        private final float[]       mOrientation            = new float[3];        // 欧拉角(rad)
+        private final float[]       mAngularRate            = new float[3];        // 最近的陀螺仪样本(rad/s)
+        private long                mTimestampNs            = 0;                   // 计算出这个姿态的最新样本的时间戳(ns)
+        private long                mAngularRateTimestampNs = 0;                   // 陀螺仪样本的时间戳(ns)，0表示没有
+        private long                mSequence               = 0;                   // 发布序号，从1开始
+        private final AtomicInteger mReferenceCount         = new AtomicInteger(); // 引用计数，0表示空闲
+
+        /**
+         * @return the rotation matrix, length 16, must not be modified
+         */
+        public float[] getMatrix() {
+            return mMatrix;
+        }
+
+        /**
+         * @return orientation angles in rad, must not be modified
+         */
+        public float[] getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * @return the latest gyroscope sample in rad/s, must not be modified
+         */
+        public float[] getAngularRate() {
+            return mAngularRate;
+        }
+
+        public long getTimestamp() {
+            return mTimestampNs;
+        }
+
+        /**
+         * @return timestamp of the gyroscope sample in ns, 0 if there is none
+         */
+        public long getAngularRateTimestamp() {
+            return mAngularRateTimestampNs;
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        /**
+         * Keep the snapshot from being reused after the callback returns,
+         * must be balanced with release()
+         */
+        public void retain() {
+            mReferenceCount.incrementAndGet();
+        }
+
+        public void release() {
+            if (mReferenceCount.decrementAndGet() < 0) {
+                mReferenceCount.incrementAndGet();
+                throw new IllegalStateException("Snapshot " + mSequence + " released more times than retained");
+            }
+        }
+    }
+
+    /**
+     * 订阅者表中的一项，过滤参数在写入mSubscriber之前设置，过滤状态之后只由发布线程访问
+     */
+    private static class Subscription {
+
+        private volatile Subscriber mSubscriber      = null;          // 订阅者，null表示空闲
+        private long                mMinIntervalNs   = 0;             // 最小时间间隔(ns)
+        private float               mMinAngle        = 0;             // 最小姿态变化(rad)
+        private boolean             mFresh           = false;         // 是否还没有交付过姿态
+        private long                mLastTimestampNs = 0;             // 上一次交付的姿态的时间戳(ns)
+        private final float[]       mLastMatrix      = new float[16]; // 上一次交付的姿态
+        private long                mDeliveredCount  = 0;             // 交付的姿态数
+        private long                mFilteredCount   = 0;             // 被过滤的姿态数
+    }
+
+    private final Subscription[] mSubscriptions;                    // 订阅者表
+    private final Snapshot[]     mPool;                             // 快照池
+    private int                  mNextSnapshot  = 0;                // 下一次发布优先使用的快照，只由发布线程访问
+    private long                 mSequence      = 0;                // 已发布的姿态数，只由发布线程写
+    private final AtomicLong     mDroppedCount  = new AtomicLong(); // 因快照全部被保留而丢弃的发布数
+
+    public PoseBus() {
+        this(DEFAULT_MAX_SUBSCRIBERS, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param maxSubscribers 最大订阅者数量
+     * @param poolSize       快照池大小，即同时可以被保留的快照数加1
+     */
+    public PoseBus(int maxSubscribers, int poolSize) {
+        if (maxSubscribers <= 0 || maxSubscribers > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid subscriber capacity: " + maxSubscribers);
+        }
+        if (poolSize <= 0 || poolSize > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid snapshot pool capacity: " + poolSize);
+        }
+        mSubscriptions = new Subscription[maxSubscribers];
+        for (int i = 0; i < maxSubscribers; i++) {
+            mSubscriptions[i] = new Subscription();
+        }
+        mPool = new Snapshot[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            mPool[i] = new Snapshot();
+        }
+    }
+
+    /**
+     * Subscribe to every published pose
+     * @param subscriber
+     * @return the subscriber slot
+     */
+    public int subscribe(Subscriber subscriber) {
+        return subscribe(subscriber, 0, 0);
+    }
+
+    /**
+     * Subscribe with a per-subscriber filter. A pose is delivered only if at least
+     * minIntervalNs has passed and the pose has turned by at least minAngle since
+     * the last pose delivered to this subscriber; the first pose is always delivered.
+     * @param subscriber
+     * @param minIntervalNs 最小时间间隔(ns)，0表示不按时间抽取
+     * @param minAngle      最小姿态变化(rad)，0表示不按姿态变化过滤
+     * @return the subscriber slot
+     * @throws IllegalStateException if the subscriber table is full
+     */
+    public synchronized int subscribe(Subscriber subscriber, long minIntervalNs, float minAngle) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("Subscriber must not be null");
+        }
+        for (int i = 0; i < mSubscriptions.length; i++) {
+            Subscription subscription = mSubscriptions[i];
+            if (subscription.mSubscriber == null) {
+                subscription.mMinIntervalNs  = Math.max(0, minIntervalNs);
+                subscription.mMinAngle       = Math.max(0, minAngle);
+                subscription.mDeliveredCount = 0;
+                subscription.mFilteredCount  = 0;
+                subscription.mFresh          = true;
+                subscription.mSubscriber     = subscriber; // 最后写入，发布线程看到订阅者时也能看到过滤参数
+                return i;
+            }
+        }
+        throw new IllegalStateException("Pose bus is full: " + mSubscriptions.length + " subscribers");
+    }
+
+    /**
+     * 取消订阅，正在进行的发布仍可能把当前姿态交给它
+     * @param subscriber
+     * @return false if the subscriber is not subscribed
+     */
+    public synchronized boolean unsubscribe(Subscriber subscriber) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mSubscriber == subscriber) {
+                subscription.mSubscriber = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publish a pose to all subscribers whose filter accepts it
+     * @param matrix                 行主序的旋转矩阵，长度为16
+     * @param orientation            欧拉角(rad)
+     * @param angularRate            最近的陀螺仪样本(rad/s)
+     * @param timestampNs            计算出这个姿态的最新样本的时间戳(ns)
+     * @param angularRateTimestampNs 陀螺仪样本的时间戳(ns)，0表示没有
+     * @return number of subscribers the pose has been delivered to, -1 if dropped
+     */
+    public int publish(float[] matrix, float[] orientation, float[] angularRate, long timestampNs, long angularRateTimestampNs) {
+        Snapshot snapshot = obtainSnapshot();
+        if (snapshot == null) {
+            mDroppedCount.incrementAndGet();
+            return -1;
+        }
+        System.arraycopy(matrix, 0, snapshot.mMatrix, 0, 16);
+        System.arraycopy(orientation, 0, snapshot.mOrientation, 0, 3);
+        System.arraycopy(angularRate, 0, snapshot.mAngularRate, 0, 3);
+        snapshot.mTimestampNs            = timestampNs;
+        snapshot.mAngularRateTimestampNs = angularRateTimestampNs;
+        snapshot.mSequence               = ++mSequence;
+
+        int delivered = 0;
+        try {
+            for (Subscription subscription : mSubscriptions) {
+                Subscriber subscriber = subscription.mSubscriber;
+                if (subscriber == null) {
+                    continue;
+                }
+                if (!accept(subscription, matrix, timestampNs)) {
+                    subscription.mFilteredCount++;
+                    continue;
+                }
+                subscription.mDeliveredCount++;
+                delivered++;
+                subscriber.onPose(snapshot);
+            }
+        } finally {
+            snapshot.release();
+        }
+        return delivered;
+    }
+
+    private static boolean accept(Subscription subscription, float[] matrix, long timestampNs) {
+        if (!subscription.mFresh) {
+            if (timestampNs - subscription.mLastTimestampNs < subscription.mMinIntervalNs) {
+                return false;
+            }
+            if (subscription.mMinAngle > 0
+                    && OrientationMath.angleBetweenMatrices(subscription.mLastMatrix, matrix) < subscription.mMinAngle) {
+                return false;
+            }
+        }
+        subscription.mFresh           = false;
+        subscription.mLastTimestampNs = timestampNs;
+        if (subscription.mMinAngle > 0) {
+            System.arraycopy(matrix, 0, subscription.mLastMatrix, 0, 16);
+        }
+        return true;
+    }
+
+    /**
+     * 从快照池中取出一个没有被保留的快照，引用计数置为1
+     * @return null if every snapshot is retained
+     */
+    private Snapshot obtainSnapshot() {
+        for (int i = 0; i < mPool.length; i++) {
+            int      index    = (mNextSnapshot + i) % mPool.length;
+            Snapshot snapshot = mPool[index];
+            if (snapshot.mReferenceCount.compareAndSet(0, 1)) {
+                mNextSnapshot = (index + 1) % mPool.length;
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of subscribers currently subscribed
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mSubscriber != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of poses published, including dropped ones
+     */
+    public long getPublishedCount() {
+        return mSequence + mDroppedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("PoseBus[%d published, %d dropped",
+                getPublishedCount(), getDroppedCount()));
+        for (int i = 0; i < mSubscriptions.length; i++) {
+            Subscription subscription = mSubscriptions[i];
+            if (subscription.mSubscriber != null) {
+                builder.append(String.format(", #%d %d delivered %d filtered",
+                        i, subscription.mDeliveredCount, subscription.mFilteredCount));
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,236 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Extrapolates the device orientation forward by a look-ahead time
+ * 姿态从传感器采样到显示之间至少落后一个传感器周期和一帧，预测器把每个姿态沿角速度外推
+ * 一个预测时长，使得显示时的姿态更接近设备当时的真实姿态。角速度优先使用最近的陀螺仪样本(设备坐标系)，
+ * 没有新鲜的陀螺仪样本时使用相邻两个姿态的有限差分。设备正在减速时，按估计的角加速度外推，
+ * 并且不越过速度降为0的时刻；角速度方向突然反转时本次不外推；外推角度不超过设定的最大值。
+ * 只在产生姿态的线程上调用predict()，不分配内存
+ */
+public class PosePredictor {
+
+    public  static final long  DEFAULT_LOOK_AHEAD_NS      = 16000000L;                  // 默认的预测时长(ns)，约一帧
+    public  static final float DEFAULT_MAX_ANGLE          = (float) Math.toRadians(15); // 默认的最大外推角度(rad)
+    private static final long  MAX_RATE_AGE_NS            = 50000000L;                  // 陀螺仪样本与姿态的时间差超过它时视为过期(ns)
+    private static final long  MAX_DIFFERENCE_INTERVAL_NS = 100000000L;                 // 相邻姿态的时间差超过它时不做有限差分(ns)
+    private static final float MIN_REVERSAL_RATE          = 0.3f;                       // 判定方向反转所需的最小角速度(rad/s)
+    private static final float ACCELERATION_SMOOTHING     = 0.2f;                       // 角加速度估计的平滑系数
+    private static final float NS2S                       = 1.0f / 1000000000.0f;       // 纳秒转换为秒
+
+    private volatile long    mLookAheadNs        = DEFAULT_LOOK_AHEAD_NS; // 预测时长(ns)
+    private volatile float   mMaxAngle           = DEFAULT_MAX_ANGLE;     // 最大外推角度(rad)
+    private volatile boolean mGyroscopeEnabled   = true;                  // 是否使用陀螺仪样本作为角速度
+    private final float[]    mRate               = new float[3];          // 最近的陀螺仪样本(rad/s)
+    private long             mRateTimestamp      = 0;                     // 最近的陀螺仪样本的时间戳(ns)，0表示没有
+    private final float[]    mCurrent            = new float[4];          // 当前姿态四元数
+    private final float[]    mPrevious           = new float[4];          // 上一个姿态四元数
+    private long             mPreviousTimestamp  = 0;                     // 上一个姿态的时间戳(ns)，0表示没有
+    private final float[]    mDelta              = new float[4];          // 相邻姿态的相对旋转
+    private final float[]    mOmega              = new float[3];          // 本次使用的角速度(rad/s)
+    private final float[]    mLastOmega          = new float[3];          // 上一次使用的角速度(rad/s)
+    private long             mLastOmegaTimestamp = 0;                     // 上一次角速度对应的时间戳(ns)，0表示没有
+    private final float[]    mAcceleration       = new float[3];          // 平滑后的角加速度(rad/s²)
+    private final float[]    mPredicted          = new float[4];          // 外推后的姿态四元数
+    private long             mPredictionCount    = 0;                     // 调用predict()的次数
+    private long             mGyroscopeCount     = 0;                     // 使用陀螺仪角速度外推的次数
+    private long             mDifferenceCount    = 0;                     // 使用有限差分角速度外推的次数
+    private long             mReversalCount      = 0;                     // 因方向反转而没有外推的次数
+    private long             mDampedCount        = 0;                     // 因减速或最大角度而缩短外推的次数
+
+    /**
+     * Set how far ahead of the sample timestamp the pose is extrapolated,
+     * usually the measured sensor-to-display latency. Set as 0 to disable prediction.
+     * @param lookAheadNs 预测时长(ns)
+     */
+    public void setLookAhead(long lookAheadNs) {
+        mLookAheadNs = Math.max(0, lookAheadNs);
+    }
+
+    public long getLookAhead() {
+        return mLookAheadNs;
+    }
+
+    /**
+     * Set the largest rotation a single prediction may add
+     * @param maxAngle 最大外推角度(rad)
+     */
+    public void setMaxPredictionAngle(float maxAngle) {
+        mMaxAngle = Math.max(0, maxAngle);
+    }
+
+    /**
+     * Enable or disable the gyroscope as angular rate source, set as false
+     * to always use the finite difference of recent poses
+     * @param enabled
+     */
+    public void setGyroscopeEnabled(boolean enabled) {
+        mGyroscopeEnabled = enabled;
+    }
+
+    /**
+     * 设置最近的陀螺仪样本，与predict()在同一个线程调用
+     * @param rate        设备坐标系下的角速度(rad/s)
+     * @param timestampNs 样本时间戳(ns)，0表示没有样本
+     */
+    public void setAngularRate(float[] rate, long timestampNs) {
+        mRate[0]       = rate[0];
+        mRate[1]       = rate[1];
+        mRate[2]       = rate[2];
+        mRateTimestamp = timestampNs;
+    }
+
+    /**
+     * 清空历史姿态和角速度，只能在没有姿态输入时调用
+     */
+    public void reset() {
+        mRateTimestamp      = 0;
+        mPreviousTimestamp  = 0;
+        mLastOmegaTimestamp = 0;
+        mAcceleration[0]    = 0;
+        mAcceleration[1]    = 0;
+        mAcceleration[2]    = 0;
+    }
+
+    /**
+     * Extrapolate a pose by the look-ahead time
+     * @param R           行主序的旋转矩阵(设备坐标系到世界坐标系)，长度为9或16
+     * @param timestampNs 姿态对应的样本时间戳(ns)
+     * @param outR        输出的旋转矩阵，长度为9或16，可以与R是同一个数组
+     * @return true if the pose has been extrapolated, false if it is passed through
+     */
+    public boolean predict(float[] R, long timestampNs, float[] outR) {
+        mPredictionCount++;
+        OrientationMath.matrixToQuaternion(R, mCurrent);
+        boolean hasOmega = estimateAngularRate(timestampNs);
+        System.arraycopy(mCurrent, 0, mPrevious, 0, 4);
+        mPreviousTimestamp = timestampNs;
+
+        float lookAhead = mLookAheadNs * NS2S;
+        float angle     = hasOmega ? extrapolationAngle(lookAhead) : 0;
+        if (angle <= 0) {
+            OrientationMath.quaternionToMatrix(mCurrent, outR);
+            return false;
+        }
+        // 沿角速度方向转过angle：等价于以单位角速度积分angle秒
+        float rate = length(mOmega);
+        System.arraycopy(mCurrent, 0, mPredicted, 0, 4);
+        OrientationMath.integrateAngularRate(mPredicted, mOmega[0] / rate, mOmega[1] / rate, mOmega[2] / rate, angle);
+        OrientationMath.quaternionToMatrix(mPredicted, outR);
+        return true;
+    }
+
+    /**
+     * 估计当前姿态的角速度，写入mOmega，并更新角加速度估计
+     * @return false if no angular rate is available
+     */
+    private boolean estimateAngularRate(long timestampNs) {
+        long rateAge = timestampNs - mRateTimestamp;
+        if (mGyroscopeEnabled && mRateTimestamp != 0 && rateAge <= MAX_RATE_AGE_NS && rateAge >= -MAX_RATE_AGE_NS) {
+            System.arraycopy(mRate, 0, mOmega, 0, 3);
+            mGyroscopeCount++;
+        } else {
+            long intervalNs = timestampNs - mPreviousTimestamp;
+            if (mPreviousTimestamp == 0 || intervalNs <= 0 || intervalNs > MAX_DIFFERENCE_INTERVAL_NS) {
+                return false;
+            }
+            // 体坐标系下的相对旋转：dq = conj(q_prev) * q_cur，取较短的一侧
+            mDelta[0] =  mPrevious[0];
+            mDelta[1] = -mPrevious[1];
+            mDelta[2] = -mPrevious[2];
+            mDelta[3] = -mPrevious[3];
+            OrientationMath.multiplyQuaternion(mDelta, mCurrent, mDelta);
+            float sign     = mDelta[0] < 0 ? -1 : 1;
+            float sinHalf  = (float) Math.sqrt(mDelta[1] * mDelta[1] + mDelta[2] * mDelta[2] + mDelta[3] * mDelta[3]);
+            float angle    = 2 * (float) Math.atan2(sinHalf, sign * mDelta[0]);
+            float scale    = sinHalf < 1e-6f ? 2 / (intervalNs * NS2S) : angle / (sinHalf * intervalNs * NS2S);
+            mOmega[0] = sign * mDelta[1] * scale;
+            mOmega[1] = sign * mDelta[2] * scale;
+            mOmega[2] = sign * mDelta[3] * scale;
+            mDifferenceCount++;
+        }
+
+        long omegaIntervalNs = timestampNs - mLastOmegaTimestamp;
+        if (mLastOmegaTimestamp != 0 && omegaIntervalNs > 0 && omegaIntervalNs <= MAX_DIFFERENCE_INTERVAL_NS) {
+            float dt = omegaIntervalNs * NS2S;
+            for (int i = 0; i < 3; i++) {
+                float acceleration = (mOmega[i] - mLastOmega[i]) / dt;
+                mAcceleration[i] += ACCELERATION_SMOOTHING * (acceleration - mAcceleration[i]);
+            }
+        } else {
+            mAcceleration[0] = 0;
+            mAcceleration[1] = 0;
+            mAcceleration[2] = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 计算本次外推的角度，并把mOmega记为上一次的角速度
+     * @param lookAhead 预测时长(s)
+     * @return rotation angle in rad to extrapolate along mOmega, 0 for none
+     */
+    private float extrapolationAngle(float lookAhead) {
+        float rate      = length(mOmega);
+        float lastRate  = length(mLastOmega);
+        boolean hasLast = mLastOmegaTimestamp != 0;
+        float dot       = mOmega[0] * mLastOmega[0] + mOmega[1] * mLastOmega[1] + mOmega[2] * mLastOmega[2];
+        System.arraycopy(mOmega, 0, mLastOmega, 0, 3);
+        mLastOmegaTimestamp = mPreviousTimestamp;
+        if (lookAhead <= 0 || rate < 1e-6f) {
+            return 0;
+        }
+        // 角速度方向突然反转：外推方向不可信，本次不外推
+        if (hasLast && dot < 0 && rate > MIN_REVERSAL_RATE && lastRate > MIN_REVERSAL_RATE) {
+            mReversalCount++;
+            return 0;
+        }
+        float angle = rate * lookAhead;
+        // 沿角速度方向的角加速度为负时正在减速：按匀减速外推，不越过速度降为0的时刻
+        float deceleration = -(mAcceleration[0] * mOmega[0] + mAcceleration[1] * mOmega[1] + mAcceleration[2] * mOmega[2]) / rate;
+        boolean damped = false;
+        if (deceleration > 0) {
+            float time = Math.min(lookAhead, rate / deceleration);
+            angle  = rate * time - 0.5f * deceleration * time * time;
+            damped = true;
+        }
+        if (angle > mMaxAngle) {
+            angle  = mMaxAngle;
+            damped = true;
+        }
+        if (damped) {
+            mDampedCount++;
+        }
+        return angle;
+    }
+
+    private static float length(float[] v) {
+        return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    }
+
+    public long getPredictionCount() {
+        return mPredictionCount;
+    }
+
+    public long getGyroscopeCount() {
+        return mGyroscopeCount;
+    }
+
+    public long getDifferenceCount() {
+        return mDifferenceCount;
+    }
+
+    public long getReversalCount() {
+        return mReversalCount;
+    }
+
+    public long getDampedCount() {
+        return mDampedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PosePredictor[look-ahead = %.1fms, %d poses, %d gyroscope, %d difference, %d reversals, %d damped]",
+                mLookAheadNs * 1E-6, mPredictionCount, mGyroscopeCount, mDifferenceCount, mReversalCount, mDampedCount);
+    }
+}
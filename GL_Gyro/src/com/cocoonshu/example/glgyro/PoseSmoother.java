@@ -0,0 +1,65 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Frame-rate-independent slerp of the displayed pose towards the latest sensor pose
+ * 每帧把当前姿态向目标姿态靠近一定比例，比例按帧间隔由参考帧的阻尼换算，不同帧率下收敛速度一致；
+ * 与目标姿态的夹角小于阈值时直接对齐并停止插值。只在GLThread中使用
+ */
+final class PoseSmoother {
+
+    static final float FRAME_TIME     = 1.0f / 60.0f; // 插值阻尼所对应的参考帧时长(s)
+    static final float MAX_FRAME_TIME = 0.1f;         // 单帧插值允许的最大时长(s)
+    static final float DAMPING        = 3E-1F;        // 插值阻尼：每个参考帧向目标姿态靠近的比例
+    static final float THRESHOLD      = 1E-3F;        // 插值阈值：与目标姿态的夹角(rad)小于它时停止插值
+
+    private final float[] mCurrentVector = new float[4]; // 当前姿态插值向量
+    private final float[] mTargetVector  = new float[4]; // 目标姿态插值向量
+    private boolean       mAnimating     = false;        // 上一帧插值是否还未完成
+
+    PoseSmoother() {
+        reset();
+    }
+
+    /**
+     * 把当前姿态置为单位姿态，停止插值
+     */
+    void reset() {
+        OrientationMath.identityQuaternion(mCurrentVector);
+        OrientationMath.identityQuaternion(mTargetVector);
+        mAnimating = false;
+    }
+
+    /**
+     * 插值一帧：pose传入目标姿态，返回时其旋转被替换为插值后的当前姿态
+     * @param pose      目标姿态，输出插值后的姿态
+     * @param enable    false则直接跳到目标姿态
+     * @param deltaTime 距上一帧的时长(s)
+     * @return true if more frames are needed to reach the target
+     */
+    boolean smooth(RigidTransform pose, boolean enable, float deltaTime) {
+        boolean hasMoreFrame = false;
+        if (!enable) {
+            pose.getRotation(mCurrentVector);
+        } else {
+            pose.getRotation(mTargetVector);
+
+            // 渲染空闲后重新开始插值时，帧间隔包含了空闲时长，按一个参考帧处理
+            if (!mAnimating || deltaTime > MAX_FRAME_TIME) {
+                deltaTime = FRAME_TIME;
+            }
+
+            float angle = OrientationMath.angleBetweenQuaternions(mCurrentVector, mTargetVector);
+            if (angle < THRESHOLD) {
+                System.arraycopy(mTargetVector, 0, mCurrentVector, 0, 4);
+            } else {
+                // 按帧间隔换算阻尼，使得不同帧率下的收敛速度一致
+                float t = 1.0f - (float) Math.pow(1.0f - DAMPING, deltaTime / FRAME_TIME);
+                OrientationMath.slerpQuaternion(mCurrentVector, mTargetVector, t, mCurrentVector);
+                hasMoreFrame = true;
+            }
+            pose.setRotation(mCurrentVector);
+        }
+        mAnimating = hasMoreFrame;
+        return hasMoreFrame;
+    }
+}
@@ -0,0 +1,83 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free single-producer/single-consumer triple buffer of pose matrices
+ * 生产者(传感器线程)始终写后台槽，写完后与中间槽交换；消费者(GLThread)
+ * 取数时把前台槽与中间槽交换。双方都不会阻塞，消费者总能拿到最新的完整姿态。
+ * 每个槽还带有姿态来源样本的时间戳，随槽一起交换
+ */
+public class PoseTripleBuffer {
+
+    public  static final int  POSE_SIZE  = 16;   // 每个姿态槽的float数量
+    private static final int  INDEX_MASK = 0x3;  // 中间槽索引的掩码
+    private static final int  DIRTY_BIT  = 0x4;  // 中间槽有未被消费的新姿态
+
+    private final float[][]     mSlots      = new float[3][POSE_SIZE]; // 三个姿态槽
+    private final long[]        mTimestamps = new long[3];             // 各个槽中姿态的来源时间戳(ns)，0表示未知
+    private final AtomicInteger mMiddle     = new AtomicInteger(2);    // 中间槽索引 | 新数据标记
+    private int                 mBack       = 0;                       // 后台槽索引，只由生产者访问
+    private int                 mFront      = 1;                       // 前台槽索引，只由消费者访问
+
+    /**
+     * 用同一个姿态初始化所有槽，只能在生产者和消费者开始工作之前调用
+     * @param pose
+     */
+    public void reset(float[] pose) {
+        for (int i = 0; i < mSlots.length; i++) {
+            System.arraycopy(pose, 0, mSlots[i], 0, POSE_SIZE);
+            mTimestamps[i] = 0;
+        }
+        mBack  = 0;
+        mFront = 1;
+        mMiddle.set(2);
+    }
+
+    /**
+     * 生产者：获取可写的后台槽，写完后必须调用publish()
+     * @return back slot
+     */
+    public float[] beginWrite() {
+        return mSlots[mBack];
+    }
+
+    /**
+     * 生产者：发布后台槽中的姿态
+     * @param timestampNs 姿态来源样本的时间戳(ns)，0表示未知
+     */
+    public void publish(long timestampNs) {
+        mTimestamps[mBack] = timestampNs;
+        int oldMiddle = mMiddle.getAndSet(mBack | DIRTY_BIT);
+        mBack = oldMiddle & INDEX_MASK;
+    }
+
+    /**
+     * 消费者：如果有新发布的姿态，把它交换到前台槽
+     * @return true if the front slot has been updated
+     */
+    public boolean acquire() {
+        if ((mMiddle.get() & DIRTY_BIT) == 0) {
+            return false;
+        }
+        int oldMiddle = mMiddle.getAndSet(mFront);
+        mFront = oldMiddle & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * 消费者：获取前台槽，在下一次acquire()之前内容不会改变
+     * @return front slot
+     */
+    public float[] front() {
+        return mSlots[mFront];
+    }
+
+    /**
+     * 消费者：获取前台槽中姿态的来源时间戳
+     * @return timestamp in ns passed to publish(long), 0 if unknown
+     */
+    public long frontTimestamp() {
+        return mTimestamps[mFront];
+    }
+}
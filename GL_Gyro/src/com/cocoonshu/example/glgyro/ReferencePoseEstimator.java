@@ -0,0 +1,192 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Windowed, outlier-rejecting average of recent orientations
+ * 保存最近若干个姿态四元数的滑动窗口，维护它们的和，窗口的平均姿态即为和的归一化(弦距离意义下的均值)。
+ * 新姿态先翻到与当前平均姿态相同的半球，再与平均姿态比较：夹角超过max(MIN_OUTLIER_ANGLE,
+ * OUTLIER_SIGMA倍的均方根夹角)的姿态被当作抖动拒绝；连续拒绝超过半个窗口说明设备已经换了姿态，
+ * 清空窗口从新姿态开始。窗口满且均方根夹角小于STABLE_ANGLE时认为设备保持稳定，可以作为矫正姿态。
+ * 每个姿态的更新是O(1)的，每写满一轮窗口重新求和一次，消除浮点累加误差，均摊后仍为O(1)。
+ * 不加锁，只能在一个线程(通常是产生姿态的传感器线程)上调用，需要交给其他线程的结果由调用者发布
+ */
+public class ReferencePoseEstimator {
+
+    public  static final int   DEFAULT_WINDOW    = 32;                            // 默认的窗口大小(姿态数)，50Hz下约0.6秒
+    public  static final float STABLE_ANGLE      = (float) Math.toRadians(1.0);   // 窗口内均方根夹角小于它时认为稳定(rad)
+    private static final float MIN_OUTLIER_ANGLE = (float) Math.toRadians(1.5);   // 拒绝姿态所需的最小夹角(rad)
+    private static final float OUTLIER_SIGMA     = 3.0f;                          // 夹角超过均方根夹角的多少倍时拒绝
+    private static final int   MIN_OUTLIER_COUNT = 8;                             // 窗口中至少有多少个姿态后才开始拒绝
+
+    private final int      mCapacity;                           // 窗口大小
+    private final float[]  mQuaternions;                        // 窗口中的姿态，已翻到同一半球，每个4个float
+    private final float[]  mDeviations;                         // 窗口中各姿态加入时与平均姿态夹角的平方
+    private final double[] mSum                = new double[4]; // 窗口中姿态的和
+    private double         mDeviationSum       = 0;             // 窗口中夹角平方的和
+    private final float[]  mMean               = new float[4];  // 临时的平均姿态
+    private int            mHead               = 0;             // 下一个姿态写入的位置
+    private int            mCount              = 0;             // 窗口中的姿态数
+    private int            mConsecutiveRejects = 0;             // 连续被拒绝的姿态数
+    private long           mAcceptedCount      = 0;             // 加入窗口的姿态数
+    private long           mRejectedCount      = 0;             // 被拒绝的姿态数
+
+    public ReferencePoseEstimator() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param capacity 窗口大小(姿态数)
+     */
+    public ReferencePoseEstimator(int capacity) {
+        if (capacity < MIN_OUTLIER_COUNT || capacity > 4096) {
+            throw new IllegalArgumentException("Invalid window capacity: " + capacity);
+        }
+        mCapacity    = capacity;
+        mQuaternions = new float[capacity * 4];
+        mDeviations  = new float[capacity];
+    }
+
+    /**
+     * 清空窗口和统计
+     */
+    public void reset() {
+        clearWindow();
+        mAcceptedCount = 0;
+        mRejectedCount = 0;
+    }
+
+    private void clearWindow() {
+        mSum[0]             = 0;
+        mSum[1]             = 0;
+        mSum[2]             = 0;
+        mSum[3]             = 0;
+        mDeviationSum       = 0;
+        mHead               = 0;
+        mCount              = 0;
+        mConsecutiveRejects = 0;
+    }
+
+    /**
+     * Add one orientation to the window, O(1)
+     * @param q 单位四元数{w, x, y, z}
+     * @return false if the orientation has been rejected as an outlier
+     */
+    public boolean add(float[] q) {
+        float sign      = 1;
+        float deviation = 0; // 与平均姿态夹角的平方
+        if (mCount > 0) {
+            mean(mMean);
+            float dot = OrientationMath.dotQuaternion(q, mMean);
+            sign      = dot < 0 ? -1 : 1;
+            // 小角度下1 - cos(θ/2) ≈ θ²/8，省去acos；大角度的姿态反正会被拒绝
+            deviation = 8 * Math.max(0, 1 - Math.abs(dot));
+            float threshold = Math.max(MIN_OUTLIER_ANGLE * MIN_OUTLIER_ANGLE,
+                    OUTLIER_SIGMA * OUTLIER_SIGMA * (float) (mDeviationSum / mCount));
+            if (mCount >= MIN_OUTLIER_COUNT && deviation > threshold) {
+                mRejectedCount++;
+                if (++mConsecutiveRejects <= mCapacity / 2) {
+                    return false;
+                }
+                // 持续偏离说明设备已经换了姿态，从这个姿态重新开始
+                clearWindow();
+                sign      = 1;
+                deviation = 0;
+            }
+        }
+        mConsecutiveRejects = 0;
+
+        int offset = mHead * 4;
+        if (mCount == mCapacity) {
+            // 移除最旧的姿态
+            mSum[0]       -= mQuaternions[offset];
+            mSum[1]       -= mQuaternions[offset + 1];
+            mSum[2]       -= mQuaternions[offset + 2];
+            mSum[3]       -= mQuaternions[offset + 3];
+            mDeviationSum -= mDeviations[mHead];
+        } else {
+            mCount++;
+        }
+        for (int i = 0; i < 4; i++) {
+            mQuaternions[offset + i] = sign * q[i];
+            mSum[i] += sign * q[i];
+        }
+        mDeviations[mHead] = deviation;
+        mDeviationSum     += deviation;
+        mHead = (mHead + 1) % mCapacity;
+        if (mHead == 0) {
+            resum();
+        }
+        mAcceptedCount++;
+        return true;
+    }
+
+    /**
+     * 重新求和，消除滑动窗口中反复加减带来的累加误差
+     */
+    private void resum() {
+        mSum[0]       = 0;
+        mSum[1]       = 0;
+        mSum[2]       = 0;
+        mSum[3]       = 0;
+        mDeviationSum = 0;
+        for (int i = 0; i < mCount; i++) {
+            mSum[0]       += mQuaternions[i * 4];
+            mSum[1]       += mQuaternions[i * 4 + 1];
+            mSum[2]       += mQuaternions[i * 4 + 2];
+            mSum[3]       += mQuaternions[i * 4 + 3];
+            mDeviationSum += mDeviations[i];
+        }
+    }
+
+    private void mean(float[] out) {
+        out[0] = (float) mSum[0];
+        out[1] = (float) mSum[1];
+        out[2] = (float) mSum[2];
+        out[3] = (float) mSum[3];
+        OrientationMath.normalizeQuaternion(out);
+    }
+
+    private float rms() {
+        return mCount == 0 ? 0 : (float) Math.sqrt(Math.max(0, mDeviationSum) / mCount);
+    }
+
+    /**
+     * @param out 输出的平均姿态{w, x, y, z}
+     * @return false if the window is empty
+     */
+    public boolean getReference(float[] out) {
+        if (mCount == 0) {
+            return false;
+        }
+        mean(out);
+        return true;
+    }
+
+    /**
+     * @return true if the window is full and its orientations agree within STABLE_ANGLE
+     */
+    public boolean isStable() {
+        return mCount == mCapacity && rms() < STABLE_ANGLE;
+    }
+
+    /**
+     * @return root mean square angle between the window and its mean in rad
+     */
+    public float getSpread() {
+        return rms();
+    }
+
+    public long getAcceptedCount() {
+        return mAcceptedCount;
+    }
+
+    public long getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReferencePoseEstimator[%d/%d, spread = %.2f°, %s, %d accepted, %d rejected]",
+                mCount, mCapacity, Math.toDegrees(rms()), isStable() ? "stable" : "unstable",
+                mAcceptedCount, mRejectedCount);
+    }
+}
@@ -0,0 +1,229 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.opengl.GLSurfaceView;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Coalesces render requests to at most one per display frame
+ * 姿态更新不再直接调用GLSurfaceView.requestRender()，而是在下一个垂直同步信号到来时
+ * 统一请求一次重绘；与上次请求重绘时的姿态夹角小于阈值的更新会被直接丢弃
+ */
+public class RenderScheduler {
+
+    public  static final float DEFAULT_ANGLE_THRESHOLD = (float) Math.toRadians(0.05); // 默认的姿态变化阈值(rad)
+    private static final long  FRAME_INTERVAL_MS       = 16;                            // 没有Choreographer时使用的帧间隔
+
+    private final Runnable      mRenderRequest;                                    // 请求重绘，通常是GLSurfaceView.requestRender()
+    private final FrameTrigger  mFrameTrigger;                                     // 垂直同步信号触发器
+    private final AtomicBoolean mFramePending     = new AtomicBoolean(false);      // 是否已经有一个等待垂直同步的重绘请求
+    private final float[]       mLastPose         = new float[16];                 // 上次请求重绘时的姿态，只由姿态生产者访问
+    private boolean             mHasLastPose      = false;                         // 是否已经记录过姿态
+    private float               mAngleThreshold   = DEFAULT_ANGLE_THRESHOLD;       // 姿态变化阈值(rad)
+    private final AtomicLong    mRequestedFrames  = new AtomicLong();              // 收到的重绘请求数
+    private final AtomicLong    mSkippedFrames    = new AtomicLong();              // 因姿态变化过小而丢弃的请求数
+    private final AtomicLong    mCoalescedFrames  = new AtomicLong();              // 被合并到同一帧的请求数
+    private final AtomicLong    mIssuedFrames     = new AtomicLong();              // 实际调用requestRender()的次数
+    private final AtomicLong    mDrawnFrames      = new AtomicLong();              // 实际绘制的帧数
+
+    /**
+     * 必须在UI线程中创建
+     * @param hostView
+     */
+    public RenderScheduler(final GLSurfaceView hostView) {
+        mRenderRequest = new Runnable() {
+
+            @Override
+            public void run() {
+                hostView.requestRender();
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameTrigger = new ChoreographerTrigger(this);
+        } else {
+            mFrameTrigger = new HandlerTrigger(this);
+        }
+    }
+
+    /**
+     * 使用给定的垂直同步信号源，信号到来时由它调用onVsync()；
+     * 阈值和合并的判断与信号源无关，可以在没有Choreographer的JVM上驱动
+     * @param frameTrigger  垂直同步信号源
+     * @param renderRequest 在垂直同步时请求重绘
+     */
+    RenderScheduler(FrameTrigger frameTrigger, Runnable renderRequest) {
+        mFrameTrigger  = frameTrigger;
+        mRenderRequest = renderRequest;
+    }
+
+    /**
+     * 设置姿态变化阈值，小于它的姿态更新不会触发重绘
+     * @param angleThreshold 弧度，设置为0则每次姿态更新都会触发重绘
+     */
+    public void setAngleThreshold(float angleThreshold) {
+        mAngleThreshold = angleThreshold;
+    }
+
+    /**
+     * 姿态生产者：新的姿态已发布，按需请求重绘
+     * @param pose 新姿态的旋转矩阵，长度为16
+     */
+    public void requestPose(float[] pose) {
+        mRequestedFrames.incrementAndGet();
+        if (mHasLastPose && OrientationMath.angleBetweenMatrices(mLastPose, pose) < mAngleThreshold) {
+            mSkippedFrames.incrementAndGet();
+            return;
+        }
+        System.arraycopy(pose, 0, mLastPose, 0, 16);
+        mHasLastPose = true;
+        scheduleFrame();
+    }
+
+    /**
+     * 无条件请求在下一个垂直同步时重绘，用于插值动画、纹理上传等非姿态更新
+     */
+    public void requestFrame() {
+        mRequestedFrames.incrementAndGet();
+        scheduleFrame();
+    }
+
+    /**
+     * GLThread：一帧已经绘制完毕
+     */
+    public void onFrameDrawn() {
+        mDrawnFrames.incrementAndGet();
+    }
+
+    /**
+     * 取消还未触发的重绘请求
+     */
+    public void cancel() {
+        mFrameTrigger.cancel();
+        mFramePending.set(false);
+    }
+
+    public long getRequestedFrameCount() {
+        return mRequestedFrames.get();
+    }
+
+    public long getSkippedFrameCount() {
+        return mSkippedFrames.get();
+    }
+
+    public long getCoalescedFrameCount() {
+        return mCoalescedFrames.get();
+    }
+
+    public long getIssuedFrameCount() {
+        return mIssuedFrames.get();
+    }
+
+    public long getDrawnFrameCount() {
+        return mDrawnFrames.get();
+    }
+
+    public void resetCounters() {
+        mRequestedFrames.set(0);
+        mSkippedFrames.set(0);
+        mCoalescedFrames.set(0);
+        mIssuedFrames.set(0);
+        mDrawnFrames.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "requested=" + mRequestedFrames.get()
+             + ", skipped=" + mSkippedFrames.get()
+             + ", coalesced=" + mCoalescedFrames.get()
+             + ", issued=" + mIssuedFrames.get()
+             + ", drawn=" + mDrawnFrames.get();
+    }
+
+    private void scheduleFrame() {
+        if (mFramePending.compareAndSet(false, true)) {
+            mFrameTrigger.post();
+        } else {
+            mCoalescedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * 垂直同步信号到来：把等待中的重绘请求交给mRenderRequest
+     */
+    void onVsync() {
+        mFramePending.set(false);
+        mIssuedFrames.incrementAndGet();
+        mRenderRequest.run();
+    }
+
+    /**
+     * Vsync signal source, calls onVsync() once for every post() that is not cancelled
+     */
+    interface FrameTrigger {
+        void post();
+        void cancel();
+    }
+
+    /**
+     * API 16以上使用Choreographer对齐垂直同步信号
+     */
+    private static class ChoreographerTrigger implements FrameTrigger, Choreographer.FrameCallback {
+
+        private final RenderScheduler mScheduler;
+        private final Choreographer   mChoreographer;
+
+        ChoreographerTrigger(RenderScheduler scheduler) {
+            mScheduler     = scheduler;
+            mChoreographer = Choreographer.getInstance();
+        }
+
+        @Override
+        public void post() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void cancel() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduler.onVsync();
+        }
+    }
+
+    /**
+     * API 16以下用主线程Handler按固定帧间隔模拟垂直同步信号
+     */
+    private static class HandlerTrigger implements FrameTrigger, Runnable {
+
+        private final RenderScheduler mScheduler;
+        private final Handler         mHandler;
+
+        HandlerTrigger(RenderScheduler scheduler) {
+            mScheduler = scheduler;
+            mHandler   = new Handler(Looper.getMainLooper());
+        }
+
+        @Override
+        public void post() {
+            mHandler.postDelayed(this, FRAME_INTERVAL_MS);
+        }
+
+        @Override
+        public void cancel() {
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            mScheduler.onVsync();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Size-bounded pool of reusable pixel buffers
+ * 空闲对象按放入顺序排列，取出时返回最近放入的、能容纳请求尺寸的对象；
+ * 放入后超过容量时丢弃最久未用的对象。大小和匹配规则由子类提供，
+ * {@link BitmapPool}在此之上实现Bitmap的复用规则。所有方法都是同步的
+ * @param <T> 池中的对象
+ * @param <F> 像素格式
+ */
+abstract class ReusePool<T, F> {
+
+    private final LinkedList<T> mItems      = new LinkedList<T>(); // 空闲的对象，最近放入的在最前面
+    private final int           mCapacityBytes;                    // 池容量(byte)
+    private int                 mSizeBytes  = 0;                   // 空闲对象占用的字节数
+    private long                mReuseCount = 0;                   // 复用次数
+    private long                mMissCount  = 0;                   // 没有可复用对象的次数
+
+    /**
+     * @param capacityBytes 池容量(byte)，放入后超过容量时丢弃最久未用的对象
+     */
+    ReusePool(int capacityBytes) {
+        mCapacityBytes = capacityBytes;
+    }
+
+    /**
+     * 取出最近放入的、能容纳指定尺寸和格式的对象
+     * @return item, or null if none fits
+     */
+    synchronized T take(int width, int height, F format) {
+        Iterator<T> iterator = mItems.iterator();
+        while (iterator.hasNext()) {
+            T item = iterator.next();
+            if (fits(item, width, height, format)) {
+                iterator.remove();
+                mSizeBytes -= sizeOf(item);
+                mReuseCount++;
+                return item;
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * 记录一次不经过查找的未命中
+     */
+    synchronized void miss() {
+        mMissCount++;
+    }
+
+    /**
+     * 放回不再使用的对象，单个超过容量的对象直接丢弃
+     */
+    synchronized void give(T item) {
+        int size = sizeOf(item);
+        if (size > mCapacityBytes) {
+            discard(item);
+            return;
+        }
+        mItems.addFirst(item);
+        mSizeBytes += size;
+        while (mSizeBytes > mCapacityBytes) {
+            T eldest = mItems.removeLast();
+            mSizeBytes -= sizeOf(eldest);
+            discard(eldest);
+        }
+    }
+
+    /**
+     * 丢弃所有空闲的对象
+     */
+    public synchronized void clear() {
+        for (T item : mItems) {
+            discard(item);
+        }
+        mItems.clear();
+        mSizeBytes = 0;
+    }
+
+    /**
+     * 对象占用的字节数，在池中时不能改变
+     */
+    abstract int sizeOf(T item);
+
+    /**
+     * 对象能否用于容纳指定尺寸和格式的像素
+     */
+    abstract boolean fits(T item, int width, int height, F format);
+
+    /**
+     * 释放被丢弃的对象
+     */
+    abstract void discard(T item);
+
+    public synchronized int getCount() {
+        return mItems.size();
+    }
+
+    public synchronized int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getCapacityBytes() {
+        return mCapacityBytes;
+    }
+
+    public synchronized long getReuseCount() {
+        return mReuseCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
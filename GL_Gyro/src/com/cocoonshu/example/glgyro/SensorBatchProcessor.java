@@ -0,0 +1,167 @@
+package com.cocoonshu.example.glgyro;
+
+import android.hardware.Sensor;
+
+/**
+ * Feeds raw sensor samples into the orientation fusion, one at a time or a batch at a time
+ * 逐个事件模式下每个样本都由{@link Gyroscope}计算一次姿态；批处理模式下传感器线程只把样本
+ * 写入{@link SensorSampleRing}，之后一次性把积压的样本按顺序送入融合引擎，每批只计算一次姿态。
+ * 同时缓存最近的加速度计和磁力计样本，供不使用融合引擎时计算姿态；以及最近的陀螺仪样本，供姿态预测使用。
+ * 设置了{@link HardIronEstimator}时，磁力计样本先减去在线估计的硬铁偏移再送入融合引擎
+ */
+public class SensorBatchProcessor implements SensorSampleRing.SampleConsumer {
+
+    private OrientationFusion mFusion               = null;         // 融合引擎，为null时只缓存加速度计和磁力计样本
+    private HardIronEstimator mHardIronEstimator    = null;         // 磁力计硬铁偏移估计器，为null时不矫正磁力计样本
+    private final float[]     mGravity              = new float[3]; // 最近的加速度计样本
+    private final float[]     mGeomagnetic          = new float[3]; // 最近的磁力计样本
+    private boolean           mHasGravity           = false;        // 是否收到过加速度计样本
+    private boolean           mHasGeomagnetic       = false;        // 是否收到过磁力计样本
+    private final float[]     mAngularRate          = new float[3]; // 最近的陀螺仪样本(rad/s)
+    private long              mAngularRateTimestamp = 0;            // 最近的陀螺仪样本的时间戳(ns)，0表示没有收到过
+    private long              mLastTimestamp        = 0;            // 最近一个样本的时间戳(ns)
+    private long              mSampleCount          = 0;            // 处理过的样本数
+    private long              mBatchCount           = 0;            // 处理过的非空批次数
+
+    /**
+     * Set the fusion engine fed with the samples, or null to only keep
+     * the latest accelerometer and magnetic field samples
+     * @param fusion
+     */
+    public void setOrientationFusion(OrientationFusion fusion) {
+        mFusion = fusion;
+    }
+
+    /**
+     * Set the estimator that removes the hard-iron offset from the
+     * magnetic field samples, or null to use them as they are
+     * @param estimator
+     */
+    public void setHardIronEstimator(HardIronEstimator estimator) {
+        mHardIronEstimator = estimator;
+    }
+
+    /**
+     * 清空缓存的样本和融合状态，只能在没有样本输入时调用。硬铁偏移与设备有关，不随之清空
+     */
+    public void reset() {
+        if (mFusion != null) {
+            mFusion.reset();
+        }
+        mHasGravity           = false;
+        mHasGeomagnetic       = false;
+        mAngularRateTimestamp = 0;
+        mLastTimestamp        = 0;
+    }
+
+    @Override
+    public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+        OrientationFusion fusion   = mFusion;
+        HardIronEstimator hardIron = mHardIronEstimator;
+        switch (sensorType) {
+        case Sensor.TYPE_ACCELEROMETER:
+            mGravity[0] = x;
+            mGravity[1] = y;
+            mGravity[2] = z;
+            mHasGravity = true;
+            if (fusion != null) {
+                fusion.onAccelerometer(x, y, z, timestampNs);
+            }
+            break;
+        case Sensor.TYPE_MAGNETIC_FIELD:
+            mGeomagnetic[0] = x;
+            mGeomagnetic[1] = y;
+            mGeomagnetic[2] = z;
+            mHasGeomagnetic = true;
+            if (hardIron != null) {
+                hardIron.update(x, y, z);
+                hardIron.correct(mGeomagnetic);
+            }
+            if (fusion != null) {
+                fusion.onGeomagnetic(mGeomagnetic[0], mGeomagnetic[1], mGeomagnetic[2], timestampNs);
+            }
+            break;
+        case Sensor.TYPE_GYROSCOPE:
+            mAngularRate[0] = x;
+            mAngularRate[1] = y;
+            mAngularRate[2] = z;
+            mAngularRateTimestamp = timestampNs;
+            if (fusion != null) {
+                fusion.onGyroscope(x, y, z, timestampNs);
+            }
+            break;
+        default:
+            return;
+        }
+        mLastTimestamp = timestampNs;
+        mSampleCount++;
+    }
+
+    /**
+     * 把环形缓冲区中积压的样本按写入顺序全部送入融合引擎
+     * @param ring 样本环形缓冲区，调用线程必须是它唯一的消费者
+     * @return number of samples processed, 0 if nothing was pending
+     */
+    public int processBatch(SensorSampleRing ring) {
+        int count = ring.drain(this);
+        if (count > 0) {
+            mBatchCount++;
+        }
+        return count;
+    }
+
+    public boolean hasGravity() {
+        return mHasGravity;
+    }
+
+    public boolean hasGeomagnetic() {
+        return mHasGeomagnetic;
+    }
+
+    /**
+     * @return the latest accelerometer sample, owned by the processor
+     */
+    public float[] getGravity() {
+        return mGravity;
+    }
+
+    /**
+     * @return the latest magnetic field sample with the hard-iron offset
+     *         removed once estimated, owned by the processor
+     */
+    public float[] getGeomagnetic() {
+        return mGeomagnetic;
+    }
+
+    /**
+     * @return the latest gyroscope sample in rad/s, owned by the processor
+     */
+    public float[] getAngularRate() {
+        return mAngularRate;
+    }
+
+    /**
+     * @return timestamp of the latest gyroscope sample in ns, 0 if none has been received
+     */
+    public long getAngularRateTimestamp() {
+        return mAngularRateTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getBatchCount() {
+        return mBatchCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SensorBatchProcessor[%d samples, %d batches, %.1f samples/batch]",
+                mSampleCount, mBatchCount, mBatchCount == 0 ? 0.0 : (double) mSampleCount / mBatchCount);
+    }
+}
@@ -0,0 +1,122 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of raw sensor samples
+ * 样本按列存放在预分配的基本类型数组中，写入和读取都不分配内存。生产者(传感器线程)
+ * 只写尾指针，消费者(批处理线程或GLThread)只写头指针；缓冲区满时丢弃新样本并计数，
+ * 不会覆盖消费者正在读取的样本
+ */
+public class SensorSampleRing {
+
+    public static final int VALUE_COUNT = 3; // 每个样本的数值个数
+
+    /**
+     * Receiver of the drained samples, called on the consumer thread
+     */
+    public interface SampleConsumer {
+
+        /**
+         * @param sensorType  传感器类型，Sensor.TYPE_*
+         * @param x           X轴数值
+         * @param y           Y轴数值
+         * @param z           Z轴数值
+         * @param timestampNs 样本时间戳(ns)
+         */
+        void onSample(int sensorType, float x, float y, float z, long timestampNs);
+    }
+
+    private final int        mCapacity;                        // 容量(样本数)，2的幂
+    private final int        mMask;                            // 索引掩码
+    private final int[]      mTypes;                           // 传感器类型
+    private final long[]     mTimestamps;                      // 样本时间戳(ns)
+    private final float[]    mValues;                          // 样本数值，每个样本VALUE_COUNT个
+    private final AtomicLong mHead         = new AtomicLong(); // 下一个要读取的样本序号，只由消费者写
+    private final AtomicLong mTail         = new AtomicLong(); // 下一个要写入的样本序号，只由生产者写
+    private final AtomicLong mDroppedCount = new AtomicLong(); // 因缓冲区满而丢弃的样本数
+
+    /**
+     * @param capacity 最少能缓存的样本数，会向上取整到2的幂
+     */
+    public SensorSampleRing(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 24)) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        int powerOfTwo = Integer.highestOneBit(capacity);
+        mCapacity   = powerOfTwo < capacity ? powerOfTwo << 1 : powerOfTwo;
+        mMask       = mCapacity - 1;
+        mTypes      = new int[mCapacity];
+        mTimestamps = new long[mCapacity];
+        mValues     = new float[mCapacity * VALUE_COUNT];
+    }
+
+    /**
+     * 生产者：写入一个样本
+     * @return true if written, false if the ring is full and the sample has been dropped
+     */
+    public boolean offer(int sensorType, float x, float y, float z, long timestampNs) {
+        long tail = mTail.get();
+        if (tail - mHead.get() >= mCapacity) {
+            mDroppedCount.incrementAndGet();
+            return false;
+        }
+        int index  = (int) tail & mMask;
+        int offset = index * VALUE_COUNT;
+        mTypes[index]       = sensorType;
+        mTimestamps[index]  = timestampNs;
+        mValues[offset]     = x;
+        mValues[offset + 1] = y;
+        mValues[offset + 2] = z;
+        // 有序写入尾指针，保证消费者看到新的尾指针时样本内容已经写完
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * 消费者：按写入顺序读出调用时已写入的所有样本，之后写入的样本留到下一次
+     * @param consumer 样本接收者
+     * @return number of samples drained
+     */
+    public int drain(SampleConsumer consumer) {
+        long head  = mHead.get();
+        long tail  = mTail.get();
+        int  count = (int) (tail - head);
+        for (long sequence = head; sequence < tail; sequence++) {
+            int index  = (int) sequence & mMask;
+            int offset = index * VALUE_COUNT;
+            consumer.onSample(mTypes[index], mValues[offset], mValues[offset + 1], mValues[offset + 2],
+                    mTimestamps[index]);
+        }
+        mHead.lazySet(tail);
+        return count;
+    }
+
+    /**
+     * 丢弃所有未读取的样本，只能在生产者和消费者都停止工作时调用
+     */
+    public void clear() {
+        mHead.set(mTail.get());
+        mDroppedCount.set(0);
+    }
+
+    /**
+     * @return number of samples waiting to be drained
+     */
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SensorSampleRing[%d/%d samples, %d dropped]", size(), mCapacity, mDroppedCount.get());
+    }
+}
@@ -0,0 +1,174 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link SensorTraceRecorder} trace into a sample consumer
+ * 轨迹文件按固定大小的窗口做内存映射后顺序解析，数小时的轨迹也不需要读入Java堆。
+ * 可以尽快回放用于基准测试，也可以按样本时间戳实时回放来重现现场的抖动。
+ * 样本接收者通常是{@link Gyroscope}或{@link SensorBatchProcessor}，与传感器事件走同一条处理路径
+ */
+public class SensorTracePlayer {
+
+    private static final int MAP_WINDOW_SIZE = 16 * 1024 * 1024; // 每次内存映射的字节数
+    private static final int MAX_RECORD_SIZE = Math.max(SensorTraceRecorder.SYNC_RECORD_SIZE,
+                                                        SensorTraceRecorder.SAMPLE_RECORD_SIZE); // 最大记录字节数
+
+    private final RandomAccessFile mFile;                  // 轨迹文件
+    private final FileChannel      mChannel;               // 轨迹文件的映射通道
+    private final long             mFileSize;              // 轨迹文件字节数
+    private volatile boolean       mStopped     = false;   // 是否已请求停止回放
+    private long                   mSampleCount = 0;       // 上一次回放的样本数
+    private long                   mDurationNs  = 0;       // 上一次回放的样本时间跨度(ns)
+
+    /**
+     * 打开轨迹文件并检查文件头
+     * @param file 轨迹文件
+     * @throws IOException if the file is not a sensor trace
+     */
+    public SensorTracePlayer(File file) throws IOException {
+        mFile     = new RandomAccessFile(file, "r");
+        mChannel  = mFile.getChannel();
+        mFileSize = mChannel.size();
+        try {
+            if (mFileSize < SensorTraceRecorder.HEADER_SIZE) {
+                throw new IOException("Truncated sensor trace header: " + file);
+            }
+            MappedByteBuffer header = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, SensorTraceRecorder.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != SensorTraceRecorder.MAGIC) {
+                throw new IOException("Not a sensor trace: " + file);
+            }
+            int version = header.getInt();
+            if (version != SensorTraceRecorder.VERSION) {
+                throw new IOException("Unsupported sensor trace version: " + version);
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 回放整个轨迹，阻塞直到回放结束或stop()被调用。末尾不完整的记录(例如记录时进程被杀)会被忽略。
+     * 实时回放时线程被中断会停止回放，中断标志保持设置
+     * @param consumer 样本接收者，在调用线程中回调
+     * @param realTime true按样本时间戳的间隔实时回放，false尽快回放
+     * @return number of samples replayed
+     * @throws IOException if the trace is corrupt
+     */
+    public long play(SensorSampleRing.SampleConsumer consumer, boolean realTime) throws IOException {
+        mStopped     = false;
+        mSampleCount = 0;
+        mDurationNs  = 0;
+        long             position       = SensorTraceRecorder.HEADER_SIZE;
+        long             mappedEnd      = position;
+        MappedByteBuffer buffer         = null;
+        boolean          hasTimestamp   = false;
+        long             timestamp      = 0;
+        long             firstTimestamp = 0;
+        long             startTime      = System.nanoTime();
+        while (!mStopped) {
+            if (buffer == null || (buffer.remaining() < MAX_RECORD_SIZE && mappedEnd < mFileSize)) {
+                // 从当前记录开始映射下一个窗口，保证窗口末尾的记录不会被截断
+                if (buffer != null) {
+                    position += buffer.position();
+                }
+                long length = Math.min(MAP_WINDOW_SIZE, mFileSize - position);
+                buffer    = mChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                mappedEnd = position + length;
+            }
+            if (!buffer.hasRemaining()) {
+                break;
+            }
+            byte recordType = buffer.get();
+            if (recordType == SensorTraceRecorder.RECORD_SYNC) {
+                if (buffer.remaining() < SensorTraceRecorder.SYNC_RECORD_SIZE - 1) {
+                    break;
+                }
+                timestamp = buffer.getLong();
+                if (!hasTimestamp) {
+                    firstTimestamp = timestamp;
+                    hasTimestamp   = true;
+                }
+                continue;
+            }
+            int sensorType = SensorTraceRecorder.toSensorType(recordType);
+            if (sensorType < 0 || !hasTimestamp) {
+                throw new IOException(String.format("Corrupt sensor trace at offset %d",
+                        position + buffer.position() - 1));
+            }
+            if (buffer.remaining() < SensorTraceRecorder.SAMPLE_RECORD_SIZE - 1) {
+                break;
+            }
+            timestamp += buffer.getInt();
+            float x = buffer.getFloat();
+            float y = buffer.getFloat();
+            float z = buffer.getFloat();
+            if (realTime && !waitUntil(startTime + (timestamp - firstTimestamp))) {
+                break;
+            }
+            consumer.onSample(sensorType, x, y, z, timestamp);
+            mSampleCount++;
+            mDurationNs = timestamp - firstTimestamp;
+        }
+        return mSampleCount;
+    }
+
+    /**
+     * 等待到指定的时刻，parkNanos()可能提前返回，所以循环直到System.nanoTime()到达期限
+     * @param deadlineNs System.nanoTime()的期限
+     * @return false if the replay was stopped or the thread interrupted while waiting,
+     *         the interrupt flag stays set for the caller
+     */
+    private boolean waitUntil(long deadlineNs) {
+        long waitNs;
+        while ((waitNs = deadlineNs - System.nanoTime()) > 0) {
+            if (mStopped || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(waitNs);
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * 请求停止回放，可以在任意线程调用
+     */
+    public void stop() {
+        mStopped = true;
+    }
+
+    /**
+     * 关闭轨迹文件，已映射的窗口在被回收前仍然有效
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    public long getDurationNs() {
+        return mDurationNs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SensorTracePlayer[%d bytes, %d samples, %.1fs]",
+                mFileSize, mSampleCount, mDurationNs / 1E9);
+    }
+}
@@ -0,0 +1,160 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import android.hardware.Sensor;
+
+/**
+ * Records raw sensor samples into a compact binary trace
+ * 轨迹文件为小端序：文件头是MAGIC和VERSION，之后是连续的记录。每条记录以1字节的类型开始，
+ * 样本记录保存相对上一个样本的时间戳增量(int, ns)和3个float，共17字节；时间戳增量超出int
+ * 范围时(例如暂停后)先写入一条保存绝对时间戳(long, ns)的同步记录。轨迹由{@link SensorTracePlayer}回放
+ */
+public class SensorTraceRecorder implements SensorSampleRing.SampleConsumer {
+
+    public  static final String EXTENSION            = ".gstr";       // 轨迹文件扩展名
+    static final int            MAGIC                = 0x52545347;    // "GSTR"
+    static final int            VERSION              = 1;             // 格式版本
+    static final int            HEADER_SIZE          = 8;             // 文件头字节数
+    static final byte           RECORD_SYNC          = 0;             // 同步记录：绝对时间戳
+    static final byte           RECORD_ACCELEROMETER = 1;             // 加速度计样本记录
+    static final byte           RECORD_GEOMAGNETIC   = 2;             // 磁力计样本记录
+    static final byte           RECORD_GYROSCOPE     = 3;             // 陀螺仪样本记录
+    static final int            SYNC_RECORD_SIZE     = 1 + 8;         // 同步记录字节数
+    static final int            SAMPLE_RECORD_SIZE   = 1 + 4 + 3 * 4; // 样本记录字节数
+    private static final int    BUFFER_SIZE          = 64 * 1024;     // 写缓冲大小
+
+    private final FileOutputStream mOutputStream;          // 轨迹文件
+    private final FileChannel      mChannel;               // 轨迹文件的写通道
+    private final ByteBuffer       mBuffer;                // 写缓冲
+    private boolean                mHasTimestamp  = false; // 是否已经写入过同步记录
+    private long                   mLastTimestamp = 0;     // 上一个样本的时间戳(ns)
+    private long                   mSampleCount   = 0;     // 已记录的样本数
+    private long                   mByteCount     = 0;     // 已写入文件的字节数
+    private IOException            mError         = null;  // 写入失败的原因，失败后停止记录
+    private boolean                mClosed        = false; // 是否已关闭
+
+    /**
+     * 创建轨迹文件并写入文件头，已存在的文件会被覆盖
+     * @param file 轨迹文件
+     * @throws IOException
+     */
+    public SensorTraceRecorder(File file) throws IOException {
+        mOutputStream = new FileOutputStream(file);
+        mChannel      = mOutputStream.getChannel();
+        mBuffer       = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        mBuffer.putInt(MAGIC);
+        mBuffer.putInt(VERSION);
+    }
+
+    /**
+     * 记录一个样本，不支持的传感器类型会被忽略。写入失败时停止记录，错误在close()时抛出
+     */
+    @Override
+    public synchronized void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+        byte recordType = toRecordType(sensorType);
+        if (recordType == RECORD_SYNC || mClosed || mError != null) {
+            return;
+        }
+        try {
+            if (mBuffer.remaining() < SYNC_RECORD_SIZE + SAMPLE_RECORD_SIZE) {
+                flushBuffer();
+            }
+            long delta = timestampNs - mLastTimestamp;
+            if (!mHasTimestamp || delta > Integer.MAX_VALUE || delta < Integer.MIN_VALUE) {
+                mBuffer.put(RECORD_SYNC);
+                mBuffer.putLong(timestampNs);
+                mHasTimestamp = true;
+                delta         = 0;
+            }
+            mBuffer.put(recordType);
+            mBuffer.putInt((int) delta);
+            mBuffer.putFloat(x);
+            mBuffer.putFloat(y);
+            mBuffer.putFloat(z);
+            mLastTimestamp = timestampNs;
+            mSampleCount++;
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * 写出缓冲中的记录并关闭文件
+     * @throws IOException the first error hit while recording or closing
+     */
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            if (mError == null) {
+                flushBuffer();
+            }
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            mOutputStream.close();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mByteCount += mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    private static byte toRecordType(int sensorType) {
+        switch (sensorType) {
+        case Sensor.TYPE_ACCELEROMETER:
+            return RECORD_ACCELEROMETER;
+        case Sensor.TYPE_MAGNETIC_FIELD:
+            return RECORD_GEOMAGNETIC;
+        case Sensor.TYPE_GYROSCOPE:
+            return RECORD_GYROSCOPE;
+        default:
+            return RECORD_SYNC;
+        }
+    }
+
+    static int toSensorType(byte recordType) {
+        switch (recordType) {
+        case RECORD_ACCELEROMETER:
+            return Sensor.TYPE_ACCELEROMETER;
+        case RECORD_GEOMAGNETIC:
+            return Sensor.TYPE_MAGNETIC_FIELD;
+        case RECORD_GYROSCOPE:
+            return Sensor.TYPE_GYROSCOPE;
+        default:
+            return -1;
+        }
+    }
+
+    public synchronized long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return bytes written to the file, not counting the buffered records
+     */
+    public synchronized long getByteCount() {
+        return mByteCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SensorTraceRecorder[%d samples, %d bytes%s]",
+                mSampleCount, mByteCount, mError != null ? ", failed: " + mError.getMessage() : "");
+    }
+}
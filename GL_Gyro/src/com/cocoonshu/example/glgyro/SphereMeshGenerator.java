@@ -0,0 +1,256 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Parametric UV sphere generator with level of detail
+ * 使用预先计算的sin/cos表生成顶点，三角函数的调用次数从(纬线+1)*(经线+1)降为纬线+经线+2；
+ * 顶点数超过16位索引的寻址范围时，按纬线带把网格拆分为多个绘制块。
+ * OpenGLES 1.1的32位索引依赖OES_element_index_uint扩展，所以这里总是使用分块绘制
+ */
+public class SphereMeshGenerator {
+
+    public static final int   LOD_LOW    = 0;                              // 低精度：24x24
+    public static final int   LOD_MEDIUM = 1;                              // 中精度：60x60
+    public static final int   LOD_HIGH   = 2;                              // 高精度：128x128
+    public static final int   LOD_ULTRA  = 3;                              // 超高精度：320x320，超过16位索引范围
+    public static final int   ORDER_ROWS      = 0;                         // 按纬线带逐行输出的三角形列表
+    public static final int   ORDER_OPTIMIZED = 1;                         // 按顶点缓存优化顺序输出的三角形列表
+    public static final int   ORDER_STRIP     = 2;                         // 每个绘制块一条以退化三角形相连的三角形条带
+    public static final int   VERSION         = 1;                         // 生成结果的版本，生成、索引优化或顶点编码的输出改变时加一
+    private static final int[] LOD_BANDS = new int[] {24, 60, 128, 320};   // 各精度等级的纬线和经线数量
+
+    private final int    mLatitudeBands;  // 纬线
+    private final int    mLongitudeBands; // 经线
+    private final float  mRadius;         // 球体半径
+    private int          mIndexOrder;     // 索引的输出顺序
+    private VertexFormat mVertexFormat;   // 顶点格式
+
+    public SphereMeshGenerator(int latitudeBands, int longitudeBands, float radius) {
+        if (latitudeBands < 2 || longitudeBands < 3) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid sphere bands: %d x %d", latitudeBands, longitudeBands));
+        }
+        if ((longitudeBands + 1) * 2 > InterleavedMesh.MAX_CHUNK_VERTICES) {
+            throw new IllegalArgumentException("Too many longitude bands: " + longitudeBands);
+        }
+        mLatitudeBands  = latitudeBands;
+        mLongitudeBands = longitudeBands;
+        mRadius         = radius;
+        mIndexOrder     = ORDER_ROWS;
+        mVertexFormat   = VertexFormat.FLOAT;
+    }
+
+    /**
+     * 按精度等级创建球体生成器
+     * @param lod    LOD_LOW, LOD_MEDIUM, LOD_HIGH or LOD_ULTRA
+     * @param radius 球体半径
+     * @return generator
+     */
+    public static SphereMeshGenerator forLevelOfDetail(int lod, float radius) {
+        if (lod < 0 || lod >= LOD_BANDS.length) {
+            throw new IllegalArgumentException("Unknown level of detail: " + lod);
+        }
+        return new SphereMeshGenerator(LOD_BANDS[lod], LOD_BANDS[lod], radius);
+    }
+
+    public int getLatitudeBands() {
+        return mLatitudeBands;
+    }
+
+    public int getLongitudeBands() {
+        return mLongitudeBands;
+    }
+
+    public float getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Set how the triangle indices are ordered
+     * @param indexOrder ORDER_ROWS, ORDER_OPTIMIZED or ORDER_STRIP
+     * @return this generator
+     */
+    public SphereMeshGenerator setIndexOrder(int indexOrder) {
+        if (indexOrder != ORDER_ROWS && indexOrder != ORDER_OPTIMIZED && indexOrder != ORDER_STRIP) {
+            throw new IllegalArgumentException("Unknown index order: " + indexOrder);
+        }
+        mIndexOrder = indexOrder;
+        return this;
+    }
+
+    public int getIndexOrder() {
+        return mIndexOrder;
+    }
+
+    /**
+     * Set the vertex format of the generated mesh, quantized formats are
+     * encoded from the float mesh by {@link VertexEncoder}; the float mesh is
+     * kept if the quantization errors exceed their bounds
+     * @param format VertexFormat.FLOAT, COMPACT or COMPACT_SPHERE
+     * @return this generator
+     */
+    public SphereMeshGenerator setVertexFormat(VertexFormat format) {
+        if (format == null) {
+            throw new IllegalArgumentException("Vertex format is null");
+        }
+        mVertexFormat = format;
+        return this;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return mVertexFormat;
+    }
+
+    public int getVertexCount() {
+        return (mLatitudeBands + 1) * (mLongitudeBands + 1);
+    }
+
+    public int getIndexCount() {
+        if (mIndexOrder == ORDER_STRIP) {
+            int bandsPerChunk = getBandsPerChunk();
+            int chunkCount    = (mLatitudeBands + bandsPerChunk - 1) / bandsPerChunk;
+            return getStripIndexCount(mLatitudeBands) - (chunkCount - 1) * 2;
+        }
+        return 6 * mLatitudeBands * mLongitudeBands;
+    }
+
+    /**
+     * 若干条纬线带连成一条条带的索引数量：每条带2*(经线+1)个索引，带与带之间2个退化索引
+     */
+    private int getStripIndexCount(int bands) {
+        return bands * 2 * (mLongitudeBands + 1) + (bands - 1) * 2;
+    }
+
+    /**
+     * 每个绘制块最多包含的纬线带数量
+     */
+    private int getBandsPerChunk() {
+        return Math.min(mLatitudeBands, InterleavedMesh.MAX_CHUNK_VERTICES / (mLongitudeBands + 1) - 1);
+    }
+
+    /**
+     * 生成球体网格
+     * @return interleaved mesh
+     */
+    public InterleavedMesh generate() {
+        int   rowSize     = mLongitudeBands + 1;
+        int   vertexCount = getVertexCount();
+        int   indexCount  = getIndexCount();
+
+        // 预先计算sin/cos表
+        float[] sinTheta = new float[mLatitudeBands + 1];
+        float[] cosTheta = new float[mLatitudeBands + 1];
+        float[] sinPhi   = new float[mLongitudeBands + 1];
+        float[] cosPhi   = new float[mLongitudeBands + 1];
+        for (int latNum = 0; latNum <= mLatitudeBands; latNum++) {
+            double theta = latNum * Math.PI / mLatitudeBands;
+            sinTheta[latNum] = (float) Math.sin(theta);
+            cosTheta[latNum] = (float) Math.cos(theta);
+        }
+        for (int longNum = 0; longNum <= mLongitudeBands; longNum++) {
+            double phi = longNum * 2 * Math.PI / mLongitudeBands;
+            sinPhi[longNum] = (float) Math.sin(phi);
+            cosPhi[longNum] = (float) Math.cos(phi);
+        }
+
+        // 生成交错格式的顶点：坐标、法线、贴图坐标
+        ByteBuffer vertexData = ByteBuffer.allocateDirect(vertexCount * InterleavedMesh.STRIDE);
+        vertexData.order(ByteOrder.nativeOrder());
+        for (int latNum = 0; latNum <= mLatitudeBands; latNum++) { // 纬线圈
+            float v = (float) latNum / (float) mLatitudeBands;
+            float y = cosTheta[latNum];
+            for (int longNum = 0; longNum <= mLongitudeBands; longNum++) { // 经线圈
+                float x = cosPhi[longNum] * sinTheta[latNum];
+                float z = sinPhi[longNum] * sinTheta[latNum];
+                float u = 1f - ((float) longNum / (float) mLongitudeBands);
+                vertexData.putFloat(mRadius * x).putFloat(mRadius * y).putFloat(mRadius * z);
+                vertexData.putFloat(x).putFloat(y).putFloat(z);
+                vertexData.putFloat(u).putFloat(v);
+            }
+        }
+        vertexData.rewind();
+
+        // 按纬线带分块生成索引，块内索引相对于块的起始顶点
+        int   bandsPerChunk   = getBandsPerChunk();
+        int   chunkCount      = (mLatitudeBands + bandsPerChunk - 1) / bandsPerChunk;
+        int[] chunkBaseVertex = new int[chunkCount];
+        int[] chunkFirstIndex = new int[chunkCount];
+        int[] chunkIndexCount = new int[chunkCount];
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(indexCount * InterleavedMesh.SHORT_BYTES);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        ShortBuffer indexData = byteBuffer.asShortBuffer();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int firstBand = chunk * bandsPerChunk;
+            int lastBand  = Math.min(firstBand + bandsPerChunk, mLatitudeBands);
+            chunkBaseVertex[chunk] = firstBand * rowSize;
+            chunkFirstIndex[chunk] = indexData.position();
+            if (mIndexOrder == ORDER_STRIP) {
+                putStripIndices(indexData, lastBand - firstBand, rowSize);
+            } else {
+                putListIndices(indexData, lastBand - firstBand, rowSize);
+            }
+            chunkIndexCount[chunk] = indexData.position() - chunkFirstIndex[chunk];
+            if (mIndexOrder == ORDER_OPTIMIZED) {
+                IndexOptimizer.optimize(indexData, chunkFirstIndex[chunk], chunkIndexCount[chunk],
+                        IndexOptimizer.DEFAULT_CACHE_SIZE);
+            }
+        }
+        indexData.rewind();
+
+        int primitiveMode = mIndexOrder == ORDER_STRIP
+                ? InterleavedMesh.PRIMITIVE_TRIANGLE_STRIP : InterleavedMesh.PRIMITIVE_TRIANGLES;
+        InterleavedMesh mesh = new InterleavedMesh(vertexData, indexData, primitiveMode, vertexCount, indexCount,
+                chunkBaseVertex, chunkFirstIndex, chunkIndexCount);
+        if (mVertexFormat != VertexFormat.FLOAT) {
+            // 量化误差超过上界时保留32位浮点格式
+            VertexEncoder   encoder   = new VertexEncoder(mVertexFormat);
+            InterleavedMesh quantized = encoder.encode(mesh);
+            if (encoder.isWithinErrorBounds()) {
+                mesh = quantized;
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * 逐行输出纬线带的三角形列表
+     */
+    private void putListIndices(ShortBuffer indexData, int bands, int rowSize) {
+        for (int band = 0; band < bands; band++) {
+            for (int longNum = 0; longNum < mLongitudeBands; longNum++) {
+                int first  = band * rowSize + longNum;
+                int second = first + rowSize;
+                indexData.put((short) first);
+                indexData.put((short) second);
+                indexData.put((short) (first + 1));
+                indexData.put((short) second);
+                indexData.put((short) (second + 1));
+                indexData.put((short) (first + 1));
+            }
+        }
+    }
+
+    /**
+     * 把纬线带输出为一条三角形条带：每条带交替输出上下两行的顶点，
+     * 带与带之间重复上一条带的最后一个顶点和下一条带的第一个顶点，产生4个退化三角形。
+     * 每条带的索引数量是偶数，所以下一条带的三角形绕序不变
+     */
+    private void putStripIndices(ShortBuffer indexData, int bands, int rowSize) {
+        for (int band = 0; band < bands; band++) {
+            int rowStart = band * rowSize;
+            if (band > 0) {
+                indexData.put((short) (rowStart + mLongitudeBands));
+                indexData.put((short) rowStart);
+            }
+            for (int longNum = 0; longNum <= mLongitudeBands; longNum++) {
+                int first  = rowStart + longNum;
+                int second = first + rowSize;
+                indexData.put((short) first);
+                indexData.put((short) second);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.cocoonshu.example.glgyro;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compressed texture container with a prebuilt mip chain
+ * 离线转换工具把PNG压缩为ETC1并生成完整的mipmap链，运行时按级别直接交给glCompressedTexImage2D，
+ * 不需要在设备上解码PNG和生成mipmap。文件头按大端序写入，与运行设备的字节序无关
+ * <pre>
+ * header : magic, version, format, width, height, levelCount
+ * levels : levelCount x (width, height, dataSize, dataSize bytes of data)
+ * </pre>
+ */
+public class TextureContainer {
+
+    public  static final int    FORMAT_ETC1 = Etc1Codec.ETC1_RGB8_OES; // 格式直接使用GL的内部格式值
+    public  static final String EXTENSION   = ".gtex";                 // 容器文件的扩展名
+    private static final int    MAGIC       = 0x58455447;              // "GTEX"
+    private static final int    VERSION     = 1;                       // 文件格式版本
+    private static final int    MAX_LEVELS  = 16;                      // 最大mipmap级数，对应32768的边长
+
+    private final int          mFormat;      // 压缩格式
+    private final int[]        mLevelWidth;  // 各级宽度
+    private final int[]        mLevelHeight; // 各级高度
+    private final ByteBuffer[] mLevelData;   // 各级压缩数据
+
+    private TextureContainer(int format, int[] levelWidth, int[] levelHeight, ByteBuffer[] levelData) {
+        mFormat      = format;
+        mLevelWidth  = levelWidth;
+        mLevelHeight = levelHeight;
+        mLevelData   = levelData;
+    }
+
+    /**
+     * 把RGB888图像压缩为ETC1，并用2x2盒式滤波逐级生成mipmap直到1x1
+     * @param rgb     每个像素3个字节的RGB数据，行优先
+     * @param width   图像宽度
+     * @param height  图像高度
+     * @param mipmaps 是否生成mipmap链
+     * @return container
+     */
+    public static TextureContainer encodeEtc1(byte[] rgb, int width, int height, boolean mipmaps) {
+        int levelCount = mipmaps ? getLevelCount(width, height) : 1;
+        int[]        levelWidth  = new int[levelCount];
+        int[]        levelHeight = new int[levelCount];
+        ByteBuffer[] levelData   = new ByteBuffer[levelCount];
+        byte[]       level       = rgb;
+        for (int i = 0; i < levelCount; i++) {
+            if (i > 0) {
+                level  = downsample(level, width, height);
+                width  = Math.max(1, width / 2);
+                height = Math.max(1, height / 2);
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(Etc1Codec.getEncodedDataSize(width, height));
+            data.order(ByteOrder.BIG_ENDIAN);
+            Etc1Codec.encodeImage(level, width, height, data);
+            data.rewind();
+            levelWidth[i]  = width;
+            levelHeight[i] = height;
+            levelData[i]   = data;
+        }
+        return new TextureContainer(FORMAT_ETC1, levelWidth, levelHeight, levelData);
+    }
+
+    /**
+     * 从流中读取容器，各级数据读入direct buffer以便直接上传
+     * @param inputStream 输入流，不会被关闭
+     * @return container
+     * @throws IOException if the stream is not a valid container
+     */
+    public static TextureContainer read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a texture container");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported texture container version: " + version);
+        }
+        int format = input.readInt();
+        if (format != FORMAT_ETC1) {
+            throw new IOException(String.format("Unsupported texture format: 0x%04X", format));
+        }
+        int width      = input.readInt();
+        int height     = input.readInt();
+        int levelCount = input.readInt();
+        if (width <= 0 || height <= 0 || levelCount <= 0 || levelCount > MAX_LEVELS) {
+            throw new IOException(String.format("Invalid texture container: %dx%d, %d levels",
+                    width, height, levelCount));
+        }
+
+        int[]        levelWidth  = new int[levelCount];
+        int[]        levelHeight = new int[levelCount];
+        ByteBuffer[] levelData   = new ByteBuffer[levelCount];
+        byte[]       buffer      = new byte[8192];
+        for (int i = 0; i < levelCount; i++) {
+            levelWidth[i]  = input.readInt();
+            levelHeight[i] = input.readInt();
+            int dataSize   = input.readInt();
+            if (levelWidth[i] != Math.max(1, width >> i) || levelHeight[i] != Math.max(1, height >> i)
+                    || dataSize != Etc1Codec.getEncodedDataSize(levelWidth[i], levelHeight[i])) {
+                throw new IOException("Invalid mipmap level " + i);
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect(dataSize);
+            data.order(ByteOrder.BIG_ENDIAN);
+            while (data.hasRemaining()) {
+                int length = Math.min(buffer.length, data.remaining());
+                input.readFully(buffer, 0, length);
+                data.put(buffer, 0, length);
+            }
+            data.rewind();
+            levelData[i] = data;
+        }
+        return new TextureContainer(format, levelWidth, levelHeight, levelData);
+    }
+
+    /**
+     * 把容器写入流
+     * @param outputStream 输出流，不会被关闭
+     * @throws IOException if writing failed
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(mFormat);
+        output.writeInt(getWidth());
+        output.writeInt(getHeight());
+        output.writeInt(getLevelCount());
+        byte[] buffer = new byte[8192];
+        for (int i = 0; i < mLevelData.length; i++) {
+            ByteBuffer data = mLevelData[i].duplicate();
+            data.clear();
+            output.writeInt(mLevelWidth[i]);
+            output.writeInt(mLevelHeight[i]);
+            output.writeInt(data.remaining());
+            while (data.hasRemaining()) {
+                int length = Math.min(buffer.length, data.remaining());
+                data.get(buffer, 0, length);
+                output.write(buffer, 0, length);
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * 去掉边长超过限制的mipmap级别，例如超过GL_MAX_TEXTURE_SIZE时；
+     * 没有mipmap链的容器无法缩小，总是保留最后一级
+     * @param maxSize 最大边长
+     * @return this if every level fits, otherwise a container sharing the remaining levels
+     */
+    public TextureContainer limitSize(int maxSize) {
+        int firstLevel = 0;
+        while (firstLevel < mLevelData.length - 1
+                && (mLevelWidth[firstLevel] > maxSize || mLevelHeight[firstLevel] > maxSize)) {
+            firstLevel++;
+        }
+        if (firstLevel == 0) {
+            return this;
+        }
+        int levelCount = mLevelData.length;
+        return new TextureContainer(mFormat,
+                Arrays.copyOfRange(mLevelWidth, firstLevel, levelCount),
+                Arrays.copyOfRange(mLevelHeight, firstLevel, levelCount),
+                Arrays.copyOfRange(mLevelData, firstLevel, levelCount));
+    }
+
+    /**
+     * 把图片资源路径的扩展名替换为容器的扩展名
+     */
+    public static String getContainerPath(String imagePath) {
+        int dot = imagePath.lastIndexOf('.');
+        int slash = imagePath.lastIndexOf('/');
+        return (dot > slash ? imagePath.substring(0, dot) : imagePath) + EXTENSION;
+    }
+
+    /**
+     * 边长逐级减半直到1x1的mipmap级数
+     */
+    public static int getLevelCount(int width, int height) {
+        int levelCount = 1;
+        while (width > 1 || height > 1) {
+            width  = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            levelCount++;
+        }
+        return levelCount;
+    }
+
+    /**
+     * 2x2盒式滤波，边长为奇数时最后一行或一列与相邻的像素平均
+     */
+    static byte[] downsample(byte[] rgb, int width, int height) {
+        int    targetWidth  = Math.max(1, width / 2);
+        int    targetHeight = Math.max(1, height / 2);
+        byte[] target       = new byte[targetWidth * targetHeight * 3];
+        for (int y = 0; y < targetHeight; y++) {
+            int y0 = Math.min(y * 2, height - 1);
+            int y1 = Math.min(y * 2 + 1, height - 1);
+            for (int x = 0; x < targetWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                for (int c = 0; c < 3; c++) {
+                    int sum = (rgb[(y0 * width + x0) * 3 + c] & 0xFF)
+                            + (rgb[(y0 * width + x1) * 3 + c] & 0xFF)
+                            + (rgb[(y1 * width + x0) * 3 + c] & 0xFF)
+                            + (rgb[(y1 * width + x1) * 3 + c] & 0xFF);
+                    target[(y * targetWidth + x) * 3 + c] = (byte) ((sum + 2) / 4);
+                }
+            }
+        }
+        return target;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getWidth() {
+        return mLevelWidth[0];
+    }
+
+    public int getHeight() {
+        return mLevelHeight[0];
+    }
+
+    public int getLevelCount() {
+        return mLevelData.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return mLevelWidth[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return mLevelHeight[level];
+    }
+
+    /**
+     * Get the compressed data of a mipmap level, the returned buffer
+     * is a duplicate positioned at zero
+     */
+    public ByteBuffer getLevelData(int level) {
+        ByteBuffer data = mLevelData[level].duplicate();
+        data.clear();
+        data.order(ByteOrder.BIG_ENDIAN);
+        return data;
+    }
+
+    /**
+     * 所有级别压缩数据的总字节数
+     */
+    public int getDataSize() {
+        int size = 0;
+        for (ByteBuffer data : mLevelData) {
+            size += data.capacity();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,134 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * FIFO post-transform vertex cache simulator
+ * 在CPU上模拟移动GPU的FIFO顶点缓存，统计网格的ACMR(每个三角形的平均缓存缺失数)和
+ * ATVR(每个顶点的平均变换次数)，不需要GPU就可以比较不同索引顺序的效果。
+ * 理想情况下ACMR接近0.5，ATVR接近1.0；逐行输出的网格在缓存小于一行顶点数时ACMR接近1.0
+ */
+public class VertexCacheSimulator {
+
+    private final int[] mCache;         // FIFO缓存中的顶点
+    private int         mCacheHead;     // 下一个被替换的缓存位置
+    private int         mCacheCount;    // 缓存中的顶点数量
+    private int[]       mVertexStamp;   // 每个顶点被读取过的标记，用于统计不同顶点的数量
+    private long        mMisses;        // 缓存缺失数，即顶点变换次数
+    private long        mTriangles;     // 非退化三角形数量
+    private long        mVertices;      // 被引用过的不同顶点数量
+
+    public VertexCacheSimulator(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + cacheSize);
+        }
+        mCache       = new int[cacheSize];
+        mVertexStamp = new int[0];
+        reset();
+    }
+
+    /**
+     * 清空缓存和统计数据
+     */
+    public void reset() {
+        mCacheHead  = 0;
+        mCacheCount = 0;
+        mMisses     = 0;
+        mTriangles  = 0;
+        mVertices   = 0;
+        Arrays.fill(mVertexStamp, 0);
+    }
+
+    /**
+     * 模拟网格的所有绘制块，每个绘制块是一次独立的绘制调用，开始时缓存为空
+     * @param mesh 网格
+     */
+    public void simulate(InterleavedMesh mesh) {
+        ShortBuffer indices = mesh.getIndexData();
+        for (int chunk = 0; chunk < mesh.getChunkCount(); chunk++) {
+            mCacheHead  = 0;
+            mCacheCount = 0;
+            simulate(indices, mesh.getChunkFirstIndex(chunk), mesh.getChunkIndexCount(chunk),
+                    mesh.getPrimitiveMode(), mesh.getChunkBaseVertex(chunk));
+        }
+    }
+
+    /**
+     * 模拟一段索引
+     * @param indices       索引Buffer，使用绝对位置访问
+     * @param firstIndex    起始索引
+     * @param indexCount    索引数量
+     * @param primitiveMode InterleavedMesh.PRIMITIVE_TRIANGLES or PRIMITIVE_TRIANGLE_STRIP
+     * @param baseVertex    索引相对的起始顶点，用于跨绘制块统计不同顶点
+     */
+    public void simulate(ShortBuffer indices, int firstIndex, int indexCount, int primitiveMode, int baseVertex) {
+        for (int i = 0; i < indexCount; i++) {
+            int vertex = baseVertex + (indices.get(firstIndex + i) & 0xFFFF);
+            access(vertex);
+        }
+
+        // 统计非退化三角形
+        if (primitiveMode == InterleavedMesh.PRIMITIVE_TRIANGLE_STRIP) {
+            for (int i = 2; i < indexCount; i++) {
+                int a = indices.get(firstIndex + i - 2);
+                int b = indices.get(firstIndex + i - 1);
+                int c = indices.get(firstIndex + i);
+                if (a != b && b != c && a != c) {
+                    mTriangles++;
+                }
+            }
+        } else {
+            mTriangles += indexCount / 3;
+        }
+    }
+
+    private void access(int vertex) {
+        if (vertex >= mVertexStamp.length) {
+            mVertexStamp = Arrays.copyOf(mVertexStamp, Math.max(vertex + 1, mVertexStamp.length * 2));
+        }
+        if (mVertexStamp[vertex] == 0) {
+            mVertexStamp[vertex] = 1;
+            mVertices++;
+        }
+
+        for (int i = 0; i < mCacheCount; i++) {
+            if (mCache[i] == vertex) {
+                return; // FIFO缓存命中时不改变替换顺序
+            }
+        }
+        mMisses++;
+        if (mCacheCount < mCache.length) {
+            mCache[mCacheCount++] = vertex;
+        } else {
+            mCache[mCacheHead] = vertex;
+            mCacheHead = (mCacheHead + 1) % mCache.length;
+        }
+    }
+
+    public long getMisses() {
+        return mMisses;
+    }
+
+    public long getTriangleCount() {
+        return mTriangles;
+    }
+
+    public long getVertexCount() {
+        return mVertices;
+    }
+
+    /**
+     * Average cache miss ratio: transformed vertices per triangle
+     */
+    public float getACMR() {
+        return mTriangles == 0 ? 0 : (float) mMisses / mTriangles;
+    }
+
+    /**
+     * Average transform to vertex ratio: transformed vertices per unique vertex
+     */
+    public float getATVR() {
+        return mVertices == 0 ? 0 : (float) mMisses / mVertices;
+    }
+}
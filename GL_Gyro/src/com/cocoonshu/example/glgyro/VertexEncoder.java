@@ -0,0 +1,209 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Quantizing vertex encoder
+ * 把32位浮点格式的网格量化为紧凑的顶点格式，并统计每种属性的最大量化误差。
+ * 量化不会因为误差而失败，调用者通过isWithinErrorBounds()检查误差是否在理论上界内，
+ * 超出时改用32位浮点格式，避免把不适合量化的网格静默地画错
+ * <ul>
+ * <li>坐标：按网格最大坐标分量缩放到short，缩放系数乘到模型矩阵上</li>
+ * <li>法线：量化为byte，或者对于以原点为球心的球体直接复用坐标数据</li>
+ * <li>贴图坐标：[-1, 1]内的值缩放到short，缩放系数乘到纹理矩阵上</li>
+ * </ul>
+ */
+public class VertexEncoder {
+
+    public  static final float MAX_NORMAL_ERROR        = 1E-2F;            // 法线允许的最大角度误差(rad)
+    public  static final float MAX_NORMAL_LENGTH_ERROR = 1E-2F;            // 复用坐标时法线长度允许的误差
+    private static final int   SHORT_MAX               = Short.MAX_VALUE;  // short的最大值
+    private static final int   BYTE_MAX                = Byte.MAX_VALUE;   // byte的最大值
+    private static final float EPSILON                 = 1E-6F;            // 浮点误差余量
+
+    private final VertexFormat mFormat;               // 目标顶点格式
+    private int                mSourceStride;         // 源格式每个顶点的字节数
+    private int                mVertexCount;          // 上次编码的顶点数量
+    private float              mMaxPositionError;     // 上次编码的坐标最大误差
+    private float              mMaxNormalError;       // 上次编码的法线最大角度误差(rad)
+    private float              mMaxTexcoordError;     // 上次编码的贴图坐标最大误差
+    private float              mMaxNormalLengthError; // 上次编码复用坐标作为法线时的最大长度误差
+    private float              mPositionErrorBound;   // 上次编码的坐标误差上界：半个量化步长
+    private float              mTexcoordErrorBound;   // 上次编码的贴图坐标误差上界：半个量化步长
+
+    public VertexEncoder(VertexFormat format) {
+        if (format == VertexFormat.FLOAT) {
+            throw new IllegalArgumentException("Target format must be a quantized format");
+        }
+        mFormat = format;
+    }
+
+    /**
+     * 量化网格，索引数据与源网格共享。[-1, 1]以外的贴图坐标被截断，计入贴图坐标的误差
+     * @param source 32位浮点格式的网格
+     * @return quantized mesh, check isWithinErrorBounds() before using it
+     * @throws IllegalArgumentException if the source mesh is already quantized
+     */
+    public InterleavedMesh encode(InterleavedMesh source) {
+        if (source.getFormat() != VertexFormat.FLOAT) {
+            throw new IllegalArgumentException("Source mesh is already quantized: " + source.getFormat());
+        }
+        int        vertexCount = source.getVertexCount();
+        ByteBuffer input       = source.getVertexData();
+
+        // 按最大坐标分量确定坐标的量化步长
+        float maxAbsolute = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            int base = i * InterleavedMesh.STRIDE + InterleavedMesh.POSITION_OFFSET;
+            for (int k = 0; k < InterleavedMesh.POSITION_SIZE; k++) {
+                maxAbsolute = Math.max(maxAbsolute, Math.abs(input.getFloat(base + k * InterleavedMesh.FLOAT_BYTES)));
+            }
+        }
+        float positionScale = maxAbsolute > 0 ? maxAbsolute / SHORT_MAX : 1.0f;
+        float texcoordScale = 1.0f / SHORT_MAX;
+
+        mSourceStride         = InterleavedMesh.STRIDE;
+        mVertexCount          = vertexCount;
+        mMaxPositionError     = 0;
+        mMaxNormalError       = 0;
+        mMaxTexcoordError     = 0;
+        mMaxNormalLengthError = 0;
+        mPositionErrorBound   = positionScale * (float) Math.sqrt(InterleavedMesh.POSITION_SIZE) * 0.5f;
+        mTexcoordErrorBound   = texcoordScale * 0.5f;
+
+        ByteBuffer output = ByteBuffer.allocateDirect(vertexCount * mFormat.getStride());
+        output.order(ByteOrder.nativeOrder());
+        float[] position = new float[InterleavedMesh.POSITION_SIZE];
+        float[] normal   = new float[InterleavedMesh.NORMAL_SIZE];
+        float[] decoded  = new float[InterleavedMesh.POSITION_SIZE];
+        for (int i = 0; i < vertexCount; i++) {
+            int sourceOffset = i * InterleavedMesh.STRIDE;
+            int targetOffset = i * mFormat.getStride();
+            readFloats(input, sourceOffset + InterleavedMesh.POSITION_OFFSET, position);
+            readFloats(input, sourceOffset + InterleavedMesh.NORMAL_OFFSET, normal);
+
+            // 坐标
+            for (int k = 0; k < InterleavedMesh.POSITION_SIZE; k++) {
+                short value = (short) Math.round(position[k] / positionScale);
+                output.putShort(targetOffset + mFormat.getPositionOffset() + k * InterleavedMesh.SHORT_BYTES, value);
+                decoded[k] = value * positionScale;
+            }
+            mMaxPositionError = Math.max(mMaxPositionError, distance(position, decoded));
+
+            // 法线
+            if (mFormat.isNormalDerived()) {
+                // 坐标按最大分量归一化后的short值就是GL_SHORT法线，长度必须接近1
+                for (int k = 0; k < InterleavedMesh.POSITION_SIZE; k++) {
+                    decoded[k] = decoded[k] / positionScale / SHORT_MAX;
+                }
+                float length = (float) Math.sqrt(dot(decoded, decoded));
+                mMaxNormalLengthError = Math.max(mMaxNormalLengthError, Math.abs(length - 1.0f));
+            } else {
+                for (int k = 0; k < InterleavedMesh.NORMAL_SIZE; k++) {
+                    byte value = (byte) Math.round(normal[k] * BYTE_MAX);
+                    output.put(targetOffset + mFormat.getNormalOffset() + k, value);
+                    decoded[k] = (float) value / BYTE_MAX;
+                }
+            }
+            mMaxNormalError = Math.max(mMaxNormalError, angle(normal, decoded));
+
+            // 贴图坐标
+            for (int k = 0; k < InterleavedMesh.TEXCOORD_SIZE; k++) {
+                float texcoord = input.getFloat(sourceOffset + InterleavedMesh.TEXCOORD_OFFSET + k * InterleavedMesh.FLOAT_BYTES);
+                short value = (short) Math.round(Math.max(-1.0f, Math.min(1.0f, texcoord)) * SHORT_MAX);
+                output.putShort(targetOffset + mFormat.getTexcoordOffset() + k * InterleavedMesh.SHORT_BYTES, value);
+                mMaxTexcoordError = Math.max(mMaxTexcoordError, Math.abs(value * texcoordScale - texcoord));
+            }
+        }
+
+        int[] chunkBaseVertex = new int[source.getChunkCount()];
+        int[] chunkFirstIndex = new int[source.getChunkCount()];
+        int[] chunkIndexCount = new int[source.getChunkCount()];
+        for (int chunk = 0; chunk < chunkBaseVertex.length; chunk++) {
+            chunkBaseVertex[chunk] = source.getChunkBaseVertex(chunk);
+            chunkFirstIndex[chunk] = source.getChunkFirstIndex(chunk);
+            chunkIndexCount[chunk] = source.getChunkIndexCount(chunk);
+        }
+        ShortBuffer indexData = source.getIndexData().duplicate();
+        indexData.rewind();
+        return new InterleavedMesh(mFormat, positionScale, texcoordScale, output, indexData,
+                source.getPrimitiveMode(), vertexCount, source.getIndexCount(),
+                chunkBaseVertex, chunkFirstIndex, chunkIndexCount);
+    }
+
+    /**
+     * 检查上次编码的误差：坐标和贴图坐标不超过半个量化步长，法线不超过允许的角度误差，
+     * 复用坐标作为法线时坐标的长度必须接近1
+     * @return true if the quantized mesh can replace the float mesh
+     */
+    public boolean isWithinErrorBounds() {
+        return mMaxPositionError <= mPositionErrorBound * (1 + EPSILON) + EPSILON
+            && mMaxTexcoordError <= mTexcoordErrorBound + EPSILON
+            && mMaxNormalError <= MAX_NORMAL_ERROR
+            && mMaxNormalLengthError <= MAX_NORMAL_LENGTH_ERROR;
+    }
+
+    private static void readFloats(ByteBuffer buffer, int offset, float[] values) {
+        for (int k = 0; k < values.length; k++) {
+            values[k] = buffer.getFloat(offset + k * InterleavedMesh.FLOAT_BYTES);
+        }
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float dx = a[0] - b[0];
+        float dy = a[1] - b[1];
+        float dz = a[2] - b[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static float angle(float[] a, float[] b) {
+        // 用atan2代替acos，夹角很小时acos的精度不够
+        double cx = a[1] * b[2] - a[2] * b[1];
+        double cy = a[2] * b[0] - a[0] * b[2];
+        double cz = a[0] * b[1] - a[1] * b[0];
+        return (float) Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), dot(a, b));
+    }
+
+    public VertexFormat getFormat() {
+        return mFormat;
+    }
+
+    public float getMaxPositionError() {
+        return mMaxPositionError;
+    }
+
+    public float getMaxNormalError() {
+        return mMaxNormalError;
+    }
+
+    public float getMaxTexcoordError() {
+        return mMaxTexcoordError;
+    }
+
+    public float getMaxNormalLengthError() {
+        return mMaxNormalLengthError;
+    }
+
+    public float getPositionErrorBound() {
+        return mPositionErrorBound;
+    }
+
+    public float getTexcoordErrorBound() {
+        return mTexcoordErrorBound;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d -> %d bytes/vertex, %d -> %d bytes for %d vertices, "
+                + "max error position %.2e, normal %.2e rad, texcoord %.2e",
+                mFormat, mSourceStride, mFormat.getStride(),
+                mVertexCount * mSourceStride, mVertexCount * mFormat.getStride(), mVertexCount,
+                mMaxPositionError, mMaxNormalError, mMaxTexcoordError);
+    }
+}
@@ -0,0 +1,118 @@
+package com.cocoonshu.example.glgyro;
+
+/**
+ * Interleaved vertex layout
+ * 描述交错顶点中每个属性的数据类型和字节偏移，绘制时直接作为glXXXPointer的参数。
+ * OpenGLES 1.1中glNormalPointer的整数类型会被归一化到[-1, 1]，而glVertexPointer和
+ * glTexCoordPointer的整数类型不会，所以紧凑格式的坐标和贴图坐标需要在模型矩阵和纹理矩阵中缩放回来
+ * <pre>
+ * FLOAT          : | position(3 x float) | normal(3 x float) | texcoord(2 x float) | 32 bytes
+ * COMPACT        : | position(3 x short, pad) | normal(3 x byte, pad) | texcoord(2 x short) | 16 bytes
+ * COMPACT_SPHERE : | position(3 x short, pad) | texcoord(2 x short) | 12 bytes, 法线复用坐标
+ * </pre>
+ */
+public final class VertexFormat {
+
+    public static final int TYPE_BYTE  = 0x1400; // 与GL_BYTE相同
+    public static final int TYPE_SHORT = 0x1402; // 与GL_SHORT相同
+    public static final int TYPE_FLOAT = 0x1406; // 与GL_FLOAT相同
+
+    public static final int          ID_FLOAT          = 0; // 32位浮点格式的ID
+    public static final int          ID_COMPACT        = 1; // 紧凑格式的ID
+    public static final int          ID_COMPACT_SPHERE = 2; // 法线由坐标推导的紧凑格式的ID
+    public static final VertexFormat FLOAT             = new VertexFormat(ID_FLOAT,          // 32位浮点格式，与InterleavedMesh的布局常量一致
+            TYPE_FLOAT, InterleavedMesh.POSITION_OFFSET,
+            TYPE_FLOAT, InterleavedMesh.NORMAL_OFFSET,
+            TYPE_FLOAT, InterleavedMesh.TEXCOORD_OFFSET, InterleavedMesh.STRIDE);
+    public static final VertexFormat COMPACT           = new VertexFormat(ID_COMPACT,        // 紧凑格式：坐标和贴图坐标为short，法线为byte
+            TYPE_SHORT, 0,
+            TYPE_BYTE,  8,
+            TYPE_SHORT, 12, 16);
+    public static final VertexFormat COMPACT_SPHERE    = new VertexFormat(ID_COMPACT_SPHERE, // 以原点为球心的球体专用：法线指针指向坐标，省去法线数据
+            TYPE_SHORT, 0,
+            TYPE_SHORT, 0,
+            TYPE_SHORT, 8, 12);
+
+    private final int mId;             // 格式ID，写入网格缓存
+    private final int mPositionType;   // 坐标的数据类型
+    private final int mPositionOffset; // 坐标在顶点中的字节偏移
+    private final int mNormalType;     // 法线的数据类型
+    private final int mNormalOffset;   // 法线在顶点中的字节偏移
+    private final int mTexcoordType;   // 贴图坐标的数据类型
+    private final int mTexcoordOffset; // 贴图坐标在顶点中的字节偏移
+    private final int mStride;         // 每个顶点的字节数
+
+    private VertexFormat(int id, int positionType, int positionOffset, int normalType, int normalOffset,
+            int texcoordType, int texcoordOffset, int stride) {
+        mId             = id;
+        mPositionType   = positionType;
+        mPositionOffset = positionOffset;
+        mNormalType     = normalType;
+        mNormalOffset   = normalOffset;
+        mTexcoordType   = texcoordType;
+        mTexcoordOffset = texcoordOffset;
+        mStride         = stride;
+    }
+
+    /**
+     * 按格式ID查找顶点格式
+     * @param id ID_FLOAT, ID_COMPACT or ID_COMPACT_SPHERE
+     * @return format, or null if unknown
+     */
+    public static VertexFormat forId(int id) {
+        switch (id) {
+        case ID_FLOAT:          return FLOAT;
+        case ID_COMPACT:        return COMPACT;
+        case ID_COMPACT_SPHERE: return COMPACT_SPHERE;
+        default:                return null;
+        }
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public int getPositionType() {
+        return mPositionType;
+    }
+
+    public int getPositionOffset() {
+        return mPositionOffset;
+    }
+
+    public int getNormalType() {
+        return mNormalType;
+    }
+
+    public int getNormalOffset() {
+        return mNormalOffset;
+    }
+
+    public int getTexcoordType() {
+        return mTexcoordType;
+    }
+
+    public int getTexcoordOffset() {
+        return mTexcoordOffset;
+    }
+
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * 法线是否复用坐标数据
+     */
+    public boolean isNormalDerived() {
+        return mNormalOffset == mPositionOffset;
+    }
+
+    @Override
+    public String toString() {
+        switch (mId) {
+        case ID_FLOAT:          return "FLOAT(" + mStride + "B)";
+        case ID_COMPACT:        return "COMPACT(" + mStride + "B)";
+        default:                return "COMPACT_SPHERE(" + mStride + "B)";
+        }
+    }
+}
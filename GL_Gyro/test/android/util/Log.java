@@ -0,0 +1,99 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * JVM replacement of android.util.Log for the unit tests
+ * android-all中的Log通过native方法写入logcat，在JVM上调用会抛出UnsatisfiedLinkError。
+ * 测试类排在android-all之前，这个同名类代替它把日志输出到标准错误流，公开接口与API 22相同
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG   = 3;
+    public static final int INFO    = 4;
+    public static final int WARN    = 5;
+    public static final int ERROR   = 6;
+    public static final int ASSERT  = 7;
+
+    private static final String LEVELS = "??VDIWEA"; // 各优先级在日志中的缩写
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println(WARN, tag, getStackTraceString(tr));
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static int wtf(String tag, String msg) {
+        return println(ASSERT, tag, msg);
+    }
+
+    public static int wtf(String tag, Throwable tr) {
+        return println(ASSERT, tag, getStackTraceString(tr));
+    }
+
+    public static int wtf(String tag, String msg, Throwable tr) {
+        return println(ASSERT, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= INFO;
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter writer = new StringWriter();
+        tr.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        String line = LEVELS.charAt(priority & 7) + "/" + tag + ": " + msg;
+        System.err.println(line);
+        return line.length();
+    }
+}
@@ -0,0 +1,34 @@
+package com.cocoonshu.example.glgyro;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated by the current thread, read from the HotSpot thread MX bean
+ * 用于检验传感器线程和渲染线程上的热路径不分配内存
+ */
+final class AllocationCounter {
+
+    private static final int WARMUP_CALLS = 20000; // 预热JIT的调用次数
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static {
+        // 旧的JDK中getThreadAllocatedBytes(id)会分配临时数组，直到被JIT消除；
+        // 剩下的偶发分配由调用方取多轮中分配最少的一轮来排除
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            currentThreadBytes();
+        }
+    }
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * @return total number of bytes the calling thread has allocated so far
+     */
+    static long currentThreadBytes() {
+        // getCurrentThreadAllocatedBytes()要到JDK 14才有，这个重载从JDK 6u25起就有
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
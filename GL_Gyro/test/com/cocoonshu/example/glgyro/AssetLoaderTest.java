@@ -0,0 +1,251 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AssetLoaderTest {
+
+    private static final long TIMEOUT_MS = 5000; // 等待加载线程的最长时间(ms)
+
+    private final PausingExecutor mExecutor = new PausingExecutor();
+    private final FakeLoader      mLoader   = new FakeLoader(mExecutor);
+    private final Results         mResults  = new Results();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mExecutor.resume();
+        mLoader.release();
+        mExecutor.shutdown();
+        assertTrue("loader thread finished", mExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void ordersByPriorityThenSubmission() {
+        AssetLoader.Request low     = request("low", AssetLoader.PRIORITY_LOW);
+        AssetLoader.Request normal  = request("normal", AssetLoader.PRIORITY_NORMAL);
+        AssetLoader.Request high    = request("high", AssetLoader.PRIORITY_HIGH);
+        AssetLoader.Request highToo = request("highToo", AssetLoader.PRIORITY_HIGH);
+        assertTrue(high.compareTo(normal) < 0);
+        assertTrue(normal.compareTo(low) < 0);
+        assertTrue(low.compareTo(high) > 0);
+        assertTrue(high.compareTo(highToo) < 0);
+        assertTrue(highToo.compareTo(high) > 0);
+        assertEquals(0, high.compareTo(high));
+    }
+
+    /**
+     * 空闲线程会不经过优先级队列直接执行第一个请求，submit()先排序才能让它是优先级最高的请求
+     */
+    @Test
+    public void submitRunsHighestPriorityFirst() throws InterruptedException {
+        mLoader.submit(request("low", AssetLoader.PRIORITY_LOW),
+                       request("high", AssetLoader.PRIORITY_HIGH),
+                       request("normal", AssetLoader.PRIORITY_NORMAL),
+                       request("highToo", AssetLoader.PRIORITY_HIGH));
+        mResults.await(4);
+        assertArrayEquals(new String[] {"high", "highToo", "normal", "low"}, mLoader.loadedPaths());
+    }
+
+    /**
+     * 等待中的请求在cancelAll()中回调，正在执行的请求执行结束后回调，每个请求都只回调一次
+     */
+    @Test
+    public void cancelAllCallsEachListenerOnce() throws InterruptedException {
+        mLoader.blockOn("running");
+        AssetLoader.Request running = request("running", AssetLoader.PRIORITY_HIGH);
+        mLoader.submit(running);
+        mLoader.awaitBlocked();
+        AssetLoader.Request[] queued = new AssetLoader.Request[] {
+                request("a", AssetLoader.PRIORITY_LOW),
+                request("b", AssetLoader.PRIORITY_NORMAL),
+                request("c", AssetLoader.PRIORITY_HIGH)};
+        mLoader.submit(queued);
+
+        mLoader.cancelAll();
+        assertTrue(running.isCancelled());
+        for (AssetLoader.Request request : queued) {
+            assertTrue(request.isCancelled());
+            assertEquals(1, mResults.countOf(request));
+            assertNull(mResults.pixelsOf(request));
+        }
+        mLoader.release();
+        mResults.await(4);
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, mResults.countOf(running));
+        assertNull(mResults.pixelsOf(running));
+        assertEquals(4, mResults.size());
+        assertArrayEquals(new String[] {"running"}, mLoader.loadedPaths());
+    }
+
+    /**
+     * 加载线程已经从队列中取出、还没开始执行的请求，不在等待队列也不在执行集合中，执行时仍要被取消
+     */
+    @Test
+    public void cancelAllCancelsDequeuedRequest() throws InterruptedException {
+        mExecutor.pauseBefore(1);
+        AssetLoader.Request request = request("dequeued", AssetLoader.PRIORITY_NORMAL);
+        mLoader.submit(request);
+        mExecutor.awaitPaused();
+
+        mLoader.cancelAll();
+        assertEquals(0, mResults.size());
+        mExecutor.resume();
+        mResults.await(1);
+        assertTrue(request.isCancelled());
+        assertNull(mResults.pixelsOf(request));
+        assertEquals(0, mLoader.loadedPaths().length);
+
+        // 取消只影响之前提交的请求
+        AssetLoader.Request later = request("later", AssetLoader.PRIORITY_NORMAL);
+        mLoader.submit(later);
+        mResults.await(2);
+        assertFalse(later.isCancelled());
+        assertEquals("later", mResults.pixelsOf(later));
+    }
+
+    private AssetLoader.Request request(String path, int priority) {
+        return mLoader.newRequest(path, priority, 1024, 0, mResults);
+    }
+
+    /**
+     * 不读取资源文件，把资源路径作为加载结果；可以让指定的请求阻塞在加载中
+     */
+    private static final class FakeLoader extends AssetLoader {
+
+        private final List<String>   mLoaded  = new ArrayList<String>(); // 依次加载的资源路径
+        private final CountDownLatch mBlocked = new CountDownLatch(1);   // 阻塞的请求已开始加载
+        private final CountDownLatch mRelease = new CountDownLatch(1);   // 放行阻塞的请求
+        private volatile String      mBlockOn = null;                    // 阻塞的资源路径
+
+        FakeLoader(ThreadPoolExecutor executor) {
+            super(null, null, executor);
+        }
+
+        void blockOn(String path) {
+            mBlockOn = path;
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            assertTrue("request blocked", mBlocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            mRelease.countDown();
+        }
+
+        synchronized String[] loadedPaths() {
+            return mLoaded.toArray(new String[mLoaded.size()]);
+        }
+
+        @Override
+        Object load(Request request) {
+            synchronized (this) {
+                mLoaded.add(request.getAssetPath());
+            }
+            if (request.getAssetPath().equals(mBlockOn)) {
+                mBlocked.countDown();
+                try {
+                    mRelease.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return request.isCancelled() ? null : request.getAssetPath();
+        }
+    }
+
+    /**
+     * 单线程的线程池，可以让加载线程在取出第n个请求之后、执行之前暂停
+     */
+    private static final class PausingExecutor extends ThreadPoolExecutor {
+
+        private final CountDownLatch mPaused  = new CountDownLatch(1); // 加载线程已暂停
+        private final CountDownLatch mResume  = new CountDownLatch(1); // 让加载线程继续
+        private int                  mPauseAt = 0;                     // 在第几个请求之前暂停，0表示不暂停
+        private int                  mStarted = 0;                     // 已取出的请求数，只由加载线程访问
+
+        PausingExecutor() {
+            super(1, 1, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+        }
+
+        void pauseBefore(int index) {
+            mPauseAt = index;
+        }
+
+        void awaitPaused() throws InterruptedException {
+            assertTrue("loader thread paused", mPaused.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+
+        void resume() {
+            mResume.countDown();
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable runnable) {
+            if (++mStarted == mPauseAt) {
+                mPaused.countDown();
+                try {
+                    mResume.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录每个请求的回调次数和结果
+     */
+    private static final class Results implements AssetLoader.OnAssetLoadedListener {
+
+        private final List<AssetLoader.Request> mRequests = new ArrayList<AssetLoader.Request>(); // 依次回调的请求
+        private final List<Object>              mPixels   = new ArrayList<Object>();              // 对应的结果
+
+        @Override
+        public synchronized void onAssetLoaded(AssetLoader.Request request, Object pixels) {
+            mRequests.add(request);
+            mPixels.add(pixels);
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (mRequests.size() < count && System.currentTimeMillis() < deadline) {
+                wait(TIMEOUT_MS);
+            }
+            assertEquals("callbacks", count, mRequests.size());
+        }
+
+        synchronized int size() {
+            return mRequests.size();
+        }
+
+        synchronized int countOf(AssetLoader.Request request) {
+            int count = 0;
+            for (AssetLoader.Request callback : mRequests) {
+                if (callback == request) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        synchronized Object pixelsOf(AssetLoader.Request request) {
+            return mPixels.get(mRequests.indexOf(request));
+        }
+    }
+}
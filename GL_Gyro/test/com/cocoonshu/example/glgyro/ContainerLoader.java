@@ -0,0 +1,37 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * AssetLoader that does not read assets: every path loads as a freshly encoded ETC1 container
+ * 记录每个路径的加载次数，用于检查哪些纹理被重新加载
+ */
+final class ContainerLoader extends AssetLoader {
+
+    private final int                  mTextureSize;                                 // 纹理边长
+    private final Map<String, Integer> mLoadCounts = new HashMap<String, Integer>(); // 每个路径的加载次数
+
+    /**
+     * @param executor    执行请求的线程池，等待队列必须是PriorityBlockingQueue
+     * @param textureSize 纹理边长
+     */
+    ContainerLoader(ThreadPoolExecutor executor, int textureSize) {
+        super(null, new BitmapPool(0), executor);
+        mTextureSize = textureSize;
+    }
+
+    synchronized int loadCount(String path) {
+        Integer count = mLoadCounts.get(path);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    Object load(Request request) {
+        synchronized (this) {
+            mLoadCounts.put(request.getAssetPath(), loadCount(request.getAssetPath()) + 1);
+        }
+        return TextureContainer.encodeEtc1(new byte[mTextureSize * mTextureSize * 3], mTextureSize, mTextureSize, false);
+    }
+}
@@ -0,0 +1,388 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameProfilerTest {
+
+    private static final int FRAME_START     = 1000000; // 测试帧之间的开始时间间隔(ns)
+    private static final int STRESS_FRAMES   = 2000000; // 压力测试中渲染线程记录的帧数
+    private static final int WARMUP_FRAMES   = 20000;   // 预热JIT的帧数
+    private static final int MEASURED_FRAMES = 2000;    // 每一轮检查内存分配的帧数
+    private static final int MEASURED_RUNS   = 5;       // 检查内存分配的轮数
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(4, new FrameProfiler(3).getCapacity());
+        assertEquals(4, new FrameProfiler(4).getCapacity());
+        assertEquals(2, new FrameProfiler(1).getCapacity());
+        assertEquals(FrameProfiler.DEFAULT_CAPACITY, new FrameProfiler().getCapacity());
+        for (int capacity : new int[] {0, -1, (1 << 20) + 1}) {
+            try {
+                new FrameProfiler(capacity);
+                fail("capacity " + capacity);
+            } catch (IllegalArgumentException e) {
+                // 预期的异常
+            }
+        }
+    }
+
+    /**
+     * 写满后覆盖最旧的记录，快照按时间先后返回最近的帧；
+     * 写满后最旧的位置是渲染线程下一帧要写入的位置，总是被丢弃
+     */
+    @Test
+    public void ringKeepsLatestFramesAfterWraparound() {
+        ManualClockProfiler profiler = new ManualClockProfiler(4);
+        long[]              startNs  = new long[4];
+        int[]               frameNs  = new int[4];
+        int[]               stageNs  = new int[4 * FrameProfiler.STAGE_COUNT];
+        for (int frame = 0; frame < 3; frame++) {
+            profiler.recordFrame(frame, 1);
+        }
+        assertEquals(3, profiler.snapshot(startNs, null, null, 4));
+        assertEquals(ManualClockProfiler.startOf(0), startNs[0]);
+        profiler.recordFrame(3, 1);
+        assertEquals(3, profiler.snapshot(startNs, null, null, 4));
+        assertEquals(ManualClockProfiler.startOf(1), startNs[0]);
+
+        for (int frame = 4; frame < 10; frame++) {
+            profiler.recordFrame(frame, 1);
+        }
+        assertEquals(10, profiler.getFrameCount());
+        assertEquals(3, profiler.snapshot(startNs, frameNs, stageNs, 4));
+        for (int i = 0; i < 3; i++) {
+            int frame = 7 + i;
+            assertEquals(ManualClockProfiler.startOf(frame), startNs[i]);
+            assertEquals(ManualClockProfiler.durationOf(frame, 1), frameNs[i]);
+            for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                assertEquals(ManualClockProfiler.stageOf(frame, stage, 1), stageNs[i * FrameProfiler.STAGE_COUNT + stage]);
+            }
+        }
+
+        // 只要最近的两帧
+        assertEquals(2, profiler.snapshot(startNs, null, null, 2));
+        assertEquals(ManualClockProfiler.startOf(8), startNs[0]);
+        assertEquals(ManualClockProfiler.startOf(9), startNs[1]);
+    }
+
+    /**
+     * 同一阶段在一帧中多次标记时累加，新的一帧从0开始
+     */
+    @Test
+    public void marksAccumulatePerStage() {
+        ManualClockProfiler profiler = new ManualClockProfiler(4);
+        profiler.recordFrame(0, 3);
+        profiler.recordFrame(1, 1);
+        int[] stageNs = new int[2 * FrameProfiler.STAGE_COUNT];
+        assertEquals(2, profiler.snapshot(null, null, stageNs, 2));
+        for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+            assertEquals(ManualClockProfiler.stageOf(0, stage, 3), stageNs[stage]);
+            assertEquals(ManualClockProfiler.stageOf(1, stage, 1), stageNs[FrameProfiler.STAGE_COUNT + stage]);
+        }
+    }
+
+    /**
+     * 百分位按最近秩计算：第ceil(n * p / 100)小的帧耗时，至少为第1小
+     */
+    @Test
+    public void percentilesUseNearestRank() {
+        ManualClockProfiler profiler = new ManualClockProfiler(128);
+        long[] outNs = new long[5];
+        assertEquals(0, profiler.getFrameTimePercentiles(new double[] {0, 50, 99, 100, 200}, outNs));
+        assertArrayEquals(new long[5], outNs);
+
+        // 帧耗时为1..100us，乱序记录
+        for (int i = 0; i < 100; i++) {
+            profiler.recordFrameOfDuration(((i * 37) % 100 + 1) * 1000);
+        }
+        assertEquals(100, profiler.getFrameTimePercentiles(new double[] {0, 50, 99, 100, 200}, outNs));
+        assertArrayEquals(new long[] {1000, 50000, 99000, 100000, 100000}, outNs);
+        assertEquals(100, profiler.getFrameTimePercentiles(new double[] {99.5, 0.5, -1}, outNs));
+        assertArrayEquals(new long[] {100000, 1000, 1000}, new long[] {outNs[0], outNs[1], outNs[2]});
+
+        // 写满后只统计最近的127帧：依次记录1..100us和28帧200us，最旧的1us被丢弃
+        for (int i = 0; i < 128; i++) {
+            profiler.recordFrameOfDuration(i < 100 ? (i + 1) * 1000 : 200000);
+        }
+        assertEquals(127, profiler.getFrameTimePercentiles(new double[] {50, 77.9, 78}, outNs));
+        assertArrayEquals(new long[] {65000, 100000, 200000}, new long[] {outNs[0], outNs[1], outNs[2]});
+    }
+
+    @Test
+    public void stageMeansAverageRecentFrames() {
+        ManualClockProfiler profiler = new ManualClockProfiler(4);
+        long[] outNs = new long[FrameProfiler.STAGE_COUNT];
+        assertEquals(0, profiler.getStageMeans(outNs));
+        assertArrayEquals(new long[FrameProfiler.STAGE_COUNT], outNs);
+
+        for (int frame = 0; frame < 6; frame++) {
+            profiler.recordFrame(frame, 1);
+        }
+        assertEquals(3, profiler.getStageMeans(outNs));
+        for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+            long sum = 0;
+            for (int frame = 3; frame < 6; frame++) {
+                sum += ManualClockProfiler.stageOf(frame, stage, 1);
+            }
+            assertEquals(sum / 3, outNs[stage]);
+        }
+    }
+
+    /**
+     * CSV有表头，每帧一行：帧序号、开始时间(ns)、帧耗时和各阶段耗时(us)
+     */
+    @Test
+    public void csvListsFramesInMicroseconds() throws IOException {
+        ManualClockProfiler profiler = new ManualClockProfiler(4);
+        for (int frame = 0; frame < 5; frame++) {
+            profiler.recordFrame(frame, 1);
+        }
+        StringWriter writer = new StringWriter();
+        profiler.writeCsv(writer);
+        StringBuilder expected = new StringBuilder("frame,start_ns,frame_us,pose_us,state_us,submit_us,gpu_us\n");
+        for (int frame = 2; frame < 5; frame++) {
+            expected.append(frame).append(',').append(ManualClockProfiler.startOf(frame))
+                    .append(',').append(ManualClockProfiler.durationOf(frame, 1) / 1000.0);
+            for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                expected.append(',').append(ManualClockProfiler.stageOf(frame, stage, 1) / 1000.0);
+            }
+            expected.append('\n');
+        }
+        assertEquals(expected.toString(), writer.toString());
+
+        File file = mFolder.newFile("frames.csv");
+        profiler.exportCsv(file);
+        assertEquals(expected.length(), file.length());
+    }
+
+    /**
+     * 二进制文件为小端序的文件头和定长记录，覆盖已存在的文件
+     */
+    @Test
+    public void binaryExportMatchesDocumentedLayout() throws IOException {
+        ManualClockProfiler profiler = new ManualClockProfiler(4);
+        for (int frame = 0; frame < 6; frame++) {
+            profiler.recordFrame(frame, 1);
+        }
+        File file = mFolder.newFile("frames" + FrameProfiler.EXTENSION);
+        RandomAccessFile stale = new RandomAccessFile(file, "rw");
+        try {
+            stale.setLength(4096);
+        } finally {
+            stale.close();
+        }
+        profiler.exportBinary(file);
+        assertEquals(FrameProfiler.HEADER_SIZE + 3 * FrameProfiler.RECORD_SIZE, file.length());
+
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.readFully(bytes);
+        } finally {
+            input.close();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals('G' | 'F' << 8 | 'P' << 16 | 'R' << 24, FrameProfiler.MAGIC);
+        assertEquals(FrameProfiler.MAGIC, buffer.getInt());
+        assertEquals(FrameProfiler.VERSION, buffer.getInt());
+        assertEquals(FrameProfiler.STAGE_COUNT, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        for (int frame = 3; frame < 6; frame++) {
+            assertEquals(ManualClockProfiler.startOf(frame), buffer.getLong());
+            assertEquals(ManualClockProfiler.durationOf(frame, 1), buffer.getInt());
+            for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                assertEquals(ManualClockProfiler.stageOf(frame, stage, 1), buffer.getInt());
+            }
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    /**
+     * 渲染线程不断覆盖很小的环形缓冲区，读取方拿到的每条记录都必须来自同一帧，并且帧序号连续
+     */
+    @Test
+    public void concurrentReaderNeverSeesTornRecord() throws Exception {
+        final ManualClockProfiler        profiler = new ManualClockProfiler(8);
+        final AtomicReference<Throwable> failure  = new AtomicReference<Throwable>();
+        Thread writer = new Thread("writer") {
+
+            @Override
+            public void run() {
+                for (int frame = 0; frame < STRESS_FRAMES; frame++) {
+                    profiler.recordFrame(frame, 1);
+                }
+            }
+        };
+        writer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                failure.set(throwable);
+            }
+        });
+        writer.start();
+
+        int    capacity   = profiler.getCapacity();
+        long[] startNs    = new long[capacity];
+        int[]  frameNs    = new int[capacity];
+        int[]  stageNs    = new int[capacity * FrameProfiler.STAGE_COUNT];
+        long[] firstFrame = new long[1];
+        long   snapshots  = 0;
+        while (writer.isAlive()) {
+            int count = profiler.snapshot(startNs, frameNs, stageNs, capacity, firstFrame);
+            for (int i = 0; i < count; i++) {
+                long frame = startNs[i] / FRAME_START;
+                assertEquals("frame number", firstFrame[0] + i, frame);
+                if (frameNs[i] != ManualClockProfiler.durationOf(frame, 1)) {
+                    throw new AssertionError("torn record: frame " + frame + " lasted " + frameNs[i]);
+                }
+                for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                    int value = stageNs[i * FrameProfiler.STAGE_COUNT + stage];
+                    if (value != ManualClockProfiler.stageOf(frame, stage, 1)) {
+                        throw new AssertionError("torn record: frame " + frame + " stage " + stage + " is " + value);
+                    }
+                }
+            }
+            if (snapshots % 64 == 0) {
+                assertCsvFrameNumbersMatchStarts(profiler);
+            }
+            snapshots++;
+        }
+        writer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(STRESS_FRAMES, profiler.getFrameCount());
+        assertTrue("snapshots " + snapshots, snapshots > 1);
+    }
+
+    /**
+     * CSV中每一行的帧序号都与该帧的开始时间对应
+     */
+    private static void assertCsvFrameNumbersMatchStarts(FrameProfiler profiler) throws IOException {
+        StringWriter writer = new StringWriter();
+        profiler.writeCsv(writer);
+        String[] lines = writer.toString().split("\n");
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(",");
+            assertEquals("csv frame number", Long.parseLong(fields[1]) / FRAME_START, Long.parseLong(fields[0]));
+        }
+    }
+
+    /**
+     * 记录一帧和读取统计都不分配内存
+     */
+    @Test
+    public void recordingAndStatisticsDoNotAllocate() {
+        FrameProfiler profiler    = new FrameProfiler();
+        double[]      percentiles = new double[] {50, 99, 100};
+        long[]        frameNs     = new long[percentiles.length];
+        long[]        stageNs     = new long[FrameProfiler.STAGE_COUNT];
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            recordAndRead(profiler, percentiles, frameNs, stageNs, i);
+        }
+
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            // 单独一轮可能含有JIT重新编译等一次性的分配，与被测代码无关；每帧都分配时每一轮都不为0
+            long before = AllocationCounter.currentThreadBytes();
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                recordAndRead(profiler, percentiles, frameNs, stageNs, i);
+            }
+            allocated = Math.min(allocated, AllocationCounter.currentThreadBytes() - before);
+        }
+        assertEquals("bytes allocated by " + MEASURED_FRAMES + " frames", 0, allocated);
+    }
+
+    private static void recordAndRead(FrameProfiler profiler, double[] percentiles, long[] frameNs, long[] stageNs,
+                                      int frame) {
+        profiler.beginFrame();
+        for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+            profiler.mark(stage);
+        }
+        profiler.endFrame();
+        // 界面每秒读取几次统计，这里每64帧读取一次
+        if ((frame & 63) == 0) {
+            profiler.getFrameTimePercentiles(percentiles, frameNs);
+            profiler.getStageMeans(stageNs);
+        }
+    }
+
+    /**
+     * 由测试控制时钟的FrameProfiler，记录的时间都由帧序号决定：
+     * 第frame帧在frame * FRAME_START开始，每次标记阶段stage耗时frame % 1000 + stage + 1，帧末尾再多1ns
+     */
+    private static final class ManualClockProfiler extends FrameProfiler {
+
+        private long mNowNs = 0; // 当前时间(ns)，只由记录帧的线程访问
+
+        ManualClockProfiler(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        long nanoTime() {
+            return mNowNs;
+        }
+
+        static long startOf(long frame) {
+            return frame * FRAME_START;
+        }
+
+        static int stageOf(long frame, int stage, int marks) {
+            return (int) (marks * (frame % 1000 + stage + 1));
+        }
+
+        static int durationOf(long frame, int marks) {
+            int duration = 1;
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                duration += stageOf(frame, stage, marks);
+            }
+            return duration;
+        }
+
+        /**
+         * 记录一帧，每个阶段标记marks次
+         */
+        void recordFrame(long frame, int marks) {
+            mNowNs = startOf(frame);
+            beginFrame();
+            for (int mark = 0; mark < marks; mark++) {
+                for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                    mNowNs += stageOf(frame, stage, 1);
+                    mark(stage);
+                }
+            }
+            mNowNs += 1;
+            endFrame();
+        }
+
+        /**
+         * 记录一帧指定耗时的帧，不标记阶段
+         */
+        void recordFrameOfDuration(int durationNs) {
+            mNowNs += FRAME_START;
+            beginFrame();
+            mNowNs += durationNs;
+            endFrame();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 在RecordingGLApi上回放EGL上下文重建：纹理从资源文件加载后放入像素缓存，
+ * 之后的重建只有未命中缓存的纹理才重新加载
+ */
+public class GLResourceManagerTest {
+
+    private static final long     TIMEOUT_MS    = 5000;        // 等待加载结果的最长时间(ms)
+    private static final String[] TEXTURE_PATHS = new String[] {"diffuse.png", "specular.png"};
+    private static final int[]    PRIORITIES    = new int[] {AssetLoader.PRIORITY_HIGH, AssetLoader.PRIORITY_LOW};
+    private static final int      TEXTURE_SIZE  = 64;          // 纹理边长
+    private static final int      TEXTURE_BYTES = 64 * 64 / 2; // 每个ETC1纹理的字节数
+
+    private final RecordingGLApi                mRecorder = new RecordingGLApi();
+    private final LinkedBlockingQueue<Runnable> mGLTasks  = new LinkedBlockingQueue<Runnable>(); // 投递到GLThread的任务
+    private final ThreadPoolExecutor            mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                                    new PriorityBlockingQueue<Runnable>());
+    private final ContainerLoader               mLoader   = new ContainerLoader(mExecutor, TEXTURE_SIZE);
+    private final InterleavedMesh               mMesh     = SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_LOW, 1.0f)
+                                                                               .generate();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void restoresFromCacheAfterContextLoss() throws InterruptedException {
+        GLResourceManager manager = newManager(GLResourceManager.DEFAULT_CACHE_BYTES);
+        manager.onContextCreated(true, 2048);
+        assertFalse(manager.isRestored());
+        assertEquals(2, manager.getTextureLoads());
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_BUFFER_DATA));
+        runGLTasks(2);
+        assertTrue(manager.isRestored());
+        assertEquals(1, manager.getRestoreCount());
+        assertEquals(meshBytes() + 2 * TEXTURE_BYTES, mRecorder.getUploadBytes());
+
+        // 新的上下文中所有纹理都命中缓存，直接上传，不需要等待加载
+        mRecorder.clear();
+        manager.onContextCreated(true, 2048);
+        assertTrue(manager.isRestored());
+        assertEquals(2, manager.getRestoreCount());
+        assertEquals(2, manager.getTextureLoads());
+        assertEquals(4, manager.getTextureUploads());
+        assertEquals(2, manager.getPixelCache().getHitCount());
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_COMPRESSED_TEX_IMAGE2D));
+        assertEquals(meshBytes() + 2 * TEXTURE_BYTES, mRecorder.getUploadBytes());
+        assertTrue(mGLTasks.isEmpty());
+        assertEquals(1, mLoader.loadCount(TEXTURE_PATHS[0]));
+        assertEquals(1, mLoader.loadCount(TEXTURE_PATHS[1]));
+        for (int slot = 0; slot < TEXTURE_PATHS.length; slot++) {
+            assertTrue(manager.getTextureID(slot) != 0);
+        }
+
+        // 所有资源都在显存中时恢复不做任何事
+        mRecorder.clear();
+        manager.resume();
+        assertEquals(0, mRecorder.getCommandCount());
+    }
+
+    /**
+     * 缓存只放得下一个纹理：被淘汰的纹理在重建后重新加载，另一个从缓存上传
+     */
+    @Test
+    public void reloadsOnlyEvictedTextures() throws InterruptedException {
+        GLResourceManager manager = newManager(TEXTURE_BYTES + TEXTURE_BYTES / 2);
+        manager.onContextCreated(true, 2048);
+        runGLTasks(2);
+        assertTrue(manager.isRestored());
+        // 高优先级的漫反射纹理先加载完成，放入高光纹理时被淘汰
+        assertEquals(1, manager.getPixelCache().getEvictionCount());
+
+        mRecorder.clear();
+        manager.onContextCreated(false, 2048);
+        assertFalse(manager.isRestored());
+        assertEquals(1, manager.getPixelCache().getHitCount());
+        assertEquals(3, manager.getTextureLoads());
+        assertTrue(manager.getTextureID(1) != 0);
+        assertEquals(0, manager.getTextureID(0));
+        runGLTasks(1);
+        assertTrue(manager.isRestored());
+        assertEquals(2, mLoader.loadCount(TEXTURE_PATHS[0]));
+        assertEquals(1, mLoader.loadCount(TEXTURE_PATHS[1]));
+        // 不支持ETC1的上下文中逐级解压为RGB565上传
+        assertEquals(0, mRecorder.getCallCount(RecordingGLApi.OP_COMPRESSED_TEX_IMAGE2D));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_TEX_IMAGE2D_BUFFER));
+    }
+
+    /**
+     * 从客户端数组绘制多块网格会移动共享索引Buffer的position，之后的上下文仍然从起点上传整个网格
+     */
+    @Test
+    public void uploadsWholeMeshAfterClientArrayDraw() throws InterruptedException {
+        InterleavedMesh mesh = SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_ULTRA, 1.0f).generate();
+        assertTrue(mesh.getChunkCount() > 1);
+        for (int chunk = 0; chunk < mesh.getChunkCount(); chunk++) {
+            InstanceBatch.setChunkPointers(mRecorder, mesh, chunk, false);
+            InstanceBatch.drawChunk(mRecorder, mesh, chunk, false);
+        }
+        mRecorder.clear();
+
+        GLResourceManager manager = newManager(GLResourceManager.DEFAULT_CACHE_BYTES);
+        manager.setMesh(mesh);
+        manager.onContextCreated(true, 2048);
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_BUFFER_DATA));
+        assertEquals(mesh.getVertexDataSize() + mesh.getIndexDataSize(), mRecorder.getUploadBytes());
+        runGLTasks(2);
+        assertTrue(manager.isRestored());
+    }
+
+    private GLResourceManager newManager(int cacheBytes) {
+        RenderScheduler scheduler = new RenderScheduler(new RenderScheduler.FrameTrigger() {
+
+            @Override
+            public void post() {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        });
+        Executor glThread = new Executor() {
+
+            @Override
+            public void execute(Runnable task) {
+                mGLTasks.add(task);
+            }
+        };
+        GLResourceManager manager = new GLResourceManager(glThread, scheduler, new GLStateCache(mRecorder), mLoader,
+                TEXTURE_PATHS, PRIORITIES, cacheBytes);
+        manager.setMesh(mMesh);
+        return manager;
+    }
+
+    /**
+     * 在当前线程中依次执行加载线程投递到GLThread的任务
+     */
+    private void runGLTasks(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            Runnable task = mGLTasks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("GL task " + i, task);
+            task.run();
+        }
+    }
+
+    private int meshBytes() {
+        return mMesh.getVertexDataSize() + mMesh.getIndexDataSize();
+    }
+}
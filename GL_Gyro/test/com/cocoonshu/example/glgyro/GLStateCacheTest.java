@@ -0,0 +1,200 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import android.opengl.GLES11;
+
+public class GLStateCacheTest {
+
+    private static final int STATE_CALLS        = 12; // setUpState()中的状态调用数
+    private static final int PASS_THROUGH_CALLS = 5;  // drawPassThrough()中的调用数
+
+    private final RecordingGLApi mRecorder = new RecordingGLApi();
+    private final GLStateCache   mGL       = new GLStateCache(mRecorder);
+    private final float[]        mGray     = new float[] {0.5f, 0.5f, 0.5f, 1.0f};
+    private final float[]        mWhite    = new float[] {1.0f, 1.0f, 1.0f, 1.0f};
+    private final float[]        mPosition = new float[] {0.0f, 10.0f, 10.0f, 1.0f};
+    private final float[]        mMatrix   = new float[16];
+
+    @Test
+    public void dropsRedundantStateCalls() {
+        for (int i = 0; i < 3; i++) {
+            setUpState();
+        }
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_DISABLE));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE_CLIENT_STATE));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_LIGHTFV));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_LIGHTF));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_MATERIALFV));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_MATERIALF));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_ACTIVE_TEXTURE));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_BIND_TEXTURE));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_BIND_BUFFER));
+        assertEquals(STATE_CALLS, mGL.getTotalIssuedStateCalls());
+        assertEquals(2 * STATE_CALLS, mGL.getTotalSkippedStateCalls());
+    }
+
+    @Test
+    public void changedValuesAreIssued() {
+        setUpState();
+        mGL.glDisable(GLES11.GL_DEPTH_TEST);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE, mWhite, 0);
+        mGL.glMaterialf(GLES11.GL_FRONT_AND_BACK, GLES11.GL_SHININESS, 8.0f);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 8);
+        mGL.glBindBuffer(GLES11.GL_ARRAY_BUFFER, 0);
+        assertEquals(STATE_CALLS + 5, mGL.getTotalIssuedStateCalls());
+        assertEquals(0, mGL.getTotalSkippedStateCalls());
+
+        // GL_AMBIENT_AND_DIFFUSE只有两个参数都相同时才能丢弃
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT_AND_DIFFUSE, mWhite, 0);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT_AND_DIFFUSE, mWhite, 0);
+        assertEquals(1, mGL.getTotalSkippedStateCalls());
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT, mWhite, 0);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE, mGray, 0);
+        assertEquals(2, mGL.getTotalSkippedStateCalls());
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT_AND_DIFFUSE, mWhite, 0);
+        assertEquals(STATE_CALLS + 8, mGL.getTotalIssuedStateCalls());
+    }
+
+    @Test
+    public void invalidateForcesReissue() {
+        setUpState();
+        mGL.invalidate();
+        setUpState();
+        assertEquals(2 * STATE_CALLS, mGL.getTotalIssuedStateCalls());
+        assertEquals(0, mGL.getTotalSkippedStateCalls());
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE));
+    }
+
+    /**
+     * 只有光源的位置和方向需要在视图矩阵变化后重新提交
+     */
+    @Test
+    public void invalidateLightTransformsReissuesPositionOnly() {
+        setUpState();
+        mGL.invalidateLightTransforms();
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_POSITION, mPosition, 0);
+        mGL.glLightf(GLES11.GL_LIGHT0, GLES11.GL_SPOT_CUTOFF, 45.0f);
+        mGL.glEnable(GLES11.GL_DEPTH_TEST);
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_LIGHTFV));
+        assertEquals(1, mRecorder.getCallCount(RecordingGLApi.OP_LIGHTF));
+        assertEquals(STATE_CALLS + 1, mGL.getTotalIssuedStateCalls());
+        assertEquals(2, mGL.getTotalSkippedStateCalls());
+    }
+
+    /**
+     * 删除纹理或缓冲区后驱动把绑定恢复为0，再次绑定同一个ID时不能丢弃
+     */
+    @Test
+    public void deletingResetsBindings() {
+        setUpState();
+        mGL.glDeleteTextures(1, new int[] {7}, 0);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 7);
+        mGL.glDeleteBuffers(2, new int[] {3, 4}, 0);
+        mGL.glBindBuffer(GLES11.GL_ARRAY_BUFFER, 3);
+        mGL.glBindBuffer(GLES11.GL_ELEMENT_ARRAY_BUFFER, 0);
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_BIND_TEXTURE));
+        assertEquals(3, mRecorder.getCallCount(RecordingGLApi.OP_BIND_BUFFER));
+        assertEquals(1, mGL.getTotalSkippedStateCalls());
+    }
+
+    /**
+     * GL_TEXTURE_2D按纹理单元、GL_TEXTURE_COORD_ARRAY按客户端纹理单元分别跟踪，
+     * 另一个单元上的相同调用不是冗余的
+     */
+    @Test
+    public void textureStatesAreTrackedPerUnit() {
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        mGL.glActiveTexture(GLES11.GL_TEXTURE1);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE));
+
+        mGL.glClientActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);
+        mGL.glClientActiveTexture(GLES11.GL_TEXTURE1);
+        mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);
+        mGL.glClientActiveTexture(GLES11.GL_TEXTURE1);
+        mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE_CLIENT_STATE));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_CLIENT_ACTIVE_TEXTURE));
+        assertEquals(4, mGL.getTotalSkippedStateCalls());
+    }
+
+    /**
+     * 没有被跟踪的开关、激活纹理单元之前的纹理绑定和纹理开关总是提交
+     */
+    @Test
+    public void untrackedStateIsAlwaysIssued() {
+        int untracked = GLES11.GL_POLYGON_OFFSET_FILL;
+        mGL.glEnable(untracked);
+        mGL.glEnable(untracked);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 7);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 7);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        mGL.glEnable(GLES11.GL_TEXTURE_2D);
+        mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);
+        mGL.glEnableClientState(GLES11.GL_TEXTURE_COORD_ARRAY);
+        assertEquals(4, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_BIND_TEXTURE));
+        assertEquals(2, mRecorder.getCallCount(RecordingGLApi.OP_ENABLE_CLIENT_STATE));
+        assertEquals(8, mGL.getTotalIssuedStateCalls());
+    }
+
+    /**
+     * 计数只包括状态调用：直接转发的调用被RecordingGLApi记录，但不计入状态缓存的计数
+     */
+    @Test
+    public void frameCountersCoverStateCallsOnly() {
+        mRecorder.beginFrame();
+        mGL.beginFrame();
+        setUpState();
+        drawPassThrough();
+        assertEquals(STATE_CALLS, mGL.getFrameIssuedStateCalls());
+        assertEquals(0, mGL.getFrameSkippedStateCalls());
+        assertEquals(STATE_CALLS + PASS_THROUGH_CALLS, mRecorder.getFrameCallCount());
+
+        mRecorder.beginFrame();
+        mGL.beginFrame();
+        setUpState();
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 8);
+        drawPassThrough();
+        assertEquals(1, mGL.getFrameIssuedStateCalls());
+        assertEquals(STATE_CALLS, mGL.getFrameSkippedStateCalls());
+        assertEquals(1 + PASS_THROUGH_CALLS, mRecorder.getFrameCallCount());
+        assertEquals(STATE_CALLS + 1, mGL.getTotalIssuedStateCalls());
+        assertEquals(STATE_CALLS, mGL.getTotalSkippedStateCalls());
+    }
+
+    /**
+     * 典型的一帧状态设置，所有调用都被跟踪
+     */
+    private void setUpState() {
+        mGL.glEnable(GLES11.GL_DEPTH_TEST);
+        mGL.glDisable(GLES11.GL_BLEND);
+        mGL.glEnableClientState(GLES11.GL_VERTEX_ARRAY);
+        mGL.glLightfv(GLES11.GL_LIGHT0, GLES11.GL_POSITION, mPosition, 0);
+        mGL.glLightf(GLES11.GL_LIGHT0, GLES11.GL_SPOT_CUTOFF, 45.0f);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_AMBIENT, mGray, 0);
+        mGL.glMaterialfv(GLES11.GL_FRONT_AND_BACK, GLES11.GL_DIFFUSE, mGray, 0);
+        mGL.glMaterialf(GLES11.GL_FRONT_AND_BACK, GLES11.GL_SHININESS, 16.0f);
+        mGL.glActiveTexture(GLES11.GL_TEXTURE0);
+        mGL.glBindTexture(GLES11.GL_TEXTURE_2D, 7);
+        mGL.glBindBuffer(GLES11.GL_ARRAY_BUFFER, 3);
+        mGL.glBindBuffer(GLES11.GL_ELEMENT_ARRAY_BUFFER, 4);
+    }
+
+    private void drawPassThrough() {
+        mGL.glClear(GLES11.GL_COLOR_BUFFER_BIT | GLES11.GL_DEPTH_BUFFER_BIT);
+        mGL.glLoadMatrixf(mMatrix, 0);
+        mGL.glVertexPointer(3, GLES11.GL_FLOAT, 0, 0);
+        mGL.glDrawElements(GLES11.GL_TRIANGLES, 6, GLES11.GL_UNSIGNED_SHORT, 0);
+        mGL.glDrawElements(GLES11.GL_TRIANGLES, 6, GLES11.GL_UNSIGNED_SHORT, 0);
+    }
+}
@@ -0,0 +1,144 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 在RecordingGLApi上回放onSurfaceCreated → onSurfaceChanged → onDrawFrame的调用序列，
+ * 检查稳定帧的调用数和上传量，以及EGL上下文重建后的恢复
+ */
+public class GyroRendererTest {
+
+    private static final long   TIMEOUT_MS    = 5000;        // 等待纹理加载的最长时间(ms)
+    private static final String DIFFUSE       = "tex_gyro_diffuse.png";
+    private static final int    TEXTURE_SIZE  = 64;          // 纹理边长
+    private static final int    TEXTURE_BYTES = 64 * 64 / 2; // ETC1纹理的字节数
+    private static final int    FRAME_CALLS   = 8;           // 稳定帧中绘制块之外的调用数：清屏和矩阵
+    private static final int    CHUNK_CALLS   = 4;           // 每个绘制块的调用数：三个顶点指针和一次绘制
+
+    private final RecordingGLApi                mRecorder = new RecordingGLApi();
+    private final LinkedBlockingQueue<Runnable> mGLTasks  = new LinkedBlockingQueue<Runnable>(); // 投递到GLThread的任务
+    private final ThreadPoolExecutor            mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                                    new PriorityBlockingQueue<Runnable>());
+    private final ContainerLoader               mLoader   = new ContainerLoader(mExecutor, TEXTURE_SIZE);
+    private final InterleavedMesh               mMesh     = SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_LOW, 1.0f)
+                                                                               .generate(); // 与渲染器相同精度的网格
+    private final GyroRenderer                  mRenderer;
+
+    public GyroRendererTest() {
+        RenderScheduler scheduler = new RenderScheduler(new RenderScheduler.FrameTrigger() {
+
+            @Override
+            public void post() {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        });
+        Executor glThread = new Executor() {
+
+            @Override
+            public void execute(Runnable task) {
+                mGLTasks.add(task);
+            }
+        };
+        mRenderer = new GyroRenderer(glThread, scheduler, mRecorder, mLoader, null);
+        mRenderer.setMeshLevelOfDetail(SphereMeshGenerator.LOD_LOW);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 第二帧起状态调用全部被状态缓存丢弃，只剩清屏、矩阵和绘制，不上传任何数据
+     */
+    @Test
+    public void steadyFrameIssuesOnlyDrawCalls() throws InterruptedException {
+        createSurface();
+        int firstFrameCalls = drawFrame();
+        assertTrue(mRenderer.getGLStateCache().getFrameIssuedStateCalls() > 0);
+        assertEquals(0, mRecorder.getFrameUploadBytes());
+
+        int chunkCount = mMesh.getChunkCount();
+        for (int frame = 0; frame < 3; frame++) {
+            int    calls   = drawFrame();
+            String message = "frame " + frame + ":\n" + mRecorder.dumpFrame();
+            assertEquals(message, FRAME_CALLS + CHUNK_CALLS * chunkCount, calls);
+            assertTrue(message, calls < firstFrameCalls);
+            assertEquals(message, 0, mRecorder.getFrameUploadBytes());
+            assertEquals(message, chunkCount, mRecorder.getFrameDrawCalls());
+            assertEquals(message, 0, mRenderer.getGLStateCache().getFrameIssuedStateCalls());
+        }
+    }
+
+    /**
+     * 新的EGL上下文中状态全部重新提交，网格和纹理从内存和像素缓存中重新上传，不重新加载纹理
+     */
+    @Test
+    public void surfaceRecreationRestoresFromCache() throws InterruptedException {
+        createSurface();
+        int firstFrameCalls = drawFrame();
+        int firstFrameState = mRenderer.getGLStateCache().getFrameIssuedStateCalls();
+        int steadyCalls     = drawFrame();
+
+        mRecorder.clear();
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceChanged(null, 1280, 720);
+        GLResourceManager resources = mRenderer.getResourceManager();
+        assertTrue(resources.isRestored());
+        assertTrue(mGLTasks.isEmpty());
+        assertEquals(1, mLoader.loadCount(DIFFUSE));
+        assertEquals(2, resources.getRestoreCount());
+        assertEquals(meshBytes() + TEXTURE_BYTES, mRecorder.getUploadBytes());
+
+        assertEquals(firstFrameCalls, drawFrame());
+        assertEquals(firstFrameState, mRenderer.getGLStateCache().getFrameIssuedStateCalls());
+        assertEquals(steadyCalls, drawFrame());
+        assertEquals(0, mRecorder.getFrameUploadBytes());
+    }
+
+    /**
+     * 创建上下文并等待纹理加载完成
+     */
+    private void createSurface() throws InterruptedException {
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceChanged(null, 1280, 720);
+        Runnable task = mGLTasks.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("texture loaded", task);
+        task.run();
+        assertTrue(mRenderer.getResourceManager().isRestored());
+        assertEquals(meshBytes() + TEXTURE_BYTES, mRecorder.getUploadBytes());
+    }
+
+    /**
+     * @return 本帧的GL调用数
+     */
+    private int drawFrame() {
+        mRecorder.beginFrame();
+        mRenderer.onDrawFrame(null);
+        return mRecorder.getFrameCallCount();
+    }
+
+    private int meshBytes() {
+        return mMesh.getVertexDataSize() + mMesh.getIndexDataSize();
+    }
+}
@@ -0,0 +1,112 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+public class GyroscopeTest {
+
+    private static final int WARMUP_STEPS   = 100000; // 预热JIT的陀螺仪周期数
+    private static final int MEASURED_STEPS = 20000;  // 统计分配的陀螺仪周期数
+    private static final int MEASURED_RUNS  = 5;      // 统计分配的轮数，检验分配最少的一轮
+    private static final int PHASE_STEPS    = 800;    // 运动和静止交替的周期数，4秒，足以进入静止状态
+
+    @Test
+    public void onSensorChangedDoesNotAllocate() throws Exception {
+        Gyroscope gyroscope = new Gyroscope((SensorManager) null);
+        gyroscope.setOrientationFusion(new KalmanFusion());
+        gyroscope.setHardIronEstimator(new HardIronEstimator());
+        gyroscope.setAdaptiveRateEnabled(true);
+        gyroscope.setYZInvertEnabled(true);
+        final PosePredictor predictor = new PosePredictor();
+        final float[]       predicted = new float[16];
+        final long[]        poseCount = new long[1];
+        gyroscope.getPoseBus().subscribe(new PoseBus.Subscriber() {
+
+            @Override
+            public void onPose(PoseBus.Snapshot snapshot) {
+                predictor.setAngularRate(snapshot.getAngularRate(), snapshot.getAngularRateTimestamp());
+                predictor.predict(snapshot.getMatrix(), snapshot.getTimestamp(), predicted);
+                poseCount[0]++;
+            }
+        });
+        gyroscope.resume();
+
+        final SensorEventListener listener  = gyroscope.getSensorEventListener();
+        final SensorEvent         gyro      = newSensorEvent(Sensor.TYPE_GYROSCOPE);
+        final SensorEvent         accel     = newSensorEvent(Sensor.TYPE_ACCELEROMETER);
+        final SensorEvent         magnetic  = newSensorEvent(Sensor.TYPE_MAGNETIC_FIELD);
+        SensorSampleRing.SampleConsumer dispatcher = new SensorSampleRing.SampleConsumer() {
+
+            @Override
+            public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+                // 与SensorManager一样复用事件对象
+                SensorEvent event = sensorType == Sensor.TYPE_GYROSCOPE ? gyro
+                        : sensorType == Sensor.TYPE_ACCELEROMETER ? accel : magnetic;
+                event.values[0] = x;
+                event.values[1] = y;
+                event.values[2] = z;
+                event.timestamp = timestampNs;
+                listener.onSensorChanged(event);
+            }
+        };
+        SyntheticSensorStream stream = new SyntheticSensorStream(1);
+        stream.setNoise(0.003f, 0.02f, 0.3f);
+        run(stream, dispatcher, WARMUP_STEPS);
+
+        long published   = poseCount[0];
+        long transitions = gyroscope.getMotionDetector().getTransitionCount();
+        long allocated   = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            // 单独一轮可能含有JIT重新编译等一次性的分配，与被测代码无关；每个事件都分配时每一轮都不为0
+            long before = AllocationCounter.currentThreadBytes();
+            run(stream, dispatcher, MEASURED_STEPS);
+            allocated = Math.min(allocated, AllocationCounter.currentThreadBytes() - before);
+        }
+        gyroscope.pause();
+
+        assertEquals("bytes allocated by " + MEASURED_STEPS + " sensor periods", 0, allocated);
+        assertTrue("poses published while moving", poseCount[0] > published);
+        assertTrue("motion state changes", gyroscope.getMotionDetector().getTransitionCount() > transitions);
+    }
+
+    /**
+     * 运动和静止交替，覆盖发布姿态、静止时不发布以及运动状态切换的路径
+     */
+    private static void run(SyntheticSensorStream stream, SensorSampleRing.SampleConsumer consumer, int steps) {
+        for (int i = 0; i < steps; i++) {
+            if (i % PHASE_STEPS == 0) {
+                boolean moving = (i / PHASE_STEPS) % 2 == 0;
+                stream.setAngularRate(moving ? 0.8f : 0, moving ? -0.3f : 0, moving ? 0.5f : 0);
+            }
+            stream.step(consumer);
+        }
+    }
+
+    /**
+     * SensorEvent和Sensor的构造函数不公开，用反射创建
+     */
+    private static SensorEvent newSensorEvent(int sensorType) throws Exception {
+        Constructor<Sensor> sensorConstructor = Sensor.class.getDeclaredConstructor();
+        sensorConstructor.setAccessible(true);
+        Sensor sensor = sensorConstructor.newInstance();
+        Field type = Sensor.class.getDeclaredField("mType");
+        type.setAccessible(true);
+        type.setInt(sensor, sensorType);
+
+        Constructor<SensorEvent> eventConstructor = SensorEvent.class.getDeclaredConstructor(int.class);
+        eventConstructor.setAccessible(true);
+        SensorEvent event = eventConstructor.newInstance(3);
+        event.sensor = sensor;
+        return event;
+    }
+}
@@ -0,0 +1,127 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HardIronEstimatorTest {
+
+    private static final int     RATE  = 50;                          // 磁力计采样率(Hz)
+    private static final float[] EARTH = new float[] {0, 22, -42};    // 世界坐标系下的地磁场(uT)，约47uT
+
+    private final Random  mRandom = new Random(24);
+    private final float[] mQ      = new float[] {1, 0, 0, 0}; // 设备姿态
+    private final float[] mR      = new float[9];             // 设备姿态的旋转矩阵
+    private final float[] mOmega  = new float[3];             // 平滑变化的角速度(rad/s)
+    private final float[] mSample = new float[3];             // 磁力计样本(uT)
+
+    /**
+     * 手持随机转动，读数带有硬磁偏移、噪声和1%的磁干扰；60秒后偏移跳变一次(例如装上带磁铁的手机壳)。
+     * 两段都要在10秒内收敛，最终的偏移误差小于0.5uT
+     */
+    @Test
+    public void convergesAndFollowsOffsetChange() {
+        HardIronEstimator estimator = new HardIronEstimator();
+        float[][]         offsets   = new float[][] {{35, -20, 60}, {-10, 45, 15}};
+        float[]           estimate  = new float[3];
+        for (float[] offset : offsets) {
+            int convergedAt = -1;
+            for (int i = 0; i < 60 * RATE; i++) {
+                nextSample(offset, true);
+                estimator.update(mSample[0], mSample[1], mSample[2]);
+                // 跳变后旧的估计仍可能短暂保持收敛，只统计偏移已经接近新值之后的收敛
+                estimator.getOffset(estimate);
+                if (convergedAt < 0 && estimator.isConverged() && distance(estimate, offset) < 2) {
+                    convergedAt = i;
+                }
+            }
+            String message = String.format("offset %s converged after %.1fs, %s",
+                    Arrays.toString(offset), convergedAt / (double) RATE, estimator);
+            assertTrue(message, convergedAt >= 0 && convergedAt < 10 * RATE);
+            assertTrue(message, estimator.isConverged());
+            estimator.getOffset(estimate);
+            assertArrayEquals(message, offset, estimate, 0.5f);
+            assertEquals(message, 47.4f, estimator.getFieldStrength(), 0.5f);
+        }
+        assertTrue(estimator.getRestartCount() >= 1);
+        assertTrue(estimator.getClippedCount() > 0);
+    }
+
+    @Test
+    public void correctsOnlyAfterConvergence() {
+        HardIronEstimator estimator = new HardIronEstimator();
+        float[]           offset    = new float[] {20, 10, -30};
+        float[]           sample    = new float[] {1, 2, 3};
+        assertFalse(estimator.correct(sample));
+        assertArrayEquals(new float[] {1, 2, 3}, sample, 0);
+
+        for (int i = 0; i < 30 * RATE; i++) {
+            nextSample(offset, false);
+            estimator.update(mSample[0], mSample[1], mSample[2]);
+        }
+        assertTrue(estimator.isConverged());
+        float[] estimate = new float[3];
+        estimator.getOffset(estimate);
+        assertTrue(estimator.correct(sample));
+        assertArrayEquals(new float[] {1 - estimate[0], 2 - estimate[1], 3 - estimate[2]}, sample, 1e-5f);
+
+        estimator.reset();
+        assertFalse(estimator.isConverged());
+        assertEquals(0, estimator.getSampleCount());
+        estimator.getOffset(estimate);
+        assertArrayEquals(new float[3], estimate, 0);
+    }
+
+    @Test
+    public void stillDeviceDoesNotConverge() {
+        // 不转动时读数只落在球面上的一个点附近，无法确定球心
+        HardIronEstimator estimator = new HardIronEstimator();
+        float[]           offset    = new float[] {35, -20, 60};
+        for (int i = 0; i < 60 * RATE; i++) {
+            mSample[0] = offset[0] + EARTH[0] + 0.6f * (float) mRandom.nextGaussian();
+            mSample[1] = offset[1] + EARTH[1] + 0.6f * (float) mRandom.nextGaussian();
+            mSample[2] = offset[2] + EARTH[2] + 0.6f * (float) mRandom.nextGaussian();
+            estimator.update(mSample[0], mSample[1], mSample[2]);
+            assertFalse(estimator.isConverged());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidForgetting() {
+        new HardIronEstimator().setForgetting(0.5f);
+    }
+
+    /**
+     * 按一阶自回归的角速度转动一个采样周期，生成带偏移和噪声的读数写入mSample
+     * @param disturbed 是否叠加1%的磁干扰
+     */
+    private void nextSample(float[] offset, boolean disturbed) {
+        // 角速度每个轴的标准差约1rad/s，时间相关约1秒
+        for (int axis = 0; axis < 3; axis++) {
+            mOmega[axis] += -mOmega[axis] / RATE + (float) (mRandom.nextGaussian() * Math.sqrt(2.0 / RATE));
+        }
+        OrientationMath.integrateAngularRate(mQ, mOmega[0], mOmega[1], mOmega[2], 1.0f / RATE);
+        OrientationMath.quaternionToMatrix(mQ, mR);
+        for (int axis = 0; axis < 3; axis++) {
+            float value = mR[axis] * EARTH[0] + mR[3 + axis] * EARTH[1] + mR[6 + axis] * EARTH[2];
+            mSample[axis] = value + offset[axis] + (float) mRandom.nextGaussian() * 0.6f;
+        }
+        if (disturbed && mRandom.nextInt(100) == 0) {
+            // 附近磁性物体的干扰
+            mSample[0] += 80 * (mRandom.nextFloat() - 0.5f);
+        }
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float dx = a[0] - b[0];
+        float dy = a[1] - b[1];
+        float dz = a[2] - b[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
@@ -0,0 +1,305 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InstanceBatchTest {
+
+    private static final float RADIUS          = 1.0f;  // 网格包围球半径
+    private static final float CAMERA_Z        = 30.0f; // 摄像机在(0, 0, 30)看向原点，与GyroRenderer相同
+    private static final float Z_NEAR          = 0.1f;  // 视景体近端距离
+    private static final float Z_FAR           = 100f;  // 视景体远端距离
+    private static final float HORIZONTAL      = (float) (Z_NEAR * Math.tan(Math.toRadians(30))); // 近端的半宽，60°视野
+    private static final float VERTICAL        = HORIZONTAL / (16.0f / 9.0f);                     // 近端的半高，16:9的视窗
+    private static final int   WARMUP_FRAMES   = 2000;  // 预热JIT的帧数
+    private static final int   MEASURED_FRAMES = 200;   // 每一轮检查内存分配的帧数
+    private static final int   MEASURED_RUNS   = 5;     // 检查内存分配的轮数
+
+    private final InterleavedMesh mMesh     = SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_LOW, RADIUS)
+                                                                 .setIndexOrder(SphereMeshGenerator.ORDER_OPTIMIZED)
+                                                                 .generate();
+    private final float[]         mView     = new float[16];          // 视图矩阵
+    private final int[]           mTextures = new int[] {11, 12, 13}; // 各纹理槽对应的纹理ID
+    private final Random          mRandom   = new Random(25);
+
+    public InstanceBatchTest() {
+        mView[0] = mView[5] = mView[10] = mView[15] = 1.0f;
+        mView[14] = -CAMERA_Z;
+    }
+
+    @Test
+    public void cullsInstancesOutsideFrustum() {
+        // 距离摄像机30时视野左边缘的x
+        float         edge  = -CAMERA_Z * HORIZONTAL / Z_NEAR;
+        InstanceBatch batch = newBatch(8);
+        batch.setPlacement(0, 0, 0, 0, 1);              // 视野中心
+        batch.setPlacement(1, 0, 0, -60, 1);            // 距离90，在远端之内
+        batch.setPlacement(2, 0, 0, -80, 1);            // 距离110，超出远端
+        batch.setPlacement(3, 0, 0, 35, 1);             // 在摄像机后面
+        batch.setPlacement(4, -200, 0, 0, 1);           // 在左侧面之外
+        batch.setPlacement(5, 0, 200, 0, 1);            // 在上侧面之外
+        batch.setPlacement(6, edge - 0.5f, 0, 0, 1);    // 球心在视野外，球体与左侧面相交
+        batch.setPlacement(7, edge - 0.5f, 0, 0, 0.1f); // 缩小后完全在视野外
+
+        Recorder recorder = new Recorder();
+        batch.draw(recorder, mMesh, true, mView, mTextures);
+        assertEquals(3, batch.getVisibleCount());
+        assertEquals(3 * mMesh.getChunkCount(), batch.getDrawCount());
+        assertEquals(batch.getDrawCount(), recorder.getDrawCalls());
+        // 由近及远：实例0、6的距离都是30，实例1的距离是90
+        float[] matrices = recorder.mMatrices;
+        assertEquals(-CAMERA_Z, matrices[14], 1e-4f);
+        assertEquals(-CAMERA_Z, matrices[16 + 14], 1e-4f);
+        assertEquals(edge - 0.5f, matrices[12] + matrices[16 + 12], 1e-4f);
+        assertEquals(0, matrices[32 + 12], 0);
+        assertEquals(-CAMERA_Z - 60, matrices[32 + 14], 1e-4f);
+    }
+
+    /**
+     * 实例按纹理槽分组，每组只绑定一次纹理，组内由近及远绘制
+     */
+    @Test
+    public void sortsByTextureThenDepth() {
+        int           count = 30;
+        InstanceBatch batch = newBatch(count);
+        for (int i = 0; i < count; i++) {
+            batch.setTextureSlot(i, i % 4);
+        }
+        Recorder recorder = new Recorder();
+        batch.draw(recorder, mMesh, true, mView, mTextures);
+
+        // 纹理槽3超出了纹理数量，与纹理槽2一样使用最后一个纹理，但仍是单独的一组
+        assertEquals(count, batch.getVisibleCount());
+        assertEquals(4, batch.getBatchCount());
+        assertArrayEquals(new int[] {11, 12, 13, 13}, recorder.boundTextures());
+        assertEquals(count * mMesh.getChunkCount(), recorder.mLoadCount);
+
+        int   lastSlot  = -1;
+        float lastDepth = 0;
+        for (int i = 0; i < count; i++) {
+            int   index = recorder.instanceOf(i);
+            int   slot  = index % 4;
+            float depth = -recorder.mMatrices[i * 16 + 14];
+            assertTrue("texture slots in order", slot >= lastSlot);
+            // 深度量化为16位，量化后相同的深度之间不保证顺序
+            assertTrue("near to far within a slot", slot != lastSlot || depth >= lastDepth - 2e-3f);
+            lastSlot  = slot;
+            lastDepth = depth;
+        }
+    }
+
+    /**
+     * 模型视图矩阵 = 视图矩阵 × 平移 × (设备姿态的逆 × 矫正姿态) × 缩放
+     */
+    @Test
+    public void modelViewCombinesPlacementPoseAndScale() {
+        InstanceBatch batch  = new InstanceBatch(1);
+        float[]       q      = new float[] {0.7f, -0.3f, 0.5f, 0.2f};
+        float[]       device = new float[16];
+        OrientationMath.normalizeQuaternion(q);
+        OrientationMath.quaternionToMatrix(q, device);
+        batch.setBoundingRadius(RADIUS);
+        batch.setFrustum(-HORIZONTAL, HORIZONTAL, -VERTICAL, VERTICAL, Z_NEAR, Z_FAR);
+        batch.setInstanceCount(1);
+        batch.setPlacement(0, 1, 2, 3, 2);
+        batch.setPose(0, device);
+
+        Recorder recorder = new Recorder();
+        batch.draw(recorder, mMesh, false, mView, mTextures);
+
+        RigidTransform devicePose  = new RigidTransform().setRotationMatrix(device);
+        RigidTransform calibration = new RigidTransform().setAxisAngle(90.0f, 1.0f, 0.0f, 0.0f);
+        RigidTransform model       = new RigidTransform().setInverse(devicePose);
+        float[]        expected    = model.setProduct(model, calibration)
+                                          .setTranslation(1, 2, 3 - CAMERA_Z)
+                                          .toMatrix(new float[16]);
+        float scale = 2 * mMesh.getPositionScale();
+        for (int column = 0; column < 3; column++) {
+            for (int row = 0; row < 3; row++) {
+                expected[column * 4 + row] *= scale;
+            }
+        }
+        float[] actual = new float[16];
+        System.arraycopy(recorder.mMatrices, 0, actual, 0, 16);
+        assertArrayEquals(expected, actual, 1e-5f);
+    }
+
+    /**
+     * 矫正姿态在绘制时复合，也作用于之前设置过姿态的实例
+     */
+    @Test
+    public void calibrationAppliesToExistingPoses() {
+        InstanceBatch batch  = new InstanceBatch(1);
+        float[]       q      = new float[] {0.7f, -0.3f, 0.5f, 0.2f};
+        float[]       device = new float[9];
+        OrientationMath.normalizeQuaternion(q);
+        OrientationMath.quaternionToMatrix(q, device);
+        batch.setBoundingRadius(RADIUS);
+        batch.setFrustum(-HORIZONTAL, HORIZONTAL, -VERTICAL, VERTICAL, Z_NEAR, Z_FAR);
+        batch.setInstanceCount(1);
+        batch.setPose(0, device);
+        batch.draw(new Recorder(), mMesh, false, mView, mTextures);
+
+        float[] calibration = new float[] {0, 0, 0, 2}; // 绕Z轴旋转180°，长度不为1
+        batch.setCalibration(calibration);
+        Recorder recorder = new Recorder();
+        batch.draw(recorder, mMesh, false, mView, mTextures);
+
+        RigidTransform model    = new RigidTransform().setInverse(new RigidTransform().setRotationMatrix(device));
+        float[]        expected = model.setProduct(model, new RigidTransform().setRotation(calibration))
+                                       .setTranslation(0, 0, -CAMERA_Z)
+                                       .toMatrix(new float[16]);
+        float scale = mMesh.getPositionScale();
+        for (int column = 0; column < 3; column++) {
+            for (int row = 0; row < 3; row++) {
+                expected[column * 4 + row] *= scale;
+            }
+        }
+        float[] actual = new float[16];
+        System.arraycopy(recorder.mMatrices, 0, actual, 0, 16);
+        assertArrayEquals(expected, actual, 1e-5f);
+    }
+
+    /**
+     * 每帧更新所有实例的姿态后绘制，经过状态缓存；稳定后不应分配内存
+     */
+    @Test
+    public void drawDoesNotAllocate() {
+        int            count    = 1000;
+        InstanceBatch  batch    = newBatch(count);
+        RecordingGLApi recorder = new RecordingGLApi();
+        GLStateCache   gl       = new GLStateCache(recorder);
+        float[][]      poses    = new float[64][16];
+        float[]        q        = new float[4];
+        for (float[] pose : poses) {
+            randomQuaternion(q);
+            OrientationMath.quaternionToMatrix(q, pose);
+        }
+        for (int i = 0; i < count; i++) {
+            batch.setTextureSlot(i, i % 2);
+        }
+        int frame = 0;
+        for (; frame < WARMUP_FRAMES; frame++) {
+            drawFrame(batch, recorder, gl, poses, frame);
+        }
+
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            // 单独一轮可能含有JIT重新编译等一次性的分配，与被测代码无关；每帧都分配时每一轮都不为0
+            long before = AllocationCounter.currentThreadBytes();
+            for (int i = 0; i < MEASURED_FRAMES; i++, frame++) {
+                drawFrame(batch, recorder, gl, poses, frame);
+            }
+            allocated = Math.min(allocated, AllocationCounter.currentThreadBytes() - before);
+        }
+        assertEquals("bytes allocated by " + MEASURED_FRAMES + " frames", 0, allocated);
+        assertEquals(2, batch.getBatchCount());
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        try {
+            new InstanceBatch(0);
+            fail("Empty batch");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+        InstanceBatch batch = new InstanceBatch(4);
+        try {
+            batch.setInstanceCount(5);
+            fail("Instance count over capacity");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, batch.getInstanceCount());
+        }
+        try {
+            batch.setPlacement(4, 0, 0, 0, 1);
+            fail("Instance index out of range");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+        try {
+            batch.setTextureSlot(0, InstanceBatch.MAX_TEXTURE_SLOTS);
+            fail("Texture slot out of range");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+    }
+
+    /**
+     * 创建一组实例：都在视野中，x由实例序号决定，深度随机
+     */
+    private InstanceBatch newBatch(int count) {
+        InstanceBatch batch = new InstanceBatch(count);
+        batch.setBoundingRadius(RADIUS);
+        batch.setFrustum(-HORIZONTAL, HORIZONTAL, -VERTICAL, VERTICAL, Z_NEAR, Z_FAR);
+        batch.setInstanceCount(count);
+        for (int i = 0; i < count; i++) {
+            batch.setPlacement(i, Recorder.xOf(i), 0, -20 * mRandom.nextFloat(), 0.01f);
+        }
+        return batch;
+    }
+
+    private void drawFrame(InstanceBatch batch, RecordingGLApi recorder, GLStateCache gl, float[][] poses, int frame) {
+        for (int i = 0; i < batch.getCapacity(); i++) {
+            batch.setPose(i, poses[(frame + i) & 63]);
+        }
+        // 命令日志会不断增长，每帧清空
+        recorder.clear();
+        gl.beginFrame();
+        batch.draw(gl, mMesh, true, mView, mTextures);
+    }
+
+    private void randomQuaternion(float[] q) {
+        for (int k = 0; k < 4; k++) {
+            q[k] = (float) mRandom.nextGaussian();
+        }
+        OrientationMath.normalizeQuaternion(q);
+    }
+
+    /**
+     * 在RecordingGLApi之上记录绑定的纹理ID和加载的模型视图矩阵
+     */
+    private static final class Recorder extends RecordingGLApi {
+
+        private int[]   mBound      = new int[64];        // 依次绑定的纹理ID
+        private int     mBoundCount = 0;                  // 绑定次数
+        private float[] mMatrices   = new float[64 * 16]; // 依次加载的矩阵
+        private int     mLoadCount  = 0;                  // 加载次数
+
+        /**
+         * 实例序号编码在x坐标中，缩放很小，包围球都在视野中
+         */
+        static float xOf(int index) {
+            return (index - 32) * 0.1f;
+        }
+
+        int instanceOf(int load) {
+            return Math.round(mMatrices[load * 16 + 12] / 0.1f) + 32;
+        }
+
+        int[] boundTextures() {
+            int[] bound = new int[mBoundCount];
+            System.arraycopy(mBound, 0, bound, 0, mBoundCount);
+            return bound;
+        }
+
+        @Override
+        public void glBindTexture(int target, int texture) {
+            super.glBindTexture(target, texture);
+            mBound[mBoundCount++] = texture;
+        }
+
+        @Override
+        public void glLoadMatrixf(float[] matrix, int offset) {
+            super.glLoadMatrixf(matrix, offset);
+            System.arraycopy(matrix, offset, mMatrices, mLoadCount * 16, 16);
+            mLoadCount++;
+        }
+    }
+}
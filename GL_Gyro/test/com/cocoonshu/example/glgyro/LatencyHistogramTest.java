@@ -0,0 +1,141 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 16; // 对数-线性分桶的相对误差上界
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void smallValuesHaveMicrosecondBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int us = 0; us < 16; us++) {
+            histogram.record(us * 1000L + 500);
+        }
+        // 第k个样本所在的桶是[k-1, k)us，上界为k us - 1ns，最后一个桶不超过最大值
+        for (int k = 1; k < 16; k++) {
+            assertEquals(k * 1000L - 1, histogram.getPercentile(k * 100.0 / 16));
+        }
+        assertEquals(15500, histogram.getPercentile(100));
+        assertEquals(15500, histogram.getMax());
+        assertEquals(8000, histogram.getMean());
+    }
+
+    @Test
+    public void percentilesStayWithinRelativeError() {
+        int    sampleCount = 200000;
+        Random random      = new Random(19);
+        long[] latencies   = new long[sampleCount];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < sampleCount; i++) {
+            // 以约12ms为中心的对数正态分布，叠加1%的长尾卡顿
+            double latencyMs = Math.exp(Math.log(12) + 0.3 * random.nextGaussian());
+            if (random.nextInt(100) == 0) {
+                latencyMs += 30 + 200 * random.nextDouble();
+            }
+            latencies[i] = (long) (latencyMs * 1E6);
+            histogram.record(latencies[i]);
+        }
+
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double[] percentiles = new double[] {1, 50, 90, 99, 99.9};
+        for (double percentile : percentiles) {
+            long exact     = sorted[(int) Math.ceil(sampleCount * percentile / 100) - 1];
+            long estimated = histogram.getPercentile(percentile);
+            // 百分位数取所在桶的上界，所以不会低于精确值
+            assertTrue(percentile + ": " + estimated + " < " + exact, estimated >= exact);
+            assertTrue(percentile + ": " + estimated + " vs " + exact,
+                    estimated - exact <= exact * MAX_RELATIVE_ERROR + 1000);
+        }
+        assertEquals(sorted[sampleCount - 1], histogram.getPercentile(100));
+        assertEquals(sorted[sampleCount - 1], histogram.getMax());
+        assertEquals(sampleCount, histogram.getCount());
+    }
+
+    @Test
+    public void valuesBeyondRangeGoToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000000L);
+        histogram.record(60000000000L); // 60秒，超过可分辨的最大值
+        assertEquals(60000000000L, histogram.getPercentile(100));
+        assertEquals(60000000000L, histogram.getPercentile(51));
+        assertTrue(histogram.getPercentile(50) < 1100000L);
+    }
+
+    @Test
+    public void negativeLatenciesAreDiscarded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(2000000L);
+        assertEquals(1, histogram.getCount());
+        assertEquals(1, histogram.getDiscardedCount());
+        assertEquals(2000000L, histogram.getMean());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getDiscardedCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int              perThread = 200000;
+        Thread[]               threads   = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long latencyNs = (t + 1) * 1000000L;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(latencyNs);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * perThread, histogram.getCount());
+        assertEquals(2500000L, histogram.getMean());
+        assertEquals(4000000L, histogram.getMax());
+        assertTrue(histogram.getPercentile(25) >= 1000000L && histogram.getPercentile(25) < 1100000L);
+    }
+
+    @Test
+    public void writeToListsNonEmptyBuckets() throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000L);
+        histogram.record(1000L);
+        histogram.record(5000000L);
+        StringWriter writer = new StringWriter();
+        histogram.writeTo(writer);
+
+        String[] lines = writer.toString().trim().split("\\r?\\n");
+        assertEquals(4, lines.length); // 摘要、表头和两个非空的桶
+        assertTrue(lines[0].startsWith("# LatencyHistogram[n = 3"));
+        assertTrue(lines[2].trim().matches("1\\s+1\\s+2\\s+66\\.667"));
+        assertTrue(lines[3].trim().matches("4864\\s+5000\\s+1\\s+100\\.000"));
+    }
+}
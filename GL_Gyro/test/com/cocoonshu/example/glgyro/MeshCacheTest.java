@@ -0,0 +1,126 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MeshCacheTest {
+
+    private static final int HEADER_BYTES = 12 * 4; // 文件头的字节数，绘制块描述紧随其后
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void loadReturnsSavedMesh() throws IOException {
+        SphereMeshGenerator generator = generator(SphereMeshGenerator.LOD_ULTRA, VertexFormat.COMPACT);
+        InterleavedMesh     mesh      = generator.generate();
+        File                file      = save(generator, mesh);
+
+        InterleavedMesh loaded = MeshCache.load(file, MeshCache.sphereKey(generator));
+        assertNotNull(loaded);
+        assertSame(mesh.getFormat(), loaded.getFormat());
+        assertEquals(mesh.getPrimitiveMode(), loaded.getPrimitiveMode());
+        assertEquals(mesh.getPositionScale(), loaded.getPositionScale(), 0);
+        assertEquals(mesh.getTexcoordScale(), loaded.getTexcoordScale(), 0);
+        assertEquals(mesh.getVertexCount(), loaded.getVertexCount());
+        assertEquals(mesh.getIndexCount(), loaded.getIndexCount());
+        assertTrue(mesh.getChunkCount() > 1);
+        assertEquals(mesh.getChunkCount(), loaded.getChunkCount());
+        for (int i = 0; i < mesh.getChunkCount(); i++) {
+            assertEquals(mesh.getChunkBaseVertex(i), loaded.getChunkBaseVertex(i));
+            assertEquals(mesh.getChunkFirstIndex(i), loaded.getChunkFirstIndex(i));
+            assertEquals(mesh.getChunkIndexCount(i), loaded.getChunkIndexCount(i));
+        }
+        assertEquals(mesh.getVertexData(), loaded.getVertexData());
+        assertEquals(mesh.getIndexData(), loaded.getIndexData());
+    }
+
+    @Test
+    public void loadRejectsOtherKey() throws IOException {
+        SphereMeshGenerator generator = generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT);
+        File                file      = save(generator, generator.generate());
+        assertNull(MeshCache.load(file, MeshCache.sphereKey(generator) + 1));
+    }
+
+    @Test
+    public void loadRejectsTruncatedFile() throws IOException {
+        SphereMeshGenerator generator = generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT);
+        File                file      = save(generator, generator.generate());
+        RandomAccessFile    raf       = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 2);
+        } finally {
+            raf.close();
+        }
+        assertNull(MeshCache.load(file, MeshCache.sphereKey(generator)));
+    }
+
+    @Test
+    public void loadRejectsChunkOutsideIndexRange() throws IOException {
+        SphereMeshGenerator generator = generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT);
+        InterleavedMesh     mesh      = generator.generate();
+        File                file      = save(generator, mesh);
+        writeChunkInt(file, 2, mesh.getIndexCount() + 3); // 索引数量超出索引数据
+        assertNull(MeshCache.load(file, MeshCache.sphereKey(generator)));
+    }
+
+    @Test
+    public void loadRejectsChunkOutsideVertexRange() throws IOException {
+        SphereMeshGenerator generator = generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT);
+        InterleavedMesh     mesh      = generator.generate();
+        File                file      = save(generator, mesh);
+        writeChunkInt(file, 0, 1); // 起始顶点后移一个，最后一个索引越过顶点数据
+        assertNull(MeshCache.load(file, MeshCache.sphereKey(generator)));
+    }
+
+    @Test
+    public void sphereKeyCoversGeneratorParameters() {
+        int key = MeshCache.sphereKey(generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT));
+        assertEquals(key, MeshCache.sphereKey(generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT)));
+        assertNotEquals(key, MeshCache.sphereKey(generator(SphereMeshGenerator.LOD_MEDIUM, VertexFormat.FLOAT)));
+        assertNotEquals(key, MeshCache.sphereKey(generator(SphereMeshGenerator.LOD_LOW, VertexFormat.COMPACT)));
+        assertNotEquals(key, MeshCache.sphereKey(generator(SphereMeshGenerator.LOD_LOW, VertexFormat.FLOAT)
+                .setIndexOrder(SphereMeshGenerator.ORDER_STRIP)));
+    }
+
+    private static SphereMeshGenerator generator(int lod, VertexFormat format) {
+        return SphereMeshGenerator.forLevelOfDetail(lod, 1.0f)
+                                  .setIndexOrder(SphereMeshGenerator.ORDER_OPTIMIZED)
+                                  .setVertexFormat(format);
+    }
+
+    private File save(SphereMeshGenerator generator, InterleavedMesh mesh) throws IOException {
+        File file = new File(mFolder.getRoot(), "sphere.mesh");
+        assertTrue(MeshCache.save(file, MeshCache.sphereKey(generator), mesh));
+        return file;
+    }
+
+    /**
+     * 改写第一个绘制块描述中的一个int：0为起始顶点，1为起始索引，2为索引数量
+     */
+    private static void writeChunkInt(File file, int field, int value) throws IOException {
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            value = Integer.reverseBytes(value);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(HEADER_BYTES + field * 4);
+            raf.writeInt(value);
+        } finally {
+            raf.close();
+        }
+    }
+}
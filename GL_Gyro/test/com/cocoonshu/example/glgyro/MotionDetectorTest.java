@@ -0,0 +1,223 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.hardware.Sensor;
+
+public class MotionDetectorTest {
+
+    private static final long START_NS         = 1000000000L; // 第一个样本的时间戳(ns)
+    private static final long STEP_NS          = 5000000L;    // 陀螺仪样本间隔(ns)，200Hz
+    private static final long SLOW_INTERVAL_NS = 200000000L;  // 模拟SENSOR_DELAY_NORMAL的样本间隔(ns)
+
+    private final Random        mRandom   = new Random(22);
+    private final StateRecorder mRecorder = new StateRecorder();
+    private long                mTime     = START_NS;         // 下一个样本的时间戳(ns)
+
+    @Test
+    public void becomesStationaryAfterIdleDelay() {
+        MotionDetector detector = newDetector();
+        assertEquals(MotionDetector.STATE_MOVING, detector.getState());
+
+        feedStill(detector, 1.9);
+        assertFalse(detector.isStationary());
+        feedStill(detector, 1.0);
+        assertTrue(detector.isStationary());
+        assertEquals(1, mRecorder.mCount);
+        assertEquals(MotionDetector.STATE_STATIONARY, mRecorder.mLastState);
+        // 静止从第一个样本开始计时，满2秒后的下一个样本切换
+        assertEquals(START_NS + MotionDetector.DEFAULT_IDLE_DELAY_NS, mRecorder.mLastTimestamp, 2 * STEP_NS);
+    }
+
+    @Test
+    public void singleStrongSampleWakesImmediately() {
+        MotionDetector detector = newDetector();
+        feedStill(detector, 3);
+        assertTrue(detector.isStationary());
+
+        long wakeTime = mTime;
+        detector.onSample(Sensor.TYPE_GYROSCOPE, 0.2f, 0, 0, wakeTime);
+        assertFalse(detector.isStationary());
+        assertEquals(2, mRecorder.mCount);
+        assertEquals(MotionDetector.STATE_MOVING, mRecorder.mLastState);
+        assertEquals(wakeTime, mRecorder.mLastTimestamp);
+    }
+
+    @Test
+    public void shortPausesDoNotSleep() {
+        MotionDetector detector = newDetector();
+        for (int i = 0; i < 10; i++) {
+            feedMoving(detector, 0.5);
+            feedStill(detector, 1.5);
+        }
+        assertEquals(0, mRecorder.mCount);
+        assertEquals(0, detector.getTransitionCount());
+
+        detector.setIdleDelay(1000000000L);
+        feedStill(detector, 1.5);
+        assertTrue(detector.isStationary());
+    }
+
+    @Test
+    public void tiltedGravityIsStill() {
+        MotionDetector detector = newDetector();
+        // 倾斜放置：重力分布在三个轴上，低通滤波后不计入运动能量
+        for (long end = mTime + 3000000000L; mTime < end; mTime += STEP_NS) {
+            detector.onSample(Sensor.TYPE_GYROSCOPE, noise(0.008f), noise(0.008f), noise(0.008f), mTime);
+            detector.onSample(Sensor.TYPE_ACCELEROMETER, 4 + noise(0.03f), -5 + noise(0.03f), 7.3f + noise(0.03f), mTime);
+        }
+        assertTrue(detector.isStationary());
+
+        // 只有加速度计检测到的敲击也能唤醒
+        detector.onSample(Sensor.TYPE_ACCELEROMETER, 5, -5, 7.3f, mTime);
+        assertFalse(detector.isStationary());
+    }
+
+    @Test
+    public void statisticsFollowStates() {
+        MotionDetector detector = newDetector();
+        feedMoving(detector, 1);
+        feedStill(detector, 5);
+        long sleptAt = mRecorder.mLastTimestamp;
+        long wokeAt  = mTime;
+        feedMoving(detector, 1);
+
+        long total = mTime - STEP_NS - START_NS;
+        assertEquals(2, detector.getTransitionCount());
+        assertEquals(wokeAt - sleptAt, detector.getTimeInState(MotionDetector.STATE_STATIONARY));
+        assertEquals(total, detector.getTimeInState(MotionDetector.STATE_MOVING)
+                + detector.getTimeInState(MotionDetector.STATE_STATIONARY));
+        // 陀螺仪200Hz加上加速度计100Hz
+        assertEquals(300 * 60, detector.getEventsPerMinute(), 60);
+
+        detector.reset();
+        assertEquals(MotionDetector.STATE_MOVING, detector.getState());
+        assertEquals(0, detector.getTransitionCount());
+        assertEquals(0, detector.getTimeInState(MotionDetector.STATE_MOVING));
+        assertEquals(0, detector.getSampleCount(MotionDetector.STATE_STATIONARY));
+        assertEquals(0, detector.getEventsPerMinute(), 0);
+    }
+
+    /**
+     * 模拟自适应采样率的使用过程：静止状态下按SLOW_INTERVAL_NS抽取样本，相当于以慢速采样率注册。
+     * 静止放置和手持转动交替出现，运动开始后要在一个慢速样本间隔左右唤醒，静止时段处理的样本大幅减少
+     */
+    @Test
+    public void adaptiveRateSessionWakesPromptly() {
+        final MotionDetector detector = newDetector();
+        final long[]         counts   = new long[2]; // 原始样本数，实际处理的样本数
+        SensorSampleRing.SampleConsumer adaptive = new SensorSampleRing.SampleConsumer() {
+
+            private final long[] mLastDelivered = new long[2]; // 各传感器上一次送入的样本时间戳(ns)
+
+            @Override
+            public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+                counts[0]++;
+                int index = sensorType == Sensor.TYPE_GYROSCOPE ? 0 : 1;
+                if (detector.isStationary() && timestampNs - mLastDelivered[index] < SLOW_INTERVAL_NS) {
+                    return;
+                }
+                mLastDelivered[index] = timestampNs;
+                counts[1]++;
+                detector.onSample(sensorType, x, y, z, timestampNs);
+            }
+        };
+
+        // 各段的时长(s)，运动和静止交替，从运动开始
+        double[] durations = new double[] {3, 20, 5, 60, 2, 30, 8, 45};
+        long     maxWakeNs = 0;
+        for (int segment = 0; segment < durations.length; segment++) {
+            boolean moving       = segment % 2 == 0;
+            long    segmentStart = mTime;
+            long    wokenAt      = 0;
+            long    steps        = (long) (durations[segment] * 1E9 / STEP_NS);
+            for (long step = 0; step < steps; step++, mTime += STEP_NS) {
+                double t  = step * STEP_NS * 1E-9;
+                float  wx = noise(0.008f);
+                float  wy = noise(0.008f);
+                float  ax = noise(0.03f);
+                if (moving) {
+                    // 手持：缓慢起步的转动叠加手抖
+                    float ramp = (float) Math.min(1, t / 0.3);
+                    wx += ramp * 0.6f * (float) Math.sin(2 * Math.PI * 0.5 * t);
+                    wy += ramp * 1.2f * (float) Math.sin(2 * Math.PI * 0.3 * t + 1);
+                    ax += ramp * 0.8f * (float) Math.sin(2 * Math.PI * 1.1 * t);
+                }
+                adaptive.onSample(Sensor.TYPE_GYROSCOPE, wx, wy, noise(0.008f), mTime);
+                if (step % 2 == 0) {
+                    adaptive.onSample(Sensor.TYPE_ACCELEROMETER, ax, noise(0.03f), 9.81f + noise(0.03f), mTime);
+                }
+                if (moving && wokenAt == 0 && !detector.isStationary()) {
+                    wokenAt = mTime;
+                }
+            }
+            if (moving && segment > 0) {
+                assertTrue("segment " + segment + " never woke", wokenAt != 0);
+                maxWakeNs = Math.max(maxWakeNs, wokenAt - segmentStart);
+            }
+        }
+
+        assertEquals(7, detector.getTransitionCount());
+        assertTrue("wake-up latency " + maxWakeNs * 1E-6 + "ms", maxWakeNs <= SLOW_INTERVAL_NS + 100000000L);
+        assertTrue(counts[1] < counts[0] / 3);
+        assertTrue(detector.getEventsPerMinute(MotionDetector.STATE_STATIONARY) < 700);
+        assertTrue(detector.getEventsPerMinute(MotionDetector.STATE_MOVING) > 17000);
+    }
+
+    private MotionDetector newDetector() {
+        MotionDetector detector = new MotionDetector();
+        detector.setOnMotionStateChangedListener(mRecorder);
+        return detector;
+    }
+
+    /**
+     * 平放静止，陀螺仪200Hz、加速度计100Hz，只有噪声
+     */
+    private void feedStill(MotionDetector detector, double seconds) {
+        for (long end = mTime + (long) (seconds * 1E9); mTime < end; mTime += STEP_NS) {
+            detector.onSample(Sensor.TYPE_GYROSCOPE, noise(0.008f), noise(0.008f), noise(0.008f), mTime);
+            if ((mTime - START_NS) / STEP_NS % 2 == 0) {
+                detector.onSample(Sensor.TYPE_ACCELEROMETER, noise(0.03f), noise(0.03f), 9.81f + noise(0.03f), mTime);
+            }
+        }
+    }
+
+    /**
+     * 以约0.3rad/s匀速转动
+     */
+    private void feedMoving(MotionDetector detector, double seconds) {
+        for (long end = mTime + (long) (seconds * 1E9); mTime < end; mTime += STEP_NS) {
+            detector.onSample(Sensor.TYPE_GYROSCOPE, 0.3f + noise(0.008f), noise(0.008f), noise(0.008f), mTime);
+            if ((mTime - START_NS) / STEP_NS % 2 == 0) {
+                detector.onSample(Sensor.TYPE_ACCELEROMETER, noise(0.03f), noise(0.03f), 9.81f + noise(0.03f), mTime);
+            }
+        }
+    }
+
+    private float noise(float sigma) {
+        return (float) mRandom.nextGaussian() * sigma;
+    }
+
+    /**
+     * 记录状态变化的次数和最近一次的状态
+     */
+    private static final class StateRecorder implements MotionDetector.OnMotionStateChangedListener {
+
+        private int  mCount         = 0;  // 状态变化次数
+        private int  mLastState     = -1; // 最近一次的状态
+        private long mLastTimestamp = 0;  // 最近一次状态变化的时间戳(ns)
+
+        @Override
+        public void onMotionStateChanged(int state, long timestampNs) {
+            mCount++;
+            mLastState     = state;
+            mLastTimestamp = timestampNs;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OrientationFusionTest {
+
+    private static final int STEPS_PER_SECOND = 200; // 陀螺仪200Hz
+
+    @Test
+    public void complementaryTracksRotation() {
+        double error = meanError(new ComplementaryFusion(), rotatingStream(0, 0, 0), 20, 5);
+        assertTrue("mean error " + error + " deg", error < 1.0);
+    }
+
+    @Test
+    public void kalmanTracksRotation() {
+        double error = meanError(new KalmanFusion(), rotatingStream(0, 0, 0), 20, 5);
+        assertTrue("mean error " + error + " deg", error < 1.0);
+    }
+
+    @Test
+    public void kalmanConvergesUnderConstantGyroBias() {
+        float[]      bias   = new float[] {0.03f, -0.02f, 0.025f};
+        KalmanFusion kalman = new KalmanFusion();
+        double kalmanError = meanError(kalman, rotatingStream(bias[0], bias[1], bias[2]), 60, 10);
+        double complementaryError = meanError(new ComplementaryFusion(),
+                rotatingStream(bias[0], bias[1], bias[2]), 60, 10);
+
+        float[] estimate = new float[3];
+        kalman.getGyroBias(estimate);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("bias " + i, bias[i], estimate[i], 0.003f);
+        }
+        assertTrue("mean error " + kalmanError + " deg", kalmanError < 0.5);
+        // 互补滤波只能以常数时间常数拉回零偏造成的漂移，留有稳态误差
+        assertTrue("kalman " + kalmanError + " deg vs complementary " + complementaryError + " deg",
+                kalmanError < 0.5 * complementaryError);
+    }
+
+    @Test
+    public void kalmanResetClearsBias() {
+        KalmanFusion kalman = new KalmanFusion();
+        meanError(kalman, rotatingStream(0.05f, 0, 0), 30, 1);
+        float[] estimate = new float[3];
+        kalman.getGyroBias(estimate);
+        assertEquals(0.05f, estimate[0], 0.005f);
+
+        kalman.reset();
+        assertTrue(!kalman.hasOrientation());
+        kalman.getGyroBias(estimate);
+        assertEquals(0, estimate[0], 0);
+    }
+
+    /**
+     * 手持设备缓慢转动，带有典型的传感器噪声
+     */
+    private static SyntheticSensorStream rotatingStream(float bx, float by, float bz) {
+        SyntheticSensorStream stream = new SyntheticSensorStream(2);
+        stream.setTruth(new float[] {0.9f, 0.2f, -0.3f, 0.1f});
+        stream.setAngularRate(0.3f, -0.2f, 0.4f);
+        stream.setGyroBias(bx, by, bz);
+        stream.setNoise(0.01f, 0.05f, 0.5f);
+        return stream;
+    }
+
+    /**
+     * @return mean angle between the fused and the true orientation over
+     *         the last measureSeconds of the stream, in degrees
+     */
+    private static double meanError(OrientationFusion fusion, SyntheticSensorStream stream,
+            int seconds, int measureSeconds) {
+        SensorBatchProcessor processor = new SensorBatchProcessor();
+        processor.setOrientationFusion(fusion);
+        float[] q     = new float[4];
+        double  sum   = 0;
+        int     count = 0;
+        int     steps = seconds * STEPS_PER_SECOND;
+        for (int i = 0; i < steps; i++) {
+            stream.step(processor);
+            if (i >= steps - measureSeconds * STEPS_PER_SECOND && fusion.hasOrientation()) {
+                fusion.getQuaternion(q);
+                sum += Math.toDegrees(OrientationMath.angleBetweenQuaternions(q, stream.getTruth()));
+                count++;
+            }
+        }
+        assertTrue("no orientation", count > 0);
+        return sum / count;
+    }
+}
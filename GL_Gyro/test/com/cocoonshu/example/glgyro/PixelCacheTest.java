@@ -0,0 +1,98 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PixelCacheTest {
+
+    private static final int SMALL_BYTES = 32 * 32 / 2; // 32x32的ETC1纹理的字节数
+    private static final int LARGE_BYTES = 64 * 64 / 2; // 64x64的ETC1纹理的字节数
+
+    private final PixelCache       mCache   = new PixelCache(5000, new BitmapPool(0));
+    private final TextureContainer mDiffuse = texture(64);
+    private final TextureContainer mNormal  = texture(64);
+    private final TextureContainer mGloss   = texture(64);
+
+    @Test
+    public void countsHitsAndMisses() {
+        assertNull(mCache.get("diffuse"));
+        assertTrue(mCache.put("diffuse", mDiffuse));
+        assertSame(mDiffuse, mCache.get("diffuse"));
+        assertSame(mDiffuse, mCache.get("diffuse"));
+        assertNull(mCache.get("normal"));
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(2, mCache.getMissCount());
+        assertEquals(0, mCache.getEvictionCount());
+        assertEquals(LARGE_BYTES, mCache.getSizeBytes());
+    }
+
+    /**
+     * 超过容量时淘汰最久未使用的缓存项，get()也算使用
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        mCache.put("diffuse", mDiffuse);
+        mCache.put("normal", mNormal);
+        mCache.get("diffuse");
+        mCache.put("gloss", mGloss);
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(2, mCache.getEntryCount());
+        assertEquals(2 * LARGE_BYTES, mCache.getSizeBytes());
+        assertNull(mCache.get("normal"));
+        assertSame(mDiffuse, mCache.get("diffuse"));
+        assertSame(mGloss, mCache.get("gloss"));
+    }
+
+    @Test
+    public void replacingKeepsSizeConsistent() {
+        mCache.put("diffuse", mDiffuse);
+        TextureContainer smaller = texture(32);
+        assertTrue(mCache.put("diffuse", smaller));
+        assertEquals(1, mCache.getEntryCount());
+        assertEquals(SMALL_BYTES, mCache.getSizeBytes());
+        assertSame(smaller, mCache.get("diffuse"));
+
+        mCache.remove("diffuse");
+        mCache.remove("missing");
+        assertEquals(0, mCache.getEntryCount());
+        assertEquals(0, mCache.getSizeBytes());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    /**
+     * 单个超过容量的像素不缓存，也不影响已缓存的内容
+     */
+    @Test
+    public void rejectsPixelsLargerThanCapacity() {
+        mCache.put("diffuse", mDiffuse);
+        assertFalse(mCache.put("huge", texture(128)));
+        assertEquals(1, mCache.getEntryCount());
+        assertEquals(LARGE_BYTES, mCache.getSizeBytes());
+        assertEquals(0, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void clearEvictsEverything() {
+        mCache.put("diffuse", mDiffuse);
+        mCache.put("normal", mNormal);
+        mCache.clear();
+        assertEquals(0, mCache.getEntryCount());
+        assertEquals(0, mCache.getSizeBytes());
+        assertEquals(2, mCache.getEvictionCount());
+        assertNull(mCache.get("diffuse"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedPixels() {
+        mCache.put("diffuse", new int[16]);
+    }
+
+    private static TextureContainer texture(int size) {
+        return TextureContainer.encodeEtc1(new byte[size * size * 3], size, size, false);
+    }
+}
@@ -0,0 +1,225 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PoseBusTest {
+
+    private static final long STEP_NS        = 5000000L; // 姿态间隔(ns)，200Hz
+    private static final int  WARMUP_POSES   = 20000;    // 预热JIT的发布次数
+    private static final int  MEASURED_POSES = 2000;     // 每一轮检查内存分配的发布次数
+    private static final int  MEASURED_RUNS  = 5;        // 检查内存分配的轮数
+
+    private final float[] mMatrix      = new float[16];                   // 发布的姿态
+    private final float[] mOrientation = new float[] {0.1f, -0.2f, 0.3f}; // 发布的欧拉角(rad)
+    private final float[] mRate        = new float[] {0.1f, 0.4f, -0.2f}; // 发布的陀螺仪样本(rad/s)
+    private final float[] mQuaternion  = new float[] {1, 0, 0, 0};        // 当前姿态
+
+    @Test
+    public void deliversCopiesToEverySubscriber() {
+        PoseBus   bus      = new PoseBus();
+        Counter[] counters = new Counter[] {new Counter(), new Counter(), new Counter()};
+        for (Counter counter : counters) {
+            bus.subscribe(counter);
+        }
+        assertEquals(3, bus.getSubscriberCount());
+
+        advance(0.005f);
+        assertEquals(3, bus.publish(mMatrix, mOrientation, mRate, 1000L, 900L));
+        for (Counter counter : counters) {
+            assertEquals(1, counter.mCount);
+            assertEquals(1, counter.mLastSequence);
+            assertArrayEquals(mMatrix, counter.mLastMatrix, 0);
+        }
+        PoseBus.Snapshot snapshot = counters[0].mLastSnapshot;
+        assertNotSame(mMatrix, snapshot.getMatrix());
+        assertArrayEquals(mOrientation, snapshot.getOrientation(), 0);
+        assertArrayEquals(mRate, snapshot.getAngularRate(), 0);
+        assertEquals(1000L, snapshot.getTimestamp());
+        assertEquals(900L, snapshot.getAngularRateTimestamp());
+
+        assertTrue(bus.unsubscribe(counters[1]));
+        assertFalse(bus.unsubscribe(counters[1]));
+        assertEquals(2, bus.publish(mMatrix, mOrientation, mRate, 2000L, 2000L));
+        assertEquals(2, counters[0].mCount);
+        assertEquals(1, counters[1].mCount);
+        assertEquals(2, counters[2].mLastSequence);
+        assertEquals(2, bus.getPublishedCount());
+    }
+
+    @Test
+    public void filtersLimitDeliveryRate() {
+        PoseBus bus      = new PoseBus();
+        Counter all      = new Counter();
+        Counter interval = new Counter();
+        Counter angle    = new Counter();
+        bus.subscribe(all);
+        bus.subscribe(interval, 20000000L, 0);
+        bus.subscribe(angle, 0, (float) Math.toRadians(1));
+
+        // 1秒内以约0.46rad/s匀速转动，之后静止1秒
+        for (int i = 0; i < 400; i++) {
+            if (i < 200) {
+                advance(0.005f);
+            }
+            bus.publish(mMatrix, mOrientation, mRate, i * STEP_NS, i * STEP_NS);
+        }
+        assertEquals(400, all.mCount);
+        // 第一个姿态总是交付，之后每4个姿态交付一个
+        assertEquals(100, interval.mCount);
+        // 转过约26度，每隔1度交付一个；静止后不再交付
+        int expected = (int) (Math.toDegrees(0.005 * 200 * Math.sqrt(0.1 * 0.1 + 0.4 * 0.4 + 0.2 * 0.2)));
+        assertEquals(expected + 1, angle.mCount, 2);
+        assertTrue(angle.mLastSequence <= 200);
+    }
+
+    @Test
+    public void retainedSnapshotsAreNotReused() {
+        PoseBus  bus    = new PoseBus(1, 2);
+        Retainer keeper = new Retainer(8);
+        bus.subscribe(keeper);
+
+        assertEquals(1, bus.publish(mMatrix, mOrientation, mRate, 1, 1));
+        assertEquals(1, bus.publish(mMatrix, mOrientation, mRate, 2, 2));
+        // 两个快照都被保留，本次发布被丢弃，保留中的快照保持不变
+        assertEquals(-1, bus.publish(mMatrix, mOrientation, mRate, 3, 3));
+        PoseBus.Snapshot first  = keeper.mRetained[0];
+        PoseBus.Snapshot second = keeper.mRetained[1];
+        assertEquals(1, first.getSequence());
+        assertEquals(2, second.getSequence());
+        assertEquals(1, bus.getDroppedCount());
+        assertEquals(3, bus.getPublishedCount());
+
+        first.release();
+        assertEquals(1, bus.publish(mMatrix, mOrientation, mRate, 4, 4));
+        assertEquals(3, first.getSequence());
+        assertEquals(4, first.getTimestamp());
+        assertEquals(2, second.getSequence());
+
+        second.release();
+        try {
+            second.release();
+            fail("Released more times than retained");
+        } catch (IllegalStateException e) {
+            // 快照已经回到池中
+        }
+    }
+
+    @Test
+    public void rejectsInvalidSubscriptions() {
+        PoseBus bus = new PoseBus(2, 1);
+        bus.subscribe(new Counter());
+        bus.subscribe(new Counter());
+        try {
+            bus.subscribe(new Counter());
+            fail("Subscriber table is full");
+        } catch (IllegalStateException e) {
+            assertEquals(2, bus.getSubscriberCount());
+        }
+        try {
+            new PoseBus().subscribe(null);
+            fail("Null subscriber");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+        try {
+            new PoseBus(0, 8);
+            fail("Empty subscriber table");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+        try {
+            new PoseBus(8, 65);
+            fail("Snapshot pool too large");
+        } catch (IllegalArgumentException e) {
+            // 预期的异常
+        }
+    }
+
+    @Test
+    public void publishDoesNotAllocate() {
+        PoseBus bus = new PoseBus();
+        bus.subscribe(new Counter());
+        bus.subscribe(new Counter(), 20000000L, (float) Math.toRadians(0.5));
+        bus.subscribe(new Retainer(1), 100000000L, 0);
+        long timestamp = 0;
+        for (int i = 0; i < WARMUP_POSES; i++) {
+            advance(0.005f);
+            bus.publish(mMatrix, mOrientation, mRate, timestamp += STEP_NS, timestamp);
+        }
+
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            // 单独一轮可能含有JIT重新编译等一次性的分配，与被测代码无关；每次发布都分配时每一轮都不为0
+            long before = AllocationCounter.currentThreadBytes();
+            for (int i = 0; i < MEASURED_POSES; i++) {
+                advance(0.005f);
+                bus.publish(mMatrix, mOrientation, mRate, timestamp += STEP_NS, timestamp);
+            }
+            allocated = Math.min(allocated, AllocationCounter.currentThreadBytes() - before);
+        }
+        assertEquals("bytes allocated by " + MEASURED_POSES + " publishes", 0, allocated);
+        assertEquals(0, bus.getDroppedCount());
+    }
+
+    /**
+     * 按mRate转动dt秒，更新mMatrix
+     */
+    private void advance(float dt) {
+        OrientationMath.integrateAngularRate(mQuaternion, mRate[0], mRate[1], mRate[2], dt);
+        OrientationMath.quaternionToMatrix(mQuaternion, mMatrix);
+    }
+
+    /**
+     * 记录收到的姿态数和最近一个姿态
+     */
+    private static final class Counter implements PoseBus.Subscriber {
+
+        private int              mCount        = 0;             // 收到的姿态数
+        private long             mLastSequence = 0;             // 最近一个姿态的发布序号
+        private final float[]    mLastMatrix   = new float[16]; // 最近一个姿态的旋转矩阵
+        private PoseBus.Snapshot mLastSnapshot = null;          // 最近一个快照，只用于检查其他字段
+
+        @Override
+        public void onPose(PoseBus.Snapshot snapshot) {
+            mCount++;
+            mLastSequence = snapshot.getSequence();
+            mLastSnapshot = snapshot;
+            System.arraycopy(snapshot.getMatrix(), 0, mLastMatrix, 0, 16);
+        }
+    }
+
+    /**
+     * 保留最近收到的若干个快照，相当于在其他线程上使用快照的记录器
+     */
+    private static final class Retainer implements PoseBus.Subscriber {
+
+        private final PoseBus.Snapshot[] mRetained = new PoseBus.Snapshot[8]; // 保留中的快照，最早的在前
+        private final int                mRetainCount;                        // 最多保留的快照数
+
+        Retainer(int retainCount) {
+            mRetainCount = retainCount;
+        }
+
+        @Override
+        public void onPose(PoseBus.Snapshot snapshot) {
+            int held = 0;
+            while (held < mRetained.length && mRetained[held] != null) {
+                held++;
+            }
+            if (held >= mRetainCount) {
+                mRetained[0].release();
+                System.arraycopy(mRetained, 1, mRetained, 0, held - 1);
+                held--;
+            }
+            snapshot.retain();
+            mRetained[held] = snapshot;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.hardware.Sensor;
+
+public class PosePredictorTest {
+
+    private static final long START_NS = 1000000000L; // 第一个姿态的时间戳(ns)
+
+    private final float[] mOut = new float[9]; // 预测输出的旋转矩阵
+
+    @Test
+    public void constantRateIsExtrapolatedExactly() {
+        PosePredictor predictor = new PosePredictor();
+        float[]       q         = new float[] {0.9f, 0.1f, 0.3f, -0.2f};
+        float[]       rate      = new float[] {0.5f, -1.2f, 0.8f};
+        OrientationMath.normalizeQuaternion(q);
+
+        predictor.setAngularRate(rate, START_NS);
+        assertTrue(predictor.predict(matrix(q), START_NS, mOut));
+
+        float[] expected = q.clone();
+        OrientationMath.integrateAngularRate(expected, rate[0], rate[1], rate[2],
+                PosePredictor.DEFAULT_LOOK_AHEAD_NS * 1e-9f);
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(expected, quaternion(mOut)), 1e-3);
+        assertEquals(1, predictor.getGyroscopeCount());
+    }
+
+    @Test
+    public void zeroLookAheadPassesPoseThrough() {
+        PosePredictor predictor = new PosePredictor();
+        float[]       q         = new float[] {0.8f, 0.2f, -0.5f, 0.1f};
+        OrientationMath.normalizeQuaternion(q);
+        predictor.setLookAhead(0);
+        predictor.setAngularRate(new float[] {2, 0, 0}, START_NS);
+
+        assertFalse(predictor.predict(matrix(q), START_NS, mOut));
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(q, quaternion(mOut)), 1e-3);
+    }
+
+    @Test
+    public void finiteDifferenceReplacesMissingGyroscope() {
+        PosePredictor predictor = new PosePredictor();
+        float[]       q         = new float[] {1, 0, 0, 0};
+        predictor.setGyroscopeEnabled(false);
+        // 第一个姿态没有可以做差分的前一个姿态
+        assertFalse(predictor.predict(matrix(q), START_NS, mOut));
+
+        // 10ms内绕z轴转过0.01rad，即1rad/s
+        OrientationMath.integrateAngularRate(q, 0, 0, 1, 0.01f);
+        assertTrue(predictor.predict(matrix(q), START_NS + 10000000L, mOut));
+        float[] expected = q.clone();
+        OrientationMath.integrateAngularRate(expected, 0, 0, 1, PosePredictor.DEFAULT_LOOK_AHEAD_NS * 1e-9f);
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(expected, quaternion(mOut)), 1e-3);
+        assertEquals(1, predictor.getDifferenceCount());
+        assertEquals(0, predictor.getGyroscopeCount());
+    }
+
+    @Test
+    public void reversalIsNotExtrapolated() {
+        PosePredictor predictor = new PosePredictor();
+        float[]       q         = new float[] {1, 0, 0, 0};
+        predictor.setAngularRate(new float[] {0, 1, 0}, START_NS);
+        assertTrue(predictor.predict(matrix(q), START_NS, mOut));
+
+        predictor.setAngularRate(new float[] {0, -1, 0}, START_NS + 5000000L);
+        assertFalse(predictor.predict(matrix(q), START_NS + 5000000L, mOut));
+        assertEquals(1, predictor.getReversalCount());
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(q, quaternion(mOut)), 1e-3);
+    }
+
+    @Test
+    public void extrapolationIsLimitedToMaxAngle() {
+        PosePredictor predictor = new PosePredictor();
+        float[]       q         = new float[] {1, 0, 0, 0};
+        predictor.setMaxPredictionAngle(0.1f);
+        predictor.setAngularRate(new float[] {20, 0, 0}, START_NS);
+
+        assertTrue(predictor.predict(matrix(q), START_NS, mOut));
+        assertEquals(0.1f, OrientationMath.angleBetweenQuaternions(q, quaternion(mOut)), 1e-3);
+        assertEquals(1, predictor.getDampedCount());
+    }
+
+    @Test
+    public void predictionReducesErrorOnHeadMotion() {
+        PoseStream stream = new PoseStream();
+        synthesizeMotion(stream, 30);
+        long[] lookAheadsMs = new long[] {16, 32, 48};
+        for (long lookAheadMs : lookAheadsMs) {
+            long    lookAheadNs = lookAheadMs * 1000000L;
+            float[] none        = evaluate(stream, lookAheadNs, null);
+            float[] gyroscope   = evaluate(stream, lookAheadNs, Boolean.TRUE);
+            float[] difference  = evaluate(stream, lookAheadNs, Boolean.FALSE);
+            String  message     = lookAheadMs + "ms: none " + Arrays.toString(none)
+                    + ", gyroscope " + Arrays.toString(gyroscope) + ", difference " + Arrays.toString(difference);
+            // 平均误差和95百分位误差都明显下降；最大误差出现在急停的瞬间，不超过不预测时
+            assertTrue(message, gyroscope[0] < 0.2f * none[0]);
+            assertTrue(message, gyroscope[1] < 0.2f * none[1]);
+            assertTrue(message, gyroscope[2] <= none[2]);
+            assertTrue(message, difference[0] < 0.3f * none[0]);
+            assertTrue(message, difference[1] < 0.3f * none[1]);
+        }
+    }
+
+    private static float[] matrix(float[] q) {
+        float[] R = new float[9];
+        OrientationMath.quaternionToMatrix(q, R);
+        return R;
+    }
+
+    private static float[] quaternion(float[] R) {
+        float[] q = new float[4];
+        OrientationMath.matrixToQuaternion(R, q);
+        return q;
+    }
+
+    /**
+     * 每个姿态外推后与预测时长之后实际融合出的姿态比较
+     * @param gyroscope null表示不预测，TRUE使用陀螺仪，FALSE使用有限差分
+     * @return 误差的平均值、95百分位和最大值(度)
+     */
+    private static float[] evaluate(PoseStream stream, long lookAheadNs, Boolean gyroscope) {
+        PosePredictor predictor = new PosePredictor();
+        predictor.setLookAhead(gyroscope == null ? 0 : lookAheadNs);
+        predictor.setGyroscopeEnabled(gyroscope == Boolean.TRUE);
+        float[] R         = new float[9];
+        float[] predicted = new float[4];
+        float[] reference = new float[4];
+        float[] errors    = new float[stream.mCount];
+        int     count     = 0;
+        int     next      = 0;
+        for (int i = 0; i < stream.mCount; i++) {
+            predictor.setAngularRate(stream.rate(i), stream.mRateTimestamps[i]);
+            OrientationMath.quaternionToMatrix(stream.pose(i), R);
+            predictor.predict(R, stream.mTimestamps[i], R);
+            // 参考姿态：预测时长之后实际融合出的姿态，在相邻两个姿态之间球面插值
+            long target = stream.mTimestamps[i] + lookAheadNs;
+            while (next < stream.mCount && stream.mTimestamps[next] <= target) {
+                next++;
+            }
+            if (next >= stream.mCount) {
+                break;
+            }
+            long  from = stream.mTimestamps[next - 1];
+            float t    = (float) (target - from) / (stream.mTimestamps[next] - from);
+            OrientationMath.slerpQuaternion(stream.pose(next - 1), stream.pose(next), t, reference);
+            OrientationMath.matrixToQuaternion(R, predicted);
+            errors[count++] = (float) Math.toDegrees(OrientationMath.angleBetweenQuaternions(predicted, reference));
+        }
+        Arrays.sort(errors, 0, count);
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += errors[i];
+        }
+        return new float[] {(float) (sum / count), errors[(int) Math.ceil(count * 0.95) - 1], errors[count - 1]};
+    }
+
+    /**
+     * 合成的头部转动：绕三个轴的正弦角速度叠加偶尔的急停，陀螺仪200Hz、
+     * 加速度计100Hz、磁力计50Hz，样本带有噪声
+     */
+    private static void synthesizeMotion(SensorSampleRing.SampleConsumer consumer, int seconds) {
+        Random  random = new Random(21);
+        float[] q      = new float[] {1, 0, 0, 0};
+        float[] R      = new float[9];
+        float[] omega  = new float[3];
+        long    stepNs = 1000000L;
+        for (long step = 0; step <= seconds * 1000L; step++) {
+            double t = step * 1E-3;
+            // 急停：每4秒中有0.3秒角速度降为0
+            double gate = (t % 4.0) < 0.3 ? 0 : 1;
+            omega[0] = (float) (gate * 0.8 * Math.sin(2 * Math.PI * 0.7 * t));
+            omega[1] = (float) (gate * 2.5 * Math.sin(2 * Math.PI * 0.4 * t + 0.5 * Math.sin(2 * Math.PI * 0.1 * t)));
+            omega[2] = (float) (gate * 0.3 * Math.sin(2 * Math.PI * 1.3 * t));
+            long timestamp = START_NS + step * stepNs;
+            if (step % 5 == 0) {
+                consumer.onSample(Sensor.TYPE_GYROSCOPE, omega[0] + noise(random, 0.01f),
+                        omega[1] + noise(random, 0.01f), omega[2] + noise(random, 0.01f), timestamp);
+            }
+            if (step % 10 == 0) {
+                OrientationMath.quaternionToMatrix(q, R);
+                float g = OrientationMath.STANDARD_GRAVITY;
+                consumer.onSample(Sensor.TYPE_ACCELEROMETER, R[6] * g + noise(random, 0.05f),
+                        R[7] * g + noise(random, 0.05f), R[8] * g + noise(random, 0.05f), timestamp);
+            }
+            if (step % 20 == 0) {
+                consumer.onSample(Sensor.TYPE_MAGNETIC_FIELD, 22 * R[3] - 40 * R[6] + noise(random, 0.5f),
+                        22 * R[4] - 40 * R[7] + noise(random, 0.5f), 22 * R[5] - 40 * R[8] + noise(random, 0.5f), timestamp);
+            }
+            OrientationMath.integrateAngularRate(q, omega[0], omega[1], omega[2], stepNs * 1e-9f);
+        }
+    }
+
+    private static float noise(Random random, float sigma) {
+        return (float) random.nextGaussian() * sigma;
+    }
+
+    /**
+     * 把样本送入与{@link Gyroscope}相同的融合流程，记录每个样本之后的姿态和最近的陀螺仪样本
+     */
+    private static final class PoseStream implements SensorSampleRing.SampleConsumer {
+
+        private final SensorBatchProcessor mProcessor      = new SensorBatchProcessor();
+        private final OrientationFusion    mFusion         = new ComplementaryFusion();
+        private long[]                     mTimestamps     = new long[1024];      // 姿态的时间戳(ns)
+        private long[]                     mRateTimestamps = new long[1024];      // 姿态对应的陀螺仪样本时间戳(ns)
+        private float[]                    mPoses          = new float[1024 * 4]; // 姿态四元数
+        private float[]                    mRates          = new float[1024 * 3]; // 姿态对应的陀螺仪样本(rad/s)
+        private int                        mCount          = 0;                   // 姿态数量
+        private final float[]              mPose           = new float[4];
+
+        PoseStream() {
+            mProcessor.setOrientationFusion(mFusion);
+        }
+
+        @Override
+        public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+            mProcessor.onSample(sensorType, x, y, z, timestampNs);
+            if (!mFusion.hasOrientation()) {
+                return;
+            }
+            if (mCount == mTimestamps.length) {
+                mTimestamps     = Arrays.copyOf(mTimestamps, mCount * 2);
+                mRateTimestamps = Arrays.copyOf(mRateTimestamps, mCount * 2);
+                mPoses          = Arrays.copyOf(mPoses, mCount * 2 * 4);
+                mRates          = Arrays.copyOf(mRates, mCount * 2 * 3);
+            }
+            // 同一时刻的多个样本只保留最后一个姿态，与批量处理后只发布一次姿态一致
+            int index = mCount > 0 && mTimestamps[mCount - 1] == timestampNs ? mCount - 1 : mCount++;
+            mFusion.getQuaternion(mPose);
+            System.arraycopy(mPose, 0, mPoses, index * 4, 4);
+            System.arraycopy(mProcessor.getAngularRate(), 0, mRates, index * 3, 3);
+            mTimestamps[index]     = timestampNs;
+            mRateTimestamps[index] = mProcessor.getAngularRateTimestamp();
+        }
+
+        float[] pose(int index) {
+            return Arrays.copyOfRange(mPoses, index * 4, index * 4 + 4);
+        }
+
+        float[] rate(int index) {
+            return Arrays.copyOfRange(mRates, index * 3, index * 3 + 3);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PoseSmootherTest {
+
+    private static final float TOLERANCE = 1e-5f; // 四元数分量允许的误差
+
+    private final RigidTransform mTarget = new RigidTransform().setAxisAngle(60.0f, 0.0f, 0.0f, 1.0f); // 目标姿态
+    private final RigidTransform mPose   = new RigidTransform();                                        // 插值输入和输出
+
+    /**
+     * 两个半参考帧与一个参考帧收敛到同一个姿态
+     */
+    @Test
+    public void convergenceIsFrameRateIndependent() {
+        PoseSmoother fullFrames = new PoseSmoother();
+        PoseSmoother halfFrames = new PoseSmoother();
+        // 第一帧总是按一个参考帧处理，之后的帧按实际帧间隔
+        assertTrue(fullFrames.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME));
+        assertTrue(halfFrames.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME));
+        float[] expected = new float[4];
+        float[] actual   = new float[4];
+        for (int frame = 0; frame < 10; frame++) {
+            fullFrames.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME);
+            mPose.getRotation(expected);
+            halfFrames.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME / 2);
+            halfFrames.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME / 2);
+            mPose.getRotation(actual);
+            assertArrayEquals("frame " + frame, expected, actual, TOLERANCE);
+        }
+    }
+
+    /**
+     * 每个参考帧靠近剩余夹角的DAMPING比例，夹角小于阈值后对齐到目标并停止插值
+     */
+    @Test
+    public void approachesTargetAndStops() {
+        PoseSmoother smoother = new PoseSmoother();
+        float[]      identity = new float[4];
+        float[]      target   = new float[4];
+        float[]      current  = new float[4];
+        OrientationMath.identityQuaternion(identity);
+        mTarget.getRotation(target);
+        float remaining = OrientationMath.angleBetweenQuaternions(identity, target);
+
+        assertTrue(smoother.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME));
+        mPose.getRotation(current);
+        assertEquals(remaining * (1.0f - PoseSmoother.DAMPING), OrientationMath.angleBetweenQuaternions(current, target), 1e-4f);
+
+        int frames = 1;
+        while (smoother.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME)) {
+            assertTrue("frames " + frames, ++frames < 100);
+        }
+        mPose.getRotation(current);
+        assertArrayEquals(target, current, 0);
+    }
+
+    /**
+     * 关闭插值时直接跳到目标姿态，之后开启插值从目标姿态继续
+     */
+    @Test
+    public void disabledJumpsToTarget() {
+        PoseSmoother smoother = new PoseSmoother();
+        float[]      target   = new float[4];
+        float[]      current  = new float[4];
+        mTarget.getRotation(target);
+        assertFalse(smoother.smooth(mPose.set(mTarget), false, PoseSmoother.FRAME_TIME));
+        mPose.getRotation(current);
+        assertArrayEquals(target, current, 0);
+        assertFalse(smoother.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME));
+
+        smoother.reset();
+        assertTrue(smoother.smooth(mPose.set(mTarget), true, PoseSmoother.FRAME_TIME));
+    }
+}
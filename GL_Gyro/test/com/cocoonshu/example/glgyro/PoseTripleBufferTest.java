@@ -0,0 +1,99 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PoseTripleBufferTest {
+
+    private static final int PUBLISH_COUNT = 2000000; // 压力测试中生产者发布的姿态数，不超过2^24以保证float精确
+
+    @Test
+    public void acquireReturnsLatestPublishedPose() {
+        PoseTripleBuffer buffer = new PoseTripleBuffer();
+        buffer.reset(fill(new float[PoseTripleBuffer.POSE_SIZE], 0));
+        assertFalse(buffer.acquire());
+        assertEquals(0, buffer.frontTimestamp());
+
+        fill(buffer.beginWrite(), 1);
+        buffer.publish(1);
+        fill(buffer.beginWrite(), 2);
+        buffer.publish(2);
+        assertTrue(buffer.acquire());
+        assertArrayEquals(fill(new float[PoseTripleBuffer.POSE_SIZE], 2), buffer.front(), 0);
+        assertEquals(2, buffer.frontTimestamp());
+
+        // 没有新姿态时前台槽保持不变
+        assertFalse(buffer.acquire());
+        assertEquals(2, buffer.frontTimestamp());
+    }
+
+    @Test
+    public void concurrentReaderNeverSeesTornPose() throws Exception {
+        final PoseTripleBuffer buffer = new PoseTripleBuffer();
+        buffer.reset(fill(new float[PoseTripleBuffer.POSE_SIZE], 0));
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread("writer") {
+
+            @Override
+            public void run() {
+                for (int sequence = 1; sequence <= PUBLISH_COUNT; sequence++) {
+                    float[] slot = buffer.beginWrite();
+                    for (int i = 0; i < PoseTripleBuffer.POSE_SIZE; i++) {
+                        slot[i] = sequence;
+                    }
+                    buffer.publish(sequence);
+                }
+            }
+        };
+        writer.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                failure.set(throwable);
+            }
+        });
+        writer.start();
+
+        long last     = 0;
+        long acquired = 0;
+        while (last < PUBLISH_COUNT) {
+            if (!buffer.acquire()) {
+                if (!writer.isAlive() && failure.get() != null) {
+                    break;
+                }
+                continue;
+            }
+            float[] pose      = buffer.front();
+            long    timestamp = buffer.frontTimestamp();
+            // 整个槽必须来自同一次发布，并且与随槽交换的时间戳一致
+            for (int i = 0; i < PoseTripleBuffer.POSE_SIZE; i++) {
+                if (pose[i] != timestamp) {
+                    throw new AssertionError("torn pose: element " + i + " is " + pose[i]
+                            + ", published as " + timestamp);
+                }
+            }
+            assertTrue("pose " + timestamp + " after " + last, timestamp > last);
+            last = timestamp;
+            acquired++;
+        }
+        writer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(PUBLISH_COUNT, last);
+        assertTrue("acquired " + acquired, acquired > 1);
+    }
+
+    private static float[] fill(float[] pose, float value) {
+        for (int i = 0; i < pose.length; i++) {
+            pose[i] = value;
+        }
+        return pose;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import android.opengl.GLES11;
+
+public class RecordingGLApiTest {
+
+    private final RecordingGLApi mRecorder = new RecordingGLApi();
+
+    /**
+     * glBufferData按size计上传字节数，与缓冲剩余的字节数无关，data为null的分配同样计入
+     */
+    @Test
+    public void bufferDataCountsSizeBytes() {
+        ByteBuffer data = ByteBuffer.allocateDirect(128);
+        data.position(16);
+        mRecorder.beginFrame();
+        mRecorder.glBufferData(GLES11.GL_ARRAY_BUFFER, 64, data, GLES11.GL_STATIC_DRAW);
+        mRecorder.glBufferData(GLES11.GL_ELEMENT_ARRAY_BUFFER, 128, null, GLES11.GL_STATIC_DRAW);
+
+        assertEquals(2, mRecorder.getCommandCount());
+        assertEquals(3 * 4 + 64, mRecorder.getArgumentBytes(0));
+        assertEquals(3 * 4 + 128, mRecorder.getArgumentBytes(1));
+        assertEquals(64 + 128, mRecorder.getUploadBytes());
+        assertEquals(64 + 128, mRecorder.getFrameUploadBytes());
+        assertEquals(2 * 3 * 4 + 64 + 128, mRecorder.getFrameArgumentBytes());
+    }
+
+    /**
+     * 与Android的GLES11绑定一样，剩余字节数不足size时抛出异常
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferDataRejectsShortBuffer() {
+        ByteBuffer data = ByteBuffer.allocateDirect(64);
+        data.position(16);
+        mRecorder.glBufferData(GLES11.GL_ARRAY_BUFFER, 64, data, GLES11.GL_STATIC_DRAW);
+    }
+}
@@ -0,0 +1,173 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReferencePoseEstimatorTest {
+
+    private static final float TREMOR = (float) Math.toRadians(0.4); // 手抖噪声的标准差(rad)
+    private static final int   WINDOW = ReferencePoseEstimator.DEFAULT_WINDOW;
+
+    private final Random  mRandom = new Random(24);
+    private final float[] mSample = new float[4]; // 叠加噪声后的姿态
+
+    /**
+     * 真实姿态固定，叠加手抖噪声和2%的磕碰尖峰，每5000个姿态换一次姿态：
+     * 稳定后窗口平均的误差明显小于单个姿态，换姿态后在一个窗口左右重新稳定
+     */
+    @Test
+    public void windowMeanBeatsSinglePose() {
+        ReferencePoseEstimator estimator = new ReferencePoseEstimator();
+        float[] truth       = new float[4];
+        float[] reference   = new float[4];
+        double  singleSum   = 0;
+        double  windowSum   = 0;
+        double  windowMax   = 0;
+        int     stableCount = 0;
+        int     maxSettle   = 0;
+        int     settle      = 0;
+        for (int i = 0; i < 20000; i++) {
+            if (i % 5000 == 0) {
+                randomPose(truth);
+                settle = 0;
+            }
+            jitter(truth, mRandom.nextInt(50) == 0 ? 8 : 1);
+            estimator.add(mSample);
+            settle++;
+            if (!estimator.isStable() || !estimator.getReference(reference)) {
+                maxSettle = Math.max(maxSettle, settle);
+                continue;
+            }
+            double window = OrientationMath.angleBetweenQuaternions(reference, truth);
+            if (window > Math.toRadians(10)) {
+                // 换姿态后窗口还没重新开始，仍是上一个姿态
+                maxSettle = Math.max(maxSettle, settle);
+                continue;
+            }
+            singleSum += OrientationMath.angleBetweenQuaternions(mSample, truth);
+            windowSum += window;
+            windowMax  = Math.max(windowMax, window);
+            stableCount++;
+        }
+
+        String message = String.format("single %.3f°, window %.3f° (max %.3f°), settle %d",
+                Math.toDegrees(singleSum / stableCount), Math.toDegrees(windowSum / stableCount),
+                Math.toDegrees(windowMax), maxSettle);
+        assertTrue(message, windowSum < 0.2 * singleSum);
+        assertTrue(message, windowMax < TREMOR);
+        assertTrue(message, maxSettle <= 2 * WINDOW);
+        assertTrue(message, stableCount > 19000);
+    }
+
+    @Test
+    public void spikesAreRejected() {
+        ReferencePoseEstimator estimator = new ReferencePoseEstimator();
+        float[] truth  = new float[4];
+        float[] before = new float[4];
+        float[] after  = new float[4];
+        randomPose(truth);
+        for (int i = 0; i < WINDOW; i++) {
+            jitter(truth, 1);
+            assertTrue(estimator.add(mSample));
+        }
+        assertTrue(estimator.isStable());
+        estimator.getReference(before);
+
+        // 5°的尖峰，四元数取反后也一样被拒绝
+        System.arraycopy(truth, 0, mSample, 0, 4);
+        OrientationMath.integrateAngularRate(mSample, (float) Math.toRadians(5), 0, 0, 1);
+        assertFalse(estimator.add(mSample));
+        for (int k = 0; k < 4; k++) {
+            mSample[k] = -mSample[k];
+        }
+        assertFalse(estimator.add(mSample));
+        estimator.getReference(after);
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(before, after), 1e-6);
+        assertEquals(2, estimator.getRejectedCount());
+        assertEquals(WINDOW, estimator.getAcceptedCount());
+    }
+
+    @Test
+    public void persistentChangeRestartsWindow() {
+        ReferencePoseEstimator estimator = new ReferencePoseEstimator();
+        float[] first     = new float[4];
+        float[] second    = new float[4];
+        float[] reference = new float[4];
+        randomPose(first);
+        for (int i = 0; i < WINDOW; i++) {
+            jitter(first, 1);
+            estimator.add(mSample);
+        }
+        System.arraycopy(first, 0, second, 0, 4);
+        OrientationMath.integrateAngularRate(second, 0, (float) Math.toRadians(30), 0, 1);
+
+        // 连续拒绝半个窗口之后，下一个姿态开始新的窗口
+        for (int i = 0; i < WINDOW / 2; i++) {
+            jitter(second, 1);
+            assertFalse(estimator.add(mSample));
+        }
+        jitter(second, 1);
+        assertTrue(estimator.add(mSample));
+        assertFalse(estimator.isStable());
+        estimator.getReference(reference);
+        assertEquals(0, OrientationMath.angleBetweenQuaternions(reference, second), 4 * TREMOR);
+
+        for (int i = 1; i < WINDOW; i++) {
+            jitter(second, 1);
+            estimator.add(mSample);
+        }
+        assertTrue(estimator.isStable());
+    }
+
+    @Test
+    public void resetEmptiesWindow() {
+        ReferencePoseEstimator estimator = new ReferencePoseEstimator(8);
+        float[] truth = new float[4];
+        randomPose(truth);
+        assertFalse(estimator.getReference(new float[4]));
+        for (int i = 0; i < 8; i++) {
+            jitter(truth, 1);
+            estimator.add(mSample);
+        }
+        assertTrue(estimator.isStable());
+        assertTrue(estimator.getSpread() > 0);
+
+        estimator.reset();
+        assertFalse(estimator.isStable());
+        assertFalse(estimator.getReference(new float[4]));
+        assertEquals(0, estimator.getSpread(), 0);
+        assertEquals(0, estimator.getAcceptedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTinyWindow() {
+        new ReferencePoseEstimator(4);
+    }
+
+    private void randomPose(float[] q) {
+        for (int k = 0; k < 4; k++) {
+            q[k] = (float) mRandom.nextGaussian();
+        }
+        OrientationMath.normalizeQuaternion(q);
+    }
+
+    /**
+     * 把真实姿态叠加scale倍的手抖噪声写入mSample，随机取反四元数的符号
+     */
+    private void jitter(float[] truth, float scale) {
+        System.arraycopy(truth, 0, mSample, 0, 4);
+        OrientationMath.integrateAngularRate(mSample, scale * TREMOR * (float) mRandom.nextGaussian(),
+                scale * TREMOR * (float) mRandom.nextGaussian(), scale * TREMOR * (float) mRandom.nextGaussian(), 1);
+        if (mRandom.nextBoolean()) {
+            // 四元数的符号不影响姿态
+            for (int k = 0; k < 4; k++) {
+                mSample[k] = -mSample[k];
+            }
+        }
+    }
+}
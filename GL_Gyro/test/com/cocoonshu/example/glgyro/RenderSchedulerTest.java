@@ -0,0 +1,192 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RenderSchedulerTest {
+
+    private final ManualTrigger   mTrigger   = new ManualTrigger();
+    private final RenderCounter   mRenders   = new RenderCounter();
+    private final RenderScheduler mScheduler = new RenderScheduler(mTrigger, mRenders);
+    private final float[]         mQ         = new float[] {1, 0, 0, 0}; // 当前姿态
+    private final float[]         mPose      = new float[16];            // 当前姿态的旋转矩阵
+
+    public RenderSchedulerTest() {
+        OrientationMath.quaternionToMatrix(mQ, mPose);
+    }
+
+    @Test
+    public void posesBelowThresholdAreSkipped() {
+        mScheduler.setAngleThreshold((float) Math.toRadians(1));
+        // 每次转动0.4°：与上次请求重绘的姿态相差不到1°的都被丢弃
+        int[] expectedPosts = new int[] {1, 1, 1, 2, 2, 2, 3};
+        for (int i = 0; i < expectedPosts.length; i++) {
+            if (i > 0) {
+                rotate(0.4f);
+            }
+            mScheduler.requestPose(mPose);
+            assertEquals("pose " + i, expectedPosts[i], mTrigger.mPostCount);
+            mTrigger.fire(mScheduler);
+        }
+        assertEquals(7, mScheduler.getRequestedFrameCount());
+        assertEquals(4, mScheduler.getSkippedFrameCount());
+        assertEquals(0, mScheduler.getCoalescedFrameCount());
+        assertEquals(3, mScheduler.getIssuedFrameCount());
+        assertEquals(3, mRenders.mCount);
+    }
+
+    @Test
+    public void zeroThresholdRequestsEveryPose() {
+        mScheduler.setAngleThreshold(0);
+        for (int i = 0; i < 5; i++) {
+            mScheduler.requestPose(mPose);
+            mTrigger.fire(mScheduler);
+        }
+        assertEquals(5, mTrigger.mPostCount);
+        assertEquals(0, mScheduler.getSkippedFrameCount());
+        assertEquals(5, mRenders.mCount);
+    }
+
+    @Test
+    public void requestsCoalesceToOnePerVsync() {
+        mScheduler.requestFrame();
+        mScheduler.requestFrame();
+        rotate(5);
+        mScheduler.requestPose(mPose);
+        assertEquals(1, mTrigger.mPostCount);
+        assertEquals(2, mScheduler.getCoalescedFrameCount());
+        assertEquals(0, mRenders.mCount);
+
+        mTrigger.fire(mScheduler);
+        assertEquals(1, mRenders.mCount);
+        assertEquals(1, mScheduler.getIssuedFrameCount());
+
+        // 垂直同步之后的请求等待下一个垂直同步
+        mScheduler.requestFrame();
+        assertEquals(2, mTrigger.mPostCount);
+        mTrigger.fire(mScheduler);
+        mScheduler.onFrameDrawn();
+        mScheduler.onFrameDrawn();
+        assertEquals(4, mScheduler.getRequestedFrameCount());
+        assertEquals(2, mScheduler.getIssuedFrameCount());
+        assertEquals(2, mScheduler.getDrawnFrameCount());
+        assertEquals(2, mRenders.mCount);
+
+        mScheduler.resetCounters();
+        assertEquals(0, mScheduler.getRequestedFrameCount());
+        assertEquals(0, mScheduler.getCoalescedFrameCount());
+        assertEquals(0, mScheduler.getIssuedFrameCount());
+        assertEquals(0, mScheduler.getDrawnFrameCount());
+    }
+
+    @Test
+    public void cancelDropsPendingFrame() {
+        mScheduler.requestFrame();
+        mScheduler.cancel();
+        assertEquals(1, mTrigger.mCancelCount);
+        assertEquals(0, mTrigger.mPendingCount);
+
+        // 取消后新的请求重新等待垂直同步，而不是被合并到已取消的请求中
+        mScheduler.requestFrame();
+        assertEquals(2, mTrigger.mPostCount);
+        assertEquals(0, mScheduler.getCoalescedFrameCount());
+        mTrigger.fire(mScheduler);
+        assertEquals(1, mRenders.mCount);
+    }
+
+    /**
+     * 200Hz的姿态、60Hz的垂直同步：先以30°/s转动1秒，再静止1秒(叠加0.005°的噪声)。
+     * 转动时每个垂直同步最多重绘一次，静止后不再重绘
+     */
+    @Test
+    public void stillDeviceStopsRedrawing() {
+        Random  random      = new Random(5);
+        float[] still       = new float[4];
+        long    nextVsync   = 0;
+        long    stillIssued = 0; // 开始静止时已经请求重绘的次数
+        for (int i = 0; i < 400; i++) {
+            long time = i * 5000000L;
+            while (nextVsync <= time) {
+                mTrigger.fire(mScheduler);
+                nextVsync += 16666667L;
+            }
+            if (i < 200) {
+                rotate(30.0f / 200);
+            } else {
+                if (i == 200) {
+                    stillIssued = mScheduler.getIssuedFrameCount();
+                    System.arraycopy(mQ, 0, still, 0, 4);
+                }
+                System.arraycopy(still, 0, mQ, 0, 4);
+                rotate(0.005f * (float) random.nextGaussian());
+            }
+            mScheduler.requestPose(mPose);
+        }
+        mTrigger.fire(mScheduler);
+
+        // 转动时0.15°的姿态变化都超过阈值，请求只因合并而减少
+        String message = mScheduler.toString();
+        assertEquals(message, 400, mScheduler.getRequestedFrameCount());
+        assertTrue(message, stillIssued >= 59 && stillIssued <= 61);
+        assertTrue(message, mScheduler.getIssuedFrameCount() - stillIssued <= 1);
+        assertTrue(message, mScheduler.getSkippedFrameCount() >= 199);
+        assertEquals(message, mScheduler.getIssuedFrameCount(), mRenders.mCount);
+        assertEquals(message, mScheduler.getRequestedFrameCount(), mScheduler.getSkippedFrameCount()
+                + mScheduler.getCoalescedFrameCount() + mScheduler.getIssuedFrameCount());
+    }
+
+    /**
+     * 绕一个固定的轴转动degrees度，更新mPose
+     */
+    private void rotate(float degrees) {
+        float angle = (float) Math.toRadians(degrees);
+        OrientationMath.integrateAngularRate(mQ, angle * 0.6f, angle * 0.8f, 0, 1);
+        OrientationMath.quaternionToMatrix(mQ, mPose);
+    }
+
+    /**
+     * 由测试代替Choreographer触发垂直同步
+     */
+    private static final class ManualTrigger implements RenderScheduler.FrameTrigger {
+
+        private int mPostCount    = 0; // post()的调用次数
+        private int mCancelCount  = 0; // cancel()的调用次数
+        private int mPendingCount = 0; // 等待触发的post()数
+
+        @Override
+        public void post() {
+            mPostCount++;
+            mPendingCount++;
+        }
+
+        @Override
+        public void cancel() {
+            mCancelCount++;
+            mPendingCount = 0;
+        }
+
+        /**
+         * 垂直同步信号到来，只有等待中的请求会被触发
+         */
+        void fire(RenderScheduler scheduler) {
+            if (mPendingCount > 0) {
+                mPendingCount = 0;
+                scheduler.onVsync();
+            }
+        }
+    }
+
+    private static final class RenderCounter implements Runnable {
+
+        private int mCount = 0; // 请求重绘的次数
+
+        @Override
+        public void run() {
+            mCount++;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * BitmapPool的容量和复用规则由ReusePool实现；Bitmap在JVM上不能创建，这里用int[]代替，
+ * 数组长度就是像素数，每个像素4字节
+ */
+public class ReusePoolTest {
+
+    private final ArrayPool mPool = new ArrayPool(1000);
+
+    @Test
+    public void takesMostRecentFittingItem() {
+        int[] small = new int[50];
+        int[] large = new int[100];
+        int[] other = new int[100];
+        mPool.give(large);
+        mPool.give(small);
+        mPool.give(other);
+        assertEquals(1000, mPool.getSizeBytes());
+
+        // 同样能容纳时取最近放入的，容纳不下的跳过
+        assertSame(other, mPool.take(10, 10, 4));
+        assertSame(large, mPool.take(10, 10, 4));
+        assertNull(mPool.take(10, 10, 4));
+        assertSame(small, mPool.take(5, 10, 4));
+        assertNull(mPool.take(1, 1, 2));
+        assertEquals(0, mPool.getSizeBytes());
+        assertEquals(0, mPool.getCount());
+        assertEquals(3, mPool.getReuseCount());
+        assertEquals(2, mPool.getMissCount());
+    }
+
+    @Test
+    public void evictsEldestOverCapacity() {
+        int[] first  = new int[100];
+        int[] second = new int[100];
+        int[] third  = new int[60];
+        mPool.give(first);
+        mPool.give(second);
+        mPool.give(third);
+        assertEquals(2, mPool.getCount());
+        assertEquals(640, mPool.getSizeBytes());
+        assertArrayEquals(new Object[] {first}, mPool.mDiscarded.toArray());
+        assertSame(second, mPool.take(10, 10, 4));
+        assertEquals(240, mPool.getSizeBytes());
+
+        // 单个超过容量的对象直接丢弃，不影响池中的对象
+        int[] huge = new int[300];
+        mPool.give(huge);
+        assertSame(huge, mPool.mDiscarded.get(1));
+        assertEquals(1, mPool.getCount());
+        assertEquals(240, mPool.getSizeBytes());
+    }
+
+    @Test
+    public void clearDiscardsEverything() {
+        mPool.give(new int[10]);
+        mPool.give(new int[20]);
+        mPool.miss();
+        mPool.clear();
+        assertEquals(0, mPool.getCount());
+        assertEquals(0, mPool.getSizeBytes());
+        assertEquals(2, mPool.mDiscarded.size());
+        assertEquals(1, mPool.getMissCount());
+        assertNull(mPool.take(1, 1, 4));
+    }
+
+    /**
+     * 像素数组的池：格式是每像素的字节数
+     */
+    private static final class ArrayPool extends ReusePool<int[], Integer> {
+
+        private final List<int[]> mDiscarded = new ArrayList<int[]>(); // 依次被丢弃的数组
+
+        ArrayPool(int capacityBytes) {
+            super(capacityBytes);
+        }
+
+        @Override
+        int sizeOf(int[] item) {
+            return item.length * 4;
+        }
+
+        @Override
+        boolean fits(int[] item, int width, int height, Integer format) {
+            return item.length * 4 >= width * height * format;
+        }
+
+        @Override
+        void discard(int[] item) {
+            mDiscarded.add(item);
+        }
+    }
+}
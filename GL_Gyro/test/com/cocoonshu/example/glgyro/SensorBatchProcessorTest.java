@@ -0,0 +1,136 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import android.hardware.Sensor;
+
+public class SensorBatchProcessorTest {
+
+    private static final int STEPS = 4000; // 陀螺仪周期数，20秒
+
+    @Test
+    public void batchesMatchPerEventProcessing() {
+        OrientationFusion[][] pairs = new OrientationFusion[][] {
+                {new ComplementaryFusion(), new ComplementaryFusion()},
+                {new KalmanFusion(), new KalmanFusion()}};
+        int[] batchSteps = new int[] {1, 3, 16};
+        for (OrientationFusion[] pair : pairs) {
+            for (int steps : batchSteps) {
+                pair[0].reset();
+                pair[1].reset();
+                assertBatchesMatch(pair[0], pair[1], steps);
+            }
+        }
+    }
+
+    @Test
+    public void keepsLatestSamplesWithoutFusion() {
+        SensorBatchProcessor processor = new SensorBatchProcessor();
+        assertFalse(processor.hasGravity());
+        assertFalse(processor.hasGeomagnetic());
+        assertEquals(0, processor.getAngularRateTimestamp());
+
+        processor.onSample(Sensor.TYPE_ACCELEROMETER, 0.1f, 0.2f, 9.7f, 10);
+        processor.onSample(Sensor.TYPE_GYROSCOPE, 0.3f, -0.1f, 0.2f, 20);
+        processor.onSample(Sensor.TYPE_MAGNETIC_FIELD, 22f, 1f, -40f, 30);
+        processor.onSample(Sensor.TYPE_LIGHT, 100f, 0, 0, 40); // 其它传感器被忽略
+
+        assertTrue(processor.hasGravity());
+        assertTrue(processor.hasGeomagnetic());
+        assertArrayEquals(new float[] {0.1f, 0.2f, 9.7f}, processor.getGravity(), 0);
+        assertArrayEquals(new float[] {22f, 1f, -40f}, processor.getGeomagnetic(), 0);
+        assertArrayEquals(new float[] {0.3f, -0.1f, 0.2f}, processor.getAngularRate(), 0);
+        assertEquals(20, processor.getAngularRateTimestamp());
+        assertEquals(30, processor.getLastTimestamp());
+        assertEquals(3, processor.getSampleCount());
+
+        processor.reset();
+        assertFalse(processor.hasGravity());
+        assertFalse(processor.hasGeomagnetic());
+        assertEquals(0, processor.getAngularRateTimestamp());
+        assertEquals(0, processor.getLastTimestamp());
+    }
+
+    @Test
+    public void fullRingDropsNewestSamples() {
+        SensorSampleRing     ring      = new SensorSampleRing(6);
+        SensorBatchProcessor processor = new SensorBatchProcessor();
+        assertEquals(8, ring.getCapacity());
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(i <= 8, ring.offer(Sensor.TYPE_GYROSCOPE, i, 0, 0, i));
+        }
+        assertEquals(2, ring.getDroppedCount());
+
+        assertEquals(8, processor.processBatch(ring));
+        assertEquals(8, processor.getLastTimestamp());
+        assertEquals(0, processor.processBatch(ring));
+        assertEquals(1, processor.getBatchCount());
+    }
+
+    /**
+     * 同一组样本逐个送入第一个处理器，经过环形缓冲区每batchSteps个陀螺仪周期一批送入第二个处理器，
+     * 每批之后两者的姿态和缓存的样本必须完全相同
+     */
+    private static void assertBatchesMatch(OrientationFusion perEventFusion, OrientationFusion batchFusion,
+            int batchSteps) {
+        SyntheticSensorStream perEventStream = newStream();
+        SyntheticSensorStream batchStream    = newStream();
+        SensorBatchProcessor  perEvent       = new SensorBatchProcessor();
+        SensorBatchProcessor  batched        = new SensorBatchProcessor();
+        SensorSampleRing      ring           = new SensorSampleRing(64);
+        float[]               expected       = new float[16];
+        float[]               actual         = new float[16];
+        perEvent.setOrientationFusion(perEventFusion);
+        batched.setOrientationFusion(batchFusion);
+
+        RingWriter writer = new RingWriter(ring);
+        for (int step = 0; step < STEPS; step += batchSteps) {
+            perEventStream.run(perEvent, batchSteps);
+            batchStream.run(writer, batchSteps);
+            batched.processBatch(ring);
+
+            String message = perEventFusion.getClass().getSimpleName()
+                    + ", " + batchSteps + " steps per batch, step " + step;
+            perEventFusion.getRotationMatrix(expected);
+            batchFusion.getRotationMatrix(actual);
+            assertArrayEquals(message, expected, actual, 0);
+            assertArrayEquals(message, perEvent.getGravity(), batched.getGravity(), 0);
+            assertArrayEquals(message, perEvent.getGeomagnetic(), batched.getGeomagnetic(), 0);
+            assertArrayEquals(message, perEvent.getAngularRate(), batched.getAngularRate(), 0);
+            assertEquals(message, perEvent.getLastTimestamp(), batched.getLastTimestamp());
+        }
+        assertEquals(perEvent.getSampleCount(), batched.getSampleCount());
+        assertEquals((STEPS + batchSteps - 1) / batchSteps, batched.getBatchCount());
+        assertEquals(0, ring.getDroppedCount());
+    }
+
+    private static SyntheticSensorStream newStream() {
+        SyntheticSensorStream stream = new SyntheticSensorStream(15);
+        stream.setAngularRate(0.4f, 0.1f, -0.3f);
+        stream.setGyroBias(0.01f, -0.02f, 0.005f);
+        stream.setNoise(0.01f, 0.05f, 0.5f);
+        return stream;
+    }
+
+    /**
+     * 把样本写入环形缓冲区，相当于传感器线程
+     */
+    private static final class RingWriter implements SensorSampleRing.SampleConsumer {
+
+        private final SensorSampleRing mRing;
+
+        RingWriter(SensorSampleRing ring) {
+            mRing = ring;
+        }
+
+        @Override
+        public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+            assertTrue(mRing.offer(sensorType, x, y, z, timestampNs));
+        }
+    }
+}
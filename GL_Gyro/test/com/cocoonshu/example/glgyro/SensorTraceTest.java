@@ -0,0 +1,307 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import android.hardware.Sensor;
+
+public class SensorTraceTest {
+
+    private static final int STEPS       = 12000;                                  // 陀螺仪周期数，60秒
+    private static final int SYNC_SIZE   = SensorTraceRecorder.SYNC_RECORD_SIZE;   // 同步记录字节数
+    private static final int SAMPLE_SIZE = SensorTraceRecorder.SAMPLE_RECORD_SIZE; // 样本记录字节数
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void replayMatchesRecordedSamples() throws IOException {
+        File                file     = mFolder.newFile("trace" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        SampleList          recorded = new SampleList(STEPS * 2);
+        newStream().run(recorder, STEPS);
+        recorder.close();
+        newStream().run(recorded, STEPS);
+
+        assertEquals(recorded.mCount, recorder.getSampleCount());
+        assertEquals(SensorTraceRecorder.HEADER_SIZE + SYNC_SIZE + recorded.mCount * SAMPLE_SIZE, file.length());
+        assertEquals(file.length(), recorder.getByteCount());
+
+        SampleList        replayed = new SampleList(STEPS * 2);
+        SensorTracePlayer player   = new SensorTracePlayer(file);
+        try {
+            assertEquals(recorded.mCount, player.play(replayed, false));
+            assertEquals(recorded.mTimestamps[recorded.mCount - 1] - recorded.mTimestamps[0], player.getDurationNs());
+        } finally {
+            player.close();
+        }
+        recorded.assertEquals(replayed);
+    }
+
+    /**
+     * 后台线程写出的轨迹与同步记录的轨迹逐字节相同，缓冲区足够大时不丢弃样本
+     */
+    @Test
+    public void asyncRecordingMatchesSyncRecording() throws IOException {
+        File                syncFile  = mFolder.newFile("sync" + SensorTraceRecorder.EXTENSION);
+        File                asyncFile = mFolder.newFile("async" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder  = new SensorTraceRecorder(syncFile);
+        newStream().run(recorder, STEPS);
+        recorder.close();
+
+        AsyncSensorTraceRecorder asyncRecorder = new AsyncSensorTraceRecorder(
+                new SensorTraceRecorder(asyncFile), STEPS * 2);
+        newStream().run(asyncRecorder, STEPS);
+        asyncRecorder.close();
+        asyncRecorder.close();
+
+        assertEquals(0, asyncRecorder.getDroppedCount());
+        assertEquals(recorder.getSampleCount(), asyncRecorder.getRecorder().getSampleCount());
+        assertArrayEquals(readFully(syncFile), readFully(asyncFile));
+    }
+
+    @Test
+    public void replayFeedsFusionLikeLiveSamples() throws IOException {
+        File                 file       = mFolder.newFile("trace" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder  recorder   = new SensorTraceRecorder(file);
+        SensorBatchProcessor live       = new SensorBatchProcessor();
+        KalmanFusion         liveFusion = new KalmanFusion();
+        live.setOrientationFusion(liveFusion);
+        newStream().run(recorder, STEPS);
+        recorder.close();
+        newStream().run(live, STEPS);
+
+        SensorBatchProcessor replay       = new SensorBatchProcessor();
+        KalmanFusion         replayFusion = new KalmanFusion();
+        replay.setOrientationFusion(replayFusion);
+        SensorTracePlayer player = new SensorTracePlayer(file);
+        try {
+            player.play(replay, false);
+        } finally {
+            player.close();
+        }
+
+        float[] expected = new float[4];
+        float[] actual   = new float[4];
+        liveFusion.getQuaternion(expected);
+        replayFusion.getQuaternion(actual);
+        assertArrayEquals(expected, actual, 0);
+    }
+
+    @Test
+    public void longGapsAreRecordedWithSyncRecords() throws IOException {
+        File                file     = mFolder.newFile("gaps" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        SampleList          recorded = new SampleList(8);
+        long[]              times    = new long[] {1000L, 6000000L, 5000000000L, 5005000000L, 1000000000L};
+        for (int i = 0; i < times.length; i++) {
+            recorder.onSample(Sensor.TYPE_GYROSCOPE, i, -i, 0.5f * i, times[i]);
+            recorded.onSample(Sensor.TYPE_GYROSCOPE, i, -i, 0.5f * i, times[i]);
+        }
+        recorder.onSample(Sensor.TYPE_LIGHT, 1, 2, 3, 1000000001L); // 不支持的传感器被忽略
+        recorder.close();
+
+        // 第一个样本、暂停5秒后和时间戳回退4秒后的样本各有一条同步记录
+        assertEquals(SensorTraceRecorder.HEADER_SIZE + 3 * SYNC_SIZE + times.length * SAMPLE_SIZE, file.length());
+        recorded.assertEquals(replay(file));
+    }
+
+    @Test
+    public void truncatedTailIsIgnored() throws IOException {
+        File                file     = mFolder.newFile("truncated" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        SampleList          recorded = new SampleList(STEPS * 2);
+        newStream().run(recorder, 100);
+        recorder.close();
+        newStream().run(recorded, 100);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 5); // 最后一条记录只剩一部分，例如记录时进程被杀
+        } finally {
+            raf.close();
+        }
+        SampleList replayed = replay(file);
+        assertEquals(recorded.mCount - 1, replayed.mCount);
+        recorded.mCount--;
+        recorded.assertEquals(replayed);
+    }
+
+    @Test
+    public void replayCrossesMapWindows() throws IOException {
+        // 超过16MB的映射窗口，窗口边界落在记录中间
+        int                 count    = 1100000;
+        File                file     = mFolder.newFile("long" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        for (int i = 0; i < count; i++) {
+            recorder.onSample(Sensor.TYPE_GYROSCOPE, i, 0, 0, i * 5000000L);
+        }
+        recorder.close();
+        assertTrue(file.length() > 16 * 1024 * 1024);
+
+        final long[] state = new long[2]; // 样本数，数值与序号不一致的样本数
+        SensorTracePlayer player = new SensorTracePlayer(file);
+        try {
+            player.play(new SensorSampleRing.SampleConsumer() {
+
+                @Override
+                public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+                    if (x != state[0] || timestampNs != state[0] * 5000000L) {
+                        state[1]++;
+                    }
+                    state[0]++;
+                }
+            }, false);
+        } finally {
+            player.close();
+        }
+        assertEquals(count, state[0]);
+        assertEquals(0, state[1]);
+    }
+
+    @Test
+    public void realTimeReplayFollowsTimestamps() throws IOException {
+        File                file     = mFolder.newFile("realtime" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        for (int i = 0; i <= 40; i++) {
+            recorder.onSample(Sensor.TYPE_GYROSCOPE, 0, 0, 0, 1000000000L + i * 5000000L);
+        }
+        recorder.close();
+
+        SensorTracePlayer player = new SensorTracePlayer(file);
+        try {
+            final long   startTime    = System.nanoTime();
+            final long[] deliveryTime = new long[41];
+            assertEquals(41, player.play(new SensorSampleRing.SampleConsumer() {
+                private int mCount = 0;
+
+                @Override
+                public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+                    deliveryTime[mCount++] = System.nanoTime();
+                }
+            }, true));
+            // 每个样本都不能早于它的时间戳对应的时刻送出
+            for (int i = 0; i < deliveryTime.length; i++) {
+                assertTrue(deliveryTime[i] - startTime >= i * 5000000L);
+            }
+            assertEquals(200000000L, player.getDurationNs());
+        } finally {
+            player.close();
+        }
+    }
+
+    @Test
+    public void realTimeReplayStopsWhenInterrupted() throws IOException {
+        File                file     = mFolder.newFile("interrupted" + SensorTraceRecorder.EXTENSION);
+        SensorTraceRecorder recorder = new SensorTraceRecorder(file);
+        for (int i = 0; i <= 40; i++) {
+            recorder.onSample(Sensor.TYPE_GYROSCOPE, 0, 0, 0, 1000000000L + i * 5000000L);
+        }
+        recorder.close();
+
+        SensorTracePlayer player = new SensorTracePlayer(file);
+        try {
+            // 在回放线程中于第10个样本后中断，之后的样本不再送出
+            assertEquals(10, player.play(new SensorSampleRing.SampleConsumer() {
+                private int mCount = 0;
+
+                @Override
+                public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+                    if (++mCount == 10) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, true));
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            player.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File             file   = mFolder.newFile("other" + SensorTraceRecorder.EXTENSION);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[] {'G', 'M', 'S', 'H', 1, 0, 0, 0});
+        } finally {
+            output.close();
+        }
+        new SensorTracePlayer(file).close();
+    }
+
+    private static SyntheticSensorStream newStream() {
+        SyntheticSensorStream stream = new SyntheticSensorStream(16);
+        stream.setAngularRate(0.3f, -0.2f, 0.5f);
+        stream.setNoise(0.01f, 0.05f, 0.5f);
+        return stream;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[]           bytes = new byte[(int) file.length()];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.readFully(bytes);
+        } finally {
+            input.close();
+        }
+        return bytes;
+    }
+
+    private static SampleList replay(File file) throws IOException {
+        SampleList        samples = new SampleList(STEPS * 2);
+        SensorTracePlayer player  = new SensorTracePlayer(file);
+        try {
+            player.play(samples, false);
+        } finally {
+            player.close();
+        }
+        return samples;
+    }
+
+    /**
+     * 按顺序保存收到的样本
+     */
+    private static final class SampleList implements SensorSampleRing.SampleConsumer {
+
+        private final int[]   mTypes;      // 传感器类型
+        private final long[]  mTimestamps; // 样本时间戳(ns)
+        private final float[] mValues;     // 样本数值
+        private int           mCount;      // 样本数
+
+        SampleList(int capacity) {
+            mTypes      = new int[capacity];
+            mTimestamps = new long[capacity];
+            mValues     = new float[capacity * 3];
+        }
+
+        @Override
+        public void onSample(int sensorType, float x, float y, float z, long timestampNs) {
+            mTypes[mCount]          = sensorType;
+            mTimestamps[mCount]     = timestampNs;
+            mValues[mCount * 3]     = x;
+            mValues[mCount * 3 + 1] = y;
+            mValues[mCount * 3 + 2] = z;
+            mCount++;
+        }
+
+        void assertEquals(SampleList actual) {
+            org.junit.Assert.assertEquals(mCount, actual.mCount);
+            assertArrayEquals(Arrays.copyOf(mTypes, mCount), Arrays.copyOf(actual.mTypes, mCount));
+            assertArrayEquals(Arrays.copyOf(mTimestamps, mCount), Arrays.copyOf(actual.mTimestamps, mCount));
+            assertArrayEquals(Arrays.copyOf(mValues, mCount * 3), Arrays.copyOf(actual.mValues, mCount * 3), 0);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.cocoonshu.example.glgyro;
+
+import java.util.Random;
+
+import android.hardware.Sensor;
+
+/**
+ * Synthetic sensor samples of a device turning at a known angular rate
+ * 按陀螺仪200Hz、加速度计100Hz、磁力计50Hz生成与真实姿态一致的样本，可以叠加高斯噪声和恒定的陀螺仪零偏。
+ * 真实姿态与融合引擎的约定相同：从设备坐标系到世界坐标系(东、北、天)的四元数。生成样本不分配内存
+ */
+final class SyntheticSensorStream {
+
+    static final long    GYRO_INTERVAL_NS = 5000000L;                     // 陀螺仪样本间隔(ns)
+    static final float   GYRO_INTERVAL_S  = GYRO_INTERVAL_NS * 1e-9f;     // 陀螺仪样本间隔(s)
+    static final float[] MAGNETIC_FIELD   = new float[] {0, 22, -40};     // 世界坐标系中的地磁场(uT)
+
+    private final Random  mRandom     = new Random();
+    private final float[] mTruth      = new float[4];  // 真实姿态
+    private final float[] mMatrix     = new float[9];  // 真实姿态的旋转矩阵
+    private final float[] mRate       = new float[3];  // 设备坐标系下的真实角速度(rad/s)
+    private final float[] mGyroBias   = new float[3];  // 陀螺仪零偏(rad/s)
+    private float         mGyroNoise  = 0;             // 陀螺仪噪声标准差(rad/s)
+    private float         mAccelNoise = 0;             // 加速度计噪声标准差(m/s²)
+    private float         mMagNoise   = 0;             // 磁力计噪声标准差(uT)
+    private long          mTick       = 0;             // 已生成的陀螺仪周期数
+
+    SyntheticSensorStream(long seed) {
+        mRandom.setSeed(seed);
+        OrientationMath.identityQuaternion(mTruth);
+    }
+
+    void setTruth(float[] q) {
+        System.arraycopy(q, 0, mTruth, 0, 4);
+        OrientationMath.normalizeQuaternion(mTruth);
+    }
+
+    void setAngularRate(float wx, float wy, float wz) {
+        mRate[0] = wx;
+        mRate[1] = wy;
+        mRate[2] = wz;
+    }
+
+    void setGyroBias(float bx, float by, float bz) {
+        mGyroBias[0] = bx;
+        mGyroBias[1] = by;
+        mGyroBias[2] = bz;
+    }
+
+    void setNoise(float gyroNoise, float accelNoise, float magNoise) {
+        mGyroNoise  = gyroNoise;
+        mAccelNoise = accelNoise;
+        mMagNoise   = magNoise;
+    }
+
+    /**
+     * @return the true orientation after the latest step, owned by the stream
+     */
+    float[] getTruth() {
+        return mTruth;
+    }
+
+    long getTimestamp() {
+        return mTick * GYRO_INTERVAL_NS;
+    }
+
+    /**
+     * 前进一个陀螺仪周期，把这个周期的样本按时间顺序送给consumer
+     */
+    void step(SensorSampleRing.SampleConsumer consumer) {
+        mTick++;
+        long timestampNs = getTimestamp();
+        OrientationMath.integrateAngularRate(mTruth, mRate[0], mRate[1], mRate[2], GYRO_INTERVAL_S);
+        consumer.onSample(Sensor.TYPE_GYROSCOPE,
+                mRate[0] + mGyroBias[0] + noise(mGyroNoise),
+                mRate[1] + mGyroBias[1] + noise(mGyroNoise),
+                mRate[2] + mGyroBias[2] + noise(mGyroNoise), timestampNs);
+        if (mTick % 2 == 0) {
+            OrientationMath.quaternionToMatrix(mTruth, mMatrix);
+            // 静止的设备测得的是重力的反作用力，在设备坐标系中为R^T * (0, 0, g)
+            float g = OrientationMath.STANDARD_GRAVITY;
+            consumer.onSample(Sensor.TYPE_ACCELEROMETER,
+                    mMatrix[6] * g + noise(mAccelNoise),
+                    mMatrix[7] * g + noise(mAccelNoise),
+                    mMatrix[8] * g + noise(mAccelNoise), timestampNs);
+        }
+        if (mTick % 4 == 0) {
+            OrientationMath.quaternionToMatrix(mTruth, mMatrix);
+            float[] B = MAGNETIC_FIELD;
+            consumer.onSample(Sensor.TYPE_MAGNETIC_FIELD,
+                    mMatrix[0] * B[0] + mMatrix[3] * B[1] + mMatrix[6] * B[2] + noise(mMagNoise),
+                    mMatrix[1] * B[0] + mMatrix[4] * B[1] + mMatrix[7] * B[2] + noise(mMagNoise),
+                    mMatrix[2] * B[0] + mMatrix[5] * B[1] + mMatrix[8] * B[2] + noise(mMagNoise), timestampNs);
+        }
+    }
+
+    /**
+     * 连续前进多个陀螺仪周期
+     */
+    void run(SensorSampleRing.SampleConsumer consumer, int steps) {
+        for (int i = 0; i < steps; i++) {
+            step(consumer);
+        }
+    }
+
+    private float noise(float sigma) {
+        return sigma == 0 ? 0 : sigma * (float) mRandom.nextGaussian();
+    }
+}
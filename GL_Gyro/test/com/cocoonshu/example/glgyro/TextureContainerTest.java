@@ -0,0 +1,199 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class TextureContainerTest {
+
+    private static final double MIN_ETC1_PSNR      = 30.0; // 完整4x4块的级别允许的最低PSNR(dB)
+    private static final double MIN_RGB565_PSNR    = 29.0; // ETC1再转为RGB565后允许的最低PSNR(dB)
+    private static final int    MAX_SOLID_ERROR    = 8;    // 纯色块的最大通道误差，约为5位基础色的一个量化步长
+    private static final int    MAX_GRADIENT_ERROR = 12;   // 平滑渐变的最大通道误差，块内的色度变化只能由亮度修正近似
+
+    // 应用的漫反射贴图，路径相对于math模块目录
+    private static final File DIFFUSE_IMAGE     = new File("../assets/tex_gyro_diffuse.png");
+    private static final File DIFFUSE_CONTAINER = new File("../assets/tex_gyro_diffuse" + TextureContainer.EXTENSION);
+
+    @Test
+    public void containerRoundTripIsBitExact() throws IOException {
+        TextureContainer container = TextureContainer.encodeEtc1(gradient(40, 24), 40, 24, true);
+        assertEquals(TextureContainer.getLevelCount(40, 24), container.getLevelCount());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        container.write(bytes);
+        TextureContainer readBack = TextureContainer.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertContainersEqual(container, readBack);
+    }
+
+    @Test
+    public void shippedContainerMatchesImage() throws IOException {
+        TextureContainer encoded = encodeDiffuse();
+        FileInputStream  input   = new FileInputStream(DIFFUSE_CONTAINER);
+        try {
+            assertContainersEqual(encoded, TextureContainer.read(input));
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    public void diffuseLevelsMeetPsnr() throws IOException {
+        BufferedImage    image     = ImageIO.read(DIFFUSE_IMAGE);
+        byte[]           reference = toRgb(image);
+        TextureContainer container = TextureContainer.encodeEtc1(reference, image.getWidth(), image.getHeight(), true);
+        for (int i = 0; i < container.getLevelCount(); i++) {
+            int width  = container.getLevelWidth(i);
+            int height = container.getLevelHeight(i);
+            if (i > 0) {
+                // 参照图像为同样盒式滤波得到的RGB888
+                reference = TextureContainer.downsample(reference,
+                        container.getLevelWidth(i - 1), container.getLevelHeight(i - 1));
+            }
+            if (width < Etc1Codec.BLOCK_DIMENSION || height < Etc1Codec.BLOCK_DIMENSION) {
+                // 不足一个块的级别整个落在一个子块里，只有一个基础色，不检查PSNR
+                continue;
+            }
+            byte[] decoded = new byte[width * height * 3];
+            Etc1Codec.decodeImage(container.getLevelData(i), width, height, decoded);
+            double etc1   = psnr(reference, decoded);
+            double rgb565 = psnr(reference, decodeRgb565(container.getLevelData(i), width, height));
+            assertTrue("level " + i + ": ETC1 " + etc1 + " dB", etc1 >= MIN_ETC1_PSNR);
+            assertTrue("level " + i + ": RGB565 " + rgb565 + " dB", rgb565 >= MIN_RGB565_PSNR);
+        }
+    }
+
+    @Test
+    public void solidBlocksDecodeWithinMaxError() {
+        byte[]     rgb     = new byte[16 * 3];
+        byte[]     decoded = new byte[16 * 3];
+        ByteBuffer data    = ByteBuffer.allocate(Etc1Codec.ENCODED_BLOCK_SIZE);
+        for (int r = 0; r < 256; r += 3) {
+            for (int g = 0; g < 256; g += 17) {
+                for (int b = 0; b < 256; b += 51) {
+                    for (int i = 0; i < 16; i++) {
+                        rgb[i * 3]     = (byte) r;
+                        rgb[i * 3 + 1] = (byte) g;
+                        rgb[i * 3 + 2] = (byte) b;
+                    }
+                    data.clear();
+                    Etc1Codec.encodeImage(rgb, 4, 4, data);
+                    data.rewind();
+                    Etc1Codec.decodeImage(data, 4, 4, decoded);
+                    assertTrue(r + "," + g + "," + b, maxError(rgb, decoded) <= MAX_SOLID_ERROR);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gradientDecodesWithinMaxError() {
+        int        width   = 64;
+        int        height  = 60; // 最后一行块只有部分像素
+        byte[]     rgb     = gradient(width, height);
+        byte[]     decoded = new byte[rgb.length];
+        ByteBuffer data    = ByteBuffer.allocate(Etc1Codec.getEncodedDataSize(width, height));
+        Etc1Codec.encodeImage(rgb, width, height, data);
+        assertEquals(data.capacity(), data.position());
+        data.rewind();
+        Etc1Codec.decodeImage(data, width, height, decoded);
+        int error = maxError(rgb, decoded);
+        assertTrue("max error " + error, error <= MAX_GRADIENT_ERROR);
+    }
+
+    private static TextureContainer encodeDiffuse() throws IOException {
+        BufferedImage image = ImageIO.read(DIFFUSE_IMAGE);
+        assertNotNull(image);
+        return TextureContainer.encodeEtc1(toRgb(image), image.getWidth(), image.getHeight(), true);
+    }
+
+    private static void assertContainersEqual(TextureContainer expected, TextureContainer actual) {
+        assertEquals(expected.getFormat(), actual.getFormat());
+        assertEquals(expected.getLevelCount(), actual.getLevelCount());
+        for (int i = 0; i < expected.getLevelCount(); i++) {
+            assertEquals(expected.getLevelWidth(i), actual.getLevelWidth(i));
+            assertEquals(expected.getLevelHeight(i), actual.getLevelHeight(i));
+            assertEquals("level " + i, expected.getLevelData(i), actual.getLevelData(i));
+        }
+    }
+
+    private static byte[] gradient(int width, int height) {
+        byte[] rgb = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = (y * width + x) * 3;
+                rgb[index]     = (byte) (x * 255 / width);
+                rgb[index + 1] = (byte) (y * 255 / height);
+                rgb[index + 2] = (byte) ((x + y) * 255 / (width + height));
+            }
+        }
+        return rgb;
+    }
+
+    private static byte[] toRgb(BufferedImage image) {
+        int    width  = image.getWidth();
+        int    height = image.getHeight();
+        byte[] rgb    = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = image.getRGB(x, y);
+                int index = (y * width + x) * 3;
+                rgb[index]     = (byte) (pixel >> 16);
+                rgb[index + 1] = (byte) (pixel >> 8);
+                rgb[index + 2] = (byte) pixel;
+            }
+        }
+        return rgb;
+    }
+
+    private static byte[] decodeRgb565(ByteBuffer etc1, int width, int height) {
+        ByteBuffer rgb565 = ByteBuffer.allocate(width * height * 2);
+        rgb565.order(ByteOrder.nativeOrder());
+        Etc1Codec.decodeImageToRgb565(etc1, width, height, rgb565);
+        byte[] rgb = new byte[width * height * 3];
+        for (int i = 0; i < width * height; i++) {
+            int pixel = rgb565.getShort(i * 2) & 0xFFFF;
+            int r     = pixel >> 11;
+            int g     = (pixel >> 5) & 0x3F;
+            int b     = pixel & 0x1F;
+            rgb[i * 3]     = (byte) (r << 3 | r >> 2);
+            rgb[i * 3 + 1] = (byte) (g << 2 | g >> 4);
+            rgb[i * 3 + 2] = (byte) (b << 3 | b >> 2);
+        }
+        return rgb;
+    }
+
+    private static double psnr(byte[] reference, byte[] image) {
+        double sum = 0;
+        for (int i = 0; i < reference.length; i++) {
+            int d = (reference[i] & 0xFF) - (image[i] & 0xFF);
+            sum += d * d;
+        }
+        if (sum == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mse = sum / reference.length;
+        return 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private static int maxError(byte[] expected, byte[] actual) {
+        int max = 0;
+        for (int i = 0; i < expected.length; i++) {
+            max = Math.max(max, Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF)));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,107 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class VertexCacheSimulatorTest {
+
+    private static final int[]   CACHE_SIZES   = new int[] {16, 32};  // 模拟的顶点缓存大小
+    private static final float   MAX_ACMR      = 0.75f;               // 优化后允许的最大ACMR，Forsyth算法约为0.67-0.69
+    private static final float   MAX_ACMR_GAIN = 0.75f;               // 优化后的ACMR相对逐行输出的最大比例
+
+    @Test
+    public void countsFifoMisses() {
+        VertexCacheSimulator simulator = new VertexCacheSimulator(4);
+        ShortBuffer indices = ShortBuffer.wrap(new short[] {0, 1, 2, 2, 1, 3, 3, 4, 0});
+        simulator.simulate(indices, 0, 9, InterleavedMesh.PRIMITIVE_TRIANGLES, 0);
+
+        // 0,1,2,3缺失；4缺失并替换最早进入缓存的0，所以最后的0再次缺失
+        assertEquals(6, simulator.getMisses());
+        assertEquals(3, simulator.getTriangleCount());
+        assertEquals(5, simulator.getVertexCount());
+        assertEquals(2.0f, simulator.getACMR(), 0);
+        assertEquals(1.2f, simulator.getATVR(), 1e-6f);
+    }
+
+    @Test
+    public void skipsDegenerateStripTriangles() {
+        VertexCacheSimulator simulator = new VertexCacheSimulator(8);
+        ShortBuffer indices = ShortBuffer.wrap(new short[] {0, 1, 2, 3, 3, 4, 4, 5, 6, 7});
+        simulator.simulate(indices, 0, indices.capacity(), InterleavedMesh.PRIMITIVE_TRIANGLE_STRIP, 0);
+        assertEquals(4, simulator.getTriangleCount());
+        assertEquals(8, simulator.getMisses());
+    }
+
+    @Test
+    public void optimizedOrderBeatsRowOrder() {
+        int[] lods = new int[] {SphereMeshGenerator.LOD_LOW, SphereMeshGenerator.LOD_MEDIUM,
+                                SphereMeshGenerator.LOD_HIGH, SphereMeshGenerator.LOD_ULTRA};
+        for (int lod : lods) {
+            InterleavedMesh rows      = generate(lod, SphereMeshGenerator.ORDER_ROWS);
+            InterleavedMesh optimized = generate(lod, SphereMeshGenerator.ORDER_OPTIMIZED);
+            InterleavedMesh strip     = generate(lod, SphereMeshGenerator.ORDER_STRIP);
+            for (int cacheSize : CACHE_SIZES) {
+                VertexCacheSimulator rowsSimulator      = simulate(rows, cacheSize);
+                VertexCacheSimulator optimizedSimulator = simulate(optimized, cacheSize);
+                VertexCacheSimulator stripSimulator     = simulate(strip, cacheSize);
+                String message = "lod " + lod + ", cache " + cacheSize;
+
+                // 三种顺序绘制的是同一组三角形和顶点
+                assertEquals(message, rowsSimulator.getTriangleCount(), optimizedSimulator.getTriangleCount());
+                assertEquals(message, rowsSimulator.getTriangleCount(), stripSimulator.getTriangleCount());
+                assertEquals(message, rows.getVertexCount(), optimizedSimulator.getVertexCount());
+
+                assertTrue(message + ": ACMR " + optimizedSimulator.getACMR(),
+                        optimizedSimulator.getACMR() < MAX_ACMR);
+                assertTrue(message + ": ACMR " + optimizedSimulator.getACMR() + " vs " + rowsSimulator.getACMR(),
+                        optimizedSimulator.getACMR() < MAX_ACMR_GAIN * rowsSimulator.getACMR());
+                assertTrue(message, optimizedSimulator.getATVR() < rowsSimulator.getATVR());
+            }
+        }
+    }
+
+    @Test
+    public void optimizerKeepsTriangles() {
+        InterleavedMesh rows      = generate(SphereMeshGenerator.LOD_MEDIUM, SphereMeshGenerator.ORDER_ROWS);
+        InterleavedMesh optimized = generate(SphereMeshGenerator.LOD_MEDIUM, SphereMeshGenerator.ORDER_OPTIMIZED);
+        assertArrayEquals(sortedTriangles(rows), sortedTriangles(optimized));
+    }
+
+    private static InterleavedMesh generate(int lod, int order) {
+        return SphereMeshGenerator.forLevelOfDetail(lod, 1.0f).setIndexOrder(order).generate();
+    }
+
+    private static VertexCacheSimulator simulate(InterleavedMesh mesh, int cacheSize) {
+        VertexCacheSimulator simulator = new VertexCacheSimulator(cacheSize);
+        simulator.simulate(mesh);
+        return simulator;
+    }
+
+    /**
+     * 把每个三角形旋转为最小顶点在前(保持绕序)，编码为一个long后排序
+     */
+    private static long[] sortedTriangles(InterleavedMesh mesh) {
+        ShortBuffer indices   = mesh.getIndexData();
+        long[]      triangles = new long[mesh.getIndexCount() / 3];
+        for (int t = 0; t < triangles.length; t++) {
+            long a = indices.get(t * 3) & 0xFFFF;
+            long b = indices.get(t * 3 + 1) & 0xFFFF;
+            long c = indices.get(t * 3 + 2) & 0xFFFF;
+            while (a > b || a > c) {
+                long first = a;
+                a = b;
+                b = c;
+                c = first;
+            }
+            triangles[t] = (a << 32) | (b << 16) | c;
+        }
+        Arrays.sort(triangles);
+        return triangles;
+    }
+}
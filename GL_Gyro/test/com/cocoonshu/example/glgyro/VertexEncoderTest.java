@@ -0,0 +1,111 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class VertexEncoderTest {
+
+    private static final float EPSILON = 1e-6f; // 浮点误差余量
+
+    @Test
+    public void sphereErrorsStayWithinBounds() {
+        int[]          lods    = new int[] {SphereMeshGenerator.LOD_LOW, SphereMeshGenerator.LOD_MEDIUM,
+                                            SphereMeshGenerator.LOD_HIGH, SphereMeshGenerator.LOD_ULTRA};
+        VertexFormat[] formats = new VertexFormat[] {VertexFormat.COMPACT, VertexFormat.COMPACT_SPHERE};
+        for (int lod : lods) {
+            InterleavedMesh source = SphereMeshGenerator.forLevelOfDetail(lod, 2.5f).generate();
+            for (VertexFormat format : formats) {
+                VertexEncoder   encoder = new VertexEncoder(format);
+                InterleavedMesh mesh    = encoder.encode(source);
+                String          message = "lod " + lod + ", " + encoder;
+
+                assertTrue(message, encoder.isWithinErrorBounds());
+                assertTrue(message, encoder.getMaxPositionError() <= encoder.getPositionErrorBound() + EPSILON);
+                assertTrue(message, encoder.getMaxTexcoordError() <= encoder.getTexcoordErrorBound() + EPSILON);
+                assertTrue(message, encoder.getMaxNormalError() <= VertexEncoder.MAX_NORMAL_ERROR);
+                assertTrue(message, encoder.getMaxNormalLengthError() <= VertexEncoder.MAX_NORMAL_LENGTH_ERROR);
+
+                // 半个量化步长：最大坐标分量/32767/2 * sqrt(3)，贴图坐标1/32767/2
+                assertEquals(2.5f / Short.MAX_VALUE * (float) Math.sqrt(3) * 0.5f,
+                        encoder.getPositionErrorBound(), 1e-9f);
+                assertEquals(0.5f / Short.MAX_VALUE, encoder.getTexcoordErrorBound(), 1e-9f);
+
+                assertSame(format, mesh.getFormat());
+                assertEquals(source.getVertexCount() * format.getStride(), mesh.getVertexDataSize());
+                assertEquals(source.getIndexCount(), mesh.getIndexCount());
+                assertEquals(source.getChunkCount(), mesh.getChunkCount());
+                assertDecodedWithinBounds(source, mesh, encoder);
+            }
+        }
+    }
+
+    @Test
+    public void offCenterMeshExceedsDerivedNormalBound() {
+        // 不以原点为球心的三角形，坐标的方向不是法线，长度也不是1
+        InterleavedMesh source = InterleavedMesh.pack(
+                new float[] {1, 1, 0, 2, 1, 0, 1, 2, 0},
+                new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1},
+                new float[] {0, 0, 1, 0, 0, 1},
+                new short[] {0, 1, 2});
+
+        VertexEncoder sphereEncoder = new VertexEncoder(VertexFormat.COMPACT_SPHERE);
+        sphereEncoder.encode(source);
+        assertFalse(sphereEncoder.isWithinErrorBounds());
+        assertTrue(sphereEncoder.getMaxNormalLengthError() > VertexEncoder.MAX_NORMAL_LENGTH_ERROR);
+
+        // 量化的byte法线不依赖坐标
+        VertexEncoder compactEncoder = new VertexEncoder(VertexFormat.COMPACT);
+        compactEncoder.encode(source);
+        assertTrue(compactEncoder.toString(), compactEncoder.isWithinErrorBounds());
+    }
+
+    @Test
+    public void texcoordOutOfRangeExceedsBound() {
+        InterleavedMesh source = InterleavedMesh.pack(
+                new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1},
+                new float[] {1, 0, 0, 0, 1, 0, 0, 0, 1},
+                new float[] {0, 0, 1.5f, 0, 0, 1},
+                new short[] {0, 1, 2});
+        VertexEncoder encoder = new VertexEncoder(VertexFormat.COMPACT);
+        encoder.encode(source);
+        assertFalse(encoder.isWithinErrorBounds());
+        assertEquals(0.5f, encoder.getMaxTexcoordError(), 1e-4f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsQuantizedSource() {
+        VertexEncoder encoder = new VertexEncoder(VertexFormat.COMPACT);
+        encoder.encode(encoder.encode(SphereMeshGenerator.forLevelOfDetail(SphereMeshGenerator.LOD_LOW, 1).generate()));
+    }
+
+    /**
+     * 从量化后的顶点数据解码坐标和贴图坐标，逐个顶点与源网格比较
+     */
+    private static void assertDecodedWithinBounds(InterleavedMesh source, InterleavedMesh mesh, VertexEncoder encoder) {
+        VertexFormat format = mesh.getFormat();
+        ByteBuffer   input  = source.getVertexData();
+        ByteBuffer   output = mesh.getVertexData();
+        for (int i = 0; i < source.getVertexCount(); i++) {
+            int   sourceBase = i * InterleavedMesh.STRIDE;
+            int   targetBase = i * format.getStride();
+            float error      = 0;
+            for (int k = 0; k < InterleavedMesh.POSITION_SIZE; k++) {
+                float expected = input.getFloat(sourceBase + InterleavedMesh.POSITION_OFFSET + k * 4);
+                float actual   = output.getShort(targetBase + format.getPositionOffset() + k * 2) * mesh.getPositionScale();
+                error += (expected - actual) * (expected - actual);
+            }
+            assertTrue("vertex " + i, (float) Math.sqrt(error) <= encoder.getPositionErrorBound() + EPSILON);
+            for (int k = 0; k < InterleavedMesh.TEXCOORD_SIZE; k++) {
+                float expected = input.getFloat(sourceBase + InterleavedMesh.TEXCOORD_OFFSET + k * 4);
+                float actual   = output.getShort(targetBase + format.getTexcoordOffset() + k * 2) * mesh.getTexcoordScale();
+                assertEquals("vertex " + i, expected, actual, encoder.getTexcoordErrorBound() + EPSILON);
+            }
+        }
+    }
+}
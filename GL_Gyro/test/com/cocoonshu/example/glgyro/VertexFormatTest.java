@@ -0,0 +1,102 @@
+package com.cocoonshu.example.glgyro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class VertexFormatTest {
+
+    @Test
+    public void floatLayout() {
+        VertexFormat format = VertexFormat.FLOAT;
+        assertLayout(format, 32, 0, 12, 24);
+        assertEquals(VertexFormat.TYPE_FLOAT, format.getPositionType());
+        assertEquals(VertexFormat.TYPE_FLOAT, format.getNormalType());
+        assertEquals(VertexFormat.TYPE_FLOAT, format.getTexcoordType());
+        assertFalse(format.isNormalDerived());
+
+        // 与InterleavedMesh的布局常量一致
+        assertEquals(InterleavedMesh.STRIDE, format.getStride());
+        assertEquals(InterleavedMesh.POSITION_OFFSET, format.getPositionOffset());
+        assertEquals(InterleavedMesh.NORMAL_OFFSET, format.getNormalOffset());
+        assertEquals(InterleavedMesh.TEXCOORD_OFFSET, format.getTexcoordOffset());
+    }
+
+    @Test
+    public void compactLayout() {
+        VertexFormat format = VertexFormat.COMPACT;
+        assertLayout(format, 16, 0, 8, 12);
+        assertEquals(VertexFormat.TYPE_SHORT, format.getPositionType());
+        assertEquals(VertexFormat.TYPE_BYTE, format.getNormalType());
+        assertEquals(VertexFormat.TYPE_SHORT, format.getTexcoordType());
+        assertFalse(format.isNormalDerived());
+    }
+
+    @Test
+    public void compactSphereLayoutAliasesNormalToPosition() {
+        VertexFormat format = VertexFormat.COMPACT_SPHERE;
+        assertEquals(12, format.getStride());
+        assertEquals(0, format.getPositionOffset());
+        assertEquals(8, format.getTexcoordOffset());
+        assertTrue(format.isNormalDerived());
+        assertEquals(format.getPositionOffset(), format.getNormalOffset());
+        assertEquals(format.getPositionType(), format.getNormalType());
+        assertEquals(VertexFormat.TYPE_SHORT, format.getTexcoordType());
+    }
+
+    @Test
+    public void forIdRoundTrips() {
+        assertSame(VertexFormat.FLOAT, VertexFormat.forId(VertexFormat.ID_FLOAT));
+        assertSame(VertexFormat.COMPACT, VertexFormat.forId(VertexFormat.ID_COMPACT));
+        assertSame(VertexFormat.COMPACT_SPHERE, VertexFormat.forId(VertexFormat.ID_COMPACT_SPHERE));
+    }
+
+    @Test
+    public void forIdReturnsNullForUnknownId() {
+        assertNull(VertexFormat.forId(3));
+    }
+
+    @Test
+    public void packInterleavesAttributesAtFormatOffsets() {
+        float[] positions = {1, 2, 3, 4, 5, 6};
+        float[] normals   = {0, 0, 1, 0, 1, 0};
+        float[] texcoords = {0.25f, 0.5f, 0.75f, 1};
+        InterleavedMesh mesh = InterleavedMesh.pack(positions, normals, texcoords, new short[] {0, 1, 0});
+
+        assertSame(VertexFormat.FLOAT, mesh.getFormat());
+        assertEquals(2, mesh.getVertexCount());
+        assertEquals(2 * 32, mesh.getVertexDataSize());
+        assertEquals(3 * 2, mesh.getIndexDataSize());
+        assertEquals(mesh.getVertexDataSize(), mesh.getVertexData().capacity());
+
+        ByteBuffer data = mesh.getVertexData();
+        for (int v = 0; v < 2; v++) {
+            int base = v * 32;
+            for (int i = 0; i < 3; i++) {
+                assertEquals(positions[v * 3 + i], data.getFloat(base + 0 + i * 4), 0);
+                assertEquals(normals[v * 3 + i], data.getFloat(base + 12 + i * 4), 0);
+            }
+            for (int i = 0; i < 2; i++) {
+                assertEquals(texcoords[v * 2 + i], data.getFloat(base + 24 + i * 4), 0);
+            }
+        }
+
+        // 客户端数组视图从各自的属性偏移开始
+        assertEquals(normals[0], mesh.getNormalData().getFloat(0), 0);
+        assertEquals(texcoords[0], mesh.getTexcoordData().getFloat(0), 0);
+        assertEquals(texcoords[2], mesh.getTexcoordData().getFloat(32), 0);
+    }
+
+    private static void assertLayout(VertexFormat format, int stride, int position, int normal, int texcoord) {
+        assertEquals(stride, format.getStride());
+        assertEquals(position, format.getPositionOffset());
+        assertEquals(normal, format.getNormalOffset());
+        assertEquals(texcoord, format.getTexcoordOffset());
+    }
+}
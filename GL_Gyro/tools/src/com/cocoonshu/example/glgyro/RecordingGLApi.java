@@ -0,0 +1,601 @@
+package com.cocoonshu.example.glgyro;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES11;
+
+/**
+ * Recording GLApi for headless draw call profiling
+ * 不调用任何驱动，只把每一个GL调用以(操作码, 参数字节数)的形式追加到紧凑的int数组中，
+ * 并统计调用次数、上传到显存的字节数和绘制调用数，可以在没有GPU的JVM上回放
+ * onSurfaceCreated → onDrawFrame的调用序列，检查诸如"稳定帧最多N个调用、上传0字节"的约束。
+ * 客户端数组的参数字节数是Buffer从position到limit的字节数，是驱动实际读取量的上界。
+ * 只用于JVM测试和JMH基准，放在tools中，不打包进应用
+ */
+public class RecordingGLApi implements GLApi {
+
+    public static final int OP_ENABLE                 = 0;  // glEnable
+    public static final int OP_DISABLE                = 1;  // glDisable
+    public static final int OP_ENABLE_CLIENT_STATE    = 2;  // glEnableClientState
+    public static final int OP_DISABLE_CLIENT_STATE   = 3;  // glDisableClientState
+    public static final int OP_HINT                   = 4;  // glHint
+    public static final int OP_CLEAR                  = 5;  // glClear
+    public static final int OP_CLEAR_COLOR            = 6;  // glClearColor
+    public static final int OP_CLEAR_DEPTHF           = 7;  // glClearDepthf
+    public static final int OP_DEPTH_RANGEF           = 8;  // glDepthRangef
+    public static final int OP_VIEWPORT               = 9;  // glViewport
+    public static final int OP_MATRIX_MODE            = 10; // glMatrixMode
+    public static final int OP_LOAD_IDENTITY          = 11; // glLoadIdentity
+    public static final int OP_LOAD_MATRIXF           = 12; // glLoadMatrixf
+    public static final int OP_MULT_MATRIXF           = 13; // glMultMatrixf
+    public static final int OP_PUSH_MATRIX            = 14; // glPushMatrix
+    public static final int OP_POP_MATRIX             = 15; // glPopMatrix
+    public static final int OP_TRANSLATEF             = 16; // glTranslatef
+    public static final int OP_SCALEF                 = 17; // glScalef
+    public static final int OP_FRUSTUMF               = 18; // glFrustumf
+    public static final int OP_LIGHT_MODELFV          = 19; // glLightModelfv
+    public static final int OP_LIGHT_MODELX           = 20; // glLightModelx
+    public static final int OP_LIGHTFV                = 21; // glLightfv
+    public static final int OP_LIGHTF                 = 22; // glLightf
+    public static final int OP_MATERIALFV             = 23; // glMaterialfv
+    public static final int OP_MATERIALF              = 24; // glMaterialf
+    public static final int OP_ACTIVE_TEXTURE         = 25; // glActiveTexture
+    public static final int OP_GEN_TEXTURES           = 26; // glGenTextures
+    public static final int OP_DELETE_TEXTURES        = 27; // glDeleteTextures
+    public static final int OP_BIND_TEXTURE           = 28; // glBindTexture
+    public static final int OP_TEX_PARAMETERX         = 29; // glTexParameterx
+    public static final int OP_TEX_IMAGE2D            = 30; // texImage2D
+    public static final int OP_TEX_IMAGE2D_BUFFER     = 31; // glTexImage2D
+    public static final int OP_COMPRESSED_TEX_IMAGE2D = 32; // glCompressedTexImage2D
+    public static final int OP_PIXEL_STOREI           = 33; // glPixelStorei
+    public static final int OP_GEN_BUFFERS            = 34; // glGenBuffers
+    public static final int OP_DELETE_BUFFERS         = 35; // glDeleteBuffers
+    public static final int OP_BIND_BUFFER            = 36; // glBindBuffer
+    public static final int OP_BUFFER_DATA            = 37; // glBufferData
+    public static final int OP_VERTEX_POINTER         = 38; // glVertexPointer
+    public static final int OP_NORMAL_POINTER         = 39; // glNormalPointer
+    public static final int OP_TEX_COORD_POINTER      = 40; // glTexCoordPointer
+    public static final int OP_DRAW_ELEMENTS          = 41; // glDrawElements
+    public static final int OP_GET_ERROR              = 42; // glGetError
+    public static final int OP_GET_INTEGERV           = 43; // glGetIntegerv
+    public static final int OP_GET_STRING             = 44; // glGetString
+    public static final int OP_FINISH                 = 45; // glFinish
+    public static final int OP_CLIENT_ACTIVE_TEXTURE  = 46; // glClientActiveTexture
+    public static final int OP_COUNT                  = 47; // 操作码数量
+
+    private static final String[] OP_NAMES = new String[] { // 操作码对应的API名称
+        "glEnable",
+        "glDisable",
+        "glEnableClientState",
+        "glDisableClientState",
+        "glHint",
+        "glClear",
+        "glClearColor",
+        "glClearDepthf",
+        "glDepthRangef",
+        "glViewport",
+        "glMatrixMode",
+        "glLoadIdentity",
+        "glLoadMatrixf",
+        "glMultMatrixf",
+        "glPushMatrix",
+        "glPopMatrix",
+        "glTranslatef",
+        "glScalef",
+        "glFrustumf",
+        "glLightModelfv",
+        "glLightModelx",
+        "glLightfv",
+        "glLightf",
+        "glMaterialfv",
+        "glMaterialf",
+        "glActiveTexture",
+        "glGenTextures",
+        "glDeleteTextures",
+        "glBindTexture",
+        "glTexParameterx",
+        "texImage2D",
+        "glTexImage2D",
+        "glCompressedTexImage2D",
+        "glPixelStorei",
+        "glGenBuffers",
+        "glDeleteBuffers",
+        "glBindBuffer",
+        "glBufferData",
+        "glVertexPointer",
+        "glNormalPointer",
+        "glTexCoordPointer",
+        "glDrawElements",
+        "glGetError",
+        "glGetIntegerv",
+        "glGetString",
+        "glFinish",
+        "glClientActiveTexture"
+    };
+
+    private int[]  mCommands           = new int[256];                                                        // 命令日志：每个命令占两个int，操作码和参数字节数
+    private int    mCommandCount       = 0;                                                                   // 命令数量
+    private int[]  mOpCounts           = new int[OP_COUNT];                                                   // 每个操作码的累计调用次数
+    private int[]  mFrameOpCounts      = new int[OP_COUNT];                                                   // 每个操作码在本帧的调用次数
+    private int    mFrameStart         = 0;                                                                   // 本帧第一个命令的序号
+    private long   mArgumentBytes      = 0;                                                                   // 累计参数字节数
+    private long   mFrameArgumentBytes = 0;                                                                   // 本帧的参数字节数
+    private long   mUploadBytes        = 0;                                                                   // 累计上传到缓冲区和纹理的字节数
+    private long   mFrameUploadBytes   = 0;                                                                   // 本帧上传到缓冲区和纹理的字节数
+    private int    mDrawCalls          = 0;                                                                   // 累计绘制调用数
+    private int    mFrameDrawCalls     = 0;                                                                   // 本帧的绘制调用数
+    private long   mIndicesDrawn       = 0;                                                                   // 累计绘制的索引数
+    private int    mNextName           = 1;                                                                   // 下一个生成的纹理或缓冲区ID
+    private int    mPendingError       = GLES11.GL_NO_ERROR;                                                  // 下一次glGetError返回的错误码
+    private int[]  mIntegerKeys        = new int[] {GLES11.GL_MAX_TEXTURE_UNITS, GLES11.GL_MAX_TEXTURE_SIZE}; // glGetIntegerv模拟的参数
+    private int[]  mIntegerValues      = new int[] {2, 2048};                                                 // glGetIntegerv模拟的参数值
+    private String mExtensions         = "GL_OES_compressed_ETC1_RGB8_texture";                               // glGetString(GL_EXTENSIONS)模拟的扩展列表
+
+    /**
+     * 开始新的一帧，清零本帧的统计数据
+     */
+    public void beginFrame() {
+        mFrameStart         = mCommandCount;
+        mFrameArgumentBytes = 0;
+        mFrameUploadBytes   = 0;
+        mFrameDrawCalls     = 0;
+        Arrays.fill(mFrameOpCounts, 0);
+    }
+
+    /**
+     * 清空命令日志和所有统计数据
+     */
+    public void clear() {
+        mCommandCount  = 0;
+        mArgumentBytes = 0;
+        mUploadBytes   = 0;
+        mDrawCalls     = 0;
+        mIndicesDrawn  = 0;
+        Arrays.fill(mOpCounts, 0);
+        beginFrame();
+    }
+
+    /**
+     * 设置glGetIntegerv返回的参数值
+     */
+    public void setInteger(int parameter, int value) {
+        for (int i = 0; i < mIntegerKeys.length; i++) {
+            if (mIntegerKeys[i] == parameter) {
+                mIntegerValues[i] = value;
+                return;
+            }
+        }
+        mIntegerKeys   = Arrays.copyOf(mIntegerKeys, mIntegerKeys.length + 1);
+        mIntegerValues = Arrays.copyOf(mIntegerValues, mIntegerValues.length + 1);
+        mIntegerKeys[mIntegerKeys.length - 1]     = parameter;
+        mIntegerValues[mIntegerValues.length - 1] = value;
+    }
+
+    /**
+     * 设置glGetString(GL_EXTENSIONS)返回的扩展列表，用于模拟不支持ETC1的设备
+     */
+    public void setExtensions(String extensions) {
+        mExtensions = extensions;
+    }
+
+    /**
+     * 设置下一次glGetError返回的错误码，用于模拟上传失败
+     */
+    public void setPendingError(int error) {
+        mPendingError = error;
+    }
+
+    private int getInteger(int parameter) {
+        for (int i = 0; i < mIntegerKeys.length; i++) {
+            if (mIntegerKeys[i] == parameter) {
+                return mIntegerValues[i];
+            }
+        }
+        return 0;
+    }
+
+    private void generateNames(int count, int[] names, int offset) {
+        for (int i = 0; i < count; i++) {
+            names[offset + i] = mNextName++;
+        }
+    }
+
+    private void record(int opcode, int argumentBytes) {
+        if (mCommandCount * 2 + 2 > mCommands.length) {
+            mCommands = Arrays.copyOf(mCommands, mCommands.length * 2);
+        }
+        mCommands[mCommandCount * 2]     = opcode;
+        mCommands[mCommandCount * 2 + 1] = argumentBytes;
+        mCommandCount++;
+        mOpCounts[opcode]++;
+        mFrameOpCounts[opcode]++;
+        mArgumentBytes      += argumentBytes;
+        mFrameArgumentBytes += argumentBytes;
+    }
+
+    private static int bytesOf(Buffer buffer) {
+        if (buffer == null) {
+            return 0;
+        }
+        int elementBytes;
+        if (buffer instanceof ByteBuffer) {
+            elementBytes = 1;
+        } else if (buffer instanceof ShortBuffer || buffer instanceof CharBuffer) {
+            elementBytes = 2;
+        } else if (buffer instanceof LongBuffer || buffer instanceof DoubleBuffer) {
+            elementBytes = 8;
+        } else {
+            elementBytes = 4;
+        }
+        return buffer.remaining() * elementBytes;
+    }
+
+    private static int bytesOf(Bitmap bitmap) {
+        return bitmap == null ? 0 : bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        record(OP_ENABLE, 4);
+    }
+
+    @Override
+    public void glDisable(int capability) {
+        record(OP_DISABLE, 4);
+    }
+
+    @Override
+    public void glEnableClientState(int array) {
+        record(OP_ENABLE_CLIENT_STATE, 4);
+    }
+
+    @Override
+    public void glDisableClientState(int array) {
+        record(OP_DISABLE_CLIENT_STATE, 4);
+    }
+
+    @Override
+    public void glHint(int target, int mode) {
+        record(OP_HINT, 2 * 4);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        record(OP_CLEAR, 4);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        record(OP_CLEAR_COLOR, 4 * 4);
+    }
+
+    @Override
+    public void glClearDepthf(float depth) {
+        record(OP_CLEAR_DEPTHF, 4);
+    }
+
+    @Override
+    public void glDepthRangef(float zNear, float zFar) {
+        record(OP_DEPTH_RANGEF, 2 * 4);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        record(OP_VIEWPORT, 4 * 4);
+    }
+
+    @Override
+    public void glMatrixMode(int mode) {
+        record(OP_MATRIX_MODE, 4);
+    }
+
+    @Override
+    public void glLoadIdentity() {
+        record(OP_LOAD_IDENTITY, 0);
+    }
+
+    @Override
+    public void glLoadMatrixf(float[] matrix, int offset) {
+        record(OP_LOAD_MATRIXF, 16 * 4);
+    }
+
+    @Override
+    public void glMultMatrixf(float[] matrix, int offset) {
+        record(OP_MULT_MATRIXF, 16 * 4);
+    }
+
+    @Override
+    public void glPushMatrix() {
+        record(OP_PUSH_MATRIX, 0);
+    }
+
+    @Override
+    public void glPopMatrix() {
+        record(OP_POP_MATRIX, 0);
+    }
+
+    @Override
+    public void glTranslatef(float x, float y, float z) {
+        record(OP_TRANSLATEF, 3 * 4);
+    }
+
+    @Override
+    public void glScalef(float x, float y, float z) {
+        record(OP_SCALEF, 3 * 4);
+    }
+
+    @Override
+    public void glFrustumf(float left, float right, float bottom, float top, float zNear, float zFar) {
+        record(OP_FRUSTUMF, 6 * 4);
+    }
+
+    @Override
+    public void glLightModelfv(int parameter, float[] values, int offset) {
+        record(OP_LIGHT_MODELFV, 4 + 4 * 4);
+    }
+
+    @Override
+    public void glLightModelx(int parameter, int value) {
+        record(OP_LIGHT_MODELX, 2 * 4);
+    }
+
+    @Override
+    public void glLightfv(int light, int parameter, float[] values, int offset) {
+        record(OP_LIGHTFV, 4 + 4 + 4 * 4);
+    }
+
+    @Override
+    public void glLightf(int light, int parameter, float value) {
+        record(OP_LIGHTF, 3 * 4);
+    }
+
+    @Override
+    public void glMaterialfv(int face, int parameter, float[] values, int offset) {
+        record(OP_MATERIALFV, 4 + 4 + 4 * 4);
+    }
+
+    @Override
+    public void glMaterialf(int face, int parameter, float value) {
+        record(OP_MATERIALF, 3 * 4);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        record(OP_ACTIVE_TEXTURE, 4);
+    }
+
+    @Override
+    public void glClientActiveTexture(int texture) {
+        record(OP_CLIENT_ACTIVE_TEXTURE, 4);
+    }
+
+    @Override
+    public void glGenTextures(int count, int[] textures, int offset) {
+        record(OP_GEN_TEXTURES, 4 + count * 4);
+        generateNames(count, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int count, int[] textures, int offset) {
+        record(OP_DELETE_TEXTURES, 4 + count * 4);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        record(OP_BIND_TEXTURE, 2 * 4);
+    }
+
+    @Override
+    public void glTexParameterx(int target, int parameter, int value) {
+        record(OP_TEX_PARAMETERX, 3 * 4);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        record(OP_TEX_IMAGE2D, 3 * 4 + bytesOf(bitmap));
+        mUploadBytes += bytesOf(bitmap);
+        mFrameUploadBytes += bytesOf(bitmap);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int format, int type, Buffer pixels) {
+        record(OP_TEX_IMAGE2D_BUFFER, 8 * 4 + bytesOf(pixels));
+        mUploadBytes += bytesOf(pixels);
+        mFrameUploadBytes += bytesOf(pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border,
+            int imageSize, Buffer data) {
+        record(OP_COMPRESSED_TEX_IMAGE2D, 7 * 4 + imageSize);
+        mUploadBytes += imageSize;
+        mFrameUploadBytes += imageSize;
+    }
+
+    @Override
+    public void glPixelStorei(int parameter, int value) {
+        record(OP_PIXEL_STOREI, 2 * 4);
+    }
+
+    @Override
+    public void glGenBuffers(int count, int[] buffers, int offset) {
+        record(OP_GEN_BUFFERS, 4 + count * 4);
+        generateNames(count, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int count, int[] buffers, int offset) {
+        record(OP_DELETE_BUFFERS, 4 + count * 4);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        record(OP_BIND_BUFFER, 2 * 4);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (data != null && bytesOf(data) < size) {
+            // 与Android的GLES11绑定一致
+            throw new IllegalArgumentException("remaining() < size < needed");
+        }
+        // GL总是上传size字节，与data剩余的字节数无关；data为null时只分配，同样按size计
+        record(OP_BUFFER_DATA, 3 * 4 + size);
+        mUploadBytes += size;
+        mFrameUploadBytes += size;
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, int offset) {
+        record(OP_VERTEX_POINTER, 4 * 4);
+    }
+
+    @Override
+    public void glVertexPointer(int size, int type, int stride, Buffer pointer) {
+        record(OP_VERTEX_POINTER, 3 * 4 + bytesOf(pointer));
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, int offset) {
+        record(OP_NORMAL_POINTER, 3 * 4);
+    }
+
+    @Override
+    public void glNormalPointer(int type, int stride, Buffer pointer) {
+        record(OP_NORMAL_POINTER, 2 * 4 + bytesOf(pointer));
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, int offset) {
+        record(OP_TEX_COORD_POINTER, 4 * 4);
+    }
+
+    @Override
+    public void glTexCoordPointer(int size, int type, int stride, Buffer pointer) {
+        record(OP_TEX_COORD_POINTER, 3 * 4 + bytesOf(pointer));
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        record(OP_DRAW_ELEMENTS, 4 * 4);
+        mDrawCalls++;
+        mFrameDrawCalls++;
+        mIndicesDrawn += count;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        record(OP_DRAW_ELEMENTS, 3 * 4 + bytesOf(indices));
+        mDrawCalls++;
+        mFrameDrawCalls++;
+        mIndicesDrawn += count;
+    }
+
+    @Override
+    public int glGetError() {
+        record(OP_GET_ERROR, 0);
+        int error = mPendingError;
+        mPendingError = GLES11.GL_NO_ERROR;
+        return error;
+    }
+
+    @Override
+    public void glGetIntegerv(int parameter, int[] values, int offset) {
+        record(OP_GET_INTEGERV, 4 + 4);
+        values[offset] = getInteger(parameter);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        record(OP_GET_STRING, 4);
+        return name == GLES11.GL_EXTENSIONS ? mExtensions : null;
+    }
+
+    @Override
+    public void glFinish() {
+        record(OP_FINISH, 0);
+    }
+
+    public int getCommandCount() {
+        return mCommandCount;
+    }
+
+    public int getOpcode(int command) {
+        return mCommands[command * 2];
+    }
+
+    public int getArgumentBytes(int command) {
+        return mCommands[command * 2 + 1];
+    }
+
+    public int getCallCount(int opcode) {
+        return mOpCounts[opcode];
+    }
+
+    public int getFrameCallCount() {
+        return mCommandCount - mFrameStart;
+    }
+
+    public int getFrameCallCount(int opcode) {
+        return mFrameOpCounts[opcode];
+    }
+
+    public long getArgumentBytes() {
+        return mArgumentBytes;
+    }
+
+    public long getFrameArgumentBytes() {
+        return mFrameArgumentBytes;
+    }
+
+    public long getUploadBytes() {
+        return mUploadBytes;
+    }
+
+    public long getFrameUploadBytes() {
+        return mFrameUploadBytes;
+    }
+
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    public int getFrameDrawCalls() {
+        return mFrameDrawCalls;
+    }
+
+    public long getIndicesDrawn() {
+        return mIndicesDrawn;
+    }
+
+    public static String getOpcodeName(int opcode) {
+        return OP_NAMES[opcode];
+    }
+
+    /**
+     * 把本帧的命令日志格式化为文本，每行一个命令
+     */
+    public String dumpFrame() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = mFrameStart; i < mCommandCount; i++) {
+            builder.append(getOpcodeName(getOpcode(i))).append(' ').append(getArgumentBytes(i)).append("B\n");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecordingGLApi[frame: %d calls, %d draws, %d arg bytes, %d upload bytes; "
+                + "total: %d calls, %d draws, %d upload bytes]",
+                getFrameCallCount(), mFrameDrawCalls, mFrameArgumentBytes, mFrameUploadBytes,
+                mCommandCount, mDrawCalls, mUploadBytes);
+    }
+}
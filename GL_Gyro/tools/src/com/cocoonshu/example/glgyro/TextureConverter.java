@@ -0,0 +1,73 @@
+package com.cocoonshu.example.glgyro;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Offline PNG to ETC1 texture container converter
+ * 依赖javax.imageio，不属于应用的源码目录，在JVM上运行：
+ * <pre>
+ * javac -encoding UTF-8 -d out ../src/com/cocoonshu/example/glgyro/Etc1Codec.java \
+ *       ../src/com/cocoonshu/example/glgyro/TextureContainer.java src/com/cocoonshu/example/glgyro/TextureConverter.java
+ * java -cp out com.cocoonshu.example.glgyro.TextureConverter ../assets/tex_gyro_diffuse.png
+ * </pre>
+ * 转换后输出各种格式的显存占用；容器读写的往返一致性和各级的压缩质量由TextureContainerTest检查
+ */
+public class TextureConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: TextureConverter <image.png> [output" + TextureContainer.EXTENSION + "]");
+            return;
+        }
+        File input  = new File(args[0]);
+        File output = new File(args.length > 1 ? args[1] : TextureContainer.getContainerPath(args[0]));
+        BufferedImage image = ImageIO.read(input);
+        if (image == null) {
+            throw new IOException("Unsupported image: " + input);
+        }
+        int    width  = image.getWidth();
+        int    height = image.getHeight();
+        byte[] rgb    = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = image.getRGB(x, y);
+                int index = (y * width + x) * 3;
+                rgb[index]     = (byte) (pixel >> 16);
+                rgb[index + 1] = (byte) (pixel >> 8);
+                rgb[index + 2] = (byte) pixel;
+            }
+        }
+
+        long             start     = System.nanoTime();
+        TextureContainer container = TextureContainer.encodeEtc1(rgb, width, height, true);
+        long             encodeMs  = (System.nanoTime() - start) / 1000000L;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        container.write(bytes);
+        FileOutputStream outputStream = new FileOutputStream(output);
+        try {
+            outputStream.write(bytes.toByteArray());
+        } finally {
+            outputStream.close();
+        }
+        System.out.printf("%s -> %s: %dx%d, %d levels, %d bytes, encoded in %d ms%n",
+                input, output, width, height, container.getLevelCount(), bytes.size(), encodeMs);
+
+        // 显存占用：原始路径是不带mipmap的ARGB8888位图
+        long pixels    = (long) width * height;
+        long mipPixels = 0;
+        for (int i = 0; i < container.getLevelCount(); i++) {
+            mipPixels += (long) container.getLevelWidth(i) * container.getLevelHeight(i);
+        }
+        System.out.println("Texture memory:");
+        System.out.printf("  PNG -> ARGB8888, no mipmaps   %9d bytes%n", pixels * 4);
+        System.out.printf("  RGB565 fallback, mipmaps      %9d bytes%n", mipPixels * 2);
+        System.out.printf("  ETC1, mipmaps                 %9d bytes%n", (long) container.getDataSize());
+    }
+}